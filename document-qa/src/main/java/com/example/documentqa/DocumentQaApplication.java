@@ -1,8 +1,10 @@
 package com.example.documentqa;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class DocumentQaApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(DocumentQaApplication.class, args);
@@ -0,0 +1,122 @@
+package com.example.documentqa.blob;
+
+import com.example.documentqa.util.Hashing;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed file storage for uploaded documents. A blob is streamed to a temporary file while its
+ * SHA-256 is computed, then moved to {@code <root>/<first two hex chars>/<hash>}, so identical uploads share
+ * one file and nothing is ever held in memory whole. With compression on, new blobs are gzipped and get a
+ * {@code .gz} suffix; reads handle both forms, so the setting can change without rewriting existing blobs.
+ */
+@Slf4j
+public class BlobStore {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final String COMPRESSED_SUFFIX = ".gz";
+
+    private final Path root;
+    private final Path tmp;
+    private final boolean compress;
+
+    public BlobStore(Path root, boolean compress) {
+        this.root = root;
+        this.tmp = root.resolve("tmp");
+        this.compress = compress;
+        try {
+            Files.createDirectories(tmp);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create blob store in " + root, e);
+        }
+    }
+
+    /**
+     * Streams the input into the store and returns its address. The input is not closed.
+     */
+    public StoredBlob store(InputStream input) throws IOException {
+        MessageDigest digest = Hashing.sha256();
+        Path staging = Files.createTempFile(tmp, "upload-", ".part");
+        long size;
+        try {
+            try (OutputStream out = openForWrite(staging)) {
+                size = new DigestInputStream(input, digest).transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = path(hash, compress);
+            if (Files.exists(target) || Files.exists(path(hash, !compress))) {
+                log.debug("Blob {} already stored", hash);
+            } else {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // A concurrent upload of the same bytes got there first
+                }
+            }
+            return new StoredBlob(hash, size);
+        } finally {
+            Files.deleteIfExists(staging);
+        }
+    }
+
+    /**
+     * Opens a stored blob for reading, decompressing it if it was stored compressed.
+     */
+    public InputStream open(String hash) throws IOException {
+        Path compressed = path(hash, true);
+        if (Files.exists(compressed)) {
+            return new GZIPInputStream(Files.newInputStream(compressed), BUFFER_BYTES);
+        }
+        Path plain = path(hash, false);
+        if (Files.exists(plain)) {
+            return new BufferedInputStream(Files.newInputStream(plain), BUFFER_BYTES);
+        }
+        throw new FileNotFoundException("No blob " + hash + " in " + root);
+    }
+
+    /**
+     * The blob's file if it is stored uncompressed and can be read in place, otherwise null.
+     */
+    public Path file(String hash) {
+        Path plain = path(hash, false);
+        return Files.exists(plain) ? plain : null;
+    }
+
+    public boolean contains(String hash) {
+        return Files.exists(path(hash, true)) || Files.exists(path(hash, false));
+    }
+
+    /**
+     * Deletes both forms of the blob. Returns whether anything was deleted.
+     */
+    public boolean delete(String hash) throws IOException {
+        boolean compressed = Files.deleteIfExists(path(hash, true));
+        boolean plain = Files.deleteIfExists(path(hash, false));
+        return compressed || plain;
+    }
+
+    private OutputStream openForWrite(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        return compress ? new GZIPOutputStream(out, BUFFER_BYTES) : out;
+    }
+
+    private Path path(String hash, boolean compressed) {
+        return root.resolve(hash.substring(0, 2)).resolve(compressed ? hash + COMPRESSED_SUFFIX : hash);
+    }
+}
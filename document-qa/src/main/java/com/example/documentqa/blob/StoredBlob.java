@@ -0,0 +1,8 @@
+package com.example.documentqa.blob;
+
+/**
+ * A blob written to a {@link BlobStore}: the SHA-256 of its uncompressed bytes, which is also its
+ * address, and its uncompressed size.
+ */
+public record StoredBlob(String hash, long size) {
+}
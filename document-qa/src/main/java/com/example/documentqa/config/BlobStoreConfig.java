@@ -0,0 +1,23 @@
+package com.example.documentqa.config;
+
+import com.example.documentqa.blob.BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class BlobStoreConfig {
+
+    @Value("${blob.store.path:./data/blobs}")
+    private String blobStorePath;
+
+    @Value("${blob.store.compress:false}")
+    private boolean compress;
+
+    @Bean
+    public BlobStore blobStore() {
+        return new BlobStore(Path.of(blobStorePath), compress);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.documentqa.config;
+
+import com.example.documentqa.embedding.PooledOnnxEmbeddingModel;
+import com.example.documentqa.ollama.Lane;
+import com.example.documentqa.ollama.ModelScheduler;
+import com.example.documentqa.ollama.OllamaClient;
+import com.example.documentqa.ollama.OllamaEmbeddings;
+import com.example.documentqa.ollama.ScheduledEmbeddingModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class EmbeddingConfig {
+
+    @Value("${embedding.mode:ollama}")
+    private String embeddingMode;
+
+    @Value("${ollama.model.name}")
+    private String ollamaModelName;
+
+    @Value("${ollama.embedding.call-timeout-ms:30000}")
+    private long ollamaCallTimeoutMillis;
+
+    @Value("${ollama.embedding.max-attempts:3}")
+    private int ollamaMaxAttempts;
+
+    @Value("${ollama.embedding.retry-backoff-ms:200}")
+    private long ollamaRetryBackoffMillis;
+
+    @Value("${embedding.onnx.sessions:0}")
+    private int onnxSessions;
+
+    @Value("${embedding.onnx.max-batch-size:32}")
+    private int onnxMaxBatchSize;
+
+    @Value("${embedding.onnx.max-batch-tokens:1024}")
+    private int onnxMaxBatchTokens;
+
+    @Value("${embedding.onnx.max-batch-wait-ms:0}")
+    private long onnxMaxBatchWaitMillis;
+
+    @Bean
+    public EmbeddingModel embeddingModel(OllamaClient ollamaClient, ModelScheduler modelScheduler) {
+        // "onnx" embeds in-process with all-MiniLM-L6-v2 (384 dims); "ollama" calls the chat model's
+        // embedding endpoint over HTTP (4096 dims for llama3.1), sharing Ollama's slots with generation
+        if ("onnx".equalsIgnoreCase(embeddingMode)) {
+            int sessions = onnxSessions > 0 ? onnxSessions : Runtime.getRuntime().availableProcessors();
+            return new PooledOnnxEmbeddingModel(sessions, onnxMaxBatchSize, onnxMaxBatchTokens, Duration.ofMillis(onnxMaxBatchWaitMillis));
+        }
+        OllamaEmbeddings ollama = new OllamaEmbeddings(ollamaClient, ollamaModelName,
+                Duration.ofMillis(ollamaCallTimeoutMillis), ollamaMaxAttempts, Duration.ofMillis(ollamaRetryBackoffMillis));
+        return new ScheduledEmbeddingModel(ollama, modelScheduler, Lane.QUERY_EMBEDDING);
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.example.documentqa.config;
+
+import com.example.documentqa.embedding.PooledOnnxEmbeddingModel;
+import com.example.documentqa.ingestion.FixedSizeSplitter;
+import com.example.documentqa.ingestion.IngestionPipeline;
+import com.example.documentqa.ingestion.PipelineSettings;
+import com.example.documentqa.ingestion.StructuredTextSplitter;
+import com.example.documentqa.ollama.Lane;
+import com.example.documentqa.ollama.ScheduledEmbeddingModel;
+import com.example.documentqa.service.CachingEmbeddingModel;
+import com.example.documentqa.service.EmbeddingCache;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class IngestionConfig {
+
+    @Value("${ingestion.parse.workers:2}")
+    private int parseWorkers;
+
+    @Value("${ingestion.extract.workers:2}")
+    private int extractWorkers;
+
+    @Value("${ingestion.extract.min-pages-per-range:16}")
+    private int minPagesPerRange;
+
+    @Value("${ingestion.chunk.workers:2}")
+    private int chunkWorkers;
+
+    @Value("${ingestion.embed.workers:4}")
+    private int embedWorkers;
+
+    @Value("${ingestion.store.workers:1}")
+    private int storeWorkers;
+
+    @Value("${ingestion.queue.capacity:16}")
+    private int queueCapacity;
+
+    @Value("${ingestion.embed.batch-size:16}")
+    private int embedBatchSize;
+
+    @Value("${ingestion.chunker:structured}")
+    private String chunker;
+
+    @Value("${ingestion.chunk.max-tokens:400}")
+    private int chunkMaxTokens;
+
+    @Value("${ingestion.chunk.overlap-tokens:50}")
+    private int chunkOverlapTokens;
+
+    @Value("${ingestion.chunk.size:2000}")
+    private int fixedChunkSize;
+
+    @Value("${embedding.cache.enabled:true}")
+    private boolean embeddingCacheEnabled;
+
+    @Value("${embedding.mode:ollama}")
+    private String embeddingMode;
+
+    @Value("${ollama.model.name}")
+    private String ollamaModelName;
+
+    @Bean
+    public DocumentSplitter documentSplitter() {
+        // "structured" follows headings, paragraphs and sentences up to a token budget;
+        // "fixed" cuts every ingestion.chunk.size characters
+        if ("fixed".equalsIgnoreCase(chunker)) {
+            return new FixedSizeSplitter(fixedChunkSize);
+        }
+        return new StructuredTextSplitter(chunkMaxTokens, chunkOverlapTokens);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public IngestionPipeline ingestionPipeline(EmbeddingModel embeddingModel,
+                                               EmbeddingStore<TextSegment> embeddingStore,
+                                               DocumentSplitter documentSplitter,
+                                               EmbeddingCache embeddingCache) {
+        // Segment text that was embedded before, in any document, is served from the cache; entries are
+        // keyed by model so switching embedding.mode never serves vectors of the other model
+        String embeddingModelName = "onnx".equalsIgnoreCase(embeddingMode) ? PooledOnnxEmbeddingModel.MODEL_NAME : ollamaModelName;
+        // Ollama calls for segments wait behind questions in the scheduler
+        EmbeddingModel ingestionEmbeddingModel = embeddingModel instanceof ScheduledEmbeddingModel scheduled
+                ? scheduled.inLane(Lane.INGESTION)
+                : embeddingModel;
+        EmbeddingModel segmentEmbeddingModel = embeddingCacheEnabled
+                ? new CachingEmbeddingModel(ingestionEmbeddingModel, embeddingCache, embeddingModelName)
+                : ingestionEmbeddingModel;
+        IngestionPipeline pipeline = new IngestionPipeline(segmentEmbeddingModel, embeddingStore, documentSplitter, PipelineSettings.builder()
+                .parseWorkers(parseWorkers)
+                .extractWorkers(extractWorkers)
+                .minPagesPerRange(minPagesPerRange)
+                .chunkWorkers(chunkWorkers)
+                .embedWorkers(embedWorkers)
+                .storeWorkers(storeWorkers)
+                .queueCapacity(queueCapacity)
+                .embedBatchSize(embedBatchSize)
+                .build());
+        pipeline.start();
+        return pipeline;
+    }
+}
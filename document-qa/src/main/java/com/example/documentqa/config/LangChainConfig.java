@@ -1,75 +1,197 @@
 // src/main/java/com/example/documentqa/config/LangChainConfig.java
 package com.example.documentqa.config;
 
-import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;  // Change this import
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.chat.ChatLanguageModel;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import com.example.documentqa.service.QaService;
+import com.example.documentqa.ingestion.IngestionPipeline;
+import com.example.documentqa.ingestion.TokenEstimator;
+import com.example.documentqa.retrieval.Bm25Index;
+import com.example.documentqa.retrieval.ContextPacker;
+import com.example.documentqa.retrieval.HybridContentRetriever;
+import com.example.documentqa.retrieval.ScopedContentRetriever;
+import com.example.documentqa.retrieval.VectorContentRetriever;
+import com.example.documentqa.service.SessionChatMemoryStore;
+import com.example.documentqa.store.HeapSegmentLookup;
+import com.example.documentqa.store.HnswEmbeddingStore;
+import com.example.documentqa.store.MappedEmbeddingStore;
+import com.example.documentqa.store.OffHeapEmbeddingStore;
+import com.example.documentqa.store.SegmentLookup;
+import com.example.documentqa.store.SegmentScan;
+import lombok.extern.slf4j.Slf4j;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
+@Slf4j
 public class LangChainConfig {
 
+    private static final int LEXICAL_REBUILD_BATCH = 1000;
+
+    @Value("${embedding.store.type:memory}")
+    private String embeddingStoreType;
+
+    @Value("${embedding.store.path:./data/embeddings}")
+    private String embeddingStorePath;
+
+    @Value("${embedding.store.quantized:false}")
+    private boolean quantized;
+
+    @Value("${embedding.store.rescore-candidates:200}")
+    private int rescoreCandidates;
+
+    @Value("${embedding.store.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${embedding.store.hnsw.ef-construction:200}")
+    private int hnswEfConstruction;
+
+    @Value("${embedding.store.hnsw.ef-search:64}")
+    private int hnswEfSearch;
+
     @Bean
     public EmbeddingStore<TextSegment> embeddingStore() {
+        // "mapped" keeps vectors on disk so they survive restarts, "hnsw" trades exactness for
+        // sub-linear search, "offheap" scores every vector from direct memory, and "memory" scores every
+        // vector on the heap; the last two are lost on shutdown
+        if ("mapped".equalsIgnoreCase(embeddingStoreType)) {
+            return new MappedEmbeddingStore(Path.of(embeddingStorePath), quantized, rescoreCandidates);
+        }
+        if ("hnsw".equalsIgnoreCase(embeddingStoreType)) {
+            return new HnswEmbeddingStore(hnswM, hnswEfConstruction, hnswEfSearch);
+        }
+        if ("offheap".equalsIgnoreCase(embeddingStoreType)) {
+            return new OffHeapEmbeddingStore();
+        }
         return new InMemoryEmbeddingStore<>();
     }
 
+    @Value("${retrieval.max-results:5}")
+    private int retrievalMaxResults;
+
+    @Value("${retrieval.min-score:0.6}")
+    private double retrievalMinScore;
+
+    @Value("${retrieval.mode:hybrid}")
+    private String retrievalMode;
+
+    @Value("${retrieval.hybrid.candidates:20}")
+    private int hybridCandidates;
+
+    @Value("${retrieval.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${retrieval.hybrid.workers:4}")
+    private int hybridWorkers;
+
+    /**
+     * BM25 index over the stored segments: rebuilt from a persistent store on startup, then kept in step
+     * with it by the ingestion pipeline's store stage.
+     */
     @Bean
-    public EmbeddingStoreContentRetriever contentRetriever(EmbeddingStore<TextSegment> embeddingStore,
-                                                           EmbeddingModel embeddingModel) {
-        return EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
-                .maxResults(5)
-                .minScore(0.6)
-                .build();
+    public Bm25Index lexicalIndex(EmbeddingStore<TextSegment> embeddingStore, IngestionPipeline ingestionPipeline) {
+        Bm25Index index = new Bm25Index();
+        if (embeddingStore instanceof SegmentScan scan) {
+            long start = System.nanoTime();
+            List<String> ids = new ArrayList<>(LEXICAL_REBUILD_BATCH);
+            List<TextSegment> segments = new ArrayList<>(LEXICAL_REBUILD_BATCH);
+            scan.forEachSegment((id, segment) -> {
+                ids.add(id);
+                segments.add(segment);
+                if (ids.size() == LEXICAL_REBUILD_BATCH) {
+                    index.addAll(ids, segments);
+                    ids.clear();
+                    segments.clear();
+                }
+            });
+            index.addAll(ids, segments);
+            log.info("Rebuilt lexical index over {} segments in {} ms", index.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+        ingestionPipeline.addStoreListener((ids, embeddings, segments) -> index.addAll(ids, segments));
+        return index;
     }
 
+    /**
+     * Reads back the text of lexical hits. Stores that cannot look segments up by id get a map of the
+     * segments the pipeline hands them.
+     */
     @Bean
-    public QaService qaService(ChatLanguageModel chatLanguageModel,
-                               EmbeddingStoreContentRetriever contentRetriever) {
-        return AiServices.builder(QaService.class)
-                .chatLanguageModel(chatLanguageModel)
-                .contentRetriever(contentRetriever)
-                .chatMemory(MessageWindowChatMemory.builder()  // Use this instead
-                        .maxMessages(10)
-                        .build())
-                .build();
+    public SegmentLookup segmentLookup(EmbeddingStore<TextSegment> embeddingStore, IngestionPipeline ingestionPipeline) {
+        if (embeddingStore instanceof SegmentLookup lookup) {
+            return lookup;
+        }
+        HeapSegmentLookup lookup = new HeapSegmentLookup();
+        ingestionPipeline.addStoreListener((ids, embeddings, segments) -> lookup.addAll(ids, segments));
+        return lookup;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService retrievalExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(hybridWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "retrieval-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Bean
-    public DocumentSplitter documentSplitter() {
-        // Simple implementation that splits by paragraphs
-        return new DocumentSplitter() {
-            @Override
-            public List<TextSegment> split(dev.langchain4j.data.document.Document document) {
-                String text = document.text();
-                List<TextSegment> segments = new ArrayList<>();
-
-                // Split by double newlines (paragraphs)
-                String[] paragraphs = text.split("\n\n");
-
-                for (int i = 0; i < paragraphs.length; i++) {
-                    String paragraph = paragraphs[i].trim();
-                    if (!paragraph.isEmpty()) {
-                        segments.add(TextSegment.from(paragraph));
-                    }
-                }
+    public ScopedContentRetriever contentRetriever(EmbeddingStore<TextSegment> embeddingStore,
+                                                   EmbeddingModel embeddingModel,
+                                                   Bm25Index lexicalIndex,
+                                                   SegmentLookup segmentLookup,
+                                                   ExecutorService retrievalExecutor) {
+        // "hybrid" fuses BM25 and vector rankings, "vector" is embedding search alone
+        if ("vector".equalsIgnoreCase(retrievalMode)) {
+            return new VectorContentRetriever(embeddingStore, embeddingModel, retrievalMaxResults, retrievalMinScore);
+        }
+        return new HybridContentRetriever(embeddingStore, embeddingModel, lexicalIndex, segmentLookup,
+                retrievalMaxResults, retrievalMinScore, hybridCandidates, rrfK, retrievalExecutor);
+    }
+
+    @Value("${qa.context.enabled:true}")
+    private boolean contextPacking;
+
+    @Value("${qa.context.token-budget:1200}")
+    private int contextTokenBudget;
+
+    @Value("${qa.context.max-segment-tokens:250}")
+    private int contextMaxSegmentTokens;
 
-                return segments;
-            }
-        };
+    @Value("${qa.context.duplicate-similarity:0.8}")
+    private double contextDuplicateSimilarity;
+
+    @Value("${qa.memory.max-messages:10}")
+    private int memoryMaxMessages;
+
+    /**
+     * Fits the retrieved segments into the prompt's token budget, between retrieval and generation.
+     */
+    @Bean
+    public ContextPacker contextPacker() {
+        return new ContextPacker(TokenEstimator.approximate(), contextPacking, contextTokenBudget,
+                contextMaxSegmentTokens, contextDuplicateSimilarity);
+    }
+
+    @Bean
+    public ChatMemoryProvider chatMemoryProvider(SessionChatMemoryStore sessionChatMemoryStore) {
+        // The memories hold no state of their own, so one is built per request
+        return sessionId -> MessageWindowChatMemory.builder()
+                .id(sessionId)
+                .maxMessages(memoryMaxMessages)
+                .chatMemoryStore(sessionChatMemoryStore)
+                .build();
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,22 @@
 // src/main/java/com/example/documentqa/config/OllamaConfig.java
 package com.example.documentqa.config;
 
+import com.example.documentqa.ollama.CircuitBreaker;
+import com.example.documentqa.ollama.ModelScheduler;
+import com.example.documentqa.ollama.OllamaChat;
+import com.example.documentqa.ollama.OllamaClient;
+import com.example.documentqa.ollama.OllamaStreamingChat;
+import com.example.documentqa.ollama.ScheduledChatModel;
+import com.example.documentqa.ollama.ScheduledStreamingChatModel;
 import dev.langchain4j.model.chat.ChatLanguageModel;
-import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
-import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 
 @Configuration
 public class OllamaConfig {
@@ -16,25 +24,79 @@ public class OllamaConfig {
     @Value("${ollama.base.url}")
     private String ollamaBaseUrl;
 
+    @Value("${ollama.chat.base-urls:}")
+    private String chatBaseUrls;
+
+    @Value("${ollama.embedding.base-urls:}")
+    private String embeddingBaseUrls;
+
     @Value("${ollama.model.name}")
     private String ollamaModelName;
 
+    @Value("${ollama.keep-alive:30m}")
+    private String keepAlive;
+
+    @Value("${ollama.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMillis;
+
+    @Value("${ollama.http.read-timeout-ms:600000}")
+    private long readTimeoutMillis;
+
+    @Value("${ollama.http.max-idle-connections:8}")
+    private int maxIdleConnections;
+
+    @Value("${ollama.http.connection-keep-alive-ms:300000}")
+    private long connectionKeepAliveMillis;
+
+    @Value("${ollama.breaker.failure-threshold:5}")
+    private int breakerFailureThreshold;
+
+    @Value("${ollama.breaker.open-ms:30000}")
+    private long breakerOpenMillis;
+
+    @Value("${ollama.scheduler.max-concurrency:2}")
+    private int maxConcurrency;
+
+    @Value("${ollama.scheduler.ingestion-max-concurrency:0}")
+    private int ingestionMaxConcurrency;
+
+    /**
+     * One connection pool for every model that calls Ollama, balancing chat and embedding calls over
+     * their endpoints.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public OllamaClient ollamaClient() {
+        List<String> all = urls(ollamaBaseUrl);
+        List<String> chat = urls(chatBaseUrls);
+        List<String> embedding = urls(embeddingBaseUrls);
+        return new OllamaClient(chat.isEmpty() ? all : chat, embedding.isEmpty() ? all : embedding, keepAlive,
+                Duration.ofMillis(connectTimeoutMillis), Duration.ofMillis(readTimeoutMillis), maxIdleConnections,
+                Duration.ofMillis(connectionKeepAliveMillis),
+                () -> new CircuitBreaker(breakerFailureThreshold, Duration.ofMillis(breakerOpenMillis)));
+    }
+
+    /**
+     * Shared by every model that calls Ollama, so questions are not queued behind ingestion.
+     */
     @Bean
-    public ChatLanguageModel chatLanguageModel() {
-        return OllamaChatModel.builder()
-                .baseUrl(ollamaBaseUrl)
-                .modelName(ollamaModelName)
-                .temperature(0.1)
-                .timeout(Duration.ofMinutes(10)) // Increase timeout to 5 minutes
-                .build();
+    public ModelScheduler modelScheduler(OllamaClient ollamaClient) {
+        return ModelScheduler.forEndpoints(maxConcurrency, ingestionMaxConcurrency, ollamaClient);
     }
 
     @Bean
-    public OllamaEmbeddingModel ollamaEmbeddingModel() {
-        return OllamaEmbeddingModel.builder()
-                .baseUrl(ollamaBaseUrl)
-                .modelName(ollamaModelName)
-                .timeout(Duration.ofMinutes(10)) // Increase timeout to 5 minutes
-                .build();
+    public ChatLanguageModel chatLanguageModel(OllamaClient ollamaClient, ModelScheduler modelScheduler) {
+        return new ScheduledChatModel(new OllamaChat(ollamaClient, ollamaModelName, 0.1), modelScheduler);
+    }
+
+    @Bean
+    public StreamingChatLanguageModel streamingChatLanguageModel(OllamaClient ollamaClient, ModelScheduler modelScheduler) {
+        return new ScheduledStreamingChatModel(new OllamaStreamingChat(ollamaClient, ollamaModelName, 0.1), modelScheduler);
+    }
+
+    private static List<String> urls(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .toList();
     }
-}
\ No newline at end of file
+}
@@ -1,22 +1,59 @@
 package com.example.documentqa.controller;
 
+import com.example.documentqa.embedding.PooledOnnxEmbeddingModel;
 import com.example.documentqa.model.Document;
+import com.example.documentqa.model.DocumentPage;
+import com.example.documentqa.model.IngestionJob;
 import com.example.documentqa.model.QuestionRequest;
-import com.example.documentqa.repository.DocumentRepository;
+import com.example.documentqa.ollama.Deadline;
+import com.example.documentqa.ollama.DeadlineExceededException;
+import com.example.documentqa.ollama.ModelScheduler;
+import com.example.documentqa.ollama.OllamaClient;
+import com.example.documentqa.ollama.OllamaUnavailableException;
+import com.example.documentqa.retrieval.ContextPacker;
+import com.example.documentqa.retrieval.HybridContentRetriever;
+import com.example.documentqa.retrieval.RetrievalOptions;
+import com.example.documentqa.retrieval.ScopedContentRetriever;
+import com.example.documentqa.retrieval.VectorContentRetriever;
+import com.example.documentqa.service.DocumentDeletionService;
 import com.example.documentqa.service.DocumentService;
-import com.example.documentqa.service.QaService;
+import com.example.documentqa.service.EmbeddingCache;
+import com.example.documentqa.service.IngestionJobService;
+import com.example.documentqa.service.OllamaWarmupService;
+import com.example.documentqa.service.SemanticAnswerCache;
+import com.example.documentqa.service.SessionChatMemoryStore;
+import com.example.documentqa.service.SessionQaService;
+import com.example.documentqa.service.StoreCompactionService;
+import com.example.documentqa.service.StreamingQaService;
+import com.example.documentqa.store.EmbeddingStoreStats;
+import com.example.documentqa.store.SegmentFilter;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -25,67 +62,238 @@ import java.util.stream.Collectors;
 @Slf4j
 public class DocumentQaController {
 
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int DIAGNOSTICS_SAMPLE_SIZE = 20;
+
     private final DocumentService documentService;
-    private final QaService qaService;
+    private final IngestionJobService ingestionJobService;
     private final EmbeddingStore<TextSegment> embeddingStore;
-    private final DocumentRepository documentRepository;
+    private final EmbeddingCache embeddingCache;
+    private final StreamingQaService streamingQaService;
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final SessionQaService sessionQaService;
+    private final SessionChatMemoryStore sessionChatMemoryStore;
+    private final ScopedContentRetriever contentRetriever;
+    private final EmbeddingModel embeddingModel;
+    private final DocumentDeletionService documentDeletionService;
+    private final StoreCompactionService storeCompactionService;
+    private final ContextPacker contextPacker;
+    private final ModelScheduler modelScheduler;
+    private final OllamaClient ollamaClient;
+    private final OllamaWarmupService ollamaWarmupService;
+
+    @Value("${spring.mvc.async.request-timeout:900000}")
+    private long streamTimeoutMillis;
+
+    @Value("${qa.ask.deadline-ms:120000}")
+    private long askDeadlineMillis;
+
     @PostMapping("/upload")
-    public ResponseEntity<String> uploadDocument(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<Map<String, Object>> uploadDocument(@RequestParam("file") MultipartFile file) {
+        Map<String, Object> response = new HashMap<>();
         try {
             Document savedDocument = documentService.saveDocument(file);
-
-            // Process the document immediately
-            try {
-                documentService.processDocument(savedDocument);
-                savedDocument.setProcessed(true);
-                documentRepository.save(savedDocument);
-                return ResponseEntity.ok("Document uploaded and processed successfully with ID: " + savedDocument.getId());
-            } catch (Exception e) {
-                log.error("Error processing document", e);
-                return ResponseEntity.ok("Document uploaded with ID: " + savedDocument.getId() + ", but processing failed: " + e.getMessage());
+            response.put("documentId", savedDocument.getId());
+            if (savedDocument.isProcessed()) {
+                response.put("message", "Document already uploaded and processed with ID: " + savedDocument.getId());
+                return ResponseEntity.ok(response);
             }
+
+            // Ingestion runs in the background; poll the job for progress
+            IngestionJob job = ingestionJobService.submit(savedDocument);
+            response.put("jobId", job.getId());
+            response.put("status", job.getStatus());
+            response.put("message", "Document uploaded with ID: " + savedDocument.getId() + ", ingestion queued");
+            return ResponseEntity.accepted().body(response);
+        } catch (RejectedExecutionException e) {
+            response.put("message", "Ingestion queue is full, try again later");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
         } catch (IOException e) {
             log.error("Error uploading document", e);
-            return ResponseEntity.badRequest().body("Failed to upload document: " + e.getMessage());
+            response.put("message", "Failed to upload document: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
         }
     }
 
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<IngestionJob> getJob(@PathVariable String id) {
+        return ingestionJobService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/jobs/{id}/cancel")
+    public ResponseEntity<IngestionJob> cancelJob(@PathVariable String id) {
+        return ingestionJobService.cancel(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @GetMapping
-    public ResponseEntity<List<Document>> getAllDocuments() {
-        return ResponseEntity.ok(documentService.getAllDocuments());
+    public ResponseEntity<DocumentPage> listDocuments(@RequestParam(required = false) Long after,
+                                                      @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(documentService.listDocuments(after, Math.max(1, Math.min(limit, MAX_PAGE_SIZE))));
     }
 
+    /**
+     * Deletes the document and its blob. Its segments stop being retrieved at once and are compacted out
+     * of the indexes in the background.
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> deleteDocument(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Optional<Integer> removed = documentDeletionService.delete(id);
+            if (removed.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            response.put("documentId", id);
+            response.put("segmentsRemoved", removed.get());
+            response.put("message", "Document deleted");
+            return ResponseEntity.ok(response);
+        } catch (IOException e) {
+            log.error("Error deleting document {}", id, e);
+            response.put("error", "Failed to delete document: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * Answers in the body. Unless the answer came from the cache, headers report the context that went
+     * into the prompt: its tokens and the tokens packing saved, the prompt tokens the model counted, and
+     * the generation time.
+     * <p>
+     * Calls to Ollama for the question must finish within {@code qa.ask.deadline-ms} of its arrival; past
+     * that the answer is a 504. While Ollama is failing the answer is a 503 with Retry-After, at once.
+     */
     @PostMapping("/ask")
     public ResponseEntity<String> askQuestion(@RequestBody QuestionRequest request) {
         try {
-            String answer = qaService.answerQuestion(request.getQuestion());
-            return ResponseEntity.ok(answer);
+            SessionQaService.Answer answer = deadline().call(() -> sessionQaService.answer(request.getSessionId(),
+                    request.getQuestion(), scope(request), limits(request)));
+            return ResponseEntity.ok().headers(answerHeaders(answer)).body(answer.text());
+        } catch (OllamaUnavailableException e) {
+            log.warn("Question rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.retryAfter().toSeconds())))
+                    .body("Failed to process question: " + e.getMessage());
+        } catch (DeadlineExceededException e) {
+            log.warn("Question timed out: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body("Failed to process question: " + e.getMessage());
         } catch (Exception e) {
             log.error("Error processing question", e);
             return ResponseEntity.badRequest().body("Failed to process question: " + e.getMessage());
         }
     }
+
+    /**
+     * Streams the answer as Server-Sent Events: {@code sources}, then {@code token} events, then {@code done}
+     * with retrieval, time-to-first-token and total timings and the context token counts, or {@code error}.
+     * The answer has to be complete within {@code qa.ask.deadline-ms}.
+     */
+    @PostMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter askQuestionStream(@RequestBody QuestionRequest request) {
+        return deadline().call(() -> streamingQaService.ask(request.getSessionId(), request.getQuestion(),
+                scope(request), limits(request), streamTimeoutMillis));
+    }
+
+    private Deadline deadline() {
+        return Deadline.after(Duration.ofMillis(askDeadlineMillis));
+    }
+
+    private static HttpHeaders answerHeaders(SessionQaService.Answer answer) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Answer-Cached", String.valueOf(answer.cached()));
+        if (answer.context() != null) {
+            headers.set("X-Context-Tokens", String.valueOf(answer.context().packedTokens()));
+            headers.set("X-Context-Tokens-Saved", String.valueOf(answer.context().tokensSaved()));
+            headers.set("X-Generation-Millis", String.valueOf(answer.generationMillis()));
+            if (answer.promptTokens() != null) {
+                headers.set("X-Prompt-Tokens", String.valueOf(answer.promptTokens()));
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Heap next to direct and mapped buffer use, and collector totals, so stores can be compared by
+     * the memory and GC time they cost.
+     */
+    private static Map<String, Object> jvmMemory() {
+        Map<String, Object> memory = new HashMap<>();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        memory.put("heapUsedBytes", heap.getUsed());
+        memory.put("heapCommittedBytes", heap.getCommitted());
+        memory.put("heapMaxBytes", heap.getMax());
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            memory.put(pool.getName() + "BufferBytes", pool.getMemoryUsed());
+        }
+        long collections = 0;
+        long collectionMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, collector.getCollectionCount());
+            collectionMillis += Math.max(0, collector.getCollectionTime());
+        }
+        memory.put("gcCollections", collections);
+        memory.put("gcMillis", collectionMillis);
+        return memory;
+    }
+
+    private static SegmentFilter scope(QuestionRequest request) {
+        return SegmentFilter.of(request.getDocumentIds(), epochMillis(request.getUploadedAfter()),
+                epochMillis(request.getUploadedBefore()));
+    }
+
+    private static RetrievalOptions limits(QuestionRequest request) {
+        return RetrievalOptions.of(request.getMaxResults(), request.getMinScore());
+    }
+
+    private static Long epochMillis(LocalDateTime time) {
+        return time == null ? null : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     @GetMapping("/diagnostics")
     public ResponseEntity<Map<String, Object>> getDiagnostics() {
         Map<String, Object> diagnostics = new HashMap<>();
 
-        // Skip embedding store check if no suitable method is available
+        if (embeddingStore instanceof EmbeddingStoreStats storeStats) {
+            diagnostics.put("embeddingStore", storeStats.stats());
+        }
 
-        // Check documents
-        List<Document> documents = documentService.getAllDocuments();
-        List<Map<String, Object>> docInfo = documents.stream()
+        // Counts come from the database; the sample is the first page, not every row
+        DocumentPage firstPage = documentService.listDocuments(null, DIAGNOSTICS_SAMPLE_SIZE);
+        List<Map<String, Object>> docInfo = firstPage.documents().stream()
                 .map(doc -> {
                     Map<String, Object> info = new HashMap<>();
-                    info.put("id", doc.getId());
-                    info.put("title", doc.getTitle());
-                    info.put("processed", doc.isProcessed());
+                    info.put("id", doc.id());
+                    info.put("title", doc.title());
+                    info.put("processed", doc.processed());
                     return info;
                 })
                 .collect(Collectors.toList());
 
         diagnostics.put("documents", docInfo);
-        diagnostics.put("documentCount", documents.size());
-        diagnostics.put("processedDocuments", documents.stream().filter(Document::isProcessed).count());
+        diagnostics.putAll(documentService.documentCounts());
+        diagnostics.put("uploads", documentService.uploadStats());
+        diagnostics.put("embeddingCache", embeddingCache.stats());
+        diagnostics.put("ingestionJobs", ingestionJobService.stats());
+        diagnostics.put("streamingAnswers", streamingQaService.stats());
+        diagnostics.put("answerCache", semanticAnswerCache.stats());
+        diagnostics.put("chatMemory", sessionChatMemoryStore.stats());
+        diagnostics.put("compaction", storeCompactionService.stats());
+        diagnostics.put("contextPacking", contextPacker.stats());
+        diagnostics.put("modelScheduler", modelScheduler.stats());
+        diagnostics.put("ollama", ollamaClient.stats());
+        diagnostics.put("modelWarmup", ollamaWarmupService.stats());
+        diagnostics.put("jvmMemory", jvmMemory());
+        if (embeddingModel instanceof PooledOnnxEmbeddingModel onnx) {
+            diagnostics.put("embeddingModel", onnx.stats());
+        }
+        if (contentRetriever instanceof HybridContentRetriever hybrid) {
+            diagnostics.put("retrieval", hybrid.stats());
+        } else if (contentRetriever instanceof VectorContentRetriever vector) {
+            diagnostics.put("retrieval", vector.stats());
+        }
 
         return ResponseEntity.ok(diagnostics);
     }
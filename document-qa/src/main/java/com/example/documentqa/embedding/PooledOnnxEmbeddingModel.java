@@ -0,0 +1,313 @@
+package com.example.documentqa.embedding;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.BertTokenizer;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embeds in-process with the all-MiniLM-L6-v2 ONNX model bundled on the classpath, producing 384-dim
+ * vectors with no network round trip.
+ * <p>
+ * Each of the {@code sessions} worker threads owns an ONNX session and serves a shared queue of
+ * tokenized sequences. A worker takes what is queued, optionally waiting up to {@code maxBatchWait} for
+ * more, and runs it as one padded tensor, so concurrent callers - ingestion workers, questions - are
+ * coalesced into fewer inferences. Batches are capped by padded tokens as well as rows: on CPU, short
+ * sequences such as questions gain most from batching, while batches of long segments run slower per
+ * token than the same segments one by one. Pooling is a mean over the attention mask, which gives the
+ * same vectors as the single-sequence encoder in langchain4j.
+ */
+@Slf4j
+public class PooledOnnxEmbeddingModel implements EmbeddingModel, Closeable {
+
+    public static final String MODEL_NAME = "all-minilm-l6-v2";
+    public static final int DIMENSION = 384;
+
+    private static final String MODEL_RESOURCE = "/all-minilm-l6-v2.onnx";
+    // BERT's 512 positions less [CLS] and [SEP]; longer texts are embedded in windows and averaged
+    private static final int MAX_SEQUENCE_TOKENS = 510;
+    // Padding tolerated in a batch: a quarter of it, or a fixed allowance that short questions stay under
+    private static final double MAX_PADDING = 0.25;
+    private static final int PADDING_ALLOWANCE = 256;
+
+    private final OrtEnvironment environment = OrtEnvironment.getEnvironment();
+    private final BertTokenizer tokenizer = new BertTokenizer();
+    private final long clsId = tokenizer.tokenId("[CLS]");
+    private final long sepId = tokenizer.tokenId("[SEP]");
+    private final long padId = tokenizer.tokenId("[PAD]");
+    private final List<OrtSession> sessions = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final LinkedBlockingDeque<Sequence> queue = new LinkedBlockingDeque<>();
+    private final int maxBatchSize;
+    private final int maxBatchTokens;
+    private final long maxBatchWaitNanos;
+    private volatile boolean closed;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong sequences = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong paddedTokens = new AtomicLong();
+    private final AtomicLong inferenceNanos = new AtomicLong();
+
+    public PooledOnnxEmbeddingModel(int sessionCount, int maxBatchSize, int maxBatchTokens, Duration maxBatchWait) {
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchTokens = maxBatchTokens;
+        this.maxBatchWaitNanos = maxBatchWait.toNanos();
+        long start = System.nanoTime();
+        byte[] model = loadModel();
+        int threadsPerSession = Math.max(1, Runtime.getRuntime().availableProcessors() / sessionCount);
+        try {
+            for (int i = 0; i < sessionCount; i++) {
+                OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+                options.setIntraOpNumThreads(threadsPerSession);
+                options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+                sessions.add(environment.createSession(model, options));
+            }
+        } catch (OrtException e) {
+            close();
+            throw new IllegalStateException("Failed to create ONNX session for " + MODEL_NAME, e);
+        }
+        for (int i = 0; i < sessionCount; i++) {
+            OrtSession session = sessions.get(i);
+            Thread worker = new Thread(() -> serve(session), "onnx-embed-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("Loaded {} with {} sessions ({} threads each) in {} ms",
+                MODEL_NAME, sessionCount, threadsPerSession, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        if (closed) {
+            throw new IllegalStateException("Embedding model is closed");
+        }
+        // Tokenizing happens on the calling threads; the workers only run inference
+        List<List<Sequence>> windows = new ArrayList<>(textSegments.size());
+        for (TextSegment segment : textSegments) {
+            List<String> wordPieces = tokenizer.tokenize(segment.text());
+            List<Sequence> segmentWindows = new ArrayList<>();
+            int from = 0;
+            do {
+                int to = Math.min(wordPieces.size(), from + MAX_SEQUENCE_TOKENS);
+                Sequence sequence = new Sequence(ids(wordPieces.subList(from, to)), to - from, new CompletableFuture<>());
+                segmentWindows.add(sequence);
+                queue.add(sequence);
+                from = to;
+            } while (from < wordPieces.size());
+            windows.add(segmentWindows);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(textSegments.size());
+        for (List<Sequence> segmentWindows : windows) {
+            embeddings.add(Embedding.from(combine(segmentWindows)));
+        }
+        return Response.from(embeddings);
+    }
+
+    public Map<String, Object> stats() {
+        long batchCount = batches.get();
+        long realTokens = tokens.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", "onnx");
+        stats.put("model", MODEL_NAME);
+        stats.put("dimension", DIMENSION);
+        stats.put("sessions", sessions.size());
+        stats.put("queued", queue.size());
+        stats.put("batches", batchCount);
+        stats.put("sequences", sequences.get());
+        stats.put("avgBatchSize", batchCount == 0 ? 0.0 : sequences.get() / (double) batchCount);
+        stats.put("paddingRatio", realTokens == 0 ? 0.0 : paddedTokens.get() / (double) (realTokens + paddedTokens.get()));
+        stats.put("avgBatchMillis", batchCount == 0 ? 0.0 : inferenceNanos.get() / 1e6 / batchCount);
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        workers.forEach(Thread::interrupt);
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Sequence pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().completeExceptionally(new IllegalStateException("Embedding model is closed"));
+        }
+        for (OrtSession session : sessions) {
+            try {
+                session.close();
+            } catch (OrtException e) {
+                log.warn("Failed to close ONNX session", e);
+            }
+        }
+    }
+
+    private void serve(OrtSession session) {
+        List<Sequence> batch = new ArrayList<>(maxBatchSize);
+        while (!closed) {
+            try {
+                Sequence first = queue.takeFirst();
+                batch.add(first);
+                int longest = first.ids().length;
+                int realTokens = longest;
+                long deadline = System.nanoTime() + maxBatchWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    Sequence next = queue.pollFirst(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    // Every row is padded to the longest, so the budget counts padded tokens, and a
+                    // sequence much shorter or longer than the rest waits for a batch of its own
+                    int length = Math.max(longest, next.ids().length);
+                    realTokens += next.ids().length;
+                    int padded = (batch.size() + 1) * length;
+                    if (padded > maxBatchTokens || padded - realTokens > Math.max(padded * MAX_PADDING, PADDING_ALLOWANCE)) {
+                        queue.offerFirst(next);
+                        break;
+                    }
+                    batch.add(next);
+                    longest = length;
+                }
+            } catch (InterruptedException e) {
+                batch.forEach(sequence -> sequence.result().completeExceptionally(e));
+                return;
+            }
+            infer(session, batch);
+            batch.clear();
+        }
+    }
+
+    private void infer(OrtSession session, List<Sequence> batch) {
+        long start = System.nanoTime();
+        int rows = batch.size();
+        int length = 0;
+        for (Sequence sequence : batch) {
+            length = Math.max(length, sequence.ids().length);
+        }
+        long[] inputIds = new long[rows * length];
+        long[] attentionMask = new long[rows * length];
+        long[] tokenTypeIds = new long[rows * length];
+        long real = 0;
+        for (int row = 0; row < rows; row++) {
+            long[] ids = batch.get(row).ids();
+            for (int t = 0; t < length; t++) {
+                boolean token = t < ids.length;
+                inputIds[row * length + t] = token ? ids[t] : padId;
+                attentionMask[row * length + t] = token ? 1 : 0;
+            }
+            real += ids.length;
+        }
+
+        long[] shape = {rows, length};
+        try (OnnxTensor ids = OnnxTensor.createTensor(environment, LongBuffer.wrap(inputIds), shape);
+             OnnxTensor mask = OnnxTensor.createTensor(environment, LongBuffer.wrap(attentionMask), shape);
+             OnnxTensor types = OnnxTensor.createTensor(environment, LongBuffer.wrap(tokenTypeIds), shape);
+             OrtSession.Result result = session.run(Map.of("input_ids", ids, "attention_mask", mask, "token_type_ids", types))) {
+            float[][][] hidden = (float[][][]) result.get(0).getValue();
+            for (int row = 0; row < rows; row++) {
+                batch.get(row).result().complete(meanPool(hidden[row], batch.get(row).ids().length));
+            }
+        } catch (OrtException | RuntimeException e) {
+            batch.forEach(sequence -> sequence.result().completeExceptionally(e));
+        }
+        batches.incrementAndGet();
+        sequences.addAndGet(rows);
+        tokens.addAndGet(real);
+        paddedTokens.addAndGet((long) rows * length - real);
+        inferenceNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private long[] ids(List<String> wordPieces) {
+        long[] ids = new long[wordPieces.size() + 2];
+        ids[0] = clsId;
+        for (int i = 0; i < wordPieces.size(); i++) {
+            ids[i + 1] = tokenizer.tokenId(wordPieces.get(i));
+        }
+        ids[ids.length - 1] = sepId;
+        return ids;
+    }
+
+    private static float[] meanPool(float[][] hidden, int tokenCount) {
+        float[] pooled = new float[hidden[0].length];
+        for (int t = 0; t < tokenCount; t++) {
+            float[] token = hidden[t];
+            for (int d = 0; d < pooled.length; d++) {
+                pooled[d] += token[d];
+            }
+        }
+        for (int d = 0; d < pooled.length; d++) {
+            pooled[d] /= tokenCount;
+        }
+        return pooled;
+    }
+
+    /**
+     * Averages the windows of one text weighted by their word-piece counts, then normalizes.
+     */
+    private static float[] combine(List<Sequence> windows) {
+        float[] combined = new float[DIMENSION];
+        for (Sequence window : windows) {
+            float[] vector;
+            try {
+                vector = window.result().join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+            }
+            int weight = Math.max(1, window.weight());
+            for (int d = 0; d < combined.length; d++) {
+                combined[d] += vector[d] * weight;
+            }
+        }
+        double norm = 0;
+        for (float v : combined) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        for (int d = 0; d < combined.length; d++) {
+            combined[d] = (float) (combined[d] / norm);
+        }
+        return combined;
+    }
+
+    private static byte[] loadModel() {
+        try (InputStream in = PooledOnnxEmbeddingModel.class.getResourceAsStream(MODEL_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException(MODEL_RESOURCE + " not found on the classpath; "
+                        + "langchain4j-embeddings-all-minilm-l6-v2 is required for embedding.mode=onnx");
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + MODEL_RESOURCE, e);
+        }
+    }
+
+    private record Sequence(long[] ids, int weight, CompletableFuture<float[]> result) {
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.documentqa.ingestion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Opens a fresh stream over a document's bytes. Called on a parse worker, which closes the stream.
+ */
+@FunctionalInterface
+public interface ContentSource {
+
+    InputStream open() throws IOException;
+
+    /**
+     * The content as a local file that can be read in place, or null if it is only available as a stream.
+     */
+    default Path file() {
+        return null;
+    }
+
+    static ContentSource of(Path file) {
+        return new ContentSource() {
+            @Override
+            public InputStream open() throws IOException {
+                return Files.newInputStream(file);
+            }
+
+            @Override
+            public Path file() {
+                return file;
+            }
+        };
+    }
+}
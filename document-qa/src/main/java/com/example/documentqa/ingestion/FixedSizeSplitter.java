@@ -0,0 +1,35 @@
+package com.example.documentqa.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts text into fixed-size character windows regardless of its structure. Kept as a fallback for text
+ * without usable sentence or paragraph boundaries.
+ */
+public class FixedSizeSplitter implements DocumentSplitter {
+
+    private final int chunkSize;
+
+    public FixedSizeSplitter(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        String text = document.text();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += chunkSize) {
+            int end = Math.min(i + chunkSize, text.length());
+            String chunk = text.substring(i, end).trim();
+            if (!chunk.isEmpty()) {
+                segments.add(TextSegment.from(chunk, document.metadata().copy()));
+            }
+        }
+        return segments;
+    }
+}
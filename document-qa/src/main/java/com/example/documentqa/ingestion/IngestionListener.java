@@ -0,0 +1,20 @@
+package com.example.documentqa.ingestion;
+
+/**
+ * Receives progress callbacks for one document as it moves through the pipeline. Callbacks arrive on
+ * pipeline worker threads, possibly several at once for the same document.
+ */
+public interface IngestionListener {
+
+    IngestionListener NONE = new IngestionListener() {
+    };
+
+    default void stageStarted(String stage) {
+    }
+
+    default void segmentsPlanned(int segments) {
+    }
+
+    default void segmentsProcessed(int stored, int failed) {
+    }
+}
@@ -0,0 +1,385 @@
+package com.example.documentqa.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs document ingestion as five stages - parse, extract, chunk, embed, store - joined by bounded queues.
+ * Each stage has its own worker pool, so several documents and several segment batches can be in
+ * flight at once while the queue capacities cap how much work is waiting on Ollama.
+ * <p>
+ * Parsing only opens the PDF and cuts it into page ranges; extract workers pull text from the ranges in
+ * parallel and hand it on page by page, so the first pages are being embedded while later ones are still
+ * being extracted, and no stage ever holds the full text of a document.
+ */
+@Slf4j
+public class IngestionPipeline {
+
+    public static final String PAGE_METADATA = "page";
+    public static final String DOCUMENT_ID_METADATA = "document_id";
+    public static final String TITLE_METADATA = "title";
+    /** Upload time of the document, in epoch milliseconds. */
+    public static final String UPLOADED_AT_METADATA = "uploaded_at";
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final DocumentSplitter splitter;
+    private final PipelineSettings settings;
+
+    private final PipelineStage<IngestionTask> parseStage;
+    private final PipelineStage<PageRange> extractStage;
+    private final PipelineStage<PageText> chunkStage;
+    private final PipelineStage<EmbedBatch> embedStage;
+    private final PipelineStage<StoreBatch> storeStage;
+
+    private final List<StoredSegmentsListener> storeListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong extractedPages = new AtomicLong();
+    private final AtomicLong storedSegments = new AtomicLong();
+    private final AtomicLong failedSegments = new AtomicLong();
+
+    public IngestionPipeline(EmbeddingModel embeddingModel,
+                             EmbeddingStore<TextSegment> embeddingStore,
+                             DocumentSplitter splitter,
+                             PipelineSettings settings) {
+        this.embeddingModel = embeddingModel;
+        this.embeddingStore = embeddingStore;
+        this.splitter = splitter;
+        this.settings = settings;
+
+        int capacity = settings.getQueueCapacity();
+        this.parseStage = new PipelineStage<>("parse", settings.getParseWorkers(), capacity, this::parse);
+        this.extractStage = new PipelineStage<>("extract", settings.getExtractWorkers(), capacity, this::extract);
+        this.chunkStage = new PipelineStage<>("chunk", settings.getChunkWorkers(), capacity, this::chunk);
+        this.embedStage = new PipelineStage<>("embed", settings.getEmbedWorkers(), capacity, this::embed);
+        this.storeStage = new PipelineStage<>("store", settings.getStoreWorkers(), capacity, this::store);
+    }
+
+    public void start() {
+        storeStage.start();
+        embedStage.start();
+        chunkStage.start();
+        extractStage.start();
+        parseStage.start();
+        log.info("Ingestion pipeline started: parse={}, extract={}, chunk={}, embed={}, store={}, minPagesPerRange={}, "
+                        + "batchSize={}, queueCapacity={}",
+                settings.getParseWorkers(), settings.getExtractWorkers(), settings.getChunkWorkers(),
+                settings.getEmbedWorkers(), settings.getStoreWorkers(), settings.getMinPagesPerRange(),
+                settings.getEmbedBatchSize(), settings.getQueueCapacity());
+    }
+
+    public void shutdown() {
+        parseStage.stop();
+        extractStage.stop();
+        chunkStage.stop();
+        embedStage.stop();
+        storeStage.stop();
+    }
+
+    /**
+     * Queues a PDF document for ingestion. The content is opened on a parse worker, so nothing is read
+     * until the document reaches the front of the queue. Blocks while the parse queue is full.
+     * Cancelling the returned future stops the document at the next stage, page or batch boundary.
+     */
+    public CompletableFuture<IngestionResult> submit(Long documentId, String title, Instant uploadedAt,
+                                                     ContentSource content, IngestionListener listener)
+            throws InterruptedException {
+        IngestionTask task = new IngestionTask(documentId, title, uploadedAt, listener);
+        task.content = content;
+        parseStage.put(task);
+        return task.future;
+    }
+
+    /**
+     * Queues already extracted text, skipping the parse and extract stages.
+     */
+    CompletableFuture<IngestionResult> submitText(Long documentId, String text) throws InterruptedException {
+        IngestionTask task = new IngestionTask(documentId, String.valueOf(documentId), Instant.now(),
+                IngestionListener.NONE);
+        chunkStage.put(new PageText(task, 0, text));
+        return task.future;
+    }
+
+    public void addStoreListener(StoredSegmentsListener listener) {
+        storeListeners.add(listener);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("parseQueue", parseStage.queued());
+        stats.put("extractQueue", extractStage.queued());
+        stats.put("chunkQueue", chunkStage.queued());
+        stats.put("embedQueue", embedStage.queued());
+        stats.put("storeQueue", storeStage.queued());
+        stats.put("extractWorkers", extractStage.workers());
+        stats.put("embedWorkers", embedStage.workers());
+        stats.put("embedBatchSize", settings.getEmbedBatchSize());
+        stats.put("extractedPages", extractedPages.get());
+        stats.put("storedSegments", storedSegments.get());
+        stats.put("failedSegments", failedSegments.get());
+        return stats;
+    }
+
+    private void parse(IngestionTask task) {
+        if (task.cancelled()) {
+            return;
+        }
+        try {
+            task.listener.stageStarted("parse");
+            Path file = task.content.file();
+            if (file == null) {
+                // Extract workers each open the PDF for random access, so a stream is spooled to disk once
+                file = Files.createTempFile("ingest-", ".pdf");
+                task.spooled = file;
+                // Runs at once if the task already finished; ranges still queued then find it cancelled
+                task.future.whenComplete((result, e) -> task.deleteSpooled());
+                try (InputStream inputStream = task.content.open()) {
+                    Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            task.content = null;
+
+            int pages = PdfTextExtractor.pageCount(file);
+            // Each range reopens the PDF and warms up its own fonts, so ranges are as large as they can be
+            // while still giving every extract worker a share
+            int extractWorkers = extractStage.workers();
+            int pagesPerRange = Math.max(settings.getMinPagesPerRange(), (pages + extractWorkers - 1) / extractWorkers);
+            int ranges = (pages + pagesPerRange - 1) / pagesPerRange;
+            log.info("Document {} has {} pages, extracting in {} ranges", task.title, pages, ranges);
+            task.rangesRemaining.set(ranges);
+            task.pending.addAndGet(ranges);
+            task.listener.stageStarted("extract");
+            for (int first = 1; first <= pages; first += pagesPerRange) {
+                extractStage.put(new PageRange(task, file, first, Math.min(first + pagesPerRange - 1, pages)));
+            }
+            task.release();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.fail(e);
+        } catch (Exception e) {
+            task.fail(e);
+        }
+    }
+
+    private void extract(PageRange range) {
+        IngestionTask task = range.task();
+        try {
+            if (task.cancelled()) {
+                return;
+            }
+            PdfTextExtractor.extract(range.file(), range.firstPage(), range.lastPage(), (page, text) -> {
+                extractedPages.incrementAndGet();
+                if (!task.cancelled() && !text.isBlank()) {
+                    task.pending.incrementAndGet();
+                    chunkStage.put(new PageText(task, page, text));
+                }
+                return !task.cancelled();
+            });
+            task.release();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.fail(e);
+        } catch (Exception e) {
+            task.fail(e);
+        } finally {
+            if (task.rangesRemaining.decrementAndGet() == 0) {
+                task.listener.stageStarted("embed");
+                task.deleteSpooled();
+            }
+        }
+    }
+
+    private void chunk(PageText page) {
+        IngestionTask task = page.task();
+        if (task.cancelled()) {
+            return;
+        }
+        try {
+            Metadata metadata = task.metadata();
+            if (page.number() > 0) {
+                metadata.add(PAGE_METADATA, String.valueOf(page.number()));
+            }
+            List<TextSegment> segments = splitter.split(Document.from(page.text(), metadata));
+            int planned = task.segments.addAndGet(segments.size());
+            task.listener.segmentsPlanned(planned);
+            // Pages are split separately, so the splitter's index restarts on each page; reserve a
+            // document-wide range instead. Pages may finish out of order, so only the page orders them.
+            int index = planned - segments.size();
+            for (TextSegment segment : segments) {
+                segment.metadata().add(StructuredTextSplitter.INDEX_METADATA, String.valueOf(index++));
+            }
+
+            int batchSize = settings.getEmbedBatchSize();
+            task.pending.addAndGet((segments.size() + batchSize - 1) / batchSize);
+            for (int i = 0; i < segments.size(); i += batchSize) {
+                List<TextSegment> batch = segments.subList(i, Math.min(i + batchSize, segments.size()));
+                embedStage.put(new EmbedBatch(task, new ArrayList<>(batch)));
+            }
+            task.release();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.fail(e);
+        } catch (Exception e) {
+            task.fail(e);
+        }
+    }
+
+    private void embed(EmbedBatch batch) {
+        if (batch.task().cancelled()) {
+            return;
+        }
+        List<Embedding> embeddings;
+        try {
+            embeddings = embeddingModel.embedAll(batch.segments()).content();
+        } catch (Exception e) {
+            // Continue with the next batch rather than failing the whole document
+            log.error("Error embedding {} segments of document {}: {}",
+                    batch.segments().size(), batch.task().title, e.getMessage(), e);
+            batchDone(batch.task(), 0, batch.segments().size());
+            return;
+        }
+        try {
+            storeStage.put(new StoreBatch(batch.task(), embeddings, batch.segments()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.task().fail(e);
+        }
+    }
+
+    private void store(StoreBatch batch) {
+        if (batch.task().cancelled()) {
+            return;
+        }
+        try {
+            List<String> ids = embeddingStore.addAll(batch.embeddings(), batch.segments());
+            notifyStored(batch, ids);
+            batchDone(batch.task(), batch.segments().size(), 0);
+        } catch (Exception e) {
+            log.error("Error storing {} segments of document {}: {}",
+                    batch.segments().size(), batch.task().title, e.getMessage(), e);
+            batchDone(batch.task(), 0, batch.segments().size());
+        }
+    }
+
+    private void notifyStored(StoreBatch batch, List<String> ids) {
+        for (StoredSegmentsListener listener : storeListeners) {
+            try {
+                listener.segmentsStored(ids, batch.embeddings(), batch.segments());
+            } catch (RuntimeException e) {
+                log.error("Store listener failed for document {}", batch.task().title, e);
+            }
+        }
+    }
+
+    private void batchDone(IngestionTask task, int stored, int failed) {
+        storedSegments.addAndGet(stored);
+        failedSegments.addAndGet(failed);
+        task.stored.addAndGet(stored);
+        task.failed.addAndGet(failed);
+        task.listener.segmentsProcessed(stored, failed);
+        task.release();
+    }
+
+    private static final class IngestionTask {
+        private final Long documentId;
+        private final String title;
+        private final Instant uploadedAt;
+        private final IngestionListener listener;
+        private final long startedAt = System.nanoTime();
+        private final CompletableFuture<IngestionResult> future = new CompletableFuture<>();
+        // Work items not yet finished: the parse step itself, page ranges, pages and embed batches
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicInteger rangesRemaining = new AtomicInteger();
+        private final AtomicInteger segments = new AtomicInteger();
+        private final AtomicInteger stored = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile ContentSource content;
+        private volatile Path spooled;
+
+        private IngestionTask(Long documentId, String title, Instant uploadedAt, IngestionListener listener) {
+            this.documentId = documentId;
+            this.title = title;
+            this.uploadedAt = uploadedAt;
+            this.listener = listener;
+        }
+
+        /**
+         * Metadata every segment of the document carries; the splitters copy it onto each segment.
+         */
+        private Metadata metadata() {
+            Metadata metadata = new Metadata();
+            if (documentId != null) {
+                metadata.add(DOCUMENT_ID_METADATA, String.valueOf(documentId));
+            }
+            if (title != null) {
+                metadata.add(TITLE_METADATA, title);
+            }
+            if (uploadedAt != null) {
+                metadata.add(UPLOADED_AT_METADATA, String.valueOf(uploadedAt.toEpochMilli()));
+            }
+            return metadata;
+        }
+
+        /**
+         * True once the document was cancelled or failed, after which remaining work for it is dropped.
+         */
+        private boolean cancelled() {
+            return future.isDone();
+        }
+
+        private void release() {
+            if (pending.decrementAndGet() == 0) {
+                long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+                future.complete(new IngestionResult(documentId, segments.get(), stored.get(), failed.get(), elapsedMillis));
+            }
+        }
+
+        private void fail(Throwable e) {
+            future.completeExceptionally(e);
+        }
+
+        private void deleteSpooled() {
+            Path file = spooled;
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Could not delete spooled copy {} of document {}", file, title);
+                }
+            }
+        }
+    }
+
+    private record PageRange(IngestionTask task, Path file, int firstPage, int lastPage) {
+    }
+
+    private record PageText(IngestionTask task, int number, String text) {
+    }
+
+    private record EmbedBatch(IngestionTask task, List<TextSegment> segments) {
+    }
+
+    private record StoreBatch(IngestionTask task, List<Embedding> embeddings, List<TextSegment> segments) {
+    }
+}
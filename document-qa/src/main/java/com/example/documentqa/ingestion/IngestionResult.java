@@ -0,0 +1,14 @@
+package com.example.documentqa.ingestion;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class IngestionResult {
+    private Long documentId;
+    private int segments;
+    private int storedSegments;
+    private int failedSegments;
+    private long elapsedMillis;
+}
@@ -0,0 +1,55 @@
+package com.example.documentqa.ingestion;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Extracts text from a PDF file page by page. PDFBox documents are not thread-safe, so each caller opens
+ * its own; opening is cheap because objects are only parsed when a page needs them, and any scratch
+ * buffers go to temp files rather than the heap.
+ */
+final class PdfTextExtractor {
+
+    private PdfTextExtractor() {
+    }
+
+    @FunctionalInterface
+    interface PageConsumer {
+
+        /**
+         * Receives one page's text; returning false stops the extraction.
+         */
+        boolean accept(int page, String text) throws InterruptedException;
+    }
+
+    static int pageCount(Path file) throws IOException {
+        try (PDDocument pdf = load(file)) {
+            return pdf.getNumberOfPages();
+        }
+    }
+
+    /**
+     * Extracts pages {@code firstPage} to {@code lastPage}, 1-based and inclusive, one at a time.
+     */
+    static void extract(Path file, int firstPage, int lastPage, PageConsumer consumer)
+            throws IOException, InterruptedException {
+        try (PDDocument pdf = load(file)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            for (int page = firstPage; page <= lastPage; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                if (!consumer.accept(page, stripper.getText(pdf))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static PDDocument load(Path file) throws IOException {
+        return PDDocument.load(file.toFile(), MemoryUsageSetting.setupTempFileOnly());
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.documentqa.ingestion;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Worker counts, queue capacities and batch size for each stage of the {@link IngestionPipeline}.
+ */
+@Getter
+@Builder
+public class PipelineSettings {
+
+    @Builder.Default
+    private int parseWorkers = 2;
+
+    @Builder.Default
+    private int extractWorkers = 2;
+
+    @Builder.Default
+    private int minPagesPerRange = 16;
+
+    @Builder.Default
+    private int chunkWorkers = 2;
+
+    @Builder.Default
+    private int embedWorkers = 4;
+
+    @Builder.Default
+    private int storeWorkers = 1;
+
+    @Builder.Default
+    private int queueCapacity = 16;
+
+    @Builder.Default
+    private int embedBatchSize = 16;
+}
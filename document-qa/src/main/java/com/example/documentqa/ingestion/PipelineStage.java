@@ -0,0 +1,72 @@
+package com.example.documentqa.ingestion;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * One stage of the ingestion pipeline: a bounded input queue drained by a fixed number of worker threads.
+ * Producers block in {@link #put(Object)} when the queue is full, which is what keeps upstream stages
+ * from running ahead of Ollama.
+ */
+@Slf4j
+class PipelineStage<T> {
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final Consumer<T> handler;
+    private final List<Thread> workers = new ArrayList<>();
+
+    PipelineStage(String name, int workerCount, int capacity, Consumer<T> handler) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.handler = handler;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::run, "ingest-" + name + "-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+    }
+
+    void start() {
+        workers.forEach(Thread::start);
+    }
+
+    void stop() {
+        workers.forEach(Thread::interrupt);
+    }
+
+    void put(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    int queued() {
+        return queue.size();
+    }
+
+    int workers() {
+        return workers.size();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            T item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                handler.accept(item);
+            } catch (RuntimeException e) {
+                // Handlers report failures on their task; this only guards the worker thread itself
+                log.error("Unhandled error in {} stage", name, e);
+            }
+        }
+    }
+}
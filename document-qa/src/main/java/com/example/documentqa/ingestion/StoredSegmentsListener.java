@@ -0,0 +1,16 @@
+package com.example.documentqa.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.List;
+
+/**
+ * Notified on a store worker after each batch of segments has been added to the embedding store, with
+ * the ids the store assigned to them.
+ */
+@FunctionalInterface
+public interface StoredSegmentsListener {
+
+    void segmentsStored(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments);
+}
@@ -0,0 +1,281 @@
+package com.example.documentqa.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits text along its structure: headings start a new segment, segments prefer to end at a paragraph
+ * boundary, and otherwise end between sentences, so no segment cuts a sentence or word unless that
+ * sentence alone exceeds the token budget. When a segment is closed because it is full, the next one
+ * repeats its last sentences up to {@code overlapTokens}.
+ * <p>
+ * The text is scanned once into sentence, heading and paragraph boundaries held as offsets; the only
+ * copies made are the segment texts themselves.
+ */
+public class StructuredTextSplitter implements DocumentSplitter {
+
+    public static final String HEADING_METADATA = "heading";
+    public static final String INDEX_METADATA = "index";
+
+    private static final int MAX_HEADING_CHARS = 80;
+    private static final int MAX_HEADING_WORDS = 12;
+    // A paragraph break this far into the budget ends the segment rather than splitting the next paragraph
+    private static final double PARAGRAPH_BREAK_FILL = 0.75;
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final int maxTokens;
+    private final int overlapTokens;
+    private final TokenEstimator estimator;
+
+    public StructuredTextSplitter(int maxTokens, int overlapTokens) {
+        this(maxTokens, overlapTokens, TokenEstimator.approximate());
+    }
+
+    public StructuredTextSplitter(int maxTokens, int overlapTokens, TokenEstimator estimator) {
+        if (maxTokens <= 0 || overlapTokens < 0 || overlapTokens >= maxTokens) {
+            throw new IllegalArgumentException("Need 0 <= overlapTokens < maxTokens, got overlap "
+                    + overlapTokens + " and max " + maxTokens);
+        }
+        this.maxTokens = maxTokens;
+        this.overlapTokens = overlapTokens;
+        this.estimator = estimator;
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        String text = document.text();
+        List<Unit> units = scan(text);
+        List<TextSegment> segments = new ArrayList<>();
+
+        String heading = null;
+        int first = -1;
+        int tokens = 0;
+        for (int i = 0; i < units.size(); i++) {
+            Unit unit = units.get(i);
+            if (unit.heading()) {
+                if (first >= 0) {
+                    segments.add(segment(text, units, first, i - 1, heading, document.metadata(), segments.size()));
+                }
+                heading = text.substring(unit.start(), unit.end());
+                first = i;
+                tokens = unit.tokens();
+                continue;
+            }
+            if (first >= 0 && unit.paragraphStart() && tokens >= maxTokens * PARAGRAPH_BREAK_FILL) {
+                segments.add(segment(text, units, first, i - 1, heading, document.metadata(), segments.size()));
+                first = -1;
+            } else if (first >= 0 && tokens + unit.tokens() > maxTokens) {
+                segments.add(segment(text, units, first, i - 1, heading, document.metadata(), segments.size()));
+                int overlapStart = overlapStart(units, first, i - 1, maxTokens - unit.tokens());
+                if (overlapStart < i) {
+                    first = overlapStart;
+                    tokens = 0;
+                    for (int j = overlapStart; j < i; j++) {
+                        tokens += units.get(j).tokens();
+                    }
+                } else {
+                    first = -1;
+                }
+            }
+            if (first < 0) {
+                first = i;
+                tokens = 0;
+            }
+            tokens += unit.tokens();
+        }
+        if (first >= 0) {
+            segments.add(segment(text, units, first, units.size() - 1, heading, document.metadata(), segments.size()));
+        }
+        return segments;
+    }
+
+    /**
+     * Earliest unit from which the tail of the closed segment fits in the overlap budget and still leaves
+     * room for the unit that did not fit. Never reaches back to the segment's first unit, so splitting
+     * always advances.
+     */
+    private int overlapStart(List<Unit> units, int first, int last, int room) {
+        int budget = Math.min(overlapTokens, room);
+        int start = last + 1;
+        int tokens = 0;
+        while (start - 1 > first && !units.get(start - 1).heading()
+                && tokens + units.get(start - 1).tokens() <= budget) {
+            start--;
+            tokens += units.get(start).tokens();
+        }
+        return start;
+    }
+
+    private TextSegment segment(String text, List<Unit> units, int first, int last,
+                                String heading, Metadata documentMetadata, int index) {
+        Metadata metadata = documentMetadata.copy();
+        metadata.add(INDEX_METADATA, String.valueOf(index));
+        if (heading != null) {
+            metadata.add(HEADING_METADATA, heading);
+        }
+        return TextSegment.from(text.substring(units.get(first).start(), units.get(last).end()), metadata);
+    }
+
+    /**
+     * Single pass over the text producing sentence and heading units. Sentences may run across line
+     * breaks, as they do in extracted PDF text; blank lines mark paragraphs.
+     */
+    private List<Unit> scan(String text) {
+        List<Unit> units = new ArrayList<>();
+        int length = text.length();
+        int sentenceStart = -1;
+        int sentenceEnd = -1;
+        boolean paragraphStart = true;
+
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            int s = lineStart;
+            int e = lineEnd;
+            while (s < e && Character.isWhitespace(text.charAt(s))) {
+                s++;
+            }
+            while (e > s && Character.isWhitespace(text.charAt(e - 1))) {
+                e--;
+            }
+
+            if (s == e) {
+                if (sentenceStart >= 0) {
+                    addUnit(units, text, sentenceStart, sentenceEnd, paragraphStart, false);
+                    sentenceStart = -1;
+                }
+                paragraphStart = true;
+            } else if (sentenceStart < 0 && isHeading(text, s, e)) {
+                addUnit(units, text, s, e, true, true);
+                paragraphStart = true;
+            } else {
+                if (sentenceStart < 0) {
+                    sentenceStart = s;
+                }
+                for (int i = s; i < e; i++) {
+                    char c = text.charAt(i);
+                    if ((c == '.' || c == '!' || c == '?') && (i + 1 == e || Character.isWhitespace(text.charAt(i + 1)))) {
+                        addUnit(units, text, sentenceStart, i + 1, paragraphStart, false);
+                        paragraphStart = false;
+                        int next = i + 1;
+                        while (next < e && Character.isWhitespace(text.charAt(next))) {
+                            next++;
+                        }
+                        sentenceStart = next < e ? next : -1;
+                        i = next - 1;
+                    }
+                }
+                sentenceEnd = e;
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (sentenceStart >= 0) {
+            addUnit(units, text, sentenceStart, sentenceEnd, paragraphStart, false);
+        }
+        return units;
+    }
+
+    private void addUnit(List<Unit> units, String text, int start, int end, boolean paragraphStart, boolean heading) {
+        int tokens = estimator.estimate(text, start, end);
+        if (tokens <= maxTokens) {
+            units.add(new Unit(start, end, tokens, paragraphStart, heading));
+            return;
+        }
+        // A sentence longer than a whole segment is cut between words, or inside a word as a last resort
+        int pieceStart = start;
+        int pieceTokens = 0;
+        int i = start;
+        while (i < end) {
+            int wordEnd = i;
+            while (wordEnd < end && !Character.isWhitespace(text.charAt(wordEnd))) {
+                wordEnd++;
+            }
+            int wordTokens = estimator.estimate(text, i, wordEnd);
+            if (wordTokens > maxTokens) {
+                wordEnd = Math.min(end, i + maxTokens * CHARS_PER_TOKEN);
+                wordTokens = estimator.estimate(text, i, wordEnd);
+            }
+            if (pieceTokens + wordTokens > maxTokens && pieceTokens > 0) {
+                units.add(new Unit(pieceStart, trimEnd(text, pieceStart, i), pieceTokens, paragraphStart, heading));
+                paragraphStart = false;
+                pieceStart = i;
+                pieceTokens = 0;
+            }
+            pieceTokens += wordTokens;
+            i = wordEnd;
+            while (i < end && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+        }
+        if (pieceTokens > 0) {
+            units.add(new Unit(pieceStart, end, pieceTokens, paragraphStart, heading));
+        }
+    }
+
+    private static int trimEnd(String text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * A line on its own that reads like a title: markdown-style, numbered ("2.1 Results"), all caps, or
+     * short with every longer word capitalised, and not ending in sentence punctuation.
+     */
+    static boolean isHeading(String text, int start, int end) {
+        if (end - start > MAX_HEADING_CHARS) {
+            return false;
+        }
+        char first = text.charAt(start);
+        if (first == '#') {
+            return true;
+        }
+        if (".,;:!?".indexOf(text.charAt(end - 1)) >= 0) {
+            return false;
+        }
+        int i = start;
+        while (i < end && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+            i++;
+        }
+        boolean numbered = i > start && i + 1 < end && text.charAt(i) == ' ' && Character.isUpperCase(text.charAt(i + 1));
+        if (!numbered && !Character.isUpperCase(first)) {
+            return false;
+        }
+
+        int words = 0;
+        boolean allUpper = true;
+        boolean titleCase = true;
+        int wordStart = -1;
+        for (int j = start; j <= end; j++) {
+            boolean boundary = j == end || Character.isWhitespace(text.charAt(j));
+            if (!boundary) {
+                char c = text.charAt(j);
+                if (wordStart < 0) {
+                    wordStart = j;
+                }
+                if (Character.isLowerCase(c)) {
+                    allUpper = false;
+                }
+            } else if (wordStart >= 0) {
+                words++;
+                if (j - wordStart >= 4 && Character.isLowerCase(text.charAt(wordStart))) {
+                    titleCase = false;
+                }
+                wordStart = -1;
+            }
+        }
+        return words <= MAX_HEADING_WORDS && (numbered || allUpper || titleCase);
+    }
+
+    private record Unit(int start, int end, int tokens, boolean paragraphStart, boolean heading) {
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.documentqa.ingestion;
+
+/**
+ * Estimates how many model tokens a range of text takes, without copying the range out.
+ */
+@FunctionalInterface
+public interface TokenEstimator {
+
+    int estimate(CharSequence text, int start, int end);
+
+    /**
+     * A tokenizer-free approximation of BPE vocabularies: one token per short word, one more for every
+     * six further letters or digits, and one per punctuation character. Close to 1.3 tokens per English word.
+     */
+    static TokenEstimator approximate() {
+        return (text, start, end) -> {
+            int tokens = 0;
+            int wordLength = 0;
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    if (wordLength % 6 == 0) {
+                        tokens++;
+                    }
+                    wordLength++;
+                } else {
+                    wordLength = 0;
+                    if (!Character.isWhitespace(c)) {
+                        tokens++;
+                    }
+                }
+            }
+            return tokens;
+        };
+    }
+}
@@ -5,17 +5,21 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
-import jakarta.persistence.Lob;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = {
+        @Index(name = "uk_documents_content_hash", columnList = "contentHash", unique = true),
+        @Index(name = "idx_documents_pending", columnList = "processed, leaseExpiresAt")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -30,13 +34,32 @@ public class Document {
 
     private String filename;
 
-    @Lob
-    @Column(length = 16777215)
-    private byte[] content;
-
     private String contentType;
 
+    // SHA-256 of the uploaded bytes: the content's address in the blob store, and how re-uploads are recognised
+    @Column(length = 64)
+    private String contentHash;
+
+    private Long contentSize;
+
     private LocalDateTime uploadedAt;
 
     private boolean processed;
+
+    // Work queue lease: the node processing the document and when its claim runs out
+    @Column(length = 100)
+    private String leaseOwner;
+
+    private LocalDateTime leaseExpiresAt;
+
+    @Builder.Default
+    @ColumnDefault("0")
+    private int attempts = 0;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    // Set when a user cancels ingestion; no node claims the document again until it is re-uploaded
+    @ColumnDefault("false")
+    private boolean cancelled;
 }
\ No newline at end of file
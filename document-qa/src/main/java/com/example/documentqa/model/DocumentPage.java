@@ -0,0 +1,10 @@
+package com.example.documentqa.model;
+
+import java.util.List;
+
+/**
+ * One page of documents in id order. Pass {@code nextCursor} as {@code after} to fetch the next page;
+ * it is null on the last page.
+ */
+public record DocumentPage(List<DocumentSummary> documents, Long nextCursor) {
+}
@@ -0,0 +1,16 @@
+package com.example.documentqa.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * The listing view of a document: the columns of its row that callers need, read by a JPQL constructor
+ * expression so no entity is loaded or tracked.
+ */
+public record DocumentSummary(Long id,
+                              String title,
+                              String filename,
+                              String contentType,
+                              Long contentSize,
+                              LocalDateTime uploadedAt,
+                              boolean processed) {
+}
@@ -0,0 +1,36 @@
+package com.example.documentqa.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A cached segment embedding, keyed by embedding model and the SHA-256 of the segment text.
+ */
+@Entity
+@Table(name = "embedding_cache", indexes = @Index(name = "idx_embedding_cache_created_at", columnList = "createdAt"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingCacheEntry {
+
+    @Id
+    @Column(length = 200)
+    private String cacheKey;
+
+    @Lob
+    @Column(length = 65536)
+    private byte[] vector;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,93 @@
+package com.example.documentqa.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory state of one background ingestion run, updated from pipeline worker threads and read by
+ * the jobs endpoint.
+ */
+@Getter
+public class IngestionJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED, SKIPPED }
+
+    private final String id;
+    private final Long documentId;
+    private final String title;
+    private final LocalDateTime submittedAt = LocalDateTime.now();
+    private final AtomicInteger storedSegments = new AtomicInteger();
+    private final AtomicInteger failedSegments = new AtomicInteger();
+    private volatile Status status = Status.QUEUED;
+    private volatile String stage;
+    private volatile int totalSegments;
+    private volatile String error;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    @JsonIgnore
+    private volatile Future<?> execution;
+    @JsonIgnore
+    private volatile Future<?> ingestion;
+
+    public IngestionJob(String id, Long documentId, String title) {
+        this.id = id;
+        this.documentId = documentId;
+        this.title = title;
+    }
+
+    public int getStoredSegments() {
+        return storedSegments.get();
+    }
+
+    public int getFailedSegments() {
+        return failedSegments.get();
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    public void setExecution(Future<?> execution) {
+        this.execution = execution;
+    }
+
+    public void setIngestion(Future<?> ingestion) {
+        this.ingestion = ingestion;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public void setTotalSegments(int totalSegments) {
+        this.totalSegments = totalSegments;
+    }
+
+    public void addProcessed(int stored, int failed) {
+        storedSegments.addAndGet(stored);
+        failedSegments.addAndGet(failed);
+    }
+
+    public synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        startedAt = LocalDateTime.now();
+        return true;
+    }
+
+    public synchronized void finish(Status finalStatus, String error) {
+        if (isFinished()) {
+            return;
+        }
+        this.status = finalStatus;
+        this.error = error;
+        this.finishedAt = LocalDateTime.now();
+    }
+}
@@ -4,9 +4,21 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class QuestionRequest {
     private String question;
+    // Optional; questions sharing a session id see each other's history
+    private String sessionId;
+    // Optional scope: only segments of these documents and/or documents uploaded in [uploadedAfter, uploadedBefore)
+    private List<Long> documentIds;
+    private LocalDateTime uploadedAfter;
+    private LocalDateTime uploadedBefore;
+    // Optional overrides of retrieval.max-results and retrieval.min-score for this question
+    private Integer maxResults;
+    private Double minScore;
 }
\ No newline at end of file
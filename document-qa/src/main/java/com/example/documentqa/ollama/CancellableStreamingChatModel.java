@@ -0,0 +1,27 @@
+package com.example.documentqa.ollama;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+
+import java.util.List;
+
+/**
+ * A streaming model whose generation can be stopped part way, for when whoever reads the answer has gone
+ * away.
+ */
+public interface CancellableStreamingChatModel extends StreamingChatLanguageModel {
+
+    /**
+     * Starts generating like {@link #generate(List, StreamingResponseHandler)} and returns an action that
+     * stops it. Stopping is idempotent and may race with completion; once stopped, the handler is not
+     * called again.
+     */
+    Runnable stream(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler);
+
+    @Override
+    default void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        stream(messages, handler);
+    }
+}
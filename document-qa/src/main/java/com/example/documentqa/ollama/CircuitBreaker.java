@@ -0,0 +1,155 @@
+package com.example.documentqa.ollama;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Fails calls to an Ollama endpoint fast while it is unhealthy. After {@code failureThreshold}
+ * consecutive failures (connection errors, timeouts, 5xx responses) the breaker opens. Calls are then rejected with
+ * {@link OllamaUnavailableException} for {@code openDuration}, instead of each waiting out its timeout
+ * against a server that is down or hung. After that one trial call is let through: its success closes
+ * the breaker and its failure opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialRunning;
+
+    private long successes;
+    private long failures;
+    private long rejected;
+    private long opened;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier clock) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1, was " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.clock = clock;
+    }
+
+    /**
+     * Throws if a call would be rejected now, without taking the trial call. For callers about to queue
+     * for a call they would not be allowed to make.
+     */
+    public synchronized void check() {
+        if (!available()) {
+            throw reject();
+        }
+    }
+
+    /**
+     * Whether a call would be admitted now.
+     */
+    public synchronized boolean available() {
+        return !(state == State.OPEN && clock.getAsLong() - openedAt < openNanos
+                || state == State.HALF_OPEN && trialRunning);
+    }
+
+    /**
+     * Admits one call, which must then be reported with {@link #onSuccess()}, {@link #onFailure()} or
+     * {@link #onCancel()}.
+     */
+    public synchronized void acquire() {
+        if (!tryAcquire()) {
+            throw reject();
+        }
+    }
+
+    /**
+     * Admits one call like {@link #acquire()}, or returns false without counting a rejection.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialRunning = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialRunning) {
+                return false;
+            }
+            trialRunning = true;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        successes++;
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            trialRunning = false;
+        }
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && ++consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+            consecutiveFailures = 0;
+            trialRunning = false;
+            opened++;
+        }
+    }
+
+    /**
+     * A call its caller abandoned says nothing about the endpoint. If it was the trial call, the next call
+     * becomes the trial instead.
+     */
+    public synchronized void onCancel() {
+        if (state == State.HALF_OPEN) {
+            trialRunning = false;
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("state", state.name());
+        stats.put("failureThreshold", failureThreshold);
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("successes", successes);
+        stats.put("failures", failures);
+        stats.put("rejected", rejected);
+        stats.put("opened", opened);
+        stats.put("retryAfterMillis", retryAfter().toMillis());
+        return stats;
+    }
+
+    private OllamaUnavailableException reject() {
+        rejected++;
+        return new OllamaUnavailableException(retryAfter());
+    }
+
+    /**
+     * How long until the breaker lets a call through again; zero unless it is open.
+     */
+    public synchronized Duration retryAfter() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(Math.max(0, openNanos - (clock.getAsLong() - openedAt)));
+    }
+}
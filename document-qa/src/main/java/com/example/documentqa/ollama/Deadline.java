@@ -0,0 +1,78 @@
+package com.example.documentqa.ollama;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * The time a request has left for its calls to Ollama. The deadline is bound to the thread doing the
+ * request's work with {@link #call(Supplier)}. While one is bound, the {@link ModelScheduler} waits for a
+ * slot only until it passes, and the {@link OllamaClient} gives each call only the time that is left. A
+ * call made without a deadline is bounded by the HTTP timeouts alone.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiresAt;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * A deadline {@code timeout} from now, or the one already bound to this thread if that passes sooner.
+     */
+    public static Deadline after(Duration timeout) {
+        long expiresAt = System.nanoTime() + timeout.toNanos();
+        Deadline current = CURRENT.get();
+        return current != null && current.expiresAt - expiresAt < 0 ? current : new Deadline(expiresAt);
+    }
+
+    /**
+     * The deadline bound to this thread, or null.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * {@code work} bound to this thread's deadline, if any, so it keeps the deadline on another thread.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> work) {
+        Deadline current = CURRENT.get();
+        return current == null ? work : () -> current.call(work);
+    }
+
+    public static Runnable propagate(Runnable work) {
+        Deadline current = CURRENT.get();
+        return current == null ? work : () -> current.call(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public long remainingNanos() {
+        return expiresAt - System.nanoTime();
+    }
+
+    public boolean expired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * Runs {@code work} with this deadline bound to the calling thread.
+     */
+    public <T> T call(Supplier<T> work) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.documentqa.ollama;
+
+/**
+ * A call to Ollama was not made, or was abandoned, because the request's {@link Deadline} passed.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.documentqa.ollama;
+
+/**
+ * Priority lanes of the {@link ModelScheduler}, highest first.
+ */
+public enum Lane {
+
+    // Answer generation for /ask and /ask/stream
+    INTERACTIVE("interactive"),
+    // Embedding questions for retrieval and the answer cache
+    QUERY_EMBEDDING("queryEmbedding"),
+    // Embedding segments of documents being ingested
+    INGESTION("ingestion");
+
+    private final String key;
+
+    Lane(String key) {
+        this.key = key;
+    }
+
+    public String key() {
+        return key;
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.documentqa.ollama;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Admits calls to Ollama a few at a time, highest priority {@link Lane} first. At most
+ * {@code maxConcurrency} calls run at once, which should match the parallel requests the servers handle
+ * ({@code OLLAMA_NUM_PARALLEL} on each); more would only queue inside Ollama, where every request is
+ * equal. Within a lane calls are admitted in arrival order.
+ * <p>
+ * Ingestion is further held to {@code ingestionMaxConcurrency} slots, so a question arriving during a
+ * large ingestion run waits at most for one call to finish rather than for the whole backlog.
+ * <p>
+ * A caller with a {@link Deadline} waits only until it passes. The {@code admission} check runs before a
+ * caller queues, so that while Ollama is out callers are turned away instead of queueing for calls that
+ * would be rejected anyway.
+ */
+public class ModelScheduler {
+
+    private final int maxConcurrency;
+    private final Map<Lane, Integer> laneLimits = new EnumMap<>(Lane.class);
+    private final Consumer<Lane> admission;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Lane, ArrayDeque<Ticket>> queues = new EnumMap<>(Lane.class);
+    private final Map<Lane, LaneStats> laneStats = new EnumMap<>(Lane.class);
+    private int running;
+
+    public ModelScheduler(int maxConcurrency, int ingestionMaxConcurrency) {
+        this(maxConcurrency, ingestionMaxConcurrency, null);
+    }
+
+    public ModelScheduler(int maxConcurrency, int ingestionMaxConcurrency, Consumer<Lane> admission) {
+        this(maxConcurrency, Map.of(Lane.INGESTION, ingestionSlots(maxConcurrency, ingestionMaxConcurrency)), admission);
+    }
+
+    /**
+     * Lanes missing from {@code laneLimits} may use every slot.
+     */
+    public ModelScheduler(int maxConcurrency, Map<Lane, Integer> laneLimits, Consumer<Lane> admission) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1, was " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.admission = admission;
+        for (Lane lane : Lane.values()) {
+            queues.put(lane, new ArrayDeque<>());
+            laneStats.put(lane, new LaneStats());
+            this.laneLimits.put(lane, Math.max(1, Math.min(laneLimits.getOrDefault(lane, maxConcurrency), maxConcurrency)));
+        }
+    }
+
+    /**
+     * A scheduler for the client's endpoints, with {@code maxConcurrency} and
+     * {@code ingestionMaxConcurrency} slots per endpoint. Answers may use the slots of the chat
+     * endpoints and embeddings those of the embedding endpoints, and a lane is turned away while every
+     * endpoint of its pool is out.
+     */
+    public static ModelScheduler forEndpoints(int maxConcurrency, int ingestionMaxConcurrency, OllamaClient client) {
+        int chat = client.endpointCount(OllamaClient.Pool.CHAT);
+        int embedding = client.endpointCount(OllamaClient.Pool.EMBEDDING);
+        Map<Lane, Integer> limits = new EnumMap<>(Lane.class);
+        limits.put(Lane.INTERACTIVE, maxConcurrency * chat);
+        limits.put(Lane.QUERY_EMBEDDING, maxConcurrency * embedding);
+        limits.put(Lane.INGESTION, ingestionSlots(maxConcurrency, ingestionMaxConcurrency) * embedding);
+        return new ModelScheduler(maxConcurrency * client.endpointCount(), limits,
+                lane -> client.checkAvailable(lane == Lane.INTERACTIVE ? OllamaClient.Pool.CHAT : OllamaClient.Pool.EMBEDDING));
+    }
+
+    private static int ingestionSlots(int maxConcurrency, int ingestionMaxConcurrency) {
+        // Zero leaves one slot to the other lanes, unless there is only one
+        int ingestion = ingestionMaxConcurrency > 0 ? ingestionMaxConcurrency : maxConcurrency - 1;
+        return Math.max(1, Math.min(ingestion, maxConcurrency));
+    }
+
+    /**
+     * Runs {@code call} once a slot in {@code lane} is free.
+     */
+    public <T> T call(Lane lane, Supplier<T> call) {
+        Permit permit = acquire(lane);
+        try {
+            return call.get();
+        } finally {
+            permit.release();
+        }
+    }
+
+    /**
+     * Waits for a slot in {@code lane}. The permit must be released exactly once, also when the call fails.
+     *
+     * @throws OllamaUnavailableException if the admission check turns the caller away
+     * @throws DeadlineExceededException if the thread's deadline passes before a slot is free
+     */
+    public Permit acquire(Lane lane) {
+        if (admission != null) {
+            admission.accept(lane);
+        }
+        Deadline deadline = Deadline.current();
+        long queuedAt = System.nanoTime();
+        lock.lock();
+        try {
+            Ticket ticket = new Ticket(lock.newCondition());
+            queues.get(lane).addLast(ticket);
+            laneStats.get(lane).submitted++;
+            dispatch();
+            while (!ticket.granted) {
+                try {
+                    if (deadline == null) {
+                        ticket.admitted.await();
+                    } else if (deadline.expired()) {
+                        queues.get(lane).remove(ticket);
+                        laneStats.get(lane).expired++;
+                        throw new DeadlineExceededException("Deadline passed while waiting for a model slot");
+                    } else {
+                        ticket.admitted.awaitNanos(deadline.remainingNanos());
+                    }
+                } catch (InterruptedException e) {
+                    if (!ticket.granted) {
+                        queues.get(lane).remove(ticket);
+                        laneStats.get(lane).abandoned++;
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for a model slot", e);
+                    }
+                    // Admitted as the interrupt arrived: keep the slot and leave the flag set
+                    Thread.currentThread().interrupt();
+                }
+            }
+            long waited = System.nanoTime() - queuedAt;
+            LaneStats stats = laneStats.get(lane);
+            stats.admitted++;
+            stats.queueNanos += waited;
+            stats.maxQueueNanos = Math.max(stats.maxQueueNanos, waited);
+            return new Permit(lane, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("maxConcurrency", maxConcurrency);
+            stats.put("running", running);
+            Map<String, Object> lanes = new LinkedHashMap<>();
+            for (Lane lane : Lane.values()) {
+                LaneStats ls = laneStats.get(lane);
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("maxConcurrency", laneLimits.get(lane));
+                entry.put("running", ls.running);
+                entry.put("queued", queues.get(lane).size());
+                entry.put("submitted", ls.submitted);
+                entry.put("completed", ls.completed);
+                entry.put("abandoned", ls.abandoned);
+                entry.put("expired", ls.expired);
+                entry.put("avgQueueMillis", ls.admitted == 0 ? 0.0 : ls.queueNanos / 1e6 / ls.admitted);
+                entry.put("maxQueueMillis", ls.maxQueueNanos / 1_000_000);
+                entry.put("avgRunMillis", ls.completed == 0 ? 0.0 : ls.runNanos / 1e6 / ls.completed);
+                lanes.put(lane.key(), entry);
+            }
+            stats.put("lanes", lanes);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands free slots to the heads of the highest-priority lanes under their limit. Called with the lock held.
+     */
+    private void dispatch() {
+        while (running < maxConcurrency) {
+            Ticket next = null;
+            for (Lane lane : Lane.values()) {
+                ArrayDeque<Ticket> queue = queues.get(lane);
+                if (!queue.isEmpty() && laneStats.get(lane).running < laneLimits.get(lane)) {
+                    next = queue.pollFirst();
+                    laneStats.get(lane).running++;
+                    break;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            running++;
+            next.granted = true;
+            next.admitted.signal();
+        }
+    }
+
+    private void release(Lane lane, long runNanos) {
+        lock.lock();
+        try {
+            LaneStats stats = laneStats.get(lane);
+            stats.running--;
+            stats.completed++;
+            stats.runNanos += runNanos;
+            running--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A slot held by one call.
+     */
+    public final class Permit {
+
+        private final Lane lane;
+        private final long start;
+        private boolean released;
+
+        private Permit(Lane lane, long start) {
+            this.lane = lane;
+            this.start = start;
+        }
+
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            ModelScheduler.this.release(lane, System.nanoTime() - start);
+        }
+    }
+
+    private static final class Ticket {
+
+        private final Condition admitted;
+        private boolean granted;
+
+        private Ticket(Condition admitted) {
+            this.admitted = admitted;
+        }
+    }
+
+    private static final class LaneStats {
+
+        private long submitted;
+        private long admitted;
+        private long completed;
+        private long abandoned;
+        private long expired;
+        private int running;
+        private long queueNanos;
+        private long maxQueueNanos;
+        private long runNanos;
+    }
+}
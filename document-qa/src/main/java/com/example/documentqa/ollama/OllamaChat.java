@@ -0,0 +1,30 @@
+package com.example.documentqa.ollama;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chat generation through a shared {@link OllamaClient}.
+ */
+public class OllamaChat implements ChatLanguageModel {
+
+    private final OllamaClient client;
+    private final String model;
+    private final Map<String, Object> options;
+
+    public OllamaChat(OllamaClient client, String model, double temperature) {
+        this.client = client;
+        this.model = model;
+        this.options = Map.of("temperature", temperature);
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return client.chat(model, messages, options);
+    }
+}
@@ -0,0 +1,573 @@
+package com.example.documentqa.ollama;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Talks to Ollama's REST API over one pooled OkHttp client, so every model shares kept-alive
+ * connections instead of each holding its own pool. Every request carries {@code keep_alive}, which
+ * tells Ollama how long to keep the model loaded after it.
+ * <p>
+ * Chat and embedding calls go to separate {@link Pool pools} of endpoints. Each call goes to the
+ * endpoint in its pool with the fewest requests outstanding from this client. Every endpoint has its
+ * own {@link CircuitBreaker}, and an endpoint whose breaker is open gets no calls until its open period
+ * is over. It then gets one trial call, which decides whether it rejoins the pool. A call is rejected
+ * only when every endpoint of its pool is out.
+ * <p>
+ * Calls made under a {@link Deadline} are cut off when it passes, rather than after the read timeout.
+ * Ollama reports how long each request spent loading the model; the client keeps those figures, so a
+ * request that found the model unloaded shows up in {@link #stats()} next to ones that did not.
+ */
+public class OllamaClient {
+
+    public enum Pool { CHAT, EMBEDDING }
+
+    private static final MediaType JSON = MediaType.get("application/json");
+    // A load shorter than this means the model was already in memory
+    private static final long COLD_LOAD_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final OkHttpClient http;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String keepAlive;
+    private final Map<Pool, List<Endpoint>> pools = new EnumMap<>(Pool.class);
+    private final List<Endpoint> endpoints;
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong deadlineExceeded = new AtomicLong();
+    private final AtomicLong streamsCancelled = new AtomicLong();
+    private final AtomicLong embeddingRetries = new AtomicLong();
+    private final AtomicLong coldRequests = new AtomicLong();
+    private final AtomicLong coldLoadNanos = new AtomicLong();
+    private final AtomicLong lastColdLoadNanos = new AtomicLong();
+
+    public OllamaClient(String baseUrl, String keepAlive, Duration connectTimeout, Duration readTimeout,
+                        int maxIdleConnections, Duration connectionKeepAlive) {
+        this(baseUrl, keepAlive, connectTimeout, readTimeout, maxIdleConnections, connectionKeepAlive,
+                new CircuitBreaker(5, Duration.ofSeconds(30)));
+    }
+
+    public OllamaClient(String baseUrl, String keepAlive, Duration connectTimeout, Duration readTimeout,
+                        int maxIdleConnections, Duration connectionKeepAlive, CircuitBreaker breaker) {
+        this(List.of(baseUrl), List.of(baseUrl), keepAlive, connectTimeout, readTimeout, maxIdleConnections,
+                connectionKeepAlive, () -> breaker);
+    }
+
+    /**
+     * A URL in both lists is one endpoint, with one breaker and one count of outstanding requests.
+     * {@code maxIdleConnections} is per endpoint; {@code breakers} makes the breaker of each.
+     */
+    public OllamaClient(List<String> chatUrls, List<String> embeddingUrls, String keepAlive, Duration connectTimeout,
+                        Duration readTimeout, int maxIdleConnections, Duration connectionKeepAlive,
+                        Supplier<CircuitBreaker> breakers) {
+        this.keepAlive = keepAlive;
+        Map<String, Endpoint> byUrl = new LinkedHashMap<>();
+        pools.put(Pool.CHAT, endpoints(chatUrls, byUrl, breakers));
+        pools.put(Pool.EMBEDDING, endpoints(embeddingUrls, byUrl, breakers));
+        this.endpoints = List.copyOf(byUrl.values());
+        Dispatcher dispatcher = new Dispatcher();
+        // Admission is the ModelScheduler's job; the dispatcher only runs streamed calls
+        dispatcher.setMaxRequests(64);
+        dispatcher.setMaxRequestsPerHost(64);
+        this.http = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections * endpoints.size(), connectionKeepAlive.toMillis(),
+                        TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .connectTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .writeTimeout(connectTimeout)
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
+    public Response<AiMessage> chat(String model, List<ChatMessage> messages, Map<String, Object> options) {
+        JsonNode reply = post(Pool.CHAT, "/api/chat", chatRequest(model, messages, options, false), model);
+        return Response.from(AiMessage.from(reply.path("message").path("content").asText()), tokenUsage(reply));
+    }
+
+    /**
+     * Streams the reply to {@code handler} from OkHttp's dispatcher thread and returns at once, with an
+     * action that cancels the stream. The whole stream has to finish within the calling thread's deadline.
+     * A cancelled stream frees its connection without calling the handler again or counting as a failure.
+     */
+    public Runnable streamChat(String model, List<ChatMessage> messages, Map<String, Object> options,
+                               StreamingResponseHandler<AiMessage> handler) {
+        byte[] body = json(chatRequest(model, messages, options, true));
+        Route route = admit(Pool.CHAT, "/api/chat");
+        Call streamed = http.newCall(request(route.endpoint, "/api/chat", body));
+        bound(streamed, route.deadline);
+        // OkHttp also cancels a call whose timeout ran out, so the caller's cancel is tracked separately
+        AtomicBoolean cancelled = new AtomicBoolean();
+        streamed.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, okhttp3.Response response) {
+                try (response) {
+                    ResponseBody responseBody = checked(response);
+                    BufferedSource source = responseBody.source();
+                    StringBuilder answer = new StringBuilder();
+                    String line;
+                    while (!cancelled.get() && (line = source.readUtf8Line()) != null) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        JsonNode chunk = mapper.readTree(line);
+                        if (chunk.hasNonNull("error")) {
+                            throw new OllamaHttpException(500, chunk.get("error").asText());
+                        }
+                        String token = chunk.path("message").path("content").asText("");
+                        if (!token.isEmpty()) {
+                            answer.append(token);
+                            handler.onNext(token);
+                        }
+                        if (chunk.path("done").asBoolean()) {
+                            succeeded(route, model, chunk);
+                            handler.onComplete(Response.from(AiMessage.from(answer.toString()), tokenUsage(chunk)));
+                            return;
+                        }
+                    }
+                    throw new IOException("Ollama closed the stream before it was done");
+                } catch (IOException | RuntimeException e) {
+                    if (cancelled.get()) {
+                        cancelled(route);
+                    } else {
+                        handler.onError(failed(route, "/api/chat", e));
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (cancelled.get()) {
+                    cancelled(route);
+                } else {
+                    handler.onError(failed(route, "/api/chat", e));
+                }
+            }
+        });
+        return () -> {
+            if (cancelled.compareAndSet(false, true)) {
+                streamed.cancel();
+            }
+        };
+    }
+
+    public float[] embed(String model, String text) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("prompt", text);
+        body.put("keep_alive", keepAlive);
+        JsonNode embedding = post(Pool.EMBEDDING, "/api/embeddings", body, model).path("embedding");
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) embedding.get(i).asDouble();
+        }
+        return vector;
+    }
+
+    public Duration load(String model) {
+        return load(Pool.CHAT, model);
+    }
+
+    /**
+     * Loads a model on every endpoint of the pool that is not out, without generating anything, and
+     * returns the longest time Ollama spent loading it, close to zero where it was already loaded.
+     * Fails only if no endpoint could load it.
+     */
+    public Duration load(Pool pool, String model) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("keep_alive", keepAlive);
+        body.put("stream", false);
+        byte[] json = json(body);
+        Duration longest = null;
+        RuntimeException failure = null;
+        for (Endpoint endpoint : pools.get(pool)) {
+            if (!endpoint.breaker.tryAcquire()) {
+                continue;
+            }
+            try {
+                Duration load = Duration.ofNanos(send(route(endpoint), "/api/generate", json, model)
+                        .path("load_duration").asLong());
+                longest = longest == null || load.compareTo(longest) > 0 ? load : longest;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        if (longest != null) {
+            return longest;
+        }
+        throw failure != null ? failure : unavailable(pool);
+    }
+
+    /**
+     * Nanoseconds since the endpoint that has waited longest for a request for {@code model} last had one,
+     * or -1 if some endpoint has had none.
+     */
+    public long idleNanos(String model) {
+        long idle = 0;
+        for (Endpoint endpoint : endpoints) {
+            Long used = endpoint.lastUsed.get(model);
+            if (used == null) {
+                return -1;
+            }
+            idle = Math.max(idle, System.nanoTime() - used);
+        }
+        return idle;
+    }
+
+    /**
+     * Throws if every endpoint of the pool is out, for callers about to queue for a call to it.
+     */
+    public void checkAvailable(Pool pool) {
+        for (Endpoint endpoint : pools.get(pool)) {
+            if (endpoint.breaker.available()) {
+                return;
+            }
+        }
+        throw unavailable(pool);
+    }
+
+    public int endpointCount(Pool pool) {
+        return pools.get(pool).size();
+    }
+
+    /**
+     * Distinct endpoints across both pools.
+     */
+    public int endpointCount() {
+        return endpoints.size();
+    }
+
+    public Map<String, Object> stats() {
+        long cold = coldRequests.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("keepAlive", keepAlive);
+        stats.put("requests", requests.get());
+        stats.put("failures", failures.get());
+        stats.put("rejected", rejected.get());
+        stats.put("deadlineExceeded", deadlineExceeded.get());
+        stats.put("streamsCancelled", streamsCancelled.get());
+        stats.put("embeddingRetries", embeddingRetries.get());
+        stats.put("coldRequests", cold);
+        stats.put("avgColdLoadMillis", cold == 0 ? 0 : coldLoadNanos.get() / cold / 1_000_000);
+        stats.put("lastColdLoadMillis", lastColdLoadNanos.get() / 1_000_000);
+        stats.put("connections", http.connectionPool().connectionCount());
+        stats.put("idleConnections", http.connectionPool().idleConnectionCount());
+        Map<String, Object> perEndpoint = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("pools", pools.entrySet().stream()
+                    .filter(pool -> pool.getValue().contains(endpoint))
+                    .map(pool -> pool.getKey().name().toLowerCase())
+                    .toList());
+            entry.put("outstanding", endpoint.outstanding.get());
+            entry.put("requests", endpoint.requests.get());
+            entry.put("failures", endpoint.failures.get());
+            entry.put("breaker", endpoint.breaker.stats());
+            perEndpoint.put(endpoint.baseUrl, entry);
+        }
+        stats.put("endpoints", perEndpoint);
+        return stats;
+    }
+
+    void embeddingRetried() {
+        embeddingRetries.incrementAndGet();
+    }
+
+    public void shutdown() {
+        http.dispatcher().executorService().shutdown();
+        http.connectionPool().evictAll();
+    }
+
+    private static List<Endpoint> endpoints(List<String> urls, Map<String, Endpoint> byUrl,
+                                            Supplier<CircuitBreaker> breakers) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one Ollama URL is required");
+        }
+        List<Endpoint> pool = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            String baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+            Endpoint endpoint = byUrl.computeIfAbsent(baseUrl, key -> new Endpoint(key, breakers.get()));
+            if (!pool.contains(endpoint)) {
+                pool.add(endpoint);
+            }
+        }
+        return List.copyOf(pool);
+    }
+
+    private Map<String, Object> chatRequest(String model, List<ChatMessage> messages, Map<String, Object> options,
+                                            boolean stream) {
+        List<Map<String, String>> turns = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            turns.add(Map.of("role", role(message), "content", text(message)));
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("messages", turns);
+        body.put("options", options);
+        body.put("stream", stream);
+        body.put("keep_alive", keepAlive);
+        return body;
+    }
+
+    private static String role(ChatMessage message) {
+        return switch (message.type()) {
+            case SYSTEM -> "system";
+            case USER -> "user";
+            case AI -> "assistant";
+            default -> throw new IllegalArgumentException("Unsupported message type " + message.type());
+        };
+    }
+
+    private static String text(ChatMessage message) {
+        return switch (message.type()) {
+            case SYSTEM -> ((SystemMessage) message).text();
+            case USER -> text((UserMessage) message);
+            case AI -> ((AiMessage) message).text();
+            default -> throw new IllegalArgumentException("Unsupported message type " + message.type());
+        };
+    }
+
+    // Questions are plain text; images would need the endpoint's separate images field
+    private static String text(UserMessage message) {
+        if (!message.hasSingleText()) {
+            throw new IllegalArgumentException("Only single-text user messages are supported");
+        }
+        return ((TextContent) message.contents().get(0)).text();
+    }
+
+    private JsonNode post(Pool pool, String path, Map<String, Object> body, String model) {
+        byte[] json = json(body);
+        return send(admit(pool, path), path, json, model);
+    }
+
+    private JsonNode send(Route route, String path, byte[] body, String model) {
+        Call call = http.newCall(request(route.endpoint, path, body));
+        bound(call, route.deadline);
+        try (okhttp3.Response response = call.execute()) {
+            JsonNode reply = mapper.readTree(checked(response).string());
+            succeeded(route, model, reply);
+            return reply;
+        } catch (IOException | RuntimeException e) {
+            throw failed(route, path, e);
+        }
+    }
+
+    /**
+     * Picks the endpoint for a call, unless the thread's deadline has already passed or every endpoint
+     * of the pool is out.
+     */
+    private Route admit(Pool pool, String path) {
+        Deadline deadline = Deadline.current();
+        if (deadline != null && deadline.expired()) {
+            deadlineExceeded.incrementAndGet();
+            throw new DeadlineExceededException("Deadline passed before the Ollama request to " + path);
+        }
+        return route(choose(pool));
+    }
+
+    /**
+     * An endpoint due for its trial call gets it; otherwise the endpoint with the fewest outstanding
+     * requests, ties going round the pool. Called without the endpoint's breaker taken; returns with it.
+     */
+    private Endpoint choose(Pool pool) {
+        List<Endpoint> candidates = pools.get(pool);
+        int start = Math.floorMod(rotation.getAndIncrement(), candidates.size());
+        Endpoint least = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            Endpoint endpoint = candidates.get((start + i) % candidates.size());
+            if (endpoint.breaker.state() == CircuitBreaker.State.CLOSED) {
+                if (least == null || endpoint.outstanding.get() < least.outstanding.get()) {
+                    least = endpoint;
+                }
+            } else if (endpoint.breaker.tryAcquire()) {
+                return endpoint;
+            }
+        }
+        if (least != null && least.breaker.tryAcquire()) {
+            return least;
+        }
+        throw unavailable(pool);
+    }
+
+    private Route route(Endpoint endpoint) {
+        endpoint.outstanding.incrementAndGet();
+        endpoint.requests.incrementAndGet();
+        requests.incrementAndGet();
+        return new Route(endpoint, Deadline.current());
+    }
+
+    private OllamaUnavailableException unavailable(Pool pool) {
+        rejected.incrementAndGet();
+        Duration retryAfter = null;
+        for (Endpoint endpoint : pools.get(pool)) {
+            Duration wait = endpoint.breaker.retryAfter();
+            retryAfter = retryAfter == null || wait.compareTo(retryAfter) < 0 ? wait : retryAfter;
+        }
+        return new OllamaUnavailableException(retryAfter);
+    }
+
+    private static void bound(Call call, Deadline deadline) {
+        if (deadline != null) {
+            call.timeout().timeout(Math.max(1, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void succeeded(Route route, String model, JsonNode reply) {
+        if (route.finish()) {
+            route.endpoint.breaker.onSuccess();
+        }
+        loaded(route.endpoint, model, reply);
+    }
+
+    private void cancelled(Route route) {
+        if (route.finish()) {
+            streamsCancelled.incrementAndGet();
+            route.endpoint.breaker.onCancel();
+        }
+    }
+
+    /**
+     * Counts a failed call against its endpoint's breaker, unless Ollama only rejected the request, and
+     * returns the exception to throw for it.
+     */
+    private RuntimeException failed(Route route, String path, Exception e) {
+        boolean first = route.finish();
+        if (first) {
+            failures.incrementAndGet();
+            route.endpoint.failures.incrementAndGet();
+        }
+        if (e instanceof OllamaHttpException http && !http.serverError()) {
+            if (first) {
+                route.endpoint.breaker.onSuccess();
+            }
+            return http;
+        }
+        if (first) {
+            route.endpoint.breaker.onFailure();
+        }
+        if (route.deadline != null && route.deadline.expired()) {
+            deadlineExceeded.incrementAndGet();
+            return new DeadlineExceededException("Deadline passed during the Ollama request to " + path, e);
+        }
+        if (e instanceof IOException io) {
+            return new UncheckedIOException("Ollama request to " + route.endpoint.baseUrl + path + " failed", io);
+        }
+        return (RuntimeException) e;
+    }
+
+    private byte[] json(Map<String, Object> body) {
+        try {
+            return mapper.writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Request request(Endpoint endpoint, String path, byte[] body) {
+        return new Request.Builder()
+                .url(endpoint.baseUrl + path)
+                .post(RequestBody.create(body, JSON))
+                .build();
+    }
+
+    private static ResponseBody checked(okhttp3.Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            String detail = body == null ? "" : body.string();
+            throw new OllamaHttpException(response.code(), detail);
+        }
+        return body;
+    }
+
+    private void loaded(Endpoint endpoint, String model, JsonNode reply) {
+        endpoint.lastUsed.put(model, System.nanoTime());
+        long loadNanos = reply.path("load_duration").asLong();
+        if (loadNanos >= COLD_LOAD_NANOS) {
+            coldRequests.incrementAndGet();
+            coldLoadNanos.addAndGet(loadNanos);
+            lastColdLoadNanos.set(loadNanos);
+        }
+    }
+
+    private static TokenUsage tokenUsage(JsonNode reply) {
+        if (!reply.has("prompt_eval_count") && !reply.has("eval_count")) {
+            return null;
+        }
+        return new TokenUsage(reply.path("prompt_eval_count").asInt(), reply.path("eval_count").asInt());
+    }
+
+    private static final class Endpoint {
+
+        private final String baseUrl;
+        private final CircuitBreaker breaker;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+
+        private Endpoint(String baseUrl, CircuitBreaker breaker) {
+            this.baseUrl = baseUrl;
+            this.breaker = breaker;
+        }
+    }
+
+    /**
+     * One call on its way to an endpoint; finishing it gives back the endpoint's outstanding slot once.
+     */
+    private static final class Route {
+
+        private final Endpoint endpoint;
+        private final Deadline deadline;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Route(Endpoint endpoint, Deadline deadline) {
+            this.endpoint = endpoint;
+            this.deadline = deadline;
+        }
+
+        private boolean finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            endpoint.outstanding.decrementAndGet();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.documentqa.ollama;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embeddings from Ollama's embedding endpoint through a shared {@link OllamaClient}, one request per text.
+ * <p>
+ * Each request has {@code callTimeout} to finish, less if the caller's deadline is sooner. Embedding the
+ * same text twice is harmless, so a request that failed on the connection or with a server error is
+ * retried, up to {@code maxAttempts} in all. Before each retry it waits a random delay of up to
+ * {@code backoff}, doubling per attempt, so callers that failed together do not retry together. Open
+ * breakers, passed deadlines and rejected requests are not retried. Generation is never retried.
+ */
+public class OllamaEmbeddings implements EmbeddingModel {
+
+    private final OllamaClient client;
+    private final String model;
+    private final Duration callTimeout;
+    private final int maxAttempts;
+    private final long backoffNanos;
+
+    public OllamaEmbeddings(OllamaClient client, String model, Duration callTimeout, int maxAttempts, Duration backoff) {
+        this.client = client;
+        this.model = model;
+        this.callTimeout = callTimeout;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffNanos = backoff.toNanos();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            embeddings.add(Embedding.from(vector(segment.text())));
+        }
+        return Response.from(embeddings);
+    }
+
+    private float[] vector(String text) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return Deadline.after(callTimeout).call(() -> client.embed(model, text));
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts || !retryable(e)) {
+                    throw e;
+                }
+                long delay = delayNanos(attempt);
+                Deadline deadline = Deadline.current();
+                if (deadline != null && deadline.remainingNanos() <= delay) {
+                    throw e;
+                }
+                client.embeddingRetried();
+                sleep(delay, e);
+            }
+        }
+    }
+
+    static boolean retryable(RuntimeException e) {
+        return e instanceof UncheckedIOException || e instanceof OllamaHttpException http && http.serverError();
+    }
+
+    /**
+     * Full jitter: uniform between zero and the backoff doubled once per earlier retry.
+     */
+    long delayNanos(int attempt) {
+        long ceiling = backoffNanos << Math.min(attempt - 1, 16);
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(long nanos, RuntimeException failure) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.addSuppressed(e);
+            throw failure;
+        }
+    }
+}
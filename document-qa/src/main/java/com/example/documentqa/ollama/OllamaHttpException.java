@@ -0,0 +1,25 @@
+package com.example.documentqa.ollama;
+
+/**
+ * Ollama answered with an error status.
+ */
+public class OllamaHttpException extends IllegalStateException {
+
+    private final int status;
+
+    public OllamaHttpException(int status, String detail) {
+        super("Ollama returned " + status + ": " + detail);
+        this.status = status;
+    }
+
+    public int status() {
+        return status;
+    }
+
+    /**
+     * Whether the server failed, as opposed to rejecting the request itself.
+     */
+    public boolean serverError() {
+        return status >= 500;
+    }
+}
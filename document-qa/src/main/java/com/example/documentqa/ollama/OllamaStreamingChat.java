@@ -0,0 +1,29 @@
+package com.example.documentqa.ollama;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streamed chat generation through a shared {@link OllamaClient}.
+ */
+public class OllamaStreamingChat implements CancellableStreamingChatModel {
+
+    private final OllamaClient client;
+    private final String model;
+    private final Map<String, Object> options;
+
+    public OllamaStreamingChat(OllamaClient client, String model, double temperature) {
+        this.client = client;
+        this.model = model;
+        this.options = Map.of("temperature", temperature);
+    }
+
+    @Override
+    public Runnable stream(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        return client.streamChat(model, messages, options, handler);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.documentqa.ollama;
+
+import java.time.Duration;
+
+/**
+ * A call to Ollama was rejected without being sent because the {@link CircuitBreaker} is open.
+ */
+public class OllamaUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public OllamaUnavailableException(Duration retryAfter) {
+        super("Ollama is unavailable, retry in " + Math.max(1, retryAfter.toSeconds()) + " s");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+}
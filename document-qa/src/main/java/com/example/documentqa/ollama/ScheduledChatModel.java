@@ -0,0 +1,38 @@
+package com.example.documentqa.ollama;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * Generates through the {@link ModelScheduler} in the interactive lane.
+ */
+public class ScheduledChatModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final ModelScheduler scheduler;
+
+    public ScheduledChatModel(ChatLanguageModel delegate, ModelScheduler scheduler) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return scheduler.call(Lane.INTERACTIVE, () -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return scheduler.call(Lane.INTERACTIVE, () -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return scheduler.call(Lane.INTERACTIVE, () -> delegate.generate(messages, toolSpecification));
+    }
+}
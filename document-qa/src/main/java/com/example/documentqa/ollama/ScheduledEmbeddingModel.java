@@ -0,0 +1,37 @@
+package com.example.documentqa.ollama;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * Embeds through the {@link ModelScheduler} in one lane. The bean is the query-embedding lane;
+ * ingestion takes {@link #inLane(Lane)} of it.
+ */
+public class ScheduledEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final ModelScheduler scheduler;
+    private final Lane lane;
+
+    public ScheduledEmbeddingModel(EmbeddingModel delegate, ModelScheduler scheduler, Lane lane) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.lane = lane;
+    }
+
+    /**
+     * The same model, scheduled in another lane.
+     */
+    public ScheduledEmbeddingModel inLane(Lane lane) {
+        return new ScheduledEmbeddingModel(delegate, scheduler, lane);
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        return scheduler.call(lane, () -> delegate.embedAll(segments));
+    }
+}
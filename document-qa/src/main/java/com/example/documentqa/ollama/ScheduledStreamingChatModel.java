@@ -0,0 +1,63 @@
+package com.example.documentqa.ollama;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * Streams through the {@link ModelScheduler} in the interactive lane. The caller waits for a slot, and
+ * the slot is held until the stream completes, fails or is cancelled, not just until the request is sent.
+ */
+public class ScheduledStreamingChatModel implements CancellableStreamingChatModel {
+
+    private final StreamingChatLanguageModel delegate;
+    private final ModelScheduler scheduler;
+
+    public ScheduledStreamingChatModel(StreamingChatLanguageModel delegate, ModelScheduler scheduler) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Runnable stream(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        ModelScheduler.Permit permit = scheduler.acquire(Lane.INTERACTIVE);
+        try {
+            StreamingResponseHandler<AiMessage> releasing = new StreamingResponseHandler<>() {
+                @Override
+                public void onNext(String token) {
+                    handler.onNext(token);
+                }
+
+                @Override
+                public void onComplete(Response<AiMessage> response) {
+                    permit.release();
+                    handler.onComplete(response);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    permit.release();
+                    handler.onError(error);
+                }
+            };
+            if (delegate instanceof CancellableStreamingChatModel cancellable) {
+                Runnable cancel = cancellable.stream(messages, releasing);
+                return () -> {
+                    cancel.run();
+                    permit.release();
+                };
+            }
+            // A generation that cannot be stopped keeps its slot until it ends
+            delegate.generate(messages, releasing);
+            return () -> {
+            };
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+}
@@ -1,12 +1,68 @@
 package com.example.documentqa.repository;
 
 import com.example.documentqa.model.Document;
+import com.example.documentqa.model.DocumentSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Long> {
     List<Document> findByProcessed(boolean processed);
+
+    Optional<Document> findFirstByContentHashOrderByIdAsc(String contentHash);
+
+    long countByProcessed(boolean processed);
+
+    long countByContentHash(String contentHash);
+
+    // Keyset pagination: seeks past the last id seen, so every page costs the same however deep it is
+    @Query("select new com.example.documentqa.model.DocumentSummary(d.id, d.title, d.filename, d.contentType,"
+            + " d.contentSize, d.uploadedAt, d.processed) from Document d where d.id > :afterId order by d.id")
+    List<DocumentSummary> findSummariesAfter(@Param("afterId") Long afterId, Pageable page);
+
+    @Query("select d.id from Document d where d.processed = false and d.cancelled = false"
+            + " and d.attempts < :maxAttempts"
+            + " and (d.leaseExpiresAt is null or d.leaseExpiresAt < :now) order by d.id")
+    List<Long> findClaimableIds(@Param("now") LocalDateTime now, @Param("maxAttempts") int maxAttempts, Pageable page);
+
+    // Conditional update: of several workers racing for the same row, exactly one sees a count of 1
+    @Modifying
+    @Query("update Document d set d.leaseOwner = :owner, d.leaseExpiresAt = :expiresAt, d.attempts = d.attempts + 1"
+            + " where d.id = :id and d.processed = false and d.cancelled = false and (d.leaseExpiresAt is null or d.leaseExpiresAt < :now)")
+    int claim(@Param("id") Long id, @Param("owner") String owner,
+              @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("update Document d set d.leaseExpiresAt = :expiresAt where d.id = :id and d.leaseOwner = :owner")
+    int renewLease(@Param("id") Long id, @Param("owner") String owner, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("update Document d set d.processed = true, d.leaseOwner = null, d.leaseExpiresAt = null, d.lastError = null"
+            + " where d.id = :id and d.leaseOwner = :owner")
+    int completeLease(@Param("id") Long id, @Param("owner") String owner);
+
+    @Modifying
+    @Query("update Document d set d.leaseOwner = null, d.leaseExpiresAt = :retryAt, d.lastError = :error"
+            + " where d.id = :id and d.leaseOwner = :owner")
+    int releaseLease(@Param("id") Long id, @Param("owner") String owner,
+                     @Param("retryAt") LocalDateTime retryAt, @Param("error") String error);
+
+    // Everything the store held was lost with it, so every document that was ingested is due again
+    @Modifying
+    @Query("update Document d set d.processed = false, d.attempts = 0, d.leaseOwner = null, d.leaseExpiresAt = null,"
+            + " d.lastError = null where d.processed = true")
+    int requeueProcessed();
+
+    @Modifying
+    @Query("update Document d set d.cancelled = true, d.leaseOwner = null, d.leaseExpiresAt = null"
+            + " where d.id = :id and d.processed = false")
+    int cancel(@Param("id") Long id);
 }
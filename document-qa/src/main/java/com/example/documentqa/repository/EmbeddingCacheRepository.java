@@ -0,0 +1,29 @@
+package com.example.documentqa.repository;
+
+import com.example.documentqa.model.EmbeddingCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface EmbeddingCacheRepository extends JpaRepository<EmbeddingCacheEntry, String> {
+
+    // Upsert: two workers caching the same text both succeed, where insert-after-select would hit the primary key
+    @Transactional
+    @Modifying
+    @Query(value = "merge into embedding_cache (cache_key, vector, created_at) key (cache_key)"
+            + " values (:cacheKey, :vector, :createdAt)", nativeQuery = true)
+    int upsert(@Param("cacheKey") String cacheKey, @Param("vector") byte[] vector,
+               @Param("createdAt") LocalDateTime createdAt);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from embedding_cache where cache_key in"
+            + " (select cache_key from embedding_cache order by created_at limit :count)", nativeQuery = true)
+    int deleteOldest(@Param("count") long count);
+}
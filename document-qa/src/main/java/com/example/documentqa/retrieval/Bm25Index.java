@@ -0,0 +1,475 @@
+package com.example.documentqa.retrieval;
+
+import com.example.documentqa.store.DocumentDeletion;
+import com.example.documentqa.store.SegmentAttributes;
+import com.example.documentqa.store.SegmentFilter;
+import com.example.documentqa.store.SegmentLookup;
+import com.example.documentqa.store.Tombstones;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index scoring segments with Okapi BM25. Segments are append-only and numbered in
+ * the order they arrive, so each posting list is a pair of growing int arrays (segment number, term
+ * frequency) already sorted by segment.
+ * <p>
+ * Tokens are lower-cased runs of letters and digits. Runs joined by {@code - _ . / :} are also indexed
+ * whole, so "ERR-4021" or "clause 7.3.2" match on the exact identifier as well as on its parts.
+ * <p>
+ * A {@link SegmentFilter} is turned into a bitmap of segment numbers before scoring, so postings of
+ * other documents are skipped without being scored. Deleted documents are skipped the same way until
+ * {@link #compact()} drops them; until then they still count towards document frequencies.
+ * <p>
+ * Only ids, token counts and postings are kept; the text of a hit is read back from the embedding store
+ * through {@link SegmentLookup}.
+ */
+@Slf4j
+public class Bm25Index implements DocumentDeletion {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "do", "does", "for", "from", "how", "i", "in",
+            "is", "it", "of", "on", "or", "that", "the", "this", "to", "was", "what", "when", "where",
+            "which", "who", "why", "will", "with");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactionLock = new Object();
+    // Replaced wholesale by compact()
+    private Map<String, Postings> postings = new HashMap<>();
+    private List<String> ids = new ArrayList<>();
+    private SegmentAttributes attributes = new SegmentAttributes();
+    private Tombstones tombstones = new Tombstones();
+    private int[] lengths = new int[1024];
+    private long totalLength;
+    private long compactions;
+
+    public void add(String id, TextSegment segment) {
+        addAll(List.of(id), List.of(segment));
+    }
+
+    public void addAll(List<String> segmentIds, List<TextSegment> textSegments) {
+        // Tokenizing happens outside the lock; only the posting appends are serialized
+        List<Map<String, Integer>> frequencies = new ArrayList<>(textSegments.size());
+        for (TextSegment segment : textSegments) {
+            Map<String, Integer> counts = new HashMap<>();
+            for (String token : tokenize(segment.text())) {
+                counts.merge(token, 1, Integer::sum);
+            }
+            frequencies.add(counts);
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < textSegments.size(); i++) {
+                int number = ids.size();
+                ids.add(segmentIds.get(i));
+                Metadata metadata = textSegments.get(i).metadata();
+                long documentId = SegmentFilter.documentId(metadata);
+                attributes.set(number, documentId, SegmentFilter.uploadedAt(metadata));
+                tombstones.added(number, documentId);
+                int length = 0;
+                for (Map.Entry<String, Integer> term : frequencies.get(i).entrySet()) {
+                    postings.computeIfAbsent(term.getKey(), key -> new Postings()).add(number, term.getValue());
+                    length += term.getValue();
+                }
+                if (number == lengths.length) {
+                    lengths = Arrays.copyOf(lengths, lengths.length * 2);
+                }
+                lengths[number] = length;
+                totalLength += length;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The {@code maxResults} best scoring segments for the query, best first.
+     */
+    public List<Hit> search(String query, int maxResults) {
+        return search(query, maxResults, SegmentFilter.ALL);
+    }
+
+    /**
+     * The {@code maxResults} best scoring segments the filter accepts, best first. Document frequencies
+     * stay those of the whole index, so scores are comparable across scopes.
+     */
+    public List<Hit> search(String query, int maxResults, SegmentFilter filter) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        lock.readLock().lock();
+        try {
+            int count = ids.size();
+            if (count == 0 || terms.isEmpty()) {
+                return List.of();
+            }
+            BitSet deleted = tombstones.snapshot();
+            boolean anyDeleted = !deleted.isEmpty();
+            BitSet allowed = null;
+            if (!filter.isAll()) {
+                int[] selected = attributes.select(filter, count);
+                if (selected.length == 0) {
+                    return List.of();
+                }
+                allowed = new BitSet(count);
+                for (int segment : selected) {
+                    allowed.set(segment);
+                }
+            }
+            double averageLength = totalLength / (double) count;
+            // Term-at-a-time accumulation into a dense array; touched lists the segments scored so far
+            float[] scores = new float[count];
+            int[] touched = new int[64];
+            int touchedCount = 0;
+            for (String term : terms) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (count - list.size + 0.5) / (list.size + 0.5));
+                for (int p = 0; p < list.size; p++) {
+                    int segment = list.segments[p];
+                    if ((allowed != null && !allowed.get(segment)) || (anyDeleted && deleted.get(segment))) {
+                        continue;
+                    }
+                    int frequency = list.frequencies[p];
+                    double norm = K1 * (1 - B + B * lengths[segment] / averageLength);
+                    if (scores[segment] == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = segment;
+                    }
+                    scores[segment] += (float) (idf * frequency * (K1 + 1) / (frequency + norm));
+                }
+            }
+
+            PriorityQueue<Integer> top = new PriorityQueue<>(Comparator.comparingDouble(segment -> scores[segment]));
+            for (int t = 0; t < touchedCount; t++) {
+                int segment = touched[t];
+                if (top.size() < maxResults) {
+                    top.add(segment);
+                } else if (scores[segment] > scores[top.peek()]) {
+                    top.poll();
+                    top.add(segment);
+                }
+            }
+            List<Hit> hits = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                int segment = top.poll();
+                hits.add(new Hit(ids.get(segment), scores[segment]));
+            }
+            hits.sort(Comparator.comparingDouble(Hit::score).reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The score a segment with this text would get for each query if it were added to the index, using the
+     * index's current document frequencies and average length. The text is tokenized once for all queries.
+     */
+    public double[] scores(List<String> queries, String text) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        List<String> tokens = tokenize(text);
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        double[] scores = new double[queries.size()];
+        lock.readLock().lock();
+        try {
+            int count = ids.size() + 1;
+            double averageLength = (totalLength + tokens.size()) / (double) count;
+            double norm = K1 * (1 - B + B * tokens.size() / Math.max(averageLength, 1));
+            for (int q = 0; q < queries.size(); q++) {
+                for (String term : new LinkedHashSet<>(tokenize(queries.get(q)))) {
+                    Integer frequency = frequencies.get(term);
+                    if (frequency == null) {
+                        continue;
+                    }
+                    Postings list = postings.get(term);
+                    int documentFrequency = (list == null ? 0 : list.size) + 1;
+                    double idf = Math.log(1 + (count - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                    scores[q] += idf * frequency * (K1 + 1) / (frequency + norm);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return scores;
+    }
+
+    public int size() {
+        return liveSegments();
+    }
+
+    @Override
+    public int deleteDocument(long documentId) {
+        lock.readLock().lock();
+        try {
+            return tombstones.delete(documentId, attributes, ids.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int purgeDocument(long documentId) {
+        // A compaction in progress would re-index the purged segments it has already passed
+        synchronized (compactionLock) {
+            lock.readLock().lock();
+            try {
+                return tombstones.purge(documentId, attributes, ids.size());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public int tombstones() {
+        lock.readLock().lock();
+        try {
+            return tombstones.count();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int liveSegments() {
+        lock.readLock().lock();
+        try {
+            return ids.size() - tombstones.count();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the posting lists without the tombstoned segments, then swaps them in. Appends never
+     * rewrite a posting below its list's size, so the rebuild works outside the lock from references
+     * taken under the read lock; only postings of segments added meanwhile are copied under the write lock.
+     */
+    @Override
+    public int compact() {
+        synchronized (compactionLock) {
+            int copied;
+            String[] copiedIds;
+            int[] copiedLengths;
+            BitSet deleted;
+            Map<String, Postings> copiedPostings = new HashMap<>();
+            lock.readLock().lock();
+            try {
+                if (tombstones.count() == 0) {
+                    return 0;
+                }
+                copied = ids.size();
+                copiedIds = ids.toArray(new String[0]);
+                copiedLengths = lengths;
+                deleted = tombstones.snapshot();
+                for (Map.Entry<String, Postings> term : postings.entrySet()) {
+                    copiedPostings.put(term.getKey(), term.getValue().view());
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Bm25Index rebuilt = new Bm25Index();
+            int[] numbers = new int[copied];
+            for (int segment = 0; segment < copied; segment++) {
+                numbers[segment] = deleted.get(segment) ? -1
+                        : rebuilt.append(copiedIds[segment], copiedLengths[segment], attributes, segment);
+            }
+            for (Map.Entry<String, Postings> term : copiedPostings.entrySet()) {
+                Postings list = term.getValue();
+                Postings live = new Postings();
+                for (int p = 0; p < list.size; p++) {
+                    int number = numbers[list.segments[p]];
+                    if (number >= 0) {
+                        live.add(number, list.frequencies[p]);
+                    }
+                }
+                if (live.size > 0) {
+                    rebuilt.postings.put(term.getKey(), live);
+                }
+            }
+
+            int dropped;
+            lock.writeLock().lock();
+            try {
+                copyTail(rebuilt, copied, tombstones.snapshot());
+                Tombstones carried = new Tombstones(tombstones.documents());
+                for (long documentId : carried.documents()) {
+                    carried.delete(documentId, rebuilt.attributes, rebuilt.ids.size());
+                }
+                dropped = ids.size() - rebuilt.ids.size();
+                postings = rebuilt.postings;
+                ids = rebuilt.ids;
+                attributes = rebuilt.attributes;
+                lengths = rebuilt.lengths;
+                totalLength = rebuilt.totalLength;
+                tombstones = carried;
+                compactions++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Compacted lexical index: dropped {} tombstoned segments", dropped);
+            return dropped;
+        }
+    }
+
+    /**
+     * Copies the live segments from {@code start} on into {@code target}, which already holds everything
+     * below it. Postings are sorted by segment, so only the tail of each list is visited.
+     */
+    private void copyTail(Bm25Index target, int start, BitSet deleted) {
+        int end = ids.size();
+        if (start == end) {
+            return;
+        }
+        int[] numbers = new int[end - start];
+        for (int segment = start; segment < end; segment++) {
+            numbers[segment - start] = deleted.get(segment) ? -1
+                    : target.append(ids.get(segment), lengths[segment], attributes, segment);
+        }
+        for (Map.Entry<String, Postings> term : postings.entrySet()) {
+            Postings list = term.getValue();
+            int first = list.size;
+            while (first > 0 && list.segments[first - 1] >= start) {
+                first--;
+            }
+            for (int p = first; p < list.size; p++) {
+                int number = numbers[list.segments[p] - start];
+                if (number >= 0) {
+                    target.postings.computeIfAbsent(term.getKey(), key -> new Postings()).add(number, list.frequencies[p]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Numbers a segment copied from {@code from} at {@code position}; its postings are added by the caller.
+     */
+    private int append(String id, int length, SegmentAttributes from, int position) {
+        int number = ids.size();
+        ids.add(id);
+        attributes.set(number, from.documentId(position), from.uploadedAt(position));
+        if (number == lengths.length) {
+            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+        }
+        lengths[number] = length;
+        totalLength += length;
+        return number;
+    }
+
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            long postingCount = 0;
+            for (Postings list : postings.values()) {
+                postingCount += list.size;
+            }
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("segments", ids.size() - tombstones.count());
+            stats.put("tombstones", tombstones.count());
+            stats.put("compactions", compactions);
+            stats.put("terms", postings.size());
+            stats.put("postings", postingCount);
+            stats.put("avgSegmentTokens", ids.isEmpty() ? 0 : totalLength / ids.size());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int compoundStart = i;
+            int parts = 0;
+            int end;
+            while (true) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                    i++;
+                }
+                addToken(tokens, text.substring(start, i).toLowerCase());
+                parts++;
+                end = i;
+                if (i + 1 < length && isJoiner(text.charAt(i)) && Character.isLetterOrDigit(text.charAt(i + 1))) {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            if (parts > 1) {
+                tokens.add(text.substring(compoundStart, end).toLowerCase());
+            }
+        }
+        return tokens;
+    }
+
+    private static void addToken(List<String> tokens, String token) {
+        if (!STOP_WORDS.contains(token)) {
+            tokens.add(token);
+        }
+    }
+
+    private static boolean isJoiner(char c) {
+        return c == '-' || c == '_' || c == '.' || c == '/' || c == ':';
+    }
+
+    public record Hit(String id, double score) {
+    }
+
+    private static final class Postings {
+
+        private int[] segments = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        private void add(int segment, int frequency) {
+            if (size == segments.length) {
+                segments = Arrays.copyOf(segments, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            segments[size] = segment;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        /**
+         * The postings added so far; later appends to this list do not change them.
+         */
+        private Postings view() {
+            Postings view = new Postings();
+            view.segments = segments;
+            view.frequencies = frequencies;
+            view.size = size;
+            return view;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.example.documentqa.retrieval;
+
+import com.example.documentqa.ingestion.TokenEstimator;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assembles retrieved segments into the context of one prompt, within a token budget. Segments are taken
+ * in rank order. One that mostly repeats a segment already taken is dropped, and sentences an earlier
+ * segment already contributed, such as the overlap between neighbouring chunks, are left out. A segment
+ * longer than {@code maxSegmentTokens}, or longer than the budget left, is cut down to the sentences that
+ * share the most question terms and the sentences around them, kept in their original order with gaps
+ * marked.
+ * <p>
+ * Question terms are weighted by how few of the retrieved sentences contain them, so a term every
+ * sentence mentions does not decide which ones are kept. A segment sharing no term with the question was
+ * retrieved for its meaning alone and keeps its leading sentences. Tokens are counted with the estimator
+ * chunking uses, so budgets compare with chunk sizes rather than exact model tokens.
+ */
+public class ContextPacker {
+
+    private static final String GAP = "...";
+    private static final int SHINGLE_LENGTH = 3;
+    // Following a matching sentence often continues it, so it inherits part of that sentence's score
+    private static final double CARRY_OVER = 0.5;
+    // Less room than this is not worth starting another segment
+    private static final int MIN_PARTIAL_TOKENS = 24;
+    // Shorter sentences ("See below.") repeat without being the same passage
+    private static final int MIN_REPEATED_SENTENCE_CHARS = 24;
+
+    private final TokenEstimator estimator;
+    private final boolean enabled;
+    private final int tokenBudget;
+    private final int maxSegmentTokens;
+    private final double duplicateSimilarity;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retrievedSegments = new AtomicLong();
+    private final AtomicLong packedSegments = new AtomicLong();
+    private final AtomicLong retrievedTokens = new AtomicLong();
+    private final AtomicLong packedTokens = new AtomicLong();
+    private final AtomicLong duplicatesDropped = new AtomicLong();
+    private final AtomicLong segmentsTrimmed = new AtomicLong();
+    private final AtomicLong packNanos = new AtomicLong();
+
+    public ContextPacker(TokenEstimator estimator, boolean enabled, int tokenBudget, int maxSegmentTokens,
+                         double duplicateSimilarity) {
+        this.estimator = estimator;
+        this.enabled = enabled;
+        this.tokenBudget = tokenBudget;
+        this.maxSegmentTokens = maxSegmentTokens;
+        this.duplicateSimilarity = duplicateSimilarity;
+    }
+
+    public PackedContext pack(String question, List<Content> contents) {
+        long start = System.nanoTime();
+        List<Segment> segments = new ArrayList<>(contents.size());
+        int retrieved = 0;
+        for (Content content : contents) {
+            Segment segment = new Segment(content);
+            segments.add(segment);
+            retrieved += segment.tokens;
+        }
+        if (!enabled) {
+            return record(new PackedContext(contents, contents.size(), retrieved, retrieved, 0, 0,
+                    (System.nanoTime() - start) / 1000));
+        }
+
+        Map<String, Double> weights = termWeights(question, segments);
+        List<Content> packed = new ArrayList<>(segments.size());
+        List<Set<Long>> taken = new ArrayList<>(segments.size());
+        Set<String> takenSentences = new HashSet<>();
+        int remaining = tokenBudget;
+        int used = 0;
+        int duplicates = 0;
+        int trimmed = 0;
+        for (Segment segment : segments) {
+            if (remaining < MIN_PARTIAL_TOKENS && !packed.isEmpty()) {
+                break;
+            }
+            if (isDuplicate(segment.shingles, taken)) {
+                duplicates++;
+                continue;
+            }
+            List<Sentence> fresh = new ArrayList<>(segment.sentences.size());
+            int freshTokens = 0;
+            for (Sentence sentence : segment.sentences) {
+                if (!takenSentences.contains(sentence.key)) {
+                    fresh.add(sentence);
+                    freshTokens += sentence.tokens;
+                }
+            }
+            int room = Math.min(remaining, maxSegmentTokens);
+            List<Sentence> chosen = freshTokens <= room && fresh.size() == segment.sentences.size() ? fresh
+                    : select(fresh, segment.sentences.size(), weights, room);
+            if (chosen.isEmpty()) {
+                continue;
+            }
+            boolean whole = chosen == fresh && fresh.size() == segment.sentences.size();
+            if (!whole) {
+                trimmed++;
+            }
+            String text = whole ? segment.text : join(chosen, segment.sentences.size());
+            int tokens = tokens(text);
+            remaining -= tokens;
+            used += tokens;
+            for (Sentence sentence : chosen) {
+                if (sentence.key.length() >= MIN_REPEATED_SENTENCE_CHARS) {
+                    takenSentences.add(sentence.key);
+                }
+            }
+            taken.add(segment.shingles);
+            packed.add(whole ? segment.content
+                    : Content.from(TextSegment.from(text, segment.content.textSegment().metadata())));
+        }
+        return record(new PackedContext(packed, contents.size(), retrieved, used, duplicates, trimmed,
+                (System.nanoTime() - start) / 1000));
+    }
+
+    public Map<String, Object> stats() {
+        long count = requests.get();
+        long before = retrievedTokens.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("tokenBudget", tokenBudget);
+        stats.put("maxSegmentTokens", maxSegmentTokens);
+        stats.put("requests", count);
+        stats.put("avgRetrievedSegments", count == 0 ? 0.0 : retrievedSegments.get() / (double) count);
+        stats.put("avgPackedSegments", count == 0 ? 0.0 : packedSegments.get() / (double) count);
+        stats.put("avgRetrievedTokens", count == 0 ? 0 : before / count);
+        stats.put("avgPackedTokens", count == 0 ? 0 : packedTokens.get() / count);
+        stats.put("tokensSaved", before - packedTokens.get());
+        stats.put("savedRatio", before == 0 ? 0.0 : (before - packedTokens.get()) / (double) before);
+        stats.put("duplicatesDropped", duplicatesDropped.get());
+        stats.put("segmentsTrimmed", segmentsTrimmed.get());
+        stats.put("avgPackMicros", count == 0 ? 0 : packNanos.get() / count / 1000);
+        return stats;
+    }
+
+    private PackedContext record(PackedContext context) {
+        requests.incrementAndGet();
+        retrievedSegments.addAndGet(context.retrievedSegments());
+        packedSegments.addAndGet(context.contents().size());
+        retrievedTokens.addAndGet(context.retrievedTokens());
+        packedTokens.addAndGet(context.packedTokens());
+        duplicatesDropped.addAndGet(context.duplicatesDropped());
+        segmentsTrimmed.addAndGet(context.segmentsTrimmed());
+        packNanos.addAndGet(context.packMicros() * 1000);
+        return context;
+    }
+
+    /**
+     * The best-scoring sentences, then those nearest them, that fit in {@code room} together with their gap
+     * markers, in their original order. Without any scoring sentence, the leading sentences; a single
+     * sentence too long for the room is cut between words.
+     */
+    private List<Sentence> select(List<Sentence> sentences, int total, Map<String, Double> weights, int room) {
+        int n = sentences.size();
+        double[] own = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (String term : sentences.get(i).terms) {
+                own[i] += weights.getOrDefault(term, 0.0);
+            }
+        }
+        List<Integer> order = new ArrayList<>(n);
+        double[] score = new double[n];
+        for (int i = 0; i < n; i++) {
+            boolean follows = i > 0 && sentences.get(i - 1).index == sentences.get(i).index - 1;
+            score[i] = own[i] + (follows ? CARRY_OVER * own[i - 1] : 0);
+            if (score[i] > 0) {
+                order.add(i);
+            }
+        }
+        order.sort((a, b) -> score[a] != score[b] ? Double.compare(score[b], score[a]) : Integer.compare(a, b));
+        // The rest fill what room is left, nearest to a scoring sentence first, or from the start without one
+        int[] distance = new int[n];
+        List<Integer> rest = new ArrayList<>(n - order.size());
+        for (int i = 0; i < n; i++) {
+            if (score[i] > 0) {
+                continue;
+            }
+            distance[i] = order.isEmpty() ? i : Integer.MAX_VALUE;
+            for (int j : order) {
+                distance[i] = Math.min(distance[i], Math.abs(sentences.get(i).index - sentences.get(j).index));
+            }
+            rest.add(i);
+        }
+        rest.sort((a, b) -> distance[a] != distance[b] ? Integer.compare(distance[a], distance[b]) : Integer.compare(a, b));
+        order.addAll(rest);
+
+        boolean[] chosen = new boolean[n];
+        int left = room;
+        for (int i : order) {
+            if (sentences.get(i).tokens <= left) {
+                chosen[i] = true;
+                left -= sentences.get(i).tokens;
+            }
+        }
+        List<Sentence> selected = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (chosen[i]) {
+                selected.add(sentences.get(i));
+            }
+        }
+        // The markers were not counted above; make room for them by giving up the weakest sentences
+        for (int k = order.size() - 1; k > 0 && selected.size() > 1 && tokens(join(selected, total)) > room; k--) {
+            selected.remove(sentences.get(order.get(k)));
+        }
+        if (selected.isEmpty() && !order.isEmpty() && room >= MIN_PARTIAL_TOKENS) {
+            Sentence cut = truncate(sentences.get(order.get(0)), room - 2 * tokens(GAP));
+            if (cut != null) {
+                selected.add(cut);
+            }
+        }
+        return selected;
+    }
+
+    private int tokens(String text) {
+        return estimator.estimate(text, 0, text.length());
+    }
+
+    private Sentence truncate(Sentence sentence, int room) {
+        String text = sentence.text;
+        int tokens = 0;
+        int end = 0;
+        int wordStart = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || Character.isWhitespace(text.charAt(i))) {
+                // The estimate starts afresh after whitespace, so word estimates add up
+                int word = estimator.estimate(text, wordStart, i);
+                if (tokens + word > room) {
+                    break;
+                }
+                tokens += word;
+                end = i;
+                wordStart = i;
+            }
+        }
+        if (end == 0) {
+            return null;
+        }
+        return new Sentence(text.substring(0, end) + " " + GAP, sentence.index, tokens, sentence.key, sentence.terms);
+    }
+
+    private static String join(List<Sentence> sentences, int total) {
+        StringBuilder text = new StringBuilder();
+        int previous = -1;
+        for (Sentence sentence : sentences) {
+            if (sentence.index != previous + 1) {
+                text.append(text.isEmpty() ? "" : " ").append(GAP);
+            }
+            if (!text.isEmpty()) {
+                text.append(' ');
+            }
+            text.append(sentence.text);
+            previous = sentence.index;
+        }
+        if (previous < total - 1 && !text.toString().endsWith(GAP)) {
+            text.append(' ').append(GAP);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Question terms weighted by inverse sentence frequency across everything retrieved.
+     */
+    private static Map<String, Double> termWeights(String question, List<Segment> segments) {
+        Set<String> terms = new LinkedHashSet<>(Bm25Index.tokenize(question));
+        Map<String, Integer> frequencies = new HashMap<>();
+        int sentences = 0;
+        for (Segment segment : segments) {
+            for (Sentence sentence : segment.sentences) {
+                sentences++;
+                for (String term : sentence.terms) {
+                    if (terms.contains(term)) {
+                        frequencies.merge(term, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        Map<String, Double> weights = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            weights.put(entry.getKey(), Math.log(1 + sentences / (double) entry.getValue()));
+        }
+        return weights;
+    }
+
+    /**
+     * A segment is a near-duplicate when at least {@code duplicateSimilarity} of the word shingles of the
+     * shorter of the two also occur in the other.
+     */
+    private boolean isDuplicate(Set<Long> shingles, List<Set<Long>> taken) {
+        if (shingles.isEmpty()) {
+            return false;
+        }
+        for (Set<Long> other : taken) {
+            if (other.isEmpty()) {
+                continue;
+            }
+            Set<Long> smaller = shingles.size() <= other.size() ? shingles : other;
+            Set<Long> larger = smaller == shingles ? other : shingles;
+            int shared = 0;
+            for (Long shingle : smaller) {
+                if (larger.contains(shingle)) {
+                    shared++;
+                }
+            }
+            if (shared >= duplicateSimilarity * smaller.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<Long> shingles(List<String> words) {
+        Set<Long> shingles = new HashSet<>();
+        if (words.size() < SHINGLE_LENGTH) {
+            for (String word : words) {
+                shingles.add((long) word.hashCode());
+            }
+            return shingles;
+        }
+        for (int i = 0; i + SHINGLE_LENGTH <= words.size(); i++) {
+            long hash = 1;
+            for (int j = i; j < i + SHINGLE_LENGTH; j++) {
+                hash = hash * 1_000_003L + words.get(j).hashCode();
+            }
+            shingles.add(hash);
+        }
+        return shingles;
+    }
+
+    /**
+     * Sentence ranges: ends after {@code .}, {@code !} or {@code ?} followed by whitespace, and at blank
+     * lines. Single line breaks are kept inside sentences, since extracted PDF text breaks lines mid-sentence.
+     */
+    static List<int[]> sentenceBounds(String text) {
+        List<int[]> bounds = new ArrayList<>();
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            boolean end = false;
+            int next = i + 1;
+            if ((c == '.' || c == '!' || c == '?') && next < length && Character.isWhitespace(text.charAt(next))) {
+                end = true;
+            } else if (c == '\n') {
+                int j = next;
+                while (j < length && text.charAt(j) != '\n' && Character.isWhitespace(text.charAt(j))) {
+                    j++;
+                }
+                end = j < length && text.charAt(j) == '\n';
+            }
+            if (end) {
+                addBounds(bounds, text, start, next);
+                start = next;
+            }
+        }
+        addBounds(bounds, text, start, length);
+        return bounds;
+    }
+
+    private static void addBounds(List<int[]> bounds, String text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (start < end) {
+            bounds.add(new int[]{start, end});
+        }
+    }
+
+    private final class Segment {
+
+        private final Content content;
+        private final String text;
+        private final int tokens;
+        private final List<Sentence> sentences = new ArrayList<>();
+        private final Set<Long> shingles;
+
+        private Segment(Content content) {
+            this.content = content;
+            this.text = content.textSegment().text();
+            this.tokens = estimator.estimate(text, 0, text.length());
+            List<String> words = new ArrayList<>();
+            for (int[] bound : sentenceBounds(text)) {
+                String sentence = text.substring(bound[0], bound[1]);
+                List<String> terms = Bm25Index.tokenize(sentence);
+                words.addAll(terms);
+                sentences.add(new Sentence(sentence, sentences.size(), estimator.estimate(text, bound[0], bound[1]),
+                        String.join(" ", terms), new HashSet<>(terms)));
+            }
+            this.shingles = shingles(words);
+        }
+    }
+
+    private record Sentence(String text, int index, int tokens, String key, Set<String> terms) {
+    }
+}
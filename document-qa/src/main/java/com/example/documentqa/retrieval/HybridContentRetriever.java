@@ -0,0 +1,209 @@
+package com.example.documentqa.retrieval;
+
+import com.example.documentqa.ollama.Deadline;
+import com.example.documentqa.store.FilteredSearch;
+import com.example.documentqa.store.SegmentFilter;
+import com.example.documentqa.store.SegmentLookup;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retrieves with BM25 and vector search at once and merges the two rankings by reciprocal rank fusion:
+ * a segment scores {@code 1 / (rrfK + rank)} for each list it appears in. Exact terms such as error
+ * codes or clause numbers are found by the lexical side even when the embedding barely reflects them,
+ * so fewer segments are needed in the prompt to cover both kinds of question.
+ * <p>
+ * The vector search runs on {@code executor} while the calling thread searches the inverted index.
+ * A scoped query applies the same filter to both. The index only returns ids, so the text of segments
+ * that made the final list through the lexical side alone is read from {@code segmentLookup}.
+ */
+public class HybridContentRetriever implements ScopedContentRetriever {
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final EmbeddingModel embeddingModel;
+    private final Bm25Index lexicalIndex;
+    private final SegmentLookup segmentLookup;
+    private final int maxResults;
+    private final double minScore;
+    private final int candidates;
+    private final int rrfK;
+    private final Executor executor;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong scopedQueries = new AtomicLong();
+    private final AtomicLong lexicalNanos = new AtomicLong();
+    private final AtomicLong vectorNanos = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong lexicalOnlyResults = new AtomicLong();
+    private final AtomicLong vectorOnlyResults = new AtomicLong();
+    private final AtomicLong sharedResults = new AtomicLong();
+
+    public HybridContentRetriever(EmbeddingStore<TextSegment> embeddingStore, EmbeddingModel embeddingModel,
+                                  Bm25Index lexicalIndex, SegmentLookup segmentLookup, int maxResults,
+                                  double minScore, int candidates, int rrfK, Executor executor) {
+        this.embeddingStore = embeddingStore;
+        this.embeddingModel = embeddingModel;
+        this.lexicalIndex = lexicalIndex;
+        this.segmentLookup = segmentLookup;
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+        this.candidates = Math.max(candidates, maxResults);
+        this.rrfK = rrfK;
+        this.executor = executor;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query, SegmentFilter filter, RetrievalOptions options) {
+        return retrieveWithCutoffs(query, filter, options).contents();
+    }
+
+    @Override
+    public Retrieval retrieveWithCutoffs(Query query, SegmentFilter filter, RetrievalOptions options) {
+        return retrieve(query, null, filter, options);
+    }
+
+    @Override
+    public Retrieval retrieveWithCutoffs(Query query, Embedding embedding, SegmentFilter filter,
+                                         RetrievalOptions options) {
+        return retrieve(query, embedding, filter, options);
+    }
+
+    /**
+     * Embeds the question on the vector search's thread unless {@code embedding} is given. The cutoffs are
+     * the weakest candidate on each side, or the side's floor while it found fewer candidates than it
+     * searched for.
+     */
+    private Retrieval retrieve(Query query, Embedding embedding, SegmentFilter filter, RetrievalOptions options) {
+        long start = System.nanoTime();
+        int limit = options.maxResults(maxResults);
+        int searched = Math.max(candidates, limit);
+        double floor = options.minScore(minScore);
+        CompletableFuture<List<EmbeddingMatch<TextSegment>>> vectorSearch = CompletableFuture.supplyAsync(Deadline.propagate(() -> {
+            long vectorStart = System.nanoTime();
+            Embedding reference = embedding != null ? embedding : embeddingModel.embed(query.text()).content();
+            List<EmbeddingMatch<TextSegment>> matches = FilteredSearch.findRelevant(embeddingStore, reference,
+                    searched, floor, filter);
+            vectorNanos.addAndGet(System.nanoTime() - vectorStart);
+            return matches;
+        }), executor);
+
+        long lexicalStart = System.nanoTime();
+        List<Bm25Index.Hit> lexical = lexicalIndex.search(query.text(), searched, filter);
+        lexicalNanos.addAndGet(System.nanoTime() - lexicalStart);
+
+        List<EmbeddingMatch<TextSegment>> vector;
+        try {
+            vector = vectorSearch.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+
+        List<Content> contents = fuse(lexical, vector, limit).stream()
+                .map(Content::from)
+                .toList();
+        queries.incrementAndGet();
+        if (!filter.isAll()) {
+            scopedQueries.incrementAndGet();
+        }
+        totalNanos.addAndGet(System.nanoTime() - start);
+        double vectorCutoff = vector.size() < searched ? floor : vector.get(vector.size() - 1).score();
+        double lexicalCutoff = lexical.size() < searched ? 0 : lexical.get(lexical.size() - 1).score();
+        return new Retrieval(contents, vectorCutoff, lexicalCutoff);
+    }
+
+    /**
+     * The {@code limit} best segments by reciprocal rank fusion of the two rankings. Lexical-only entries
+     * are looked up a window at a time; one whose document was deleted since the search is passed over.
+     */
+    List<TextSegment> fuse(List<Bm25Index.Hit> lexical, List<EmbeddingMatch<TextSegment>> vector, int limit) {
+        Map<String, Fused> fused = new LinkedHashMap<>();
+        for (int rank = 0; rank < vector.size(); rank++) {
+            EmbeddingMatch<TextSegment> match = vector.get(rank);
+            Fused entry = fused.computeIfAbsent(match.embeddingId(), id -> new Fused(id, match.embedded()));
+            entry.score += 1.0 / (rrfK + rank + 1);
+            entry.vector = true;
+        }
+        for (int rank = 0; rank < lexical.size(); rank++) {
+            Bm25Index.Hit hit = lexical.get(rank);
+            Fused entry = fused.computeIfAbsent(hit.id(), id -> new Fused(id, null));
+            entry.score += 1.0 / (rrfK + rank + 1);
+            entry.lexical = true;
+        }
+
+        List<Fused> ranked = new ArrayList<>(fused.values());
+        ranked.sort((a, b) -> Double.compare(b.score, a.score));
+        List<TextSegment> segments = new ArrayList<>(limit);
+        int next = 0;
+        while (segments.size() < limit && next < ranked.size()) {
+            List<Fused> window = ranked.subList(next, Math.min(ranked.size(), next + limit - segments.size()));
+            next += window.size();
+            List<String> missing = new ArrayList<>();
+            for (Fused entry : window) {
+                if (entry.segment == null) {
+                    missing.add(entry.id);
+                }
+            }
+            Map<String, TextSegment> found = missing.isEmpty() ? Map.of() : segmentLookup.segments(missing);
+            for (Fused entry : window) {
+                TextSegment segment = entry.segment != null ? entry.segment : found.get(entry.id);
+                if (segment == null) {
+                    continue;
+                }
+                if (entry.lexical && entry.vector) {
+                    sharedResults.incrementAndGet();
+                } else if (entry.lexical) {
+                    lexicalOnlyResults.incrementAndGet();
+                } else {
+                    vectorOnlyResults.incrementAndGet();
+                }
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    public Map<String, Object> stats() {
+        long count = queries.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", "hybrid");
+        stats.put("queries", count);
+        stats.put("scopedQueries", scopedQueries.get());
+        stats.put("avgLexicalMicros", count == 0 ? 0 : lexicalNanos.get() / count / 1000);
+        stats.put("avgVectorMicros", count == 0 ? 0 : vectorNanos.get() / count / 1000);
+        stats.put("avgTotalMicros", count == 0 ? 0 : totalNanos.get() / count / 1000);
+        stats.put("resultsFromBoth", sharedResults.get());
+        stats.put("resultsLexicalOnly", lexicalOnlyResults.get());
+        stats.put("resultsVectorOnly", vectorOnlyResults.get());
+        stats.put("lexicalIndex", lexicalIndex.stats());
+        return stats;
+    }
+
+    private static final class Fused {
+
+        private final String id;
+        private final TextSegment segment;
+        private double score;
+        private boolean lexical;
+        private boolean vector;
+
+        private Fused(String id, TextSegment segment) {
+            this.id = id;
+            this.segment = segment;
+        }
+    }
+}
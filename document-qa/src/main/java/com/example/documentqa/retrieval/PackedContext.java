@@ -0,0 +1,31 @@
+package com.example.documentqa.retrieval;
+
+import dev.langchain4j.rag.content.Content;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The context {@link ContextPacker} assembled for one prompt, with what it cost before and after packing.
+ */
+public record PackedContext(List<Content> contents, int retrievedSegments, int retrievedTokens, int packedTokens,
+                            int duplicatesDropped, int segmentsTrimmed, long packMicros) {
+
+    public int tokensSaved() {
+        return retrievedTokens - packedTokens;
+    }
+
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("retrievedSegments", retrievedSegments);
+        report.put("packedSegments", contents.size());
+        report.put("retrievedTokens", retrievedTokens);
+        report.put("contextTokens", packedTokens);
+        report.put("contextTokensSaved", tokensSaved());
+        report.put("duplicatesDropped", duplicatesDropped);
+        report.put("segmentsTrimmed", segmentsTrimmed);
+        report.put("packMicros", packMicros);
+        return report;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.documentqa.retrieval;
+
+import dev.langchain4j.rag.content.Content;
+
+import java.util.List;
+
+/**
+ * Segments retrieved for a query, with the weakest score a segment needed on each side to be a candidate:
+ * {@code vectorCutoff} is a relevance score, {@code lexicalCutoff} a BM25 score. A segment stored later
+ * that scores below both could not have changed what was retrieved.
+ */
+public record Retrieval(List<Content> contents, double vectorCutoff, double lexicalCutoff) {
+
+    /**
+     * For retrievers that report no cutoffs, so that any new segment counts as possibly retrieved.
+     */
+    public static Retrieval withoutCutoffs(List<Content> contents) {
+        return new Retrieval(contents, Double.NEGATIVE_INFINITY, 0);
+    }
+}
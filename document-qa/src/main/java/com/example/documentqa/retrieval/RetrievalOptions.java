@@ -0,0 +1,36 @@
+package com.example.documentqa.retrieval;
+
+/**
+ * Per-request overrides of the configured retrieval limits; a null field keeps the configured value.
+ */
+public record RetrievalOptions(Integer maxResults, Double minScore) {
+
+    public static final RetrievalOptions DEFAULTS = new RetrievalOptions(null, null);
+
+    static final int MAX_RESULTS_LIMIT = 50;
+
+    /**
+     * Overrides clamped to what retrieval accepts: 1 to {@value #MAX_RESULTS_LIMIT} segments and a
+     * relevance floor between 0 and 1.
+     */
+    public static RetrievalOptions of(Integer maxResults, Double minScore) {
+        if (maxResults == null && minScore == null) {
+            return DEFAULTS;
+        }
+        return new RetrievalOptions(
+                maxResults == null ? null : Math.max(1, Math.min(maxResults, MAX_RESULTS_LIMIT)),
+                minScore == null ? null : Math.max(0.0, Math.min(minScore, 1.0)));
+    }
+
+    public boolean isDefault() {
+        return maxResults == null && minScore == null;
+    }
+
+    public int maxResults(int configured) {
+        return maxResults == null ? configured : maxResults;
+    }
+
+    public double minScore(double configured) {
+        return minScore == null ? configured : minScore;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.documentqa.retrieval;
+
+import com.example.documentqa.store.SegmentFilter;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+
+import java.util.List;
+
+/**
+ * A {@link ContentRetriever} that can restrict retrieval to the segments a {@link SegmentFilter} accepts,
+ * and take per-request {@link RetrievalOptions} in place of its configured limits.
+ */
+public interface ScopedContentRetriever extends ContentRetriever {
+
+    List<Content> retrieve(Query query, SegmentFilter filter, RetrievalOptions options);
+
+    /**
+     * Same as {@link #retrieve(Query, SegmentFilter, RetrievalOptions)}, with the scores a segment stored
+     * later would need to change the result.
+     */
+    default Retrieval retrieveWithCutoffs(Query query, SegmentFilter filter, RetrievalOptions options) {
+        return Retrieval.withoutCutoffs(retrieve(query, filter, options));
+    }
+
+    /**
+     * Same as {@link #retrieveWithCutoffs(Query, SegmentFilter, RetrievalOptions)} for a question the caller
+     * has already embedded, so it is not embedded a second time.
+     */
+    default Retrieval retrieveWithCutoffs(Query query, Embedding embedding, SegmentFilter filter,
+                                          RetrievalOptions options) {
+        return retrieveWithCutoffs(query, filter, options);
+    }
+
+    default List<Content> retrieve(Query query, SegmentFilter filter) {
+        return retrieve(query, filter, RetrievalOptions.DEFAULTS);
+    }
+
+    @Override
+    default List<Content> retrieve(Query query) {
+        return retrieve(query, SegmentFilter.ALL);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.documentqa.retrieval;
+
+import com.example.documentqa.store.FilteredSearch;
+import com.example.documentqa.store.SegmentFilter;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vector-only retrieval, filtered inside the store where the store supports it.
+ */
+public class VectorContentRetriever implements ScopedContentRetriever {
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final EmbeddingModel embeddingModel;
+    private final int maxResults;
+    private final double minScore;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong scopedQueries = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    public VectorContentRetriever(EmbeddingStore<TextSegment> embeddingStore, EmbeddingModel embeddingModel,
+                                  int maxResults, double minScore) {
+        this.embeddingStore = embeddingStore;
+        this.embeddingModel = embeddingModel;
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query, SegmentFilter filter, RetrievalOptions options) {
+        return retrieveWithCutoffs(query, filter, options).contents();
+    }
+
+    @Override
+    public Retrieval retrieveWithCutoffs(Query query, SegmentFilter filter, RetrievalOptions options) {
+        return retrieveWithCutoffs(query, embeddingModel.embed(query.text()).content(), filter, options);
+    }
+
+    /**
+     * The vector cutoff is the weakest match, or the floor while fewer matches were found than asked for;
+     * there is no lexical side, so no BM25 score gets a segment in.
+     */
+    @Override
+    public Retrieval retrieveWithCutoffs(Query query, Embedding embedding, SegmentFilter filter,
+                                         RetrievalOptions options) {
+        long start = System.nanoTime();
+        int limit = options.maxResults(maxResults);
+        double floor = options.minScore(minScore);
+        List<EmbeddingMatch<TextSegment>> matches = FilteredSearch.findRelevant(embeddingStore, embedding, limit,
+                floor, filter);
+        List<Content> contents = matches.stream()
+                .map(match -> Content.from(match.embedded()))
+                .toList();
+        queries.incrementAndGet();
+        if (!filter.isAll()) {
+            scopedQueries.incrementAndGet();
+        }
+        totalNanos.addAndGet(System.nanoTime() - start);
+        double vectorCutoff = matches.size() < limit ? floor : matches.get(matches.size() - 1).score();
+        return new Retrieval(contents, vectorCutoff, Double.POSITIVE_INFINITY);
+    }
+
+    public Map<String, Object> stats() {
+        long count = queries.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", "vector");
+        stats.put("queries", count);
+        stats.put("scopedQueries", scopedQueries.get());
+        stats.put("avgTotalMicros", count == 0 ? 0 : totalNanos.get() / count / 1000);
+        stats.put("nativeFiltering", embeddingStore instanceof FilteredSearch);
+        return stats;
+    }
+}
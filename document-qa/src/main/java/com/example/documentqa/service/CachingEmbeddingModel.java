@@ -0,0 +1,55 @@
+package com.example.documentqa.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves embeddings from the {@link EmbeddingCache} and only sends text it has not seen before to the
+ * wrapped model. Repeated text within one batch is embedded once.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final String modelName;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, String modelName) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.modelName = modelName;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        List<String> keys = new ArrayList<>(segments.size());
+        Map<String, TextSegment> unique = new LinkedHashMap<>();
+        for (TextSegment segment : segments) {
+            String key = EmbeddingCache.key(modelName, segment.text());
+            keys.add(key);
+            unique.putIfAbsent(key, segment);
+        }
+
+        Map<String, Embedding> embeddings = new HashMap<>(cache.getAll(unique.keySet()));
+        List<String> missingKeys = unique.keySet().stream().filter(key -> !embeddings.containsKey(key)).toList();
+        if (!missingKeys.isEmpty()) {
+            List<TextSegment> missing = missingKeys.stream().map(unique::get).toList();
+            List<Embedding> computed = delegate.embedAll(missing).content();
+            Map<String, Embedding> fresh = new HashMap<>();
+            for (int i = 0; i < missingKeys.size(); i++) {
+                fresh.put(missingKeys.get(i), computed.get(i));
+            }
+            cache.putAll(fresh);
+            embeddings.putAll(fresh);
+        }
+
+        return Response.from(keys.stream().map(embeddings::get).toList());
+    }
+}
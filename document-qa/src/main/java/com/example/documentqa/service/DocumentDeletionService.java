@@ -0,0 +1,43 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.model.Document;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Deletes a document everywhere it lives. Its segments are tombstoned in the embedding store and the
+ * lexical index, which hides them from the next query; the space is reclaimed later by
+ * {@link StoreCompactionService}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentDeletionService {
+
+    private final DocumentService documentService;
+    private final IngestionJobService ingestionJobService;
+    private final DocumentSegments documentSegments;
+
+    /**
+     * Deletes the document and returns how many of its embeddings were tombstoned, or empty when there
+     * is no such document.
+     */
+    public Optional<Integer> delete(Long documentId) throws IOException {
+        Optional<Document> document = documentService.findDocument(documentId);
+        if (document.isEmpty()) {
+            return Optional.empty();
+        }
+        ingestionJobService.cancelDocument(documentId);
+
+        // Segments go first, so no answer is built from them once the row is gone
+        int removed = documentSegments.delete(documentId);
+
+        documentService.deleteDocument(document.get());
+        log.info("Deleted document {} and tombstoned {} embeddings", documentId, removed);
+        return Optional.of(removed);
+    }
+}
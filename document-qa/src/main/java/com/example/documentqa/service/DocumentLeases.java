@@ -0,0 +1,116 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.repository.DocumentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Claims documents for processing through leases on the documents table, so the upload path and the work
+ * queue never ingest the same document at once. A lease that is not renewed expires and the document
+ * becomes claimable again, which covers a job that stalls and a node that dies mid-ingestion: it comes
+ * back under a new owner id and picks the document up once the old lease runs out.
+ * <p>
+ * This is crash recovery for a single node, not coordination between several. The embedding store and
+ * the embedded H2 database are local to the process, so a second instance would neither see this
+ * table nor the segments ingested here.
+ */
+@Service
+@Slf4j
+public class DocumentLeases {
+
+    private final DocumentRepository documentRepository;
+    private final String owner;
+    private final Duration leaseDuration;
+    private final Duration retryDelay;
+    private final int maxAttempts;
+
+    public DocumentLeases(DocumentRepository documentRepository,
+                          @Value("${ingestion.queue.node-id:}") String nodeId,
+                          @Value("${ingestion.queue.lease-seconds:120}") long leaseSeconds,
+                          @Value("${ingestion.queue.retry-delay-seconds:60}") long retryDelaySeconds,
+                          @Value("${ingestion.queue.max-attempts:3}") int maxAttempts) {
+        this.documentRepository = documentRepository;
+        this.owner = nodeId.isBlank() ? defaultNodeId() : nodeId;
+        this.leaseDuration = Duration.ofSeconds(leaseSeconds);
+        this.retryDelay = Duration.ofSeconds(retryDelaySeconds);
+        this.maxAttempts = maxAttempts;
+    }
+
+    public String owner() {
+        return owner;
+    }
+
+    public Duration leaseDuration() {
+        return leaseDuration;
+    }
+
+    public List<Long> findClaimable(int limit) {
+        return documentRepository.findClaimableIds(LocalDateTime.now(), maxAttempts, PageRequest.of(0, limit));
+    }
+
+    @Transactional
+    public boolean claim(Long documentId) {
+        LocalDateTime now = LocalDateTime.now();
+        return documentRepository.claim(documentId, owner, now, now.plus(leaseDuration)) == 1;
+    }
+
+    /**
+     * Extends this owner's lease, returning false if it expired and was claimed again in the meantime.
+     */
+    @Transactional
+    public boolean renew(Long documentId) {
+        return documentRepository.renewLease(documentId, owner, LocalDateTime.now().plus(leaseDuration)) == 1;
+    }
+
+    @Transactional
+    public boolean complete(Long documentId) {
+        return documentRepository.completeLease(documentId, owner) == 1;
+    }
+
+    /**
+     * Gives the document back after a failure. It becomes claimable again after the retry delay, until it
+     * has used up its attempts.
+     */
+    @Transactional
+    public void release(Long documentId, String error) {
+        String message = error == null ? null : error.substring(0, Math.min(error.length(), 1000));
+        documentRepository.releaseLease(documentId, owner, LocalDateTime.now().plus(retryDelay), message);
+    }
+
+    /**
+     * Makes every processed document claimable again with a fresh set of attempts, for an embedding store
+     * that starts out empty.
+     */
+    @Transactional
+    public int requeueProcessed() {
+        return documentRepository.requeueProcessed();
+    }
+
+    /**
+     * Marks the document cancelled and drops whatever lease it has without scheduling a retry, so no node
+     * picks it up again.
+     */
+    @Transactional
+    public void cancel(Long documentId) {
+        documentRepository.cancel(documentId);
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.retrieval.Bm25Index;
+import com.example.documentqa.store.DocumentDeletion;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Removes a document's segments from the embedding store and the lexical index together, either for good
+ * when the document is deleted or ahead of ingesting it again. Removal tombstones the segments, which
+ * hides them from the next query; {@link StoreCompactionService} reclaims the space later.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentSegments {
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final Bm25Index lexicalIndex;
+    private final SemanticAnswerCache semanticAnswerCache;
+
+    /**
+     * Removes the document's segments, including any an in-flight ingestion stores later, and returns how
+     * many embeddings were tombstoned.
+     */
+    public int delete(long documentId) {
+        int removed = 0;
+        if (embeddingStore instanceof DocumentDeletion deletion) {
+            removed = deletion.deleteDocument(documentId);
+        } else {
+            log.warn("Embedding store {} cannot delete segments; those of document {} remain until restart",
+                    embeddingStore.getClass().getSimpleName(), documentId);
+        }
+        lexicalIndex.deleteDocument(documentId);
+        semanticAnswerCache.clear();
+        return removed;
+    }
+
+    /**
+     * Removes the segments an earlier attempt stored for the document, so ingesting it again does not
+     * leave two copies. Returns how many embeddings were tombstoned.
+     */
+    public int purge(long documentId) {
+        int removed = 0;
+        if (embeddingStore instanceof DocumentDeletion deletion) {
+            removed = deletion.purgeDocument(documentId);
+        } else {
+            log.warn("Embedding store {} cannot delete segments; an earlier attempt's segments of document {}"
+                    + " remain until restart", embeddingStore.getClass().getSimpleName(), documentId);
+        }
+        int removedTerms = lexicalIndex.purgeDocument(documentId);
+        if (removed > 0 || removedTerms > 0) {
+            semanticAnswerCache.clear();
+            log.info("Purged {} embeddings left by an earlier attempt at document {}", removed, documentId);
+        }
+        return removed;
+    }
+}
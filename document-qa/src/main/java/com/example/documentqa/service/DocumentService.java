@@ -1,29 +1,33 @@
 package com.example.documentqa.service;
 
+import com.example.documentqa.blob.BlobStore;
+import com.example.documentqa.blob.StoredBlob;
+import com.example.documentqa.ingestion.ContentSource;
+import com.example.documentqa.ingestion.IngestionListener;
+import com.example.documentqa.ingestion.IngestionPipeline;
+import com.example.documentqa.ingestion.IngestionResult;
 import com.example.documentqa.model.Document;
+import com.example.documentqa.model.DocumentPage;
+import com.example.documentqa.model.DocumentSummary;
 import com.example.documentqa.repository.DocumentRepository;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 @Service
@@ -32,104 +36,124 @@ import java.util.Map;
 public class DocumentService {
 
     private final DocumentRepository documentRepository;
-    private final EmbeddingStore<TextSegment> embeddingStore;
-    private final EmbeddingModel embeddingModel;
-    private final DocumentSplitter documentSplitter;
+    private final IngestionPipeline ingestionPipeline;
+    private final BlobStore blobStore;
 
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong duplicateUploads = new AtomicLong();
+
+    /**
+     * Streams an uploaded file into the blob store and saves a document referencing it, or returns the
+     * existing document if the same bytes were uploaded before.
+     */
     public Document saveDocument(MultipartFile file) throws IOException {
+        StoredBlob blob;
+        try (InputStream input = file.getInputStream()) {
+            blob = blobStore.store(input);
+        }
+        uploads.incrementAndGet();
+
+        Optional<Document> existing = documentRepository.findFirstByContentHashOrderByIdAsc(blob.hash());
+        if (existing.isPresent()) {
+            return linkDuplicate(file, existing.get());
+        }
+
         Document document = Document.builder()
                 .title(file.getOriginalFilename())
                 .filename(file.getOriginalFilename())
-                .content(file.getBytes())
                 .contentType(file.getContentType())
+                .contentHash(blob.hash())
+                .contentSize(blob.size())
                 .uploadedAt(LocalDateTime.now())
                 .processed(false)
                 .build();
 
-        return documentRepository.save(document);
+        try {
+            return documentRepository.save(document);
+        } catch (DataIntegrityViolationException e) {
+            // An identical upload saved its row between the lookup and this insert
+            Document winner = documentRepository.findFirstByContentHashOrderByIdAsc(blob.hash()).orElseThrow(() -> e);
+            return linkDuplicate(file, winner);
+        }
     }
 
-    public List<Document> getAllDocuments() {
-        return documentRepository.findAll();
+    private Document linkDuplicate(MultipartFile file, Document existing) {
+        duplicateUploads.incrementAndGet();
+        if (existing.isCancelled()) {
+            // Uploading a cancelled document again is a request to ingest it after all
+            existing.setCancelled(false);
+            documentRepository.save(existing);
+        }
+        log.info("Upload {} has the same content as document {}, linking instead of re-processing",
+                file.getOriginalFilename(), existing.getId());
+        return existing;
     }
 
-    @Scheduled(fixedRate = 60000) // Run every minute
-    public void processUnprocessedDocuments() {
-        List<Document> unprocessedDocuments = documentRepository.findByProcessed(false);
-
-        log.info("Found {} unprocessed documents", unprocessedDocuments.size());
-
-        for (Document document : unprocessedDocuments) {
-            try {
-                log.info("Processing document: {}", document.getTitle());
-                processDocument(document);
-
-                document.setProcessed(true);
-                documentRepository.save(document);
-
-                log.info("Successfully processed document: {}", document.getTitle());
-            } catch (Exception e) {
-                log.error("Error processing document {}: {}", document.getTitle(), e.getMessage(), e);
-                // Print full stack trace for better debugging
-                e.printStackTrace();
-            }
-        }
+    public Optional<Document> findDocument(Long id) {
+        return documentRepository.findById(id);
     }
 
-    public void processDocument(Document document) throws IOException {
-        if (!"application/pdf".equals(document.getContentType())) {
-            throw new IllegalArgumentException("Only PDF documents are supported");
+    /**
+     * Deletes the document's row, and its blob unless another document was uploaded with the same bytes.
+     */
+    public void deleteDocument(Document document) throws IOException {
+        documentRepository.delete(document);
+        String contentHash = document.getContentHash();
+        if (contentHash != null && documentRepository.countByContentHash(contentHash) == 0) {
+            blobStore.delete(contentHash);
         }
+    }
 
-        log.info("Starting PDF parsing for document: {}", document.getTitle());
-
-        // Convert byte[] to InputStream
-        InputStream inputStream = new ByteArrayInputStream(document.getContent());
-
-        DocumentParser documentParser = new ApachePdfBoxDocumentParser();
-        dev.langchain4j.data.document.Document parsedDocument = documentParser.parse(inputStream);
-
-        String text = parsedDocument.text();
-        log.info("PDF parsed successfully, text length: {}", text.length());
-
-        // Create much larger chunks to reduce the number of embeddings needed
-        List<TextSegment> segments = new ArrayList<>();
-        int chunkSize = 2000;  // Using larger chunks
+    public Map<String, Object> uploadStats() {
+        long total = uploads.get();
+        long duplicates = duplicateUploads.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("uploads", total);
+        stats.put("duplicateUploads", duplicates);
+        stats.put("duplicateRate", total == 0 ? 0.0 : duplicates / (double) total);
+        return stats;
+    }
 
-        // Split into larger fixed-size chunks
-        for (int i = 0; i < text.length(); i += chunkSize) {
-            int end = Math.min(i + chunkSize, text.length());
-            String chunk = text.substring(i, end).trim();
-            if (!chunk.isEmpty()) {
-                segments.add(TextSegment.from(chunk));
-            }
+    /**
+     * Returns up to {@code limit} documents with ids greater than {@code afterId}, in id order.
+     */
+    public DocumentPage listDocuments(Long afterId, int limit) {
+        // One extra row tells whether another page follows without a count query
+        List<DocumentSummary> rows = documentRepository.findSummariesAfter(
+                afterId == null ? 0L : afterId, PageRequest.of(0, limit + 1));
+        if (rows.size() <= limit) {
+            return new DocumentPage(rows, null);
         }
+        List<DocumentSummary> page = rows.subList(0, limit);
+        return new DocumentPage(List.copyOf(page), page.get(limit - 1).id());
+    }
 
-        log.info("Document split into {} segments", segments.size());
+    public Map<String, Object> documentCounts() {
+        long total = documentRepository.count();
+        long processed = documentRepository.countByProcessed(true);
+        Map<String, Object> counts = new HashMap<>();
+        counts.put("documentCount", total);
+        counts.put("processedDocuments", processed);
+        counts.put("pendingDocuments", total - processed);
+        return counts;
+    }
 
-        if (segments.isEmpty()) {
-            log.warn("No segments extracted from document");
-            return;
+    /**
+     * Hands a stored document to the ingestion pipeline and returns without waiting for it.
+     */
+    public CompletableFuture<IngestionResult> startProcessing(Document document, IngestionListener listener)
+            throws IOException, InterruptedException {
+        if (!"application/pdf".equals(document.getContentType())) {
+            throw new IllegalArgumentException("Only PDF documents are supported");
         }
-
-        // Process one segment at a time to avoid overwhelming Ollama
-        for (int i = 0; i < segments.size(); i++) {
-            try {
-                log.info("Processing segment {} of {}", i+1, segments.size());
-
-                // Create a list with a single segment
-                List<TextSegment> singleSegment = List.of(segments.get(i));
-
-                // Embed and store one segment at a time
-                embeddingStore.addAll(embeddingModel.embedAll(singleSegment).content(), singleSegment);
-
-                log.info("Successfully processed segment {} of {}", i+1, segments.size());
-            } catch (Exception e) {
-                log.error("Error processing segment {} of {}: {}", i+1, segments.size(), e.getMessage(), e);
-                // Continue with the next segment rather than failing completely
-            }
+        String contentHash = document.getContentHash();
+        if (contentHash == null || !blobStore.contains(contentHash)) {
+            throw new IOException("No stored content for document " + document.getTitle());
         }
-
-        log.info("Document processing completed. {} segments were attempted.", segments.size());
+        Path file = blobStore.file(contentHash);
+        ContentSource content = file != null ? ContentSource.of(file) : () -> blobStore.open(contentHash);
+        LocalDateTime uploadedAt = document.getUploadedAt() != null ? document.getUploadedAt() : LocalDateTime.now();
+        return ingestionPipeline.submit(document.getId(), document.getTitle(),
+                uploadedAt.atZone(ZoneId.systemDefault()).toInstant(), content, listener);
     }
 }
\ No newline at end of file
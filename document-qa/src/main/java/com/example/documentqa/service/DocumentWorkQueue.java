@@ -0,0 +1,68 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.model.Document;
+import com.example.documentqa.repository.DocumentRepository;
+import com.example.documentqa.store.SegmentScan;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Picks up documents that are stored but not ingested - uploads whose job was rejected or failed, and
+ * documents whose ingestion was cut short by a crash - and feeds them to the job service as it has room.
+ * <p>
+ * The documents table outlives a restart but the memory, HNSW and off-heap stores do not, so with one
+ * of those every processed document is queued again on startup.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentWorkQueue {
+
+    private final DocumentLeases documentLeases;
+    private final DocumentRepository documentRepository;
+    private final IngestionJobService ingestionJobService;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+
+    @PostConstruct
+    void requeueIfStoreIsEmpty() {
+        if (embeddingStore instanceof SegmentScan) {
+            return;
+        }
+        int requeued = documentLeases.requeueProcessed();
+        if (requeued > 0) {
+            log.info("Embedding store {} starts out empty; queued {} processed documents for ingestion again",
+                    embeddingStore.getClass().getSimpleName(), requeued);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ingestion.queue.poll-interval-ms:10000}")
+    public void poll() {
+        int capacity = ingestionJobService.remainingCapacity();
+        if (capacity == 0) {
+            return;
+        }
+        // Only ids are read here; rows are loaded for the few documents this node can take on
+        List<Long> ids = documentLeases.findClaimable(capacity).stream()
+                .filter(id -> !ingestionJobService.isActive(id))
+                .toList();
+        if (ids.isEmpty()) {
+            return;
+        }
+        log.info("Found {} claimable documents", ids.size());
+        for (Document document : documentRepository.findAllById(ids)) {
+            try {
+                ingestionJobService.submit(document);
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.model.EmbeddingCacheEntry;
+import com.example.documentqa.repository.EmbeddingCacheRepository;
+import com.example.documentqa.util.Hashing;
+import dev.langchain4j.data.embedding.Embedding;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent (model, SHA-256 of text) to vector cache, so text that has been embedded once never goes back
+ * to the embedding model. The table is capped at {@code maxEntries}; the oldest entries go first.
+ */
+@Service
+@Slf4j
+public class EmbeddingCache {
+
+    private final EmbeddingCacheRepository embeddingCacheRepository;
+    private final long maxEntries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public EmbeddingCache(EmbeddingCacheRepository embeddingCacheRepository,
+                          @Value("${embedding.cache.max-entries:200000}") long maxEntries) {
+        this.embeddingCacheRepository = embeddingCacheRepository;
+        this.maxEntries = maxEntries;
+    }
+
+    public static String key(String modelName, String text) {
+        return modelName + ":" + Hashing.sha256Hex(text);
+    }
+
+    /**
+     * Looks up the given keys and returns the cached embeddings that were found.
+     */
+    public Map<String, Embedding> getAll(Collection<String> keys) {
+        Map<String, Embedding> found = new HashMap<>();
+        for (EmbeddingCacheEntry entry : embeddingCacheRepository.findAllById(keys)) {
+            found.put(entry.getCacheKey(), Embedding.from(decode(entry.getVector())));
+        }
+        hits.addAndGet(found.size());
+        misses.addAndGet(keys.size() - found.size());
+        return found;
+    }
+
+    /**
+     * Stores freshly computed embeddings. A failed write is logged and counted but never thrown: the
+     * embeddings are already in hand, and the cache only saves recomputing them later.
+     */
+    public void putAll(Map<String, Embedding> embeddings) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            for (Map.Entry<String, Embedding> entry : embeddings.entrySet()) {
+                embeddingCacheRepository.upsert(entry.getKey(), encode(entry.getValue().vector()), now);
+            }
+        } catch (RuntimeException e) {
+            writeFailures.incrementAndGet();
+            log.warn("Could not cache {} embeddings: {}", embeddings.size(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${embedding.cache.evict-interval-ms:600000}")
+    public void evict() {
+        long excess = embeddingCacheRepository.count() - maxEntries;
+        if (excess > 0) {
+            int deleted = embeddingCacheRepository.deleteOldest(excess);
+            evicted.addAndGet(deleted);
+            log.info("Evicted {} embedding cache entries", deleted);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : hitCount / (double) (hitCount + missCount));
+        stats.put("entries", embeddingCacheRepository.count());
+        stats.put("maxEntries", maxEntries);
+        stats.put("evicted", evicted.get());
+        stats.put("writeFailures", writeFailures.get());
+        return stats;
+    }
+
+    private static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    private static float[] decode(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
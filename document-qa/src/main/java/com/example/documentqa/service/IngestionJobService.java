@@ -0,0 +1,248 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.ingestion.IngestionListener;
+import com.example.documentqa.ingestion.IngestionResult;
+import com.example.documentqa.model.Document;
+import com.example.documentqa.model.IngestionJob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs document ingestion in the background so upload requests return as soon as the file is stored.
+ * Jobs wait in a bounded queue; when it is full, submissions are rejected instead of piling up.
+ * A job only ingests after claiming the document's lease, and renews it while the pipeline works.
+ * Segments stored by an earlier attempt at the document, one that failed part way or whose lease ran out,
+ * are purged before the pipeline stores new ones.
+ */
+@Service
+@Slf4j
+public class IngestionJobService {
+
+    private final DocumentService documentService;
+    private final DocumentLeases documentLeases;
+    private final DocumentSegments documentSegments;
+    private final ThreadPoolExecutor executor;
+    private final int retainedJobs;
+
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+    private final Queue<String> jobOrder = new ConcurrentLinkedQueue<>();
+    private final Map<Long, IngestionJob> activeByDocument = new ConcurrentHashMap<>();
+
+    public IngestionJobService(DocumentService documentService,
+                               DocumentLeases documentLeases,
+                               DocumentSegments documentSegments,
+                               @Value("${ingestion.jobs.workers:2}") int workers,
+                               @Value("${ingestion.jobs.queue-capacity:32}") int queueCapacity,
+                               @Value("${ingestion.jobs.retained:500}") int retainedJobs) {
+        this.documentService = documentService;
+        this.documentLeases = documentLeases;
+        this.documentSegments = documentSegments;
+        this.retainedJobs = retainedJobs;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "ingest-job-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Queues ingestion of a stored document and returns its job. A document that already has a queued or
+     * running job gets that job back. Throws {@link java.util.concurrent.RejectedExecutionException} when
+     * the queue is full.
+     */
+    public synchronized IngestionJob submit(Document document) {
+        IngestionJob active = activeByDocument.get(document.getId());
+        if (active != null && !active.isFinished()) {
+            return active;
+        }
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), document.getId(), document.getTitle());
+        job.setExecution(executor.submit(() -> run(job, document)));
+        jobs.put(job.getId(), job);
+        jobOrder.add(job.getId());
+        activeByDocument.put(document.getId(), job);
+        evictFinished();
+        log.info("Queued ingestion job {} for document {}", job.getId(), document.getId());
+        return job;
+    }
+
+    public Optional<IngestionJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Cancels a queued or running job. The document is marked cancelled so the work queue does not pick it
+     * up again. Segments already stored for a running job stay in the store.
+     */
+    public Optional<IngestionJob> cancel(String id) {
+        IngestionJob job = jobs.get(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (!job.isFinished()) {
+            job.finish(IngestionJob.Status.CANCELLED, null);
+            documentLeases.cancel(job.getDocumentId());
+            if (job.getIngestion() != null) {
+                job.getIngestion().cancel(false);
+            }
+            job.getExecution().cancel(false);
+            executor.purge();
+            activeByDocument.remove(job.getDocumentId(), job);
+            log.info("Cancelled ingestion job {} for document {}", job.getId(), job.getDocumentId());
+        }
+        return Optional.of(job);
+    }
+
+    /**
+     * Cancels the document's queued or running job, if it has one.
+     */
+    public Optional<IngestionJob> cancelDocument(Long documentId) {
+        IngestionJob active = activeByDocument.get(documentId);
+        return active == null ? Optional.empty() : cancel(active.getId());
+    }
+
+    public int remainingCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    public boolean isActive(Long documentId) {
+        IngestionJob job = activeByDocument.get(documentId);
+        return job != null && !job.isFinished();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queuedJobs", executor.getQueue().size());
+        stats.put("runningJobs", executor.getActiveCount());
+        stats.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        stats.put("retainedJobs", jobs.size());
+        stats.put("node", documentLeases.owner());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(IngestionJob job, Document document) {
+        if (!job.start()) {
+            return;
+        }
+        if (!documentLeases.claim(document.getId())) {
+            job.finish(IngestionJob.Status.SKIPPED, "Document is already processed or leased by another worker");
+            activeByDocument.remove(document.getId(), job);
+            return;
+        }
+        try {
+            documentSegments.purge(document.getId());
+            CompletableFuture<IngestionResult> ingestion = documentService.startProcessing(document, new IngestionListener() {
+                @Override
+                public void stageStarted(String stage) {
+                    job.setStage(stage);
+                }
+
+                @Override
+                public void segmentsPlanned(int segments) {
+                    job.setTotalSegments(segments);
+                }
+
+                @Override
+                public void segmentsProcessed(int stored, int failed) {
+                    job.addProcessed(stored, failed);
+                }
+            });
+            job.setIngestion(ingestion);
+            if (job.getStatus() == IngestionJob.Status.CANCELLED) {
+                ingestion.cancel(false);
+            }
+            IngestionResult result = await(document.getId(), ingestion);
+
+            // Segments that could not be embedded or stored leave the document incomplete, so it is retried
+            if (result.getFailedSegments() > 0 || (result.getSegments() > 0 && result.getStoredSegments() == 0)) {
+                String error = result.getFailedSegments() + " of " + result.getSegments()
+                        + " segments could not be embedded or stored";
+                log.warn("Ingestion job {} failed: {}", job.getId(), error);
+                documentLeases.release(document.getId(), error);
+                job.finish(IngestionJob.Status.FAILED, error);
+                return;
+            }
+            if (!documentLeases.complete(document.getId())) {
+                log.warn("Lease on document {} expired before ingestion job {} completed", document.getId(), job.getId());
+            }
+            document.setProcessed(true);
+            job.finish(IngestionJob.Status.COMPLETED, null);
+            log.info("Ingestion job {} completed in {} ms. {} of {} segments stored, {} failed.", job.getId(),
+                    result.getElapsedMillis(), result.getStoredSegments(), result.getSegments(), result.getFailedSegments());
+        } catch (CancellationException e) {
+            // cancel() has already marked the document and dropped the lease; releasing would schedule a retry
+            job.finish(IngestionJob.Status.CANCELLED, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            documentLeases.release(document.getId(), "Interrupted");
+            job.finish(IngestionJob.Status.CANCELLED, null);
+        } catch (ExecutionException e) {
+            log.error("Ingestion job {} failed", job.getId(), e.getCause());
+            documentLeases.release(document.getId(), e.getCause().getMessage());
+            job.finish(IngestionJob.Status.FAILED, e.getCause().getMessage());
+        } catch (Exception e) {
+            log.error("Ingestion job {} failed", job.getId(), e);
+            documentLeases.release(document.getId(), e.getMessage());
+            job.finish(IngestionJob.Status.FAILED, e.getMessage());
+        } finally {
+            activeByDocument.remove(document.getId(), job);
+        }
+    }
+
+    /**
+     * Waits for the pipeline, renewing the lease at a third of its duration so it never lapses while work
+     * is still progressing.
+     */
+    private IngestionResult await(Long documentId, CompletableFuture<IngestionResult> ingestion)
+            throws InterruptedException, ExecutionException {
+        long renewMillis = Math.max(1, documentLeases.leaseDuration().toMillis() / 3);
+        while (true) {
+            try {
+                return ingestion.get(renewMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (!documentLeases.renew(documentId)) {
+                    ingestion.cancel(false);
+                    throw new IllegalStateException("Lease on document " + documentId + " was taken over by another worker");
+                }
+            }
+        }
+    }
+
+    private void evictFinished() {
+        while (jobs.size() > retainedJobs) {
+            String oldest = jobOrder.peek();
+            IngestionJob job = oldest == null ? null : jobs.get(oldest);
+            if (job != null && !job.isFinished()) {
+                break;
+            }
+            jobOrder.poll();
+            if (oldest != null) {
+                jobs.remove(oldest);
+            }
+        }
+    }
+}
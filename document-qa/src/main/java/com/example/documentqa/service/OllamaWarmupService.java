@@ -0,0 +1,123 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.ollama.Lane;
+import com.example.documentqa.ollama.ModelScheduler;
+import com.example.documentqa.ollama.OllamaClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Loads the Ollama model at startup, before the first question pays for it, and again whenever some
+ * endpoint has gone unused for a whole interval, so Ollama's {@code keep_alive} never runs out between
+ * questions. The model is loaded on every chat endpoint and, when embeddings come from Ollama, every
+ * embedding endpoint. Each pool is timed separately: the first warm-up after startup is the cold
+ * figure, later ones the warm figure.
+ * <p>
+ * Warm-ups run in the scheduler's lowest lane, so they never hold up a question.
+ */
+@Service
+@Slf4j
+public class OllamaWarmupService {
+
+    private final OllamaClient ollamaClient;
+    private final ModelScheduler modelScheduler;
+    private final boolean enabled;
+    private final String modelName;
+    private final boolean ollamaEmbeddings;
+    private final long intervalNanos;
+
+    private final Map<String, Target> targets = new LinkedHashMap<>();
+    private long runs;
+    private long failures;
+
+    public OllamaWarmupService(OllamaClient ollamaClient,
+                               ModelScheduler modelScheduler,
+                               @Value("${ollama.warmup.enabled:true}") boolean enabled,
+                               @Value("${ollama.model.name}") String modelName,
+                               @Value("${embedding.mode:ollama}") String embeddingMode,
+                               @Value("${ollama.warmup.interval-ms:600000}") long intervalMillis) {
+        this.ollamaClient = ollamaClient;
+        this.modelScheduler = modelScheduler;
+        this.enabled = enabled;
+        this.modelName = modelName;
+        this.ollamaEmbeddings = "ollama".equalsIgnoreCase(embeddingMode);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    @Scheduled(fixedDelayString = "${ollama.warmup.interval-ms:600000}")
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        long idle = ollamaClient.idleNanos(modelName);
+        if (idle >= 0 && idle < intervalNanos) {
+            return;
+        }
+        synchronized (this) {
+            runs++;
+        }
+        warm("chat", () -> ollamaClient.load(OllamaClient.Pool.CHAT, modelName));
+        if (ollamaEmbeddings) {
+            warm("embedding", () -> ollamaClient.load(OllamaClient.Pool.EMBEDDING, modelName));
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("model", modelName);
+        stats.put("runs", runs);
+        stats.put("failures", failures);
+        Map<String, Object> measured = new LinkedHashMap<>();
+        targets.forEach((name, target) -> {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("warmups", target.warmups);
+            entry.put("coldMillis", target.coldMillis);
+            entry.put("lastMillis", target.lastMillis);
+            entry.put("lastLoadMillis", target.lastLoadMillis);
+            measured.put(name, entry);
+        });
+        stats.put("targets", measured);
+        return stats;
+    }
+
+    private void warm(String name, Supplier<Duration> call) {
+        long start = System.nanoTime();
+        try {
+            Duration load = modelScheduler.call(Lane.INGESTION, call);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            synchronized (this) {
+                Target target = targets.computeIfAbsent(name, key -> new Target());
+                if (target.warmups == 0) {
+                    target.coldMillis = millis;
+                }
+                target.warmups++;
+                target.lastMillis = millis;
+                target.lastLoadMillis = load.toMillis();
+            }
+            log.info("Warmed up {} {} in {} ms (model load {} ms)", modelName, name, millis, load.toMillis());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                failures++;
+            }
+            log.warn("Warm-up of {} {} failed: {}", modelName, name, e.getMessage());
+        }
+    }
+
+    private static final class Target {
+
+        private long warmups;
+        private long coldMillis;
+        private long lastMillis;
+        private long lastLoadMillis;
+    }
+}
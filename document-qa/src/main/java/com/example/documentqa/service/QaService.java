@@ -1,17 +1,15 @@
 package com.example.documentqa.service;
 
-import dev.langchain4j.service.UserMessage;
-import dev.langchain4j.service.SystemMessage;
-
+/**
+ * The prompt questions are answered with. {@link SessionQaService} and {@link StreamingQaService} build
+ * the messages themselves, so the retrieved context can be packed to a token budget before it goes in.
+ */
 public interface QaService {
 
-    @SystemMessage({
-            "You are an enterprise document assistant that answers questions based on the provided context.",
-            "Only use the information from the retrieved documents to answer questions.",
-            "If you don't know the answer based on the provided context, say so clearly.",
-            "Keep answers concise, professional, and factual.",
-            "Format your answers in a readable way using markdown when appropriate.",
-            "If the context is insufficient, just say 'I don't have enough information to answer this question accurately.'"
-    })
-    String answerQuestion(@UserMessage String question);
-}
\ No newline at end of file
+    String SYSTEM_PROMPT = "You are an enterprise document assistant that answers questions based on the provided context.\n"
+            + "Only use the information from the retrieved documents to answer questions.\n"
+            + "If you don't know the answer based on the provided context, say so clearly.\n"
+            + "Keep answers concise, professional, and factual.\n"
+            + "Format your answers in a readable way using markdown when appropriate.\n"
+            + "If the context is insufficient, just say 'I don't have enough information to answer this question accurately.'";
+}
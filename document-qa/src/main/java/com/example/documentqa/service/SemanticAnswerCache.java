@@ -0,0 +1,222 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.ingestion.IngestionPipeline;
+import com.example.documentqa.retrieval.Bm25Index;
+import com.example.documentqa.retrieval.Retrieval;
+import com.example.documentqa.store.HnswEmbeddingStore;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Serves answers to questions that are close enough to one answered before. Questions are embedded and
+ * compared against the cached questions by cosine similarity; the cache is small, so a scan over it is
+ * the index. Entries expire after a TTL and the least recently used go first when the cache is full.
+ * <p>
+ * Each entry keeps the cutoffs of the retrieval its answer was generated from: the weakest vector and BM25
+ * scores among the candidates. When ingestion stores a segment that beats either cutoff for a cached
+ * question, the segment would now be a candidate and might change the context, so the entry is dropped.
+ * Segments that score below both leave it in place.
+ */
+@Service
+@Slf4j
+public class SemanticAnswerCache {
+
+    private final EmbeddingModel embeddingModel;
+    private final IngestionPipeline ingestionPipeline;
+    private final Bm25Index lexicalIndex;
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final int maxEntries;
+    private final Duration ttl;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Bumped on every store write, so an answer generated while segments arrived is not cached
+    private long storeGeneration;
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long evictions;
+
+    public SemanticAnswerCache(EmbeddingModel embeddingModel,
+                               IngestionPipeline ingestionPipeline,
+                               Bm25Index lexicalIndex,
+                               @Value("${qa.cache.enabled:true}") boolean enabled,
+                               @Value("${qa.cache.similarity-threshold:0.92}") double similarityThreshold,
+                               @Value("${qa.cache.max-entries:1000}") int maxEntries,
+                               @Value("${qa.cache.ttl-minutes:60}") long ttlMinutes) {
+        this.embeddingModel = embeddingModel;
+        this.ingestionPipeline = ingestionPipeline;
+        this.lexicalIndex = lexicalIndex;
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntries = maxEntries;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+    }
+
+    @PostConstruct
+    void registerWithPipeline() {
+        ingestionPipeline.addStoreListener((ids, embeddings, segments) -> invalidate(embeddings, segments));
+    }
+
+    /**
+     * Returns the cached answer for a similar question, or asks {@code answerer} and caches its answer
+     * together with the cutoffs of the retrieval behind it. The answerer gets the question's embedding, so
+     * retrieval need not embed the question again.
+     */
+    public String answer(String question, BiFunction<String, Embedding, Generated> answerer) {
+        Embedding embedding = embeddingModel.embed(question).content();
+        if (!enabled) {
+            return answerer.apply(question, embedding).answer();
+        }
+        float[] vector = HnswEmbeddingStore.normalized(embedding.vector());
+        long generation;
+        synchronized (this) {
+            Entry hit = find(vector);
+            if (hit != null) {
+                hits++;
+                log.info("Answer cache hit for '{}' (cached question '{}')", question, hit.question());
+                return hit.answer();
+            }
+            misses++;
+            generation = storeGeneration;
+        }
+
+        Generated generated = answerer.apply(question, embedding);
+        synchronized (this) {
+            if (generation == storeGeneration) {
+                Retrieval retrieval = generated.retrieval();
+                entries.put(question, new Entry(question, vector, generated.answer(), retrieval.vectorCutoff(),
+                        retrieval.lexicalCutoff(), System.nanoTime()));
+                evictOverflow();
+            }
+        }
+        return generated.answer();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        long lookups = hits + misses;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", lookups == 0 ? 0.0 : hits / (double) lookups);
+        stats.put("invalidations", invalidations);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    /**
+     * Drops every entry for which one of the new segments beats a retrieval cutoff.
+     */
+    synchronized void invalidate(List<Embedding> embeddings, List<TextSegment> segments) {
+        storeGeneration++;
+        if (entries.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < embeddings.size(); i++) {
+            float[] segment = HnswEmbeddingStore.normalized(embeddings.get(i).vector());
+            List<Entry> candidates = new ArrayList<>(entries.values());
+            double[] lexicalScores = lexicalIndex.scores(candidates.stream().map(Entry::question).toList(),
+                    segments.get(i).text());
+            for (int e = 0; e < candidates.size(); e++) {
+                Entry entry = candidates.get(e);
+                double vectorScore = RelevanceScore.fromCosineSimilarity(dot(entry.vector(), segment));
+                if (entry.admits(vectorScore, lexicalScores[e])) {
+                    entries.remove(entry.question());
+                    invalidations++;
+                }
+            }
+            if (entries.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops every entry, for when segments are removed: any cached answer may have been built from them.
+     */
+    public synchronized void clear() {
+        storeGeneration++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    private Entry find(float[] vector) {
+        long now = System.nanoTime();
+        Entry best = null;
+        double bestSimilarity = similarityThreshold;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now - entry.createdAt() > ttl.toNanos()) {
+                iterator.remove();
+                evictions++;
+                continue;
+            }
+            double similarity = dot(entry.vector(), vector);
+            if (similarity >= bestSimilarity) {
+                best = entry;
+                bestSimilarity = similarity;
+            }
+        }
+        if (best != null) {
+            // Refreshes the entry's position in access order
+            entries.get(best.question());
+        }
+        return best;
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * An answer fresh from the model, with the retrieval it was generated from.
+     */
+    public record Generated(String answer, Retrieval retrieval) {
+    }
+
+    private record Entry(String question, float[] vector, String answer, double vectorCutoff, double lexicalCutoff,
+                         long createdAt) {
+
+        /**
+         * Whether a segment with these scores would have been a candidate for the question. A segment needs
+         * some BM25 score at all to be a lexical candidate.
+         */
+        private boolean admits(double vectorScore, double lexicalScore) {
+            return vectorScore >= vectorCutoff || (lexicalScore > 0 && lexicalScore >= lexicalCutoff);
+        }
+    }
+}
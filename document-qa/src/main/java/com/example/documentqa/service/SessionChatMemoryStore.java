@@ -0,0 +1,270 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.util.Hashing;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the chat history of each session on the heap, bounded by a session count and an idle timeout.
+ * Sessions past either bound are evicted least recently used first. With a spill directory configured,
+ * evicted sessions are written there as JSON and read back the next time the session asks a question;
+ * spill files nobody comes back for are deleted after {@code qa.memory.spill-retention-hours}.
+ */
+@Component
+@Slf4j
+public class SessionChatMemoryStore implements ChatMemoryStore {
+
+    private final int maxSessions;
+    private final Duration idleTimeout;
+    private final Path spillDirectory;
+    private final Duration spillRetention;
+
+    private final LinkedHashMap<Object, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long approxBytes;
+    private long sizeEvictions;
+    private long idleEvictions;
+    private long spilled;
+    private long restored;
+    private long spillFailures;
+
+    public SessionChatMemoryStore(@Value("${qa.memory.max-sessions:10000}") int maxSessions,
+                                  @Value("${qa.memory.idle-minutes:30}") long idleMinutes,
+                                  @Value("${qa.memory.spill-path:}") String spillPath,
+                                  @Value("${qa.memory.spill-retention-hours:24}") long spillRetentionHours) {
+        this.maxSessions = maxSessions;
+        this.idleTimeout = Duration.ofMinutes(idleMinutes);
+        this.spillDirectory = spillPath.isBlank() ? null : Path.of(spillPath);
+        this.spillRetention = Duration.ofHours(spillRetentionHours);
+        if (spillDirectory != null) {
+            try {
+                Files.createDirectories(spillDirectory);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot create chat memory spill directory " + spillDirectory, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<ChatMessage> getMessages(Object memoryId) {
+        Session session = sessions.get(memoryId);
+        if (session == null) {
+            session = restore(memoryId);
+            if (session == null) {
+                return List.of();
+            }
+            put(memoryId, session);
+        }
+        session.touch();
+        return session.messages();
+    }
+
+    @Override
+    public synchronized void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        put(memoryId, new Session(List.copyOf(messages)));
+        Iterator<Map.Entry<Object, Session>> iterator = sessions.entrySet().iterator();
+        while (sessions.size() > maxSessions && iterator.hasNext()) {
+            Map.Entry<Object, Session> eldest = iterator.next();
+            iterator.remove();
+            approxBytes -= eldest.getValue().bytes();
+            sizeEvictions++;
+            spill(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    @Override
+    public synchronized void deleteMessages(Object memoryId) {
+        Session removed = sessions.remove(memoryId);
+        if (removed != null) {
+            approxBytes -= removed.bytes();
+        }
+        if (spillDirectory != null) {
+            try {
+                Files.deleteIfExists(spillFile(memoryId));
+            } catch (IOException e) {
+                log.warn("Could not delete spilled chat memory for session {}", memoryId, e);
+            }
+        }
+    }
+
+    /**
+     * Evicts sessions idle for longer than the timeout and deletes expired spill files.
+     */
+    @Scheduled(fixedDelayString = "${qa.memory.sweep-interval-ms:60000}")
+    public void sweep() {
+        synchronized (this) {
+            long cutoff = System.nanoTime() - idleTimeout.toNanos();
+            Iterator<Map.Entry<Object, Session>> iterator = sessions.entrySet().iterator();
+            // Access order puts the least recently used first, so the scan stops at the first active session
+            while (iterator.hasNext()) {
+                Map.Entry<Object, Session> entry = iterator.next();
+                if (entry.getValue().lastAccess() - cutoff > 0) {
+                    break;
+                }
+                iterator.remove();
+                approxBytes -= entry.getValue().bytes();
+                idleEvictions++;
+                spill(entry.getKey(), entry.getValue());
+            }
+        }
+        if (spillDirectory != null) {
+            deleteExpiredSpills();
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeSessions", sessions.size());
+        stats.put("maxSessions", maxSessions);
+        stats.put("approxBytes", approxBytes);
+        stats.put("sizeEvictions", sizeEvictions);
+        stats.put("idleEvictions", idleEvictions);
+        stats.put("spillEnabled", spillDirectory != null);
+        stats.put("spilled", spilled);
+        stats.put("restored", restored);
+        stats.put("spillFailures", spillFailures);
+        return stats;
+    }
+
+    private void put(Object memoryId, Session session) {
+        Session previous = sessions.put(memoryId, session);
+        if (previous != null) {
+            approxBytes -= previous.bytes();
+        }
+        approxBytes += session.bytes();
+    }
+
+    private void spill(Object memoryId, Session session) {
+        if (spillDirectory == null || session.messages().isEmpty()) {
+            return;
+        }
+        Path file = spillFile(memoryId);
+        Path staging = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(staging, ChatMessageSerializer.messagesToJson(session.messages()), StandardCharsets.UTF_8);
+            Files.move(staging, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            spilled++;
+        } catch (IOException e) {
+            spillFailures++;
+            log.warn("Could not spill chat memory for session {}; its history is dropped", memoryId, e);
+        }
+    }
+
+    private Session restore(Object memoryId) {
+        if (spillDirectory == null) {
+            return null;
+        }
+        Path file = spillFile(memoryId);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            List<ChatMessage> messages = ChatMessageDeserializer.messagesFromJson(Files.readString(file, StandardCharsets.UTF_8));
+            Files.delete(file);
+            restored++;
+            return new Session(List.copyOf(messages));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not restore spilled chat memory for session {}", memoryId, e);
+            return null;
+        }
+    }
+
+    private void deleteExpiredSpills() {
+        long cutoff = System.currentTimeMillis() - spillRetention.toMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDirectory, "*.json")) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not clean up chat memory spill directory {}", spillDirectory, e);
+        }
+    }
+
+    // Session ids come from clients, so they are hashed rather than used as file names
+    private Path spillFile(Object memoryId) {
+        return spillDirectory.resolve(Hashing.sha256Hex(String.valueOf(memoryId)) + ".json");
+    }
+
+    private static final class Session {
+
+        private final List<ChatMessage> messages;
+        private final long bytes;
+        private long lastAccess = System.nanoTime();
+
+        private Session(List<ChatMessage> messages) {
+            this.messages = messages;
+            long chars = 0;
+            for (ChatMessage message : messages) {
+                chars += chars(message);
+            }
+            // Two bytes per char plus a rough per-message object overhead
+            this.bytes = chars * 2 + messages.size() * 64L;
+        }
+
+        private static long chars(ChatMessage message) {
+            return switch (message.type()) {
+                case SYSTEM -> length(((SystemMessage) message).text());
+                case USER -> textLength((UserMessage) message);
+                // Null when the model asked for tools instead of answering
+                case AI -> length(((AiMessage) message).text());
+                case TOOL_EXECUTION_RESULT -> length(((ToolExecutionResultMessage) message).text());
+            };
+        }
+
+        private static long textLength(UserMessage message) {
+            long chars = 0;
+            for (Content content : message.contents()) {
+                if (content instanceof TextContent text) {
+                    chars += text.text().length();
+                }
+            }
+            return chars;
+        }
+
+        private static long length(String text) {
+            return text == null ? 0 : text.length();
+        }
+
+        private List<ChatMessage> messages() {
+            return messages;
+        }
+
+        private long bytes() {
+            return bytes;
+        }
+
+        private long lastAccess() {
+            return lastAccess;
+        }
+
+        private void touch() {
+            lastAccess = System.nanoTime();
+        }
+    }
+}
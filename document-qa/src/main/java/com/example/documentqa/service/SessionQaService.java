@@ -0,0 +1,116 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.retrieval.ContextPacker;
+import com.example.documentqa.retrieval.PackedContext;
+import com.example.documentqa.retrieval.Retrieval;
+import com.example.documentqa.retrieval.RetrievalOptions;
+import com.example.documentqa.retrieval.ScopedContentRetriever;
+import com.example.documentqa.store.SegmentFilter;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
+import dev.langchain4j.rag.query.Query;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Answers questions within a conversation and questions scoped to some documents. An unscoped first
+ * question with the configured retrieval limits is answered like any other, through the answer cache;
+ * follow-ups carry the session's history, and scoped questions or questions with their own limits
+ * retrieve differently, so all of those bypass it. The retrieved segments are packed to the context
+ * token budget before they go into the prompt.
+ * <p>
+ * Only the plain question and the answer are remembered, not the retrieved context, so a session's
+ * window holds turns rather than document excerpts. This is also why follow-ups are prompted here rather
+ * than through an {@code AiServices} proxy with a {@code @MemoryId}, which would store the augmented
+ * message and keep a memory object per session id for the life of the proxy.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SessionQaService {
+
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final ChatLanguageModel chatLanguageModel;
+    private final ScopedContentRetriever contentRetriever;
+    private final ContextPacker contextPacker;
+    private final ChatMemoryProvider chatMemoryProvider;
+    private final DefaultContentInjector contentInjector = new DefaultContentInjector();
+
+    public String answer(String sessionId, String question) {
+        return answer(sessionId, question, SegmentFilter.ALL, RetrievalOptions.DEFAULTS).text();
+    }
+
+    /**
+     * Answers within the session, or without history when {@code sessionId} is null, retrieving only
+     * segments the filter accepts, within the given limits.
+     */
+    public Answer answer(String sessionId, String question, SegmentFilter filter, RetrievalOptions options) {
+        ChatMemory memory = sessionId == null ? null : chatMemoryProvider.get(sessionId);
+        List<ChatMessage> history = memory == null ? List.of() : memory.messages();
+        Answer answer;
+        if (history.isEmpty() && filter.isAll() && options.isDefault()) {
+            AtomicReference<Answer> generated = new AtomicReference<>();
+            String text = semanticAnswerCache.answer(question, (q, embedding) -> {
+                Retrieval retrieval = contentRetriever.retrieveWithCutoffs(Query.from(q), embedding, filter, options);
+                Answer fresh = generate(List.of(), q, retrieval.contents());
+                generated.set(fresh);
+                return new SemanticAnswerCache.Generated(fresh.text(), retrieval);
+            });
+            answer = generated.get() != null ? generated.get() : new Answer(text, null, 0, null);
+        } else {
+            answer = generate(history, question, contentRetriever.retrieve(Query.from(question), filter, options));
+        }
+        if (memory != null) {
+            memory.add(UserMessage.from(question));
+            memory.add(AiMessage.from(answer.text()));
+        }
+        return answer;
+    }
+
+    private Answer generate(List<ChatMessage> history, String question, List<Content> retrieved) {
+        PackedContext context = contextPacker.pack(question, retrieved);
+        long start = System.nanoTime();
+        Response<AiMessage> response = chatLanguageModel.generate(prompt(history, context.contents(), question));
+        long generationMillis = (System.nanoTime() - start) / 1_000_000;
+        Integer promptTokens = response.tokenUsage() == null ? null : response.tokenUsage().inputTokenCount();
+        log.info("Answered with {} of {} retrieved segments, context {} tokens ({} saved), prompt {} tokens, generation {} ms",
+                context.contents().size(), context.retrievedSegments(), context.packedTokens(), context.tokensSaved(),
+                promptTokens, generationMillis);
+        return new Answer(response.content().text(), context, generationMillis, promptTokens);
+    }
+
+    /**
+     * The system prompt, the session's earlier turns, then the question with its retrieved context.
+     */
+    List<ChatMessage> prompt(List<ChatMessage> history, List<Content> contents, String question) {
+        List<ChatMessage> messages = new ArrayList<>(history.size() + 2);
+        messages.add(SystemMessage.from(QaService.SYSTEM_PROMPT));
+        messages.addAll(history);
+        messages.add(contentInjector.inject(contents, UserMessage.from(question)));
+        return messages;
+    }
+
+    /**
+     * An answer with the context it was generated from; {@code context} is null when it came from the
+     * answer cache, and {@code promptTokens} when the model does not report token usage.
+     */
+    public record Answer(String text, PackedContext context, long generationMillis, Integer promptTokens) {
+
+        public boolean cached() {
+            return context == null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.retrieval.Bm25Index;
+import com.example.documentqa.store.DocumentDeletion;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rewrites the embedding store and the lexical index without the segments of deleted documents once
+ * enough tombstones have built up. Both indexes keep answering queries from their old copy while the
+ * new one is built.
+ */
+@Service
+@Slf4j
+public class StoreCompactionService {
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final Bm25Index lexicalIndex;
+    private final int minTombstones;
+    private final double minTombstoneRatio;
+
+    private long runs;
+    private long failures;
+
+    public StoreCompactionService(EmbeddingStore<TextSegment> embeddingStore,
+                                  Bm25Index lexicalIndex,
+                                  @Value("${embedding.store.compaction.min-tombstones:1000}") int minTombstones,
+                                  @Value("${embedding.store.compaction.min-tombstone-ratio:0.1}") double minTombstoneRatio) {
+        this.embeddingStore = embeddingStore;
+        this.lexicalIndex = lexicalIndex;
+        this.minTombstones = minTombstones;
+        this.minTombstoneRatio = minTombstoneRatio;
+    }
+
+    @Scheduled(fixedDelayString = "${embedding.store.compaction.interval-ms:300000}")
+    public void compactIfNeeded() {
+        if (embeddingStore instanceof DocumentDeletion store) {
+            compact("embedding store", store);
+        }
+        compact("lexical index", lexicalIndex);
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("runs", runs);
+        stats.put("failures", failures);
+        stats.put("minTombstones", minTombstones);
+        stats.put("minTombstoneRatio", minTombstoneRatio);
+        return stats;
+    }
+
+    private void compact(String name, DocumentDeletion index) {
+        int tombstones = index.tombstones();
+        if (!due(tombstones, index.liveSegments())) {
+            return;
+        }
+        log.info("Compacting {} with {} tombstoned segments", name, tombstones);
+        try {
+            index.compact();
+            synchronized (this) {
+                runs++;
+            }
+        } catch (Exception e) {
+            log.error("Compacting {} failed", name, e);
+            synchronized (this) {
+                failures++;
+            }
+        }
+    }
+
+    // Either threshold is enough: many tombstones in a large store, or a large share of a small one
+    private boolean due(int tombstones, int live) {
+        if (tombstones == 0) {
+            return false;
+        }
+        return tombstones >= minTombstones || tombstones >= minTombstoneRatio * (tombstones + live);
+    }
+}
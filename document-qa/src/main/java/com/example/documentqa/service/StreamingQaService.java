@@ -0,0 +1,247 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.ollama.CancellableStreamingChatModel;
+import com.example.documentqa.ollama.Deadline;
+import com.example.documentqa.retrieval.ContextPacker;
+import com.example.documentqa.retrieval.PackedContext;
+import com.example.documentqa.retrieval.RetrievalOptions;
+import com.example.documentqa.retrieval.ScopedContentRetriever;
+import com.example.documentqa.store.SegmentFilter;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
+import dev.langchain4j.rag.query.Query;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers questions over Server-Sent Events. The sources go out first, as packed into the prompt, then
+ * the answer token by token as the model produces it, then a {@code done} event with the timings and
+ * context sizes. The prompt is the one {@link SessionQaService} sends, built here because retrieval has
+ * to happen before generation starts.
+ */
+@Service
+@Slf4j
+public class StreamingQaService {
+
+    private static final int SOURCE_EXCERPT_CHARS = 300;
+
+    private final StreamingChatLanguageModel streamingChatLanguageModel;
+    private final ScopedContentRetriever contentRetriever;
+    private final ContextPacker contextPacker;
+    private final ChatMemoryProvider chatMemoryProvider;
+    private final DefaultContentInjector contentInjector = new DefaultContentInjector();
+    private final ExecutorService executor;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalTimeToFirstTokenMillis = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+
+    public StreamingQaService(StreamingChatLanguageModel streamingChatLanguageModel,
+                              ScopedContentRetriever contentRetriever,
+                              ContextPacker contextPacker,
+                              ChatMemoryProvider chatMemoryProvider,
+                              @Value("${qa.stream.workers:4}") int workers) {
+        this.streamingChatLanguageModel = streamingChatLanguageModel;
+        this.contentRetriever = contentRetriever;
+        this.contextPacker = contextPacker;
+        this.chatMemoryProvider = chatMemoryProvider;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "qa-stream-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts answering on a worker thread and returns the emitter straight away. With a session id, the
+     * session's history goes into the prompt and the completed answer is added to it. Retrieval only
+     * considers segments the filter accepts, within the given limits. The worker keeps the caller's
+     * {@link Deadline}, if any.
+     */
+    public SseEmitter ask(String sessionId, String question, SegmentFilter filter, RetrievalOptions options,
+                          long timeoutMillis) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        requests.incrementAndGet();
+        ChatMemory memory = sessionId == null ? null : chatMemoryProvider.get(sessionId);
+        executor.execute(Deadline.propagate(() -> answer(memory, question, filter, options, new EventSink(emitter))));
+        return emitter;
+    }
+
+    public Map<String, Object> stats() {
+        long done = completed.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("completed", done);
+        stats.put("avgTimeToFirstTokenMillis", done == 0 ? 0 : totalTimeToFirstTokenMillis.get() / done);
+        stats.put("avgTotalMillis", done == 0 ? 0 : totalLatencyMillis.get() / done);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void answer(ChatMemory memory, String question, SegmentFilter filter, RetrievalOptions options,
+                        EventSink sink) {
+        long start = System.nanoTime();
+        PackedContext context;
+        try {
+            context = contextPacker.pack(question, contentRetriever.retrieve(Query.from(question), filter, options));
+        } catch (Exception e) {
+            log.error("Retrieval failed for streamed question", e);
+            sink.fail(e);
+            return;
+        }
+        long retrievalMillis = (System.nanoTime() - start) / 1_000_000;
+        List<Content> contents = context.contents();
+        sink.send("sources", contents.stream().map(StreamingQaService::source).toList());
+
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(SystemMessage.from(QaService.SYSTEM_PROMPT));
+        if (memory != null) {
+            messages.addAll(memory.messages());
+        }
+        messages.add(contentInjector.inject(contents, UserMessage.from(question)));
+        AtomicLong firstToken = new AtomicLong();
+        StreamingResponseHandler<AiMessage> handler = new StreamingResponseHandler<>() {
+            @Override
+            public void onNext(String token) {
+                firstToken.compareAndSet(0, System.nanoTime());
+                sink.send("token", token);
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                long end = System.nanoTime();
+                long timeToFirstToken = ((firstToken.get() == 0 ? end : firstToken.get()) - start) / 1_000_000;
+                long total = (end - start) / 1_000_000;
+                completed.incrementAndGet();
+                totalTimeToFirstTokenMillis.addAndGet(timeToFirstToken);
+                totalLatencyMillis.addAndGet(total);
+
+                Map<String, Object> timings = new LinkedHashMap<>();
+                timings.put("retrievalMillis", retrievalMillis);
+                timings.put("timeToFirstTokenMillis", timeToFirstToken);
+                timings.put("totalMillis", total);
+                timings.putAll(context.report());
+                if (response != null && response.tokenUsage() != null) {
+                    timings.put("promptTokens", response.tokenUsage().inputTokenCount());
+                    timings.put("outputTokens", response.tokenUsage().outputTokenCount());
+                }
+                if (memory != null && response != null && response.content() != null) {
+                    memory.add(UserMessage.from(question));
+                    memory.add(response.content());
+                }
+                sink.send("done", timings);
+                sink.complete();
+                log.info("Streamed answer: retrieval {} ms, first token {} ms, total {} ms, context {} tokens ({} saved)",
+                        retrievalMillis, timeToFirstToken, total, context.packedTokens(), context.tokensSaved());
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                log.error("Streaming generation failed", error);
+                sink.fail(error);
+            }
+        };
+        try {
+            if (streamingChatLanguageModel instanceof CancellableStreamingChatModel cancellable) {
+                sink.onClose(cancellable.stream(messages, handler));
+            } else {
+                streamingChatLanguageModel.generate(messages, handler);
+            }
+        } catch (RuntimeException e) {
+            // No slot before the deadline, or Ollama is failing and the call was not made
+            log.warn("Streamed question not answered: {}", e.getMessage());
+            sink.fail(e);
+        }
+    }
+
+    private static Map<String, Object> source(Content content) {
+        String text = content.textSegment().text();
+        Map<String, Object> source = new LinkedHashMap<>(content.textSegment().metadata().asMap());
+        source.put("excerpt", text.length() <= SOURCE_EXCERPT_CHARS ? text : text.substring(0, SOURCE_EXCERPT_CHARS) + "...");
+        return source;
+    }
+
+    /**
+     * Serializes sends from the model's callback thread and stops sending once the client has gone away.
+     * Closing also stops the generation, so an abandoned answer does not hold its model slot.
+     */
+    private static final class EventSink {
+
+        private final SseEmitter emitter;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private Runnable cancel;
+
+        private EventSink(SseEmitter emitter) {
+            this.emitter = emitter;
+            emitter.onCompletion(this::close);
+            emitter.onTimeout(this::close);
+            emitter.onError(error -> close());
+        }
+
+        private synchronized void onClose(Runnable cancel) {
+            this.cancel = cancel;
+            if (closed.get()) {
+                cancel.run();
+            }
+        }
+
+        private synchronized void close() {
+            closed.set(true);
+            if (cancel != null) {
+                cancel.run();
+            }
+        }
+
+        private synchronized void send(String name, Object data) {
+            if (closed.get()) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name(name).data(data));
+            } catch (IOException | IllegalStateException e) {
+                close();
+            }
+        }
+
+        private synchronized void complete() {
+            if (closed.compareAndSet(false, true)) {
+                emitter.complete();
+            }
+        }
+
+        private synchronized void fail(Throwable error) {
+            send("error", Map.of("message", String.valueOf(error.getMessage())));
+            complete();
+        }
+    }
+}
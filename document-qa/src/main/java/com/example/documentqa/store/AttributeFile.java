@@ -0,0 +1,59 @@
+package com.example.documentqa.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed-size records of document id and upload time, one per store position, so the filter attributes
+ * of a reopened store are read in one pass instead of decoding every segment in the log.
+ */
+class AttributeFile implements Closeable {
+
+    private static final int RECORD_BYTES = 2 * Long.BYTES;
+
+    private final FileChannel channel;
+
+    AttributeFile(Path file) throws IOException {
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Loads up to {@code count} records into {@code attributes} and returns how many the file held.
+     */
+    int load(SegmentAttributes attributes, int count) throws IOException {
+        int stored = (int) Math.min(count, channel.size() / RECORD_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(stored * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        for (int i = 0; i < stored; i++) {
+            attributes.set(i, buffer.getLong(), buffer.getLong());
+        }
+        channel.truncate(stored * (long) RECORD_BYTES);
+        return stored;
+    }
+
+    void write(int position, long documentId, long uploadedAt) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(documentId).putLong(uploadedAt).flip();
+        long offset = position * (long) RECORD_BYTES;
+        while (record.hasRemaining()) {
+            channel.write(record, offset + record.position());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.documentqa.store;
+
+import java.io.IOException;
+
+/**
+ * Implemented by indexes that can drop a document's segments. Deletion only tombstones them, which
+ * hides them from searches at once; {@link #compact()} later rebuilds the index without them.
+ */
+public interface DocumentDeletion {
+
+    /**
+     * Tombstones every segment of the document and returns how many there were.
+     */
+    int deleteDocument(long documentId);
+
+    /**
+     * Tombstones the segments the document has now but keeps accepting new ones, for when it is about to
+     * be ingested again. Returns how many there were.
+     */
+    int purgeDocument(long documentId);
+
+    /**
+     * Segments tombstoned but still taking space.
+     */
+    int tombstones();
+
+    /**
+     * Live segments, not counting tombstones.
+     */
+    int liveSegments();
+
+    /**
+     * Rewrites the index without its tombstoned segments while searches carry on against the old copy.
+     * Returns the number of segments dropped.
+     */
+    int compact() throws IOException;
+}
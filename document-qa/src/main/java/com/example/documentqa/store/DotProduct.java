@@ -0,0 +1,57 @@
+package com.example.documentqa.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Dot product of float vectors, the inner loop of every exact search. {@link #best()} uses the JDK's
+ * incubating Vector API when the JVM was started with {@code --add-modules jdk.incubator.vector}, and an
+ * unrolled scalar loop otherwise.
+ */
+@Slf4j
+abstract class DotProduct {
+
+    static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final DotProduct BEST = select();
+
+    static DotProduct best() {
+        return BEST;
+    }
+
+    static DotProduct scalar() {
+        return new ScalarDotProduct();
+    }
+
+    /**
+     * The Vector API kernel, or null when the module is not available to this JVM.
+     */
+    static DotProduct simd() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return new SimdDotProduct();
+        } catch (LinkageError e) {
+            log.warn("Vector API is present but unusable, using the scalar dot product", e);
+            return null;
+        }
+    }
+
+    abstract String name();
+
+    /**
+     * Dot product over the length of {@code a}; {@code b} must be at least as long.
+     */
+    abstract float dot(float[] a, float[] b);
+
+    private static DotProduct select() {
+        DotProduct simd = simd();
+        if (simd != null) {
+            log.info("Exact vector scoring uses the {} kernel", simd.name());
+            return simd;
+        }
+        log.info("Exact vector scoring uses the scalar kernel; start the JVM with --add-modules {} to use SIMD",
+                VECTOR_MODULE);
+        return scalar();
+    }
+}
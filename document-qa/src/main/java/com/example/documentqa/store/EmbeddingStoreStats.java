@@ -0,0 +1,11 @@
+package com.example.documentqa.store;
+
+import java.util.Map;
+
+/**
+ * Implemented by the embedding stores in this package so /diagnostics can report on whichever one is configured.
+ */
+public interface EmbeddingStoreStats {
+
+    Map<String, Object> stats();
+}
@@ -0,0 +1,50 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implemented by stores that apply a {@link SegmentFilter} before scoring, so a scoped search only
+ * touches the vectors of the selected segments.
+ */
+public interface FilteredSearch {
+
+    List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                    SegmentFilter filter);
+
+    /**
+     * Searches {@code store} with the filter, natively where the store supports it. Other stores are
+     * searched unfiltered for a widening number of matches that are then filtered by segment metadata,
+     * which can miss matches for very selective filters.
+     */
+    static List<EmbeddingMatch<TextSegment>> findRelevant(EmbeddingStore<TextSegment> store, Embedding referenceEmbedding,
+                                                          int maxResults, double minScore, SegmentFilter filter) {
+        if (filter.isAll()) {
+            return store.findRelevant(referenceEmbedding, maxResults, minScore);
+        }
+        if (store instanceof FilteredSearch filtered) {
+            return filtered.findRelevant(referenceEmbedding, maxResults, minScore, filter);
+        }
+        List<EmbeddingMatch<TextSegment>> accepted = new ArrayList<>();
+        for (int fetch = maxResults * 8; ; fetch *= 8) {
+            List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(referenceEmbedding, fetch, minScore);
+            accepted.clear();
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                if (match.embedded() != null && filter.matches(match.embedded().metadata())) {
+                    accepted.add(match);
+                    if (accepted.size() == maxResults) {
+                        return accepted;
+                    }
+                }
+            }
+            if (matches.size() < fetch || fetch >= maxResults * 512) {
+                return accepted;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link SegmentLookup} for stores that cannot read segments back by id, such as langchain4j's in-memory
+ * store. It holds references to the segments handed to the store, not copies, so it adds a map entry per
+ * segment and no text.
+ */
+public class HeapSegmentLookup implements SegmentLookup {
+
+    private final Map<String, TextSegment> segments = new ConcurrentHashMap<>();
+
+    public void addAll(List<String> ids, List<TextSegment> textSegments) {
+        for (int i = 0; i < ids.size(); i++) {
+            segments.put(ids.get(i), textSegments.get(i));
+        }
+    }
+
+    @Override
+    public Map<String, TextSegment> segments(Collection<String> ids) {
+        Map<String, TextSegment> found = new HashMap<>();
+        for (String id : ids) {
+            TextSegment segment = segments.get(id);
+            if (segment != null) {
+                found.put(id, segment);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link EmbeddingStore} backed by an {@link HnswIndex}, so a question visits a few hundred vectors
+ * instead of scoring all of them. Vectors are normalized on insert and the normalized copy is what
+ * matches return.
+ * <p>
+ * Filtered searches look up the matching nodes by document id and upload time first. A selection small
+ * enough to score outright is scored exactly; a larger one is searched through the graph with the
+ * selection as a bitmap and a candidate list widened by how much of the index it excludes.
+ * <p>
+ * Deleted documents stay in the graph as tombstones, which searches pass through but never return, so
+ * the graph keeps its connectivity. {@link #compact()} builds a new graph from the live nodes in the
+ * background and swaps it in; searches keep using the old graph until then.
+ */
+@Slf4j
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment>, EmbeddingStoreStats, FilteredSearch,
+        SegmentLookup, DocumentDeletion {
+
+    // A selection up to this many times efSearch is cheaper to score exactly than to search through the graph
+    private static final int EXACT_FACTOR = 8;
+    private static final int MAX_FILTERED_EF = 4096;
+
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    // Inserts and deletes share the read lock; compaction takes the write lock to copy the tail and swap
+    private final ReadWriteLock writeLock = new ReentrantReadWriteLock();
+    private final Object compactionLock = new Object();
+    private volatile Graph graph;
+
+    private long compactions;
+    private long compactedNodes;
+    private long lastCompactionMillis;
+
+    public HnswEmbeddingStore(int m, int efConstruction, int efSearch) {
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.graph = new Graph(new HnswIndex(m, efConstruction), new SegmentAttributes(), new Tombstones(),
+                new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        insert(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        insert(id, embedding, textSegment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (textSegments != null && textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("The list of embeddings and embedded must have the same size");
+        }
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            String id = UUID.randomUUID().toString();
+            insert(id, embeddings.get(i), textSegments == null ? null : textSegments.get(i));
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return findRelevant(referenceEmbedding, maxResults, minScore, efSearch);
+    }
+
+    /**
+     * Same as {@link #findRelevant(Embedding, int, double)} with an explicit candidate list size, so callers can
+     * trade latency for recall per query.
+     */
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults,
+                                                          double minScore, int ef) {
+        Graph current = graph;
+        float[] query = normalized(referenceEmbedding.vector());
+        BitSet deleted = current.tombstones().snapshot();
+        if (deleted.isEmpty()) {
+            return matches(current, current.index().search(query, maxResults, ef, null), minScore);
+        }
+        int total = current.index().size();
+        int live = Math.max(1, total - current.tombstones().count());
+        int widened = (int) Math.min(MAX_FILTERED_EF, (long) ef * total / live);
+        return matches(current, current.index().search(query, maxResults, Math.max(ef, widened),
+                id -> !deleted.get(id)), minScore);
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                           SegmentFilter filter) {
+        if (filter.isAll()) {
+            return findRelevant(referenceEmbedding, maxResults, minScore, efSearch);
+        }
+        Graph current = graph;
+        int total = current.index().size();
+        BitSet deleted = current.tombstones().snapshot();
+        BitSet selection = new BitSet(total);
+        for (int id : current.attributes().select(filter, total)) {
+            selection.set(id);
+        }
+        selection.andNot(deleted);
+        int allowed = selection.cardinality();
+        if (allowed == 0) {
+            return List.of();
+        }
+        float[] query = normalized(referenceEmbedding.vector());
+        List<HnswIndex.Scored> scored;
+        if (allowed <= Math.max(efSearch, maxResults) * EXACT_FACTOR) {
+            TopK top = new TopK(maxResults);
+            for (int id = selection.nextSetBit(0); id >= 0; id = selection.nextSetBit(id + 1)) {
+                top.offer(id, (float) HnswIndex.dot(query, current.index().node(id).vector));
+            }
+            top.sortDescending();
+            scored = new ArrayList<>(top.size());
+            for (int i = 0; i < top.size(); i++) {
+                scored.add(new HnswIndex.Scored(top.position(i), top.score(i)));
+            }
+        } else {
+            int ef = (int) Math.min(MAX_FILTERED_EF, (long) efSearch * total / allowed);
+            scored = current.index().search(query, maxResults, Math.max(ef, efSearch), selection::get);
+        }
+        return matches(current, scored, minScore);
+    }
+
+    private List<EmbeddingMatch<TextSegment>> matches(Graph current, List<HnswIndex.Scored> results, double minScore) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (HnswIndex.Scored scored : results) {
+            double score = RelevanceScore.fromCosineSimilarity(scored.score());
+            if (score < minScore) {
+                continue;
+            }
+            HnswIndex.Node node = current.index().node(scored.id());
+            Entry entry = (Entry) node.payload;
+            matches.add(new EmbeddingMatch<>(score, entry.id(), Embedding.from(node.vector), entry.segment()));
+        }
+        return matches;
+    }
+
+    @Override
+    public Map<String, TextSegment> segments(Collection<String> ids) {
+        Graph current = graph;
+        BitSet deleted = current.tombstones().snapshot();
+        Map<String, TextSegment> segments = new HashMap<>();
+        for (String id : ids) {
+            Integer node = current.nodes().get(id);
+            if (node != null && !deleted.get(node)) {
+                TextSegment segment = ((Entry) current.index().node(node).payload).segment();
+                if (segment != null) {
+                    segments.put(id, segment);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Live embeddings, not counting tombstoned ones.
+     */
+    public int size() {
+        return liveSegments();
+    }
+
+    @Override
+    public int deleteDocument(long documentId) {
+        writeLock.readLock().lock();
+        try {
+            Graph current = graph;
+            return current.tombstones().delete(documentId, current.attributes(), current.index().size());
+        } finally {
+            writeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int purgeDocument(long documentId) {
+        // A compaction in progress would copy the purged nodes it has already passed
+        synchronized (compactionLock) {
+            writeLock.readLock().lock();
+            try {
+                Graph current = graph;
+                return current.tombstones().purge(documentId, current.attributes(), current.index().size());
+            } finally {
+                writeLock.readLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public int tombstones() {
+        return graph.tombstones().count();
+    }
+
+    @Override
+    public int liveSegments() {
+        Graph current = graph;
+        return current.index().size() - current.tombstones().count();
+    }
+
+    @Override
+    public int compact() {
+        synchronized (compactionLock) {
+            Graph old = graph;
+            if (old.tombstones().count() == 0) {
+                return 0;
+            }
+            long start = System.nanoTime();
+            int copied;
+            // Waits for inserts already under way, so every node below copied has its attributes set
+            writeLock.writeLock().lock();
+            try {
+                copied = old.index().size();
+            } finally {
+                writeLock.writeLock().unlock();
+            }
+            Graph next = new Graph(new HnswIndex(m, efConstruction), new SegmentAttributes(), null,
+                    new ConcurrentHashMap<>());
+            copyLive(old, next, 0, copied, old.tombstones().snapshot());
+
+            Graph compacted;
+            writeLock.writeLock().lock();
+            try {
+                copyLive(old, next, copied, old.index().size(), old.tombstones().snapshot());
+                Tombstones carried = new Tombstones(old.tombstones().documents());
+                for (long documentId : carried.documents()) {
+                    carried.delete(documentId, next.attributes(), next.index().size());
+                }
+                compacted = new Graph(next.index(), next.attributes(), carried, next.nodes());
+                graph = compacted;
+            } finally {
+                writeLock.writeLock().unlock();
+            }
+
+            int dropped = old.index().size() - compacted.index().size();
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            synchronized (this) {
+                compactions++;
+                compactedNodes += dropped;
+                lastCompactionMillis = millis;
+            }
+            log.info("Compacted HNSW index: dropped {} tombstoned nodes, {} remain, in {} ms",
+                    dropped, compacted.index().size(), millis);
+            return dropped;
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Graph current = graph;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("type", "hnsw");
+        stats.put("embeddings", current.index().size() - current.tombstones().count());
+        stats.put("tombstones", current.tombstones().count());
+        stats.put("m", m);
+        stats.put("efConstruction", efConstruction);
+        stats.put("efSearch", efSearch);
+        stats.put("kernel", DotProduct.best().name());
+        synchronized (this) {
+            stats.put("compactions", compactions);
+            stats.put("compactedEmbeddings", compactedNodes);
+            stats.put("lastCompactionMillis", lastCompactionMillis);
+        }
+        return stats;
+    }
+
+    private void insert(String id, Embedding embedding, TextSegment segment) {
+        Metadata metadata = segment == null ? null : segment.metadata();
+        long documentId = SegmentFilter.documentId(metadata);
+        float[] vector = normalized(embedding.vector());
+        writeLock.readLock().lock();
+        try {
+            Graph current = graph;
+            int node = current.index().insert(vector, new Entry(id, segment));
+            current.attributes().set(node, documentId, SegmentFilter.uploadedAt(metadata));
+            current.tombstones().added(node, documentId);
+            current.nodes().put(id, node);
+        } finally {
+            writeLock.readLock().unlock();
+        }
+    }
+
+    private static void copyLive(Graph from, Graph to, int start, int end, BitSet deleted) {
+        for (int id = start; id < end; id++) {
+            if (deleted.get(id)) {
+                continue;
+            }
+            HnswIndex.Node node = from.index().node(id);
+            int copy = to.index().insert(node.vector, node.payload);
+            to.attributes().set(copy, from.attributes().documentId(id), from.attributes().uploadedAt(id));
+            to.nodes().put(((Entry) node.payload).id(), copy);
+        }
+    }
+
+    public static float[] normalized(float[] vector) {
+        float norm = MappedVectorFile.norm(vector);
+        float[] copy = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                copy[i] = vector[i] / norm;
+            }
+        }
+        return copy;
+    }
+
+    private record Graph(HnswIndex index, SegmentAttributes attributes, Tombstones tombstones,
+                         Map<String, Integer> nodes) {
+    }
+
+    private record Entry(String id, TextSegment segment) {
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.documentqa.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hierarchical Navigable Small World graph over unit-length vectors, scored by dot product.
+ * <p>
+ * Inserts may run concurrently: each node guards its own neighbour lists, which are replaced
+ * copy-on-write so searches never see a half-updated list, and only the entry point switch takes
+ * the index-wide lock.
+ */
+class HnswIndex {
+
+    private static final int PAGE_SIZE = 1024;
+
+    private final int m;
+    private final int maxLinksLevelZero;
+    private final int efConstruction;
+    private final double levelMultiplier;
+
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final Object entryLock = new Object();
+    private volatile Node[][] pages = new Node[0][];
+    private volatile Node entryPoint;
+
+    HnswIndex(int m, int efConstruction) {
+        this.m = m;
+        this.maxLinksLevelZero = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    int size() {
+        return allocated.get();
+    }
+
+    Node node(int id) {
+        return pages[id / PAGE_SIZE][id % PAGE_SIZE];
+    }
+
+    /**
+     * Adds a normalized vector and returns its node id.
+     */
+    int insert(float[] vector, Object payload) {
+        int id = allocated.getAndIncrement();
+        int level = (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+        Node node = new Node(id, vector, payload, level);
+        publish(node);
+
+        Node entry;
+        synchronized (entryLock) {
+            entry = entryPoint;
+            if (entry == null) {
+                entryPoint = node;
+                return id;
+            }
+        }
+
+        Node current = entry;
+        for (int l = entry.level; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        for (int l = Math.min(level, entry.level); l >= 0; l--) {
+            List<Scored> candidates = searchLayer(vector, List.of(current), efConstruction, l, null);
+            // A concurrent insert may already have linked to this node
+            candidates.removeIf(candidate -> candidate.id() == id);
+            int maxLinks = l == 0 ? maxLinksLevelZero : m;
+            int[] neighbours = selectNeighbours(candidates, m);
+            node.setLinks(l, neighbours);
+            for (int neighbourId : neighbours) {
+                link(node(neighbourId), id, l, maxLinks);
+            }
+            if (!candidates.isEmpty()) {
+                current = node(candidates.get(0).id());
+            }
+        }
+
+        if (level > entry.level) {
+            synchronized (entryLock) {
+                if (level > entryPoint.level) {
+                    entryPoint = node;
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Returns up to {@code k} nearest nodes, best first, accepting only ids the filter allows.
+     */
+    List<Scored> search(float[] query, int k, int ef, IdFilter filter) {
+        Node entry = entryPoint;
+        if (entry == null) {
+            return List.of();
+        }
+        Node current = entry;
+        for (int l = entry.level; l > 0; l--) {
+            current = greedyClosest(query, current, l);
+        }
+        List<Scored> results = searchLayer(query, List.of(current), Math.max(ef, k), 0, filter);
+        return results.size() > k ? results.subList(0, k) : results;
+    }
+
+    static double dot(float[] a, float[] b) {
+        return DotProduct.best().dot(a, b);
+    }
+
+    private Node greedyClosest(float[] query, Node start, int level) {
+        Node best = start;
+        double bestScore = dot(query, start.vector);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbourId : best.links(level)) {
+                Node neighbour = node(neighbourId);
+                double score = dot(query, neighbour.vector);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Best-first search of one layer. Returns at most {@code ef} nodes sorted best first; nodes rejected by the
+     * filter are still traversed so the search can pass through them.
+     */
+    private List<Scored> searchLayer(float[] query, List<Node> entries, int ef, int level, IdFilter filter) {
+        BitSet visited = new BitSet(allocated.get());
+        PriorityQueue<Scored> candidates = new PriorityQueue<>(Comparator.comparingDouble(Scored::score).reversed());
+        PriorityQueue<Scored> results = new PriorityQueue<>(Comparator.comparingDouble(Scored::score));
+        PriorityQueue<Scored> accepted = filter == null ? results : new PriorityQueue<>(Comparator.comparingDouble(Scored::score));
+
+        for (Node entry : entries) {
+            visited.set(entry.id);
+            Scored scored = new Scored(entry.id, dot(query, entry.vector));
+            candidates.add(scored);
+            results.add(scored);
+            offer(accepted, scored, ef, filter);
+        }
+
+        while (!candidates.isEmpty()) {
+            Scored candidate = candidates.poll();
+            if (results.size() >= ef && candidate.score() < results.peek().score()) {
+                break;
+            }
+            for (int neighbourId : node(candidate.id()).links(level)) {
+                if (visited.get(neighbourId)) {
+                    continue;
+                }
+                visited.set(neighbourId);
+                Scored scored = new Scored(neighbourId, dot(query, node(neighbourId).vector));
+                if (results.size() < ef || scored.score() > results.peek().score()) {
+                    candidates.add(scored);
+                    results.add(scored);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                    offer(accepted, scored, ef, filter);
+                }
+            }
+        }
+
+        List<Scored> sorted = new ArrayList<>(accepted);
+        sorted.sort(Comparator.comparingDouble(Scored::score).reversed());
+        return sorted;
+    }
+
+    private static void offer(PriorityQueue<Scored> accepted, Scored scored, int ef, IdFilter filter) {
+        if (filter == null || !filter.accept(scored.id())) {
+            return;
+        }
+        accepted.add(scored);
+        if (accepted.size() > ef) {
+            accepted.poll();
+        }
+    }
+
+    /**
+     * The diversity heuristic from the HNSW paper: a candidate is kept only if it is closer to the new node
+     * than to every neighbour already chosen, which keeps long-range links alive in clustered data.
+     */
+    private int[] selectNeighbours(List<Scored> candidates, int max) {
+        List<Node> selected = new ArrayList<>(max);
+        for (Scored candidate : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            Node node = node(candidate.id());
+            boolean diverse = true;
+            for (Node chosen : selected) {
+                if (dot(node.vector, chosen.vector) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(node);
+            }
+        }
+        return selected.stream().mapToInt(n -> n.id).toArray();
+    }
+
+    private void link(Node from, int to, int level, int maxLinks) {
+        synchronized (from) {
+            int[] current = from.links(level);
+            int[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = to;
+            if (extended.length <= maxLinks) {
+                from.setLinks(level, extended);
+                return;
+            }
+            List<Scored> candidates = new ArrayList<>(extended.length);
+            for (int id : extended) {
+                candidates.add(new Scored(id, dot(from.vector, node(id).vector)));
+            }
+            candidates.sort(Comparator.comparingDouble(Scored::score).reversed());
+            from.setLinks(level, selectNeighbours(candidates, maxLinks));
+        }
+    }
+
+    private void publish(Node node) {
+        int page = node.id / PAGE_SIZE;
+        Node[][] current = pages;
+        if (page >= current.length) {
+            synchronized (this) {
+                current = pages;
+                if (page >= current.length) {
+                    Node[][] grown = Arrays.copyOf(current, Math.max(page + 1, current.length * 2));
+                    for (int p = current.length; p < grown.length; p++) {
+                        grown[p] = new Node[PAGE_SIZE];
+                    }
+                    pages = grown;
+                    current = grown;
+                }
+            }
+        }
+        synchronized (current[page]) {
+            current[page][node.id % PAGE_SIZE] = node;
+        }
+    }
+
+    interface IdFilter {
+        boolean accept(int id);
+    }
+
+    record Scored(int id, double score) {
+    }
+
+    static final class Node {
+        final int id;
+        final float[] vector;
+        final Object payload;
+        final int level;
+        private final int[][] links;
+
+        private Node(int id, float[] vector, Object payload, int level) {
+            this.id = id;
+            this.vector = vector;
+            this.payload = payload;
+            this.level = level;
+            this.links = new int[level + 1][];
+            Arrays.fill(links, new int[0]);
+        }
+
+        synchronized int[] links(int level) {
+            return level < links.length ? links[level] : new int[0];
+        }
+
+        synchronized void setLinks(int level, int[] ids) {
+            links[level] = ids;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Persistent {@link EmbeddingStore} that keeps vectors in a memory-mapped file and segment text in an
+ * append-only log next to it. Vectors are read straight from the OS page cache, so the heap only holds
+ * the handful of matches being returned, and reopening a store just maps the existing files. Vectors are
+ * stored as unit vectors, so an exact search is one {@link DotProduct} per entry with the best kept in a
+ * primitive {@link TopK} heap.
+ * <p>
+ * In quantized mode an int8 copy of every vector is kept alongside the floats. Searches scan the codes,
+ * which are a quarter of the size, and rescore only the best {@code rescoreCandidates} against the full
+ * precision vectors, so the pages holding float vectors are touched a few hundred at a time.
+ * <p>
+ * Document id and upload time of every entry are kept in memory and in a side file, so a filtered search
+ * picks the matching positions first and scores only those vectors. The position of every id is kept in
+ * memory too, read from the log on open, so segments can be looked up by id.
+ * <p>
+ * Deleting a document appends its id to {@code deleted-documents.bin} and tombstones its entries, which
+ * searches skip from then on. {@link #compact()} copies the live entries into a fresh generation
+ * directory while searches and appends continue against the current one, then names it in
+ * {@code CURRENT} and switches over; only the switch waits for in-flight searches.
+ * <p>
+ * Purging a document before it is ingested again tombstones only the entries it has so far; the purge
+ * is recorded in the current generation, since later entries of the document stay live.
+ */
+@Slf4j
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment>, EmbeddingStoreStats, SegmentScan,
+        SegmentLookup, FilteredSearch, DocumentDeletion, Closeable {
+
+    static final String ATTRIBUTES_FILE = MappedGeneration.ATTRIBUTES_FILE;
+    static final String CURRENT_FILE = "CURRENT";
+    static final String DELETED_DOCUMENTS_FILE = "deleted-documents.bin";
+    private static final String GENERATION_PREFIX = "gen-";
+
+    private final Path directory;
+    private final boolean quantized;
+    private final int rescoreCandidates;
+    private final FileChannel deletedDocuments;
+    // Searches hold the read lock so a compaction never closes files under them
+    private final ReadWriteLock switchLock = new ReentrantReadWriteLock();
+    private final Object compactionLock = new Object();
+    private volatile MappedGeneration generation;
+    private volatile Tombstones tombstones;
+    private volatile int generationNumber;
+
+    private long compactions;
+    private long compactedEntries;
+    private long lastCompactionMillis;
+
+    public MappedEmbeddingStore(Path directory) {
+        this(directory, false, 0);
+    }
+
+    public MappedEmbeddingStore(Path directory, boolean quantized, int rescoreCandidates) {
+        this.directory = directory;
+        this.quantized = quantized;
+        this.rescoreCandidates = rescoreCandidates;
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            String current = readCurrent();
+            removeStaleGenerations(current);
+            this.generationNumber = current == null ? 0 : Integer.parseInt(current.substring(GENERATION_PREFIX.length()));
+            this.generation = new MappedGeneration(current == null ? directory : directory.resolve(current), quantized);
+            this.deletedDocuments = FileChannel.open(directory.resolve(DELETED_DOCUMENTS_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.tombstones = tombstones(generation, readDeletedDocuments());
+            for (MappedGeneration.Purge purge : generation.purges()) {
+                tombstones.purge(purge.documentId(), generation.attributes(), purge.limit());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open embedding store in " + directory, e);
+        }
+        log.info("Opened mapped embedding store at {} with {} embeddings ({} tombstoned) in {} ms",
+                directory, generation.size(), tombstones.count(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        append(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        append(id, embedding, textSegment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (textSegments != null && textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("The list of embeddings and embedded must have the same size");
+        }
+        List<String> ids = new ArrayList<>(embeddings.size());
+        synchronized (this) {
+            for (int i = 0; i < embeddings.size(); i++) {
+                String id = UUID.randomUUID().toString();
+                append(id, embeddings.get(i), textSegments == null ? null : textSegments.get(i));
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return findRelevant(referenceEmbedding, maxResults, minScore, SegmentFilter.ALL);
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                           SegmentFilter filter) {
+        switchLock.readLock().lock();
+        try {
+            MappedGeneration current = generation;
+            int[] positions = filter.isAll() ? null : current.attributes().select(filter, current.size());
+            return search(current, tombstones.snapshot(), referenceEmbedding, maxResults, minScore, positions);
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scores the given positions, or every committed entry when {@code positions} is null, skipping
+     * tombstoned ones.
+     */
+    private List<EmbeddingMatch<TextSegment>> search(MappedGeneration current, BitSet deleted,
+                                                     Embedding referenceEmbedding, int maxResults, double minScore,
+                                                     int[] positions) {
+        MappedVectorFile vectors = current.vectors();
+        int count = positions == null ? current.size() : positions.length;
+        if (vectors == null || count == 0) {
+            return List.of();
+        }
+        boolean anyDeleted = !deleted.isEmpty();
+
+        float[] query = referenceEmbedding.vector();
+        if (query.length != vectors.dimension()) {
+            throw new IllegalArgumentException("Query has dimension " + query.length
+                    + " but the store at " + directory + " holds dimension " + vectors.dimension());
+        }
+        float[] unitQuery = HnswEmbeddingStore.normalized(query);
+        // Candidates are compared by cosine; minScore is a relevance score, (cosine + 1) / 2
+        double minCosine = 2 * minScore - 1;
+        QuantizedCodeFile codes = current.codes();
+        TopK top = new TopK(maxResults);
+        float[] scratch = new float[query.length];
+        // Below the rescore budget the codes would not save a single float vector read
+        if (codes == null || count <= Math.max(rescoreCandidates, maxResults)) {
+            for (int i = 0; i < count; i++) {
+                int position = positions == null ? i : positions[i];
+                if (anyDeleted && deleted.get(position)) {
+                    continue;
+                }
+                float cosine = vectors.dot(position, unitQuery, scratch);
+                if (cosine >= minCosine) {
+                    top.offer(position, cosine);
+                }
+            }
+        } else {
+            float queryNorm = MappedVectorFile.norm(query);
+            float querySum = 0;
+            for (float v : query) {
+                querySum += v;
+            }
+            // Approximate scores only pick the candidates; minScore applies to the exact rescored values
+            TopK approximate = new TopK(Math.max(rescoreCandidates, maxResults));
+            byte[] codeScratch = new byte[query.length];
+            for (int i = 0; i < count; i++) {
+                int position = positions == null ? i : positions[i];
+                if (anyDeleted && deleted.get(position)) {
+                    continue;
+                }
+                approximate.offer(position, (float) codes.cosine(position, query, queryNorm, querySum, codeScratch));
+            }
+            for (int c = 0; c < approximate.size(); c++) {
+                int position = approximate.position(c);
+                float cosine = vectors.dot(position, unitQuery, scratch);
+                if (cosine >= minCosine) {
+                    top.offer(position, cosine);
+                }
+            }
+        }
+
+        top.sortDescending();
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            int position = top.position(i);
+            SegmentLog.Entry entry = current.segments().read(position);
+            matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(top.score(i)), entry.id(),
+                    Embedding.from(vectors.read(position)), entry.segment()));
+        }
+        return matches;
+    }
+
+    /**
+     * Live entries, not counting tombstoned ones.
+     */
+    public int size() {
+        return liveSegments();
+    }
+
+    @Override
+    public void forEachSegment(BiConsumer<String, TextSegment> action) {
+        switchLock.readLock().lock();
+        try {
+            MappedGeneration current = generation;
+            BitSet deleted = tombstones.snapshot();
+            int count = current.size();
+            for (int i = 0; i < count; i++) {
+                if (deleted.get(i)) {
+                    continue;
+                }
+                SegmentLog.Entry entry = current.segments().read(i);
+                if (entry.segment() != null) {
+                    action.accept(entry.id(), entry.segment());
+                }
+            }
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, TextSegment> segments(Collection<String> ids) {
+        switchLock.readLock().lock();
+        try {
+            MappedGeneration current = generation;
+            BitSet deleted = tombstones.snapshot();
+            Map<String, TextSegment> segments = new HashMap<>();
+            for (String id : ids) {
+                int position = current.position(id);
+                if (position >= 0 && !deleted.get(position)) {
+                    TextSegment segment = current.segments().read(position).segment();
+                    if (segment != null) {
+                        segments.put(id, segment);
+                    }
+                }
+            }
+            return segments;
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public synchronized int deleteDocument(long documentId) {
+        try {
+            if (!tombstones.isDeleted(documentId)) {
+                ByteBuffer record = ByteBuffer.allocate(Long.BYTES).putLong(documentId).flip();
+                long offset = deletedDocuments.size();
+                while (record.hasRemaining()) {
+                    deletedDocuments.write(record, offset + record.position());
+                }
+                deletedDocuments.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to record deletion of document " + documentId + " in " + directory, e);
+        }
+        int deleted = tombstones.delete(documentId, generation.attributes(), generation.size());
+        log.info("Tombstoned {} embeddings of document {} in {}", deleted, documentId, directory);
+        return deleted;
+    }
+
+    @Override
+    public int purgeDocument(long documentId) {
+        // A compaction in progress would copy the purged entries it has already passed
+        synchronized (compactionLock) {
+            synchronized (this) {
+                int limit = generation.size();
+                int purged = tombstones.purge(documentId, generation.attributes(), limit);
+                if (purged > 0) {
+                    try {
+                        generation.recordPurge(documentId, limit);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to record purge of document " + documentId
+                                + " in " + directory, e);
+                    }
+                    log.info("Purged {} embeddings of document {} in {}", purged, documentId, directory);
+                }
+                return purged;
+            }
+        }
+    }
+
+    @Override
+    public int tombstones() {
+        return tombstones.count();
+    }
+
+    @Override
+    public int liveSegments() {
+        switchLock.readLock().lock();
+        try {
+            return generation.size() - tombstones.count();
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int compact() throws IOException {
+        synchronized (compactionLock) {
+            MappedGeneration old = generation;
+            if (tombstones.count() == 0) {
+                return 0;
+            }
+            long start = System.nanoTime();
+            int number = generationNumber + 1;
+            Path target = directory.resolve(GENERATION_PREFIX + number);
+            StoreFiles.deleteRecursively(target);
+            MappedGeneration next = new MappedGeneration(target, quantized);
+            try {
+                // Most entries are copied without holding up appends; the writer lock only covers the tail
+                int copied = old.size();
+                copyLive(old, next, 0, copied, tombstones.snapshot());
+                synchronized (this) {
+                    copyLive(old, next, copied, old.size(), tombstones.snapshot());
+                    Tombstones carried = tombstones(next, tombstones.documents());
+                    next.force();
+                    writeCurrent(GENERATION_PREFIX + number);
+                    switchLock.writeLock().lock();
+                    try {
+                        generation = next;
+                        tombstones = carried;
+                        generationNumber = number;
+                    } finally {
+                        switchLock.writeLock().unlock();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                next.close();
+                StoreFiles.deleteRecursively(target);
+                throw e;
+            }
+
+            old.close();
+            MappedGeneration.deleteFiles(old.directory(), !old.directory().equals(directory));
+            int dropped = old.size() - next.size();
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            synchronized (this) {
+                compactions++;
+                compactedEntries += dropped;
+                lastCompactionMillis = millis;
+            }
+            log.info("Compacted embedding store at {}: dropped {} tombstoned embeddings, {} remain, in {} ms",
+                    directory, dropped, next.size(), millis);
+            return dropped;
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        MappedGeneration current = generation;
+        MappedVectorFile vectors = current.vectors();
+        stats.put("type", "mapped");
+        stats.put("directory", current.directory().toString());
+        stats.put("embeddings", current.size() - tombstones.count());
+        stats.put("tombstones", tombstones.count());
+        stats.put("dimension", vectors == null ? 0 : vectors.dimension());
+        stats.put("kernel", DotProduct.best().name());
+        stats.put("mappedVectorBytes", vectors == null ? 0 : vectors.mappedBytes());
+        stats.put("segmentLogBytes", current.segments().bytes());
+        stats.put("quantized", quantized);
+        QuantizedCodeFile codes = current.codes();
+        if (codes != null) {
+            stats.put("rescoreCandidates", rescoreCandidates);
+            stats.put("quantizedCodeBytes", codes.bytesFor(current.size()));
+        }
+        synchronized (this) {
+            stats.put("compactions", compactions);
+            stats.put("compactedEmbeddings", compactedEntries);
+            stats.put("lastCompactionMillis", lastCompactionMillis);
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (compactionLock) {
+            synchronized (this) {
+                generation.close();
+                deletedDocuments.close();
+            }
+        }
+    }
+
+    private synchronized void append(String id, Embedding embedding, TextSegment segment) {
+        Metadata metadata = segment == null ? null : segment.metadata();
+        long documentId = SegmentFilter.documentId(metadata);
+        try {
+            int position = generation.append(id, embedding.vector(), segment, documentId, SegmentFilter.uploadedAt(metadata));
+            tombstones.added(position, documentId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append embedding to " + directory, e);
+        }
+    }
+
+    private static void copyLive(MappedGeneration from, MappedGeneration to, int start, int end, BitSet deleted)
+            throws IOException {
+        SegmentAttributes attributes = from.attributes();
+        for (int i = start; i < end; i++) {
+            if (deleted.get(i)) {
+                continue;
+            }
+            SegmentLog.Entry entry = from.segments().read(i);
+            to.append(entry.id(), from.vectors().read(i), entry.segment(), attributes.documentId(i),
+                    attributes.uploadedAt(i));
+        }
+    }
+
+    private static Tombstones tombstones(MappedGeneration generation, Set<Long> deletedDocuments) {
+        Tombstones tombstones = new Tombstones(deletedDocuments);
+        for (long documentId : deletedDocuments) {
+            tombstones.delete(documentId, generation.attributes(), generation.size());
+        }
+        return tombstones;
+    }
+
+    private Set<Long> readDeletedDocuments() throws IOException {
+        int count = (int) (deletedDocuments.size() / Long.BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(count * Long.BYTES);
+        while (buffer.hasRemaining()) {
+            if (deletedDocuments.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        Set<Long> documents = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            documents.add(buffer.getLong());
+        }
+        // A torn record from a crash mid-write is dropped
+        deletedDocuments.truncate(count * (long) Long.BYTES);
+        return documents;
+    }
+
+    private String readCurrent() throws IOException {
+        Path file = directory.resolve(CURRENT_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        String name = Files.readString(file, StandardCharsets.UTF_8).trim();
+        return name.startsWith(GENERATION_PREFIX) ? name : null;
+    }
+
+    private void writeCurrent(String name) throws IOException {
+        Path tmp = directory.resolve(CURRENT_FILE + ".tmp");
+        Files.writeString(tmp, name, StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(CURRENT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Removes what an interrupted compaction left behind: a generation that never became current, or the
+     * previous generation when the switch happened but its files were not deleted yet.
+     */
+    private void removeStaleGenerations(String current) throws IOException {
+        try (DirectoryStream<Path> generations = Files.newDirectoryStream(directory, GENERATION_PREFIX + "*")) {
+            for (Path path : generations) {
+                if (!path.getFileName().toString().equals(current)) {
+                    log.info("Removing stale embedding store generation {}", path);
+                    StoreFiles.deleteRecursively(path);
+                }
+            }
+        }
+        if (current != null) {
+            MappedGeneration.deleteFiles(directory, false);
+        }
+    }
+}
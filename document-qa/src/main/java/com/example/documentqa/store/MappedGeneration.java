@@ -0,0 +1,242 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The files of one generation of a {@link MappedEmbeddingStore}: float vectors, optional int8 codes,
+ * the segment log and the document attributes, all in one directory. Compaction writes the live entries
+ * into a new generation and switches the store over to it.
+ * <p>
+ * Purges, which tombstone a document's entries before it is ingested again, are positions in this
+ * generation, so they are kept here as well; compaction drops the purged entries and starts a new
+ * generation without any.
+ */
+@Slf4j
+class MappedGeneration implements Closeable {
+
+    static final String VECTORS_FILE = "vectors.bin";
+    static final String SEGMENTS_FILE = "segments.log";
+    static final String INDEX_FILE = "segments.idx";
+    static final String CODES_FILE = "codes.bin";
+    static final String ATTRIBUTES_FILE = "attributes.bin";
+    static final String PURGES_FILE = "purges.bin";
+    private static final String[] FILES = {VECTORS_FILE, SEGMENTS_FILE, INDEX_FILE, CODES_FILE, ATTRIBUTES_FILE,
+            PURGES_FILE};
+    // Document id, then the position below which its entries are purged
+    private static final int PURGE_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final boolean quantized;
+    private final SegmentLog segments;
+    private final AttributeFile attributeFile;
+    private final FileChannel purgeFile;
+    private final SegmentAttributes attributes = new SegmentAttributes();
+    private final Map<String, Integer> positions = new ConcurrentHashMap<>();
+    private volatile MappedVectorFile vectors;
+    private volatile QuantizedCodeFile codes;
+
+    MappedGeneration(Path directory, boolean quantized) throws IOException {
+        this.directory = directory;
+        this.quantized = quantized;
+        Files.createDirectories(directory);
+        this.segments = new SegmentLog(directory.resolve(SEGMENTS_FILE), directory.resolve(INDEX_FILE));
+        this.attributeFile = new AttributeFile(directory.resolve(ATTRIBUTES_FILE));
+        this.purgeFile = FileChannel.open(directory.resolve(PURGES_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadAttributes();
+        for (int i = 0; i < segments.size(); i++) {
+            positions.put(segments.readId(i), i);
+        }
+        int dimension = MappedVectorFile.readDimension(directory.resolve(VECTORS_FILE));
+        if (dimension > 0) {
+            this.vectors = MappedVectorFile.open(directory.resolve(VECTORS_FILE), dimension);
+            this.vectors.mapExisting(segments.size());
+            if (quantized) {
+                this.codes = openCodes(dimension);
+            }
+        }
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    int size() {
+        return segments.size();
+    }
+
+    SegmentLog segments() {
+        return segments;
+    }
+
+    SegmentAttributes attributes() {
+        return attributes;
+    }
+
+    /**
+     * The position of the committed entry with this id, or -1.
+     */
+    int position(String id) {
+        Integer position = positions.get(id);
+        return position == null ? -1 : position;
+    }
+
+    MappedVectorFile vectors() {
+        return vectors;
+    }
+
+    QuantizedCodeFile codes() {
+        return codes;
+    }
+
+    /**
+     * Appends an entry and returns its position. Must be called by one writer at a time.
+     */
+    int append(String id, float[] vector, TextSegment segment, long documentId, long uploadedAt) throws IOException {
+        if (vectors == null) {
+            vectors = MappedVectorFile.open(directory.resolve(VECTORS_FILE), vector.length);
+            if (quantized) {
+                codes = openCodes(vector.length);
+            }
+        } else if (vector.length != vectors.dimension()) {
+            throw new IllegalArgumentException("Embedding has dimension " + vector.length
+                    + " but the store at " + directory + " holds dimension " + vectors.dimension());
+        }
+        // The vector goes in first: an entry only becomes visible once the segment log commits it
+        int position = segments.size();
+        vectors.write(position, vector);
+        if (codes != null) {
+            codes.write(position, vector);
+        }
+        attributeFile.write(position, documentId, uploadedAt);
+        segments.append(id, segment);
+        attributes.set(position, documentId, uploadedAt);
+        positions.put(id, position);
+        return position;
+    }
+
+    /**
+     * Durably records that the document's entries below {@code limit} are purged.
+     */
+    void recordPurge(long documentId, int limit) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(PURGE_BYTES).putLong(documentId).putInt(limit).flip();
+        long offset = purgeFile.size();
+        while (record.hasRemaining()) {
+            purgeFile.write(record, offset + record.position());
+        }
+        purgeFile.force(false);
+    }
+
+    /**
+     * The purges recorded in this generation, oldest first.
+     */
+    List<Purge> purges() throws IOException {
+        int count = (int) (purgeFile.size() / PURGE_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(count * PURGE_BYTES);
+        while (buffer.hasRemaining()) {
+            if (purgeFile.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        List<Purge> purges = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            purges.add(new Purge(buffer.getLong(), buffer.getInt()));
+        }
+        // A torn record from a crash mid-write is dropped
+        purgeFile.truncate(count * (long) PURGE_BYTES);
+        return purges;
+    }
+
+    void force() throws IOException {
+        if (vectors != null) {
+            vectors.force();
+        }
+        segments.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (vectors != null) {
+            vectors.close();
+        }
+        if (codes != null) {
+            codes.close();
+        }
+        attributeFile.close();
+        purgeFile.close();
+        segments.close();
+    }
+
+    /**
+     * Deletes a closed generation: its whole directory, or only its files when it shares the directory
+     * with other things.
+     */
+    static void deleteFiles(Path directory, boolean removeDirectory) throws IOException {
+        if (removeDirectory) {
+            StoreFiles.deleteRecursively(directory);
+            return;
+        }
+        for (String file : FILES) {
+            Files.deleteIfExists(directory.resolve(file));
+        }
+    }
+
+    /**
+     * Reads the attribute file and fills in entries it does not cover from the segment log, which happens
+     * for stores written before attributes were kept.
+     */
+    private void loadAttributes() throws IOException {
+        int count = segments.size();
+        int loaded = attributeFile.load(attributes, count);
+        if (loaded < count) {
+            log.info("Indexing document attributes of {} embeddings in {}", count - loaded, directory);
+            for (int i = loaded; i < count; i++) {
+                TextSegment segment = segments.read(i).segment();
+                Metadata metadata = segment == null ? null : segment.metadata();
+                long documentId = SegmentFilter.documentId(metadata);
+                long uploadedAt = SegmentFilter.uploadedAt(metadata);
+                attributeFile.write(i, documentId, uploadedAt);
+                attributes.set(i, documentId, uploadedAt);
+            }
+        }
+    }
+
+    /**
+     * Opens the code file and quantizes any committed vectors it does not cover yet, which happens when
+     * quantization is switched on for an existing store or was off for a while.
+     */
+    private QuantizedCodeFile openCodes(int dimension) throws IOException {
+        QuantizedCodeFile file = QuantizedCodeFile.open(directory.resolve(CODES_FILE), dimension);
+        int count = segments.size();
+        file.mapExisting(count);
+        int covered = count;
+        while (covered > 0 && file.storedNorm(covered - 1) != vectors.storedNorm(covered - 1)) {
+            covered--;
+        }
+        if (covered < count) {
+            log.info("Quantizing {} embeddings in {}", count - covered, directory);
+            for (int i = covered; i < count; i++) {
+                file.write(i, vectors.read(i));
+            }
+        }
+        return file;
+    }
+
+    record Purge(long documentId, int limit) {
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.documentqa.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Maps a file of fixed-size records after a header in 64 MB regions, growing the file one region at a time.
+ * A record never straddles two regions, so callers address it as region + record offset.
+ * Without a file, regions are direct buffers instead, for stores that live only in memory.
+ */
+class MappedRegions<B> {
+
+    private static final long REGION_BYTES = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long headerBytes;
+    private final long recordBytes;
+    private final int recordsPerRegion;
+    private final Function<ByteBuffer, B> view;
+    private final List<MappedByteBuffer> mapped = new ArrayList<>();
+    private volatile Object[] regions = new Object[0];
+
+    MappedRegions(FileChannel channel, long headerBytes, long recordBytes, Function<ByteBuffer, B> view) {
+        this.channel = channel;
+        this.headerBytes = headerBytes;
+        this.recordBytes = recordBytes;
+        this.recordsPerRegion = (int) Math.max(1, REGION_BYTES / recordBytes);
+        this.view = view;
+    }
+
+    MappedRegions(long recordBytes, Function<ByteBuffer, B> view) {
+        this(null, 0, recordBytes, view);
+    }
+
+    int recordsPerRegion() {
+        return recordsPerRegion;
+    }
+
+    /**
+     * Returns the region holding the record, mapping new regions first when {@code grow} is set.
+     */
+    @SuppressWarnings("unchecked")
+    B region(int index, boolean grow) {
+        int regionIndex = index / recordsPerRegion;
+        Object[] current = regions;
+        if (regionIndex < current.length) {
+            return (B) current[regionIndex];
+        }
+        if (!grow) {
+            throw new IndexOutOfBoundsException("No record at index " + index);
+        }
+        synchronized (mapped) {
+            current = regions;
+            if (regionIndex < current.length) {
+                return (B) current[regionIndex];
+            }
+            Object[] next = Arrays.copyOf(current, regionIndex + 1);
+            for (int r = current.length; r <= regionIndex; r++) {
+                next[r] = map(r);
+            }
+            regions = next;
+            return (B) next[regionIndex];
+        }
+    }
+
+    /**
+     * Maps every region that already holds records, so a reopened file can serve reads immediately.
+     */
+    void mapExisting(int count) {
+        if (count > 0) {
+            region(count - 1, true);
+        }
+    }
+
+    long mappedBytes() {
+        return regions.length * recordsPerRegion * recordBytes;
+    }
+
+    void force() {
+        synchronized (mapped) {
+            mapped.forEach(MappedByteBuffer::force);
+        }
+    }
+
+    private B map(int regionIndex) {
+        long regionBytes = recordsPerRegion * recordBytes;
+        if (channel == null) {
+            return view.apply(ByteBuffer.allocateDirect((int) regionBytes).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                    headerBytes + regionIndex * regionBytes, regionBytes);
+            mapped.add(buffer);
+            return view.apply(buffer.order(ByteOrder.LITTLE_ENDIAN));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map region " + regionIndex, e);
+        }
+    }
+}
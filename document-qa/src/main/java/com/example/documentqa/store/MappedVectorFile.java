@@ -0,0 +1,173 @@
+package com.example.documentqa.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Fixed-size float records in a file that is mapped into memory region by region.
+ * Each record is the vector's L2 norm followed by its components divided by that norm, so cosine
+ * similarity against a unit-length query is a plain {@link DotProduct}, and the original vector is still
+ * recoverable. The file only ever grows.
+ * <p>
+ * Files written before vectors were stored normalized carry an older magic number and are normalized in
+ * place when reopened.
+ */
+@Slf4j
+class MappedVectorFile implements Closeable {
+
+    private static final int MAGIC = 0x44515632; // "DQV2"
+    private static final int UNNORMALIZED_MAGIC = 0x44515631; // "DQV1"
+    private static final int HEADER_BYTES = 16;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int dimension;
+    private final int recordFloats;
+    private final MappedRegions<FloatBuffer> regions;
+    private boolean unnormalized;
+
+    private MappedVectorFile(Path file, FileChannel channel, int dimension, boolean unnormalized) {
+        this.file = file;
+        this.channel = channel;
+        this.dimension = dimension;
+        this.recordFloats = dimension + 1;
+        this.regions = new MappedRegions<>(channel, HEADER_BYTES, recordFloats * 4L, ByteBuffer::asFloatBuffer);
+        this.unnormalized = unnormalized;
+    }
+
+    static MappedVectorFile open(Path file, int dimension) throws IOException {
+        boolean unnormalized = StoreFiles.readDimension(file, UNNORMALIZED_MAGIC, HEADER_BYTES) > 0;
+        FileChannel channel = StoreFiles.openWithHeader(file, unnormalized ? UNNORMALIZED_MAGIC : MAGIC,
+                HEADER_BYTES, dimension);
+        return new MappedVectorFile(file, channel, dimension, unnormalized);
+    }
+
+    /**
+     * Reads the dimension from an existing file without mapping it, or returns 0 if there is none yet.
+     */
+    static int readDimension(Path file) throws IOException {
+        int dimension = StoreFiles.readDimension(file, MAGIC, HEADER_BYTES);
+        return dimension > 0 ? dimension : StoreFiles.readDimension(file, UNNORMALIZED_MAGIC, HEADER_BYTES);
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Writes a record at the given index. Callers serialize writes; readers only look at indexes
+     * that have been published after the write completed.
+     */
+    void write(int index, float[] vector) {
+        FloatBuffer region = regions.region(index, true);
+        int base = offset(index);
+        float norm = norm(vector);
+        float[] unit = new float[dimension];
+        if (norm > 0) {
+            for (int i = 0; i < dimension; i++) {
+                unit[i] = vector[i] / norm;
+            }
+        }
+        region.put(base, norm);
+        region.put(base + 1, unit);
+    }
+
+    /**
+     * The vector as it was written, scaled back up from the stored unit vector.
+     */
+    float[] read(int index) {
+        FloatBuffer region = regions.region(index, false);
+        int base = offset(index);
+        float norm = region.get(base);
+        float[] vector = new float[dimension];
+        region.get(base + 1, vector);
+        for (int i = 0; i < dimension; i++) {
+            vector[i] *= norm;
+        }
+        return vector;
+    }
+
+    float storedNorm(int index) {
+        return regions.region(index, false).get(offset(index));
+    }
+
+    /**
+     * Cosine similarity between the stored vector and a unit-length query. The record is copied into
+     * {@code scratch}, a caller-owned buffer of {@code dimension} floats, which is a bulk copy and lets
+     * the kernel work on arrays.
+     */
+    float dot(int index, float[] unitQuery, float[] scratch) {
+        regions.region(index, false).get(offset(index) + 1, scratch);
+        return DotProduct.best().dot(unitQuery, scratch);
+    }
+
+    /**
+     * Maps the regions holding the first {@code count} records, normalizing them first if the file
+     * predates normalized storage.
+     */
+    void mapExisting(int count) throws IOException {
+        regions.mapExisting(count);
+        if (unnormalized) {
+            normalize(count);
+        }
+    }
+
+    long mappedBytes() {
+        return regions.mappedBytes();
+    }
+
+    void force() {
+        regions.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    static float norm(float[] vector) {
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    /**
+     * Rewrites each record's components as a unit vector, keeping the stored norm. Normalizing an already
+     * normalized record leaves it as it is, so a crash part way through is repaired by the next open.
+     */
+    private void normalize(int count) throws IOException {
+        log.info("Normalizing {} stored vectors in {}", count, file);
+        float[] components = new float[dimension];
+        for (int index = 0; index < count; index++) {
+            FloatBuffer region = regions.region(index, false);
+            int base = offset(index) + 1;
+            region.get(base, components);
+            float norm = norm(components);
+            if (norm > 0) {
+                for (int i = 0; i < dimension; i++) {
+                    components[i] /= norm;
+                }
+                region.put(base, components);
+            }
+        }
+        force();
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(MAGIC).flip();
+        channel.write(magic, 0);
+        channel.force(true);
+        unnormalized = false;
+    }
+
+    private int offset(int index) {
+        return (index % regions.recordsPerRegion()) * recordFloats;
+    }
+}
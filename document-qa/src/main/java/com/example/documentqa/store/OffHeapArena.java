@@ -0,0 +1,65 @@
+package com.example.documentqa.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Append-only arena of variable-length byte records in direct buffers. A record is addressed by one
+ * long, chunk number in the high half and offset in the low half, so the heap holds a long per record
+ * and the chunk table. Records never straddle chunks; one larger than a chunk gets a chunk of its own.
+ */
+class OffHeapArena {
+
+    private final int chunkBytes;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int position;
+    private long usedBytes;
+    private long allocatedBytes;
+
+    OffHeapArena(int chunkBytes) {
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Copies the record in and returns its address. Callers serialize appends; readers only use
+     * addresses published after the append returned.
+     */
+    long append(byte[] record) {
+        int length = Integer.BYTES + record.length;
+        ByteBuffer[] current = chunks;
+        if (current.length == 0 || position + length > current[current.length - 1].capacity()) {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(Math.max(chunkBytes, length));
+            current = Arrays.copyOf(current, current.length + 1);
+            current[current.length - 1] = chunk;
+            chunks = current;
+            position = 0;
+            allocatedBytes += chunk.capacity();
+        }
+        int chunkIndex = current.length - 1;
+        ByteBuffer chunk = current[chunkIndex];
+        chunk.putInt(position, record.length);
+        chunk.put(position + Integer.BYTES, record);
+        long address = ((long) chunkIndex << 32) | position;
+        position += length;
+        usedBytes += length;
+        return address;
+    }
+
+    /**
+     * A read-only view of the record at the address, positioned at its first byte.
+     */
+    ByteBuffer read(long address) {
+        ByteBuffer chunk = chunks[(int) (address >>> 32)];
+        int offset = (int) address;
+        int length = chunk.getInt(offset);
+        return chunk.slice(offset + Integer.BYTES, length).asReadOnlyBuffer();
+    }
+
+    long usedBytes() {
+        return usedBytes;
+    }
+
+    long allocatedBytes() {
+        return allocatedBytes;
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory {@link EmbeddingStore} that keeps vectors and segment text outside the Java heap. Vectors
+ * sit in contiguous direct buffers as unit vectors, segment ids, text and metadata are serialized into
+ * an off-heap arena, and the heap holds one arena address, the id's position and document attributes per
+ * entry. A store of a few hundred thousand 4096-dimension vectors therefore adds gigabytes of direct
+ * memory, which the collector never scans or copies, instead of gigabytes of old generation.
+ * <p>
+ * Searches score every live entry exactly, like {@link MappedEmbeddingStore}. Deleted documents are
+ * tombstoned; {@link #compact()} copies the live entries into new buffers and swaps them in, and the
+ * old buffers are freed once no search holds them.
+ */
+@Slf4j
+public class OffHeapEmbeddingStore implements EmbeddingStore<TextSegment>, EmbeddingStoreStats, FilteredSearch,
+        SegmentLookup, DocumentDeletion {
+
+    private static final int SEGMENT_CHUNK_BYTES = 4 * 1024 * 1024;
+
+    private final Object compactionLock = new Object();
+    // Replaced by compaction; appends and deletes hold the store's monitor
+    private volatile Contents contents = new Contents(Set.of());
+
+    private long compactions;
+    private long compactedEntries;
+    private long lastCompactionMillis;
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        append(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        append(id, embedding, textSegment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (textSegments != null && textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("The list of embeddings and embedded must have the same size");
+        }
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            String id = UUID.randomUUID().toString();
+            append(id, embeddings.get(i), textSegments == null ? null : textSegments.get(i));
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return findRelevant(referenceEmbedding, maxResults, minScore, SegmentFilter.ALL);
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                           SegmentFilter filter) {
+        Contents current = contents;
+        OffHeapVectors vectors = current.vectors;
+        int size = current.size;
+        if (vectors == null || size == 0) {
+            return List.of();
+        }
+        float[] query = referenceEmbedding.vector();
+        if (query.length != vectors.dimension()) {
+            throw new IllegalArgumentException("Query has dimension " + query.length
+                    + " but the store holds dimension " + vectors.dimension());
+        }
+        int[] positions = filter.isAll() ? null : current.attributes.select(filter, size);
+        int count = positions == null ? size : positions.length;
+        BitSet deleted = current.tombstones.snapshot();
+        boolean anyDeleted = !deleted.isEmpty();
+
+        float[] unitQuery = HnswEmbeddingStore.normalized(query);
+        float[] scratch = new float[query.length];
+        // Candidates are compared by cosine; minScore is a relevance score, (cosine + 1) / 2
+        double minCosine = 2 * minScore - 1;
+        TopK top = new TopK(maxResults);
+        for (int i = 0; i < count; i++) {
+            int position = positions == null ? i : positions[i];
+            if (anyDeleted && deleted.get(position)) {
+                continue;
+            }
+            float cosine = vectors.dot(position, unitQuery, scratch);
+            if (cosine >= minCosine) {
+                top.offer(position, cosine);
+            }
+        }
+
+        top.sortDescending();
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            int position = top.position(i);
+            SegmentLog.Entry entry = current.entry(position);
+            matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(top.score(i)), entry.id(),
+                    Embedding.from(vectors.read(position)), entry.segment()));
+        }
+        return matches;
+    }
+
+    @Override
+    public Map<String, TextSegment> segments(Collection<String> ids) {
+        Contents current = contents;
+        BitSet deleted = current.tombstones.snapshot();
+        Map<String, TextSegment> segments = new HashMap<>();
+        for (String id : ids) {
+            Integer position = current.positions.get(id);
+            if (position != null && !deleted.get(position)) {
+                TextSegment segment = current.entry(position).segment();
+                if (segment != null) {
+                    segments.put(id, segment);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Live entries, not counting tombstoned ones.
+     */
+    public int size() {
+        return liveSegments();
+    }
+
+    @Override
+    public synchronized int deleteDocument(long documentId) {
+        Contents current = contents;
+        return current.tombstones.delete(documentId, current.attributes, current.size);
+    }
+
+    @Override
+    public int purgeDocument(long documentId) {
+        // A compaction in progress would copy the purged entries it has already passed
+        synchronized (compactionLock) {
+            synchronized (this) {
+                Contents current = contents;
+                return current.tombstones.purge(documentId, current.attributes, current.size);
+            }
+        }
+    }
+
+    @Override
+    public int tombstones() {
+        return contents.tombstones.count();
+    }
+
+    @Override
+    public int liveSegments() {
+        Contents current = contents;
+        return current.size - current.tombstones.count();
+    }
+
+    /**
+     * Copies the live entries into new buffers without blocking searches or appends, then copies what was
+     * appended meanwhile and swaps under the store's monitor.
+     */
+    @Override
+    public int compact() {
+        synchronized (compactionLock) {
+            Contents old = contents;
+            if (old.tombstones.count() == 0) {
+                return 0;
+            }
+            long start = System.nanoTime();
+            int copied = old.size;
+            Contents next = new Contents(old.tombstones.documents());
+            copyLive(old, next, 0, copied, old.tombstones.snapshot());
+
+            synchronized (this) {
+                copyLive(old, next, copied, old.size, old.tombstones.snapshot());
+                for (long documentId : old.tombstones.documents()) {
+                    next.tombstones.delete(documentId, next.attributes, next.size);
+                }
+                contents = next;
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                int dropped = old.size - next.size;
+                compactions++;
+                compactedEntries += dropped;
+                lastCompactionMillis = millis;
+                log.info("Compacted off-heap embedding store: dropped {} tombstoned embeddings, {} remain, in {} ms",
+                        dropped, next.size, millis);
+                return dropped;
+            }
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Object> stats() {
+        Contents current = contents;
+        OffHeapVectors vectors = current.vectors;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("type", "offheap");
+        stats.put("embeddings", current.size - current.tombstones.count());
+        stats.put("tombstones", current.tombstones.count());
+        stats.put("dimension", vectors == null ? 0 : vectors.dimension());
+        stats.put("kernel", DotProduct.best().name());
+        stats.put("offHeapVectorBytes", vectors == null ? 0 : vectors.allocatedBytes());
+        stats.put("offHeapSegmentBytes", current.segments.allocatedBytes());
+        stats.put("segmentBytesUsed", current.segments.usedBytes());
+        // Arena addresses plus document id and upload time per entry
+        stats.put("heapIndexBytes", (long) current.addresses.length * Long.BYTES + (long) current.size * 2 * Long.BYTES);
+        stats.put("compactions", compactions);
+        stats.put("compactedEmbeddings", compactedEntries);
+        stats.put("lastCompactionMillis", lastCompactionMillis);
+        return stats;
+    }
+
+    private synchronized void append(String id, Embedding embedding, TextSegment segment) {
+        Metadata metadata = segment == null ? null : segment.metadata();
+        long documentId = SegmentFilter.documentId(metadata);
+        Contents current = contents;
+        current.append(id, embedding.vector(), segment, documentId, SegmentFilter.uploadedAt(metadata));
+    }
+
+    private static void copyLive(Contents from, Contents to, int start, int end, BitSet deleted) {
+        for (int i = start; i < end; i++) {
+            if (deleted.get(i)) {
+                continue;
+            }
+            SegmentLog.Entry entry = from.entry(i);
+            to.append(entry.id(), from.vectors.read(i), entry.segment(), from.attributes.documentId(i),
+                    from.attributes.uploadedAt(i));
+        }
+    }
+
+    /**
+     * One generation of the store's buffers. Entries below {@code size} are fully written; appends are
+     * serialized by the caller.
+     */
+    private static final class Contents {
+
+        private final OffHeapArena segments = new OffHeapArena(SEGMENT_CHUNK_BYTES);
+        private final SegmentAttributes attributes = new SegmentAttributes();
+        private final Tombstones tombstones;
+        private final Map<String, Integer> positions = new ConcurrentHashMap<>();
+        private volatile OffHeapVectors vectors;
+        private volatile long[] addresses = new long[1024];
+        private volatile int size;
+
+        private Contents(Set<Long> deletedDocuments) {
+            this.tombstones = new Tombstones(deletedDocuments);
+        }
+
+        private void append(String id, float[] vector, TextSegment segment, long documentId, long uploadedAt) {
+            if (vectors == null) {
+                vectors = new OffHeapVectors(vector.length);
+            } else if (vector.length != vectors.dimension()) {
+                throw new IllegalArgumentException("Embedding has dimension " + vector.length
+                        + " but the store holds dimension " + vectors.dimension());
+            }
+            int position = size;
+            byte[] record;
+            try {
+                record = SegmentLog.encode(id, segment);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            vectors.write(position, vector);
+            long address = segments.append(record);
+            if (position == addresses.length) {
+                addresses = Arrays.copyOf(addresses, addresses.length * 2);
+            }
+            addresses[position] = address;
+            attributes.set(position, documentId, uploadedAt);
+            tombstones.added(position, documentId);
+            positions.put(id, position);
+            // Publishes the entry to searches
+            size = position + 1;
+        }
+
+        private SegmentLog.Entry entry(int position) {
+            return SegmentLog.decode(segments.read(addresses[position]));
+        }
+    }
+}
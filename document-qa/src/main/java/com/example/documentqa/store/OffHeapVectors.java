@@ -0,0 +1,71 @@
+package com.example.documentqa.store;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Fixed-size float records in direct buffers, laid out like {@link MappedVectorFile}: the vector's norm
+ * followed by its unit vector. Nothing but the region table is on the heap.
+ */
+class OffHeapVectors {
+
+    private final int dimension;
+    private final int recordFloats;
+    private final MappedRegions<FloatBuffer> regions;
+
+    OffHeapVectors(int dimension) {
+        this.dimension = dimension;
+        this.recordFloats = dimension + 1;
+        this.regions = new MappedRegions<>(recordFloats * 4L, ByteBuffer::asFloatBuffer);
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Writes a record at the given index. Callers serialize writes and publish the index afterwards.
+     */
+    void write(int index, float[] vector) {
+        FloatBuffer region = regions.region(index, true);
+        int base = offset(index);
+        float norm = MappedVectorFile.norm(vector);
+        float[] unit = new float[dimension];
+        if (norm > 0) {
+            for (int i = 0; i < dimension; i++) {
+                unit[i] = vector[i] / norm;
+            }
+        }
+        region.put(base, norm);
+        region.put(base + 1, unit);
+    }
+
+    float[] read(int index) {
+        FloatBuffer region = regions.region(index, false);
+        int base = offset(index);
+        float norm = region.get(base);
+        float[] vector = new float[dimension];
+        region.get(base + 1, vector);
+        for (int i = 0; i < dimension; i++) {
+            vector[i] *= norm;
+        }
+        return vector;
+    }
+
+    /**
+     * Cosine similarity between the stored vector and a unit-length query; {@code scratch} holds
+     * {@code dimension} floats.
+     */
+    float dot(int index, float[] unitQuery, float[] scratch) {
+        regions.region(index, false).get(offset(index) + 1, scratch);
+        return DotProduct.best().dot(unitQuery, scratch);
+    }
+
+    long allocatedBytes() {
+        return regions.mappedBytes();
+    }
+
+    private int offset(int index) {
+        return (index % regions.recordsPerRegion()) * recordFloats;
+    }
+}
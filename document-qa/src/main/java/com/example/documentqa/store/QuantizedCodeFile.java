@@ -0,0 +1,102 @@
+package com.example.documentqa.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Int8 scalar-quantized copies of the vectors in a {@link MappedVectorFile}, one byte per component.
+ * Each record holds the vector norm and the per-vector offset and scale that map a code {@code c} back
+ * to {@code offset + scale * c}, followed by the codes themselves: a quarter of the float record's size.
+ */
+class QuantizedCodeFile implements Closeable {
+
+    private static final int MAGIC = 0x44514331; // "DQC1"
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = 12;
+
+    private final FileChannel channel;
+    private final int dimension;
+    private final int recordBytes;
+    private final MappedRegions<ByteBuffer> regions;
+
+    private QuantizedCodeFile(FileChannel channel, int dimension) {
+        this.channel = channel;
+        this.dimension = dimension;
+        this.recordBytes = RECORD_HEADER_BYTES + dimension;
+        this.regions = new MappedRegions<>(channel, HEADER_BYTES, recordBytes, buffer -> buffer);
+    }
+
+    static QuantizedCodeFile open(Path file, int dimension) throws IOException {
+        return new QuantizedCodeFile(StoreFiles.openWithHeader(file, MAGIC, HEADER_BYTES, dimension), dimension);
+    }
+
+    static int readDimension(Path file) throws IOException {
+        return StoreFiles.readDimension(file, MAGIC, HEADER_BYTES);
+    }
+
+    void write(int index, float[] vector) {
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (float v : vector) {
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        float scale = max > min ? (max - min) / 255f : 1f;
+
+        ByteBuffer region = regions.region(index, true);
+        int base = (index % regions.recordsPerRegion()) * recordBytes;
+        region.putFloat(base, MappedVectorFile.norm(vector));
+        region.putFloat(base + 4, min);
+        region.putFloat(base + 8, scale);
+        int codes = base + RECORD_HEADER_BYTES;
+        for (int i = 0; i < dimension; i++) {
+            region.put(codes + i, (byte) Math.round((vector[i] - min) / scale));
+        }
+    }
+
+    float storedNorm(int index) {
+        return regions.region(index, false).getFloat((index % regions.recordsPerRegion()) * recordBytes);
+    }
+
+    /**
+     * Approximate cosine similarity from the codes alone. {@code querySum} is the sum of the query's components,
+     * which carries the per-vector offset term; {@code scratch} is a caller-owned buffer of {@code dimension} bytes.
+     */
+    double cosine(int index, float[] query, float queryNorm, float querySum, byte[] scratch) {
+        ByteBuffer region = regions.region(index, false);
+        int base = (index % regions.recordsPerRegion()) * recordBytes;
+        float norm = region.getFloat(base);
+        if (norm == 0 || queryNorm == 0) {
+            return 0;
+        }
+        float offset = region.getFloat(base + 4);
+        float scale = region.getFloat(base + 8);
+        region.get(base + RECORD_HEADER_BYTES, scratch, 0, dimension);
+        float dot = 0;
+        for (int i = 0; i < dimension; i++) {
+            dot += query[i] * (scratch[i] & 0xFF);
+        }
+        return (offset * querySum + scale * dot) / (norm * queryNorm);
+    }
+
+    void mapExisting(int count) {
+        regions.mapExisting(count);
+    }
+
+    long mappedBytes() {
+        return regions.mappedBytes();
+    }
+
+    long bytesFor(int count) {
+        return (long) count * recordBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        regions.force();
+        channel.close();
+    }
+}
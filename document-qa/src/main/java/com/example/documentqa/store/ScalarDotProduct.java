@@ -0,0 +1,32 @@
+package com.example.documentqa.store;
+
+/**
+ * Four independent accumulators, so consecutive multiply-adds do not wait on each other.
+ */
+final class ScalarDotProduct extends DotProduct {
+
+    @Override
+    String name() {
+        return "scalar";
+    }
+
+    @Override
+    float dot(float[] a, float[] b) {
+        int length = a.length;
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
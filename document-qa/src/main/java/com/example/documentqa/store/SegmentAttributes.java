@@ -0,0 +1,105 @@
+package com.example.documentqa.store;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-position document id and upload time of the segments in a store, plus the positions of each
+ * document. {@link #select} turns a {@link SegmentFilter} into the sorted positions to score: a document
+ * filter reads only that document's positions, a date range alone scans the upload times, and neither
+ * touches a vector.
+ */
+public class SegmentAttributes {
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private long[] documentIds = new long[1024];
+    private long[] uploadedAt = new long[1024];
+    private int size;
+    private final Map<Long, Positions> byDocument = new HashMap<>();
+
+    public synchronized void set(int position, long documentId, long uploaded) {
+        if (position >= documentIds.length) {
+            int capacity = Math.max(position + 1, documentIds.length * 2);
+            documentIds = Arrays.copyOf(documentIds, capacity);
+            uploadedAt = Arrays.copyOf(uploadedAt, capacity);
+        }
+        documentIds[position] = documentId;
+        uploadedAt[position] = uploaded;
+        byDocument.computeIfAbsent(documentId, id -> new Positions()).add(position);
+        size = Math.max(size, position + 1);
+    }
+
+    public synchronized long documentId(int position) {
+        return documentIds[position];
+    }
+
+    public synchronized long uploadedAt(int position) {
+        return uploadedAt[position];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Positions below {@code limit} that the filter accepts, in ascending order.
+     */
+    public synchronized int[] select(SegmentFilter filter, int limit) {
+        int end = Math.min(limit, size);
+        if (filter.documentIds() != null) {
+            int count = 0;
+            for (Long documentId : filter.documentIds()) {
+                Positions positions = byDocument.get(documentId);
+                count += positions == null ? 0 : positions.size;
+            }
+            if (count == 0) {
+                return NO_POSITIONS;
+            }
+            int[] selected = new int[count];
+            int n = 0;
+            for (Long documentId : filter.documentIds()) {
+                Positions positions = byDocument.get(documentId);
+                if (positions == null) {
+                    continue;
+                }
+                for (int i = 0; i < positions.size; i++) {
+                    int position = positions.values[i];
+                    if (position < end && filter.matches(documentIds[position], uploadedAt[position])) {
+                        selected[n++] = position;
+                    }
+                }
+            }
+            int[] result = Arrays.copyOf(selected, n);
+            if (filter.documentIds().size() > 1) {
+                Arrays.sort(result);
+            }
+            return result;
+        }
+        int[] selected = new int[64];
+        int n = 0;
+        for (int position = 0; position < end; position++) {
+            if (filter.matches(documentIds[position], uploadedAt[position])) {
+                if (n == selected.length) {
+                    selected = Arrays.copyOf(selected, n * 2);
+                }
+                selected[n++] = position;
+            }
+        }
+        return Arrays.copyOf(selected, n);
+    }
+
+    private static final class Positions {
+
+        private int[] values = new int[8];
+        private int size;
+
+        private void add(int position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.documentqa.store;
+
+import com.example.documentqa.ingestion.IngestionPipeline;
+import dev.langchain4j.data.document.Metadata;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Restricts a search to segments of some documents and/or documents uploaded in a time range. Null
+ * fields do not restrict; times are epoch milliseconds, {@code uploadedFrom} inclusive and
+ * {@code uploadedTo} exclusive.
+ */
+public record SegmentFilter(Set<Long> documentIds, Long uploadedFrom, Long uploadedTo) {
+
+    public static final SegmentFilter ALL = new SegmentFilter(null, null, null);
+
+    public static SegmentFilter of(Collection<Long> documentIds, Long uploadedFrom, Long uploadedTo) {
+        Set<Long> ids = documentIds == null || documentIds.isEmpty() ? null : Set.copyOf(documentIds);
+        if (ids == null && uploadedFrom == null && uploadedTo == null) {
+            return ALL;
+        }
+        return new SegmentFilter(ids, uploadedFrom, uploadedTo);
+    }
+
+    public boolean isAll() {
+        return documentIds == null && uploadedFrom == null && uploadedTo == null;
+    }
+
+    public boolean matches(long documentId, long uploadedAt) {
+        return (documentIds == null || documentIds.contains(documentId))
+                && (uploadedFrom == null || uploadedAt >= uploadedFrom)
+                && (uploadedTo == null || uploadedAt < uploadedTo);
+    }
+
+    public boolean matches(Metadata metadata) {
+        return matches(documentId(metadata), uploadedAt(metadata));
+    }
+
+    /**
+     * The segment's document id, or -1 for segments stored without one.
+     */
+    public static long documentId(Metadata metadata) {
+        return parse(metadata, IngestionPipeline.DOCUMENT_ID_METADATA, -1);
+    }
+
+    /**
+     * The segment's upload time, or {@link Long#MIN_VALUE} for segments stored without one.
+     */
+    public static long uploadedAt(Metadata metadata) {
+        return parse(metadata, IngestionPipeline.UPLOADED_AT_METADATA, Long.MIN_VALUE);
+    }
+
+    private static long parse(Metadata metadata, String key, long missing) {
+        String value = metadata == null ? null : metadata.get(key);
+        if (value == null) {
+            return missing;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return missing;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only log of embedding ids and segment text, plus an index file holding one log offset per entry.
+ * The index is written last, so its length is the number of committed entries and a torn tail left by a
+ * crash is dropped on the next open.
+ */
+class SegmentLog implements Closeable {
+
+    private final FileChannel log;
+    private final FileChannel index;
+    private volatile int size;
+    private long logEnd;
+
+    SegmentLog(Path logFile, Path indexFile) throws IOException {
+        this.log = FileChannel.open(logFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = FileChannel.open(indexFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        int committed = (int) (index.size() / Long.BYTES);
+        index.truncate(committed * (long) Long.BYTES);
+        if (committed == 0) {
+            logEnd = 0;
+        } else {
+            long lastOffset = offset(committed - 1);
+            logEnd = lastOffset + Integer.BYTES + readInt(log, lastOffset);
+        }
+        log.truncate(logEnd);
+        this.size = committed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Appends an entry and returns its position. Must be called by one writer at a time.
+     */
+    int append(String id, TextSegment segment) throws IOException {
+        byte[] body = encode(id, segment);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + body.length);
+        record.putInt(body.length).put(body).flip();
+        writeFully(log, record, logEnd);
+
+        ByteBuffer offset = ByteBuffer.allocate(Long.BYTES);
+        offset.putLong(logEnd).flip();
+        writeFully(index, offset, size * (long) Long.BYTES);
+
+        logEnd += Integer.BYTES + body.length;
+        return size++;
+    }
+
+    Entry read(int position) {
+        try {
+            long offset = offset(position);
+            int length = readInt(log, offset);
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(log, body, offset + Integer.BYTES);
+            body.flip();
+            return decode(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read segment " + position, e);
+        }
+    }
+
+    /**
+     * Reads only the id of an entry, without decoding its text.
+     */
+    String readId(int position) {
+        try {
+            long offset = offset(position) + Integer.BYTES;
+            ByteBuffer body = ByteBuffer.allocate(readInt(log, offset));
+            readFully(log, body, offset + Integer.BYTES);
+            return new String(body.array(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read segment " + position, e);
+        }
+    }
+
+    long bytes() {
+        return logEnd;
+    }
+
+    void force() throws IOException {
+        log.force(false);
+        index.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        log.close();
+        index.close();
+    }
+
+    private long offset(int position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        readFully(index, buffer, position * (long) Long.BYTES);
+        return buffer.flip().getLong();
+    }
+
+    private static int readInt(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, buffer, position);
+        return buffer.flip().getInt();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    static byte[] encode(String id, TextSegment segment) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, id);
+        if (segment == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            writeString(out, segment.text());
+            Map<String, String> metadata = segment.metadata().asMap();
+            out.writeInt(metadata.size());
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Entry decode(ByteBuffer body) {
+        String id = readString(body);
+        if (body.get() == 0) {
+            return new Entry(id, null);
+        }
+        String text = readString(body);
+        int metadataSize = body.getInt();
+        Map<String, String> metadata = new HashMap<>();
+        for (int i = 0; i < metadataSize; i++) {
+            metadata.put(readString(body), readString(body));
+        }
+        return new Entry(id, TextSegment.from(text, new Metadata(metadata)));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    record Entry(String id, TextSegment segment) {
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Implemented by stores that can read segments back by id, so indexes kept beside them only need to
+ * hold the ids.
+ */
+public interface SegmentLookup {
+
+    /**
+     * The segments stored under {@code ids}, keyed by id. Ids that are unknown or tombstoned are left out.
+     */
+    Map<String, TextSegment> segments(Collection<String> ids);
+}
@@ -0,0 +1,16 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Implemented by persistent stores so indexes kept beside them can be rebuilt from their contents on startup.
+ */
+public interface SegmentScan {
+
+    /**
+     * Passes every stored segment and its id to {@code action}, in insertion order.
+     */
+    void forEachSegment(BiConsumer<String, TextSegment> action);
+}
@@ -0,0 +1,66 @@
+package com.example.documentqa.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Header handling shared by the mapped record files: a magic number followed by the vector dimension.
+ */
+final class StoreFiles {
+
+    private StoreFiles() {
+    }
+
+    static FileChannel openWithHeader(Path file, int magic, int headerBytes, int dimension) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (channel.size() == 0) {
+            header.putInt(magic).putInt(dimension).flip();
+            channel.write(header, 0);
+            return channel;
+        }
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != magic) {
+            channel.close();
+            throw new IOException("Unexpected file format: " + file);
+        }
+        int stored = header.getInt();
+        if (stored != dimension) {
+            channel.close();
+            throw new IOException(file + " has dimension " + stored + ", expected " + dimension);
+        }
+        return channel;
+    }
+
+    static int readDimension(Path file, int magic, int headerBytes) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < headerBytes) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            return header.getInt() == magic ? header.getInt() : 0;
+        }
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
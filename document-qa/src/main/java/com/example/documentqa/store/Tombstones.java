@@ -0,0 +1,93 @@
+package com.example.documentqa.store;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Deleted documents and the store positions they occupied. Deletion is recorded by document id, so
+ * segments of a deleted document that arrive afterwards, from an ingestion batch that was already in
+ * flight, are tombstoned as they are added.
+ * <p>
+ * The position bitmap is copied on write and published through a volatile field, so searches take a
+ * {@link #snapshot()} once and test it without locking.
+ */
+public class Tombstones {
+
+    private final Set<Long> documents = new HashSet<>();
+    private volatile BitSet positions = new BitSet();
+    private volatile int count;
+
+    public Tombstones() {
+    }
+
+    public Tombstones(Collection<Long> deletedDocuments) {
+        documents.addAll(deletedDocuments);
+    }
+
+    /**
+     * Marks the document deleted and tombstones its positions below {@code limit}. Returns how many
+     * positions were newly tombstoned.
+     */
+    public synchronized int delete(long documentId, SegmentAttributes attributes, int limit) {
+        documents.add(documentId);
+        return purge(documentId, attributes, limit);
+    }
+
+    /**
+     * Tombstones the document's positions below {@code limit} without marking it deleted, so positions
+     * it gets later stay live. Returns how many positions were newly tombstoned.
+     */
+    public synchronized int purge(long documentId, SegmentAttributes attributes, int limit) {
+        int[] selected = attributes.select(SegmentFilter.of(Set.of(documentId), null, null), limit);
+        if (selected.length == 0) {
+            return 0;
+        }
+        BitSet next = (BitSet) positions.clone();
+        int added = 0;
+        for (int position : selected) {
+            if (!next.get(position)) {
+                next.set(position);
+                added++;
+            }
+        }
+        if (added > 0) {
+            positions = next;
+            count += added;
+        }
+        return added;
+    }
+
+    /**
+     * Called for every new position; tombstones it straight away if its document was deleted.
+     */
+    public synchronized void added(int position, long documentId) {
+        if (!documents.contains(documentId)) {
+            return;
+        }
+        BitSet next = (BitSet) positions.clone();
+        next.set(position);
+        positions = next;
+        count++;
+    }
+
+    public synchronized boolean isDeleted(long documentId) {
+        return documents.contains(documentId);
+    }
+
+    public synchronized Set<Long> documents() {
+        return Set.copyOf(documents);
+    }
+
+    /**
+     * The tombstoned positions at this moment. Never modified after it is returned.
+     */
+    public BitSet snapshot() {
+        return positions;
+    }
+
+    public int count() {
+        return count;
+    }
+}
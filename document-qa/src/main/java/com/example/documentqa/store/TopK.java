@@ -0,0 +1,105 @@
+package com.example.documentqa.store;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap of (position, score) pairs in two primitive arrays, so keeping the best k of a few
+ * million scores allocates nothing per candidate. The worst kept score sits at the root and is the bar a
+ * new candidate has to clear.
+ */
+final class TopK {
+
+    private final int capacity;
+    private int[] positions;
+    private float[] scores;
+    private int size;
+
+    TopK(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        int initial = Math.min(this.capacity, 64);
+        this.positions = new int[initial];
+        this.scores = new float[initial];
+    }
+
+    /**
+     * Keeps the candidate if there is room or it beats the worst one kept.
+     */
+    void offer(int position, float score) {
+        if (size < capacity) {
+            if (size == positions.length) {
+                int grown = Math.min(capacity, size * 2);
+                positions = Arrays.copyOf(positions, grown);
+                scores = Arrays.copyOf(scores, grown);
+            }
+            positions[size] = position;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            positions[0] = position;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int position(int i) {
+        return positions[i];
+    }
+
+    float score(int i) {
+        return scores[i];
+    }
+
+    /**
+     * Reorders the kept candidates best first. The heap is consumed: only {@link #position(int)},
+     * {@link #score(int)} and {@link #size()} are meaningful afterwards.
+     */
+    void sortDescending() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < end && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < end && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int position = positions[a];
+        positions[a] = positions[b];
+        positions[b] = position;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.documentqa.blob;
+
+import com.example.documentqa.util.Hashing;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlobStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storesByContentHashAndReadsBackBothForms() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(7).nextBytes(content);
+
+        StoredBlob plain = new BlobStore(directory, false).store(new ByteArrayInputStream(content));
+        assertEquals(Hashing.sha256Hex(content), plain.hash());
+        assertEquals(content.length, plain.size());
+
+        // Switching compression on keeps serving the existing blob instead of writing a second copy
+        BlobStore compressing = new BlobStore(directory, true);
+        assertEquals(plain, compressing.store(new ByteArrayInputStream(content)));
+        try (InputStream in = compressing.open(plain.hash())) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+
+        byte[] text = "the same line again\n".repeat(10_000).getBytes();
+        StoredBlob compressed = compressing.store(new ByteArrayInputStream(text));
+        Path file = directory.resolve(compressed.hash().substring(0, 2)).resolve(compressed.hash() + ".gz");
+        assertTrue(Files.size(file) < text.length / 10);
+        try (InputStream in = new BlobStore(directory, false).open(compressed.hash())) {
+            assertArrayEquals(text, in.readAllBytes());
+        }
+
+        try (Stream<Path> staging = Files.list(directory.resolve("tmp"))) {
+            assertEquals(0, staging.count());
+        }
+    }
+}
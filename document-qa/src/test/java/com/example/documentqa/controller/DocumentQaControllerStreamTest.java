@@ -0,0 +1,159 @@
+package com.example.documentqa.controller;
+
+import com.example.documentqa.ingestion.TokenEstimator;
+import com.example.documentqa.ollama.CancellableStreamingChatModel;
+import com.example.documentqa.ollama.ModelScheduler;
+import com.example.documentqa.ollama.ScheduledStreamingChatModel;
+import com.example.documentqa.retrieval.ContextPacker;
+import com.example.documentqa.retrieval.ScopedContentRetriever;
+import com.example.documentqa.service.StreamingQaService;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.rag.content.Content;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class DocumentQaControllerStreamTest {
+
+    private final ModelScheduler scheduler = new ModelScheduler(1, 1);
+    private StreamingQaService streamingQaService;
+
+    private MockMvc mockMvc(StreamingChatLanguageModel model) {
+        ScopedContentRetriever retriever = (query, filter, options) ->
+                List.of(Content.from(TextSegment.from("The notice period is ninety days.")));
+        streamingQaService = new StreamingQaService(new ScheduledStreamingChatModel(model, scheduler), retriever,
+                new ContextPacker(TokenEstimator.approximate(), true, 1000, 250, 0.8), sessionId -> null, 2);
+        // Only the streaming endpoint is exercised, so the controller's other collaborators are left out
+        DocumentQaController controller = new DocumentQaController(null, null, null, null, streamingQaService,
+                null, null, null, null, null, null, null, null, null, null, null);
+        ReflectionTestUtils.setField(controller, "streamTimeoutMillis", 10_000L);
+        ReflectionTestUtils.setField(controller, "askDeadlineMillis", 10_000L);
+        return MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        streamingQaService.shutdown();
+    }
+
+    @Test
+    void streamsSourcesThenTokensThenDone() throws Exception {
+        String body = ask(mockMvc((messages, handler) -> {
+            handler.onNext("Ninety ");
+            handler.onNext("days.");
+            handler.onComplete(Response.from(AiMessage.from("Ninety days."), new TokenUsage(42, 3)));
+        }));
+
+        assertEquals(List.of("sources", "token", "token", "done"), events(body));
+        assertTrue(body.contains("data:Ninety \n"));
+        assertTrue(body.contains("data:days.\n"));
+        assertTrue(body.contains("The notice period is ninety days."));
+        assertTrue(body.contains("\"outputTokens\":3"));
+        assertEquals(0, scheduler.stats().get("running"));
+    }
+
+    @Test
+    void endsWithAnErrorEventWhenGenerationFails() throws Exception {
+        String body = ask(mockMvc((messages, handler) -> {
+            handler.onNext("Ninety ");
+            handler.onError(new IllegalStateException("Ollama went away"));
+        }));
+
+        assertEquals(List.of("sources", "token", "error"), events(body));
+        assertTrue(body.contains("Ollama went away"));
+        assertEquals(0, scheduler.stats().get("running"));
+    }
+
+    @Test
+    void closingTheStreamStopsGenerationAndReturnsTheModelSlot() throws Exception {
+        EndlessModel model = new EndlessModel();
+        MvcResult result = start(mockMvc(model));
+        assertTrue(model.firstToken.await(5, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.stats().get("running"));
+
+        // The client goes away mid-answer. The first token can arrive before the stream has handed over its
+        // cancel hook, in which case the generation is stopped as soon as the hook arrives
+        result.getRequest().getAsyncContext().complete();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((!model.cancelled.get() || !Integer.valueOf(0).equals(scheduler.stats().get("running")))
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(model.cancelled.get());
+        assertEquals(0, scheduler.stats().get("running"));
+    }
+
+    private static MvcResult start(MockMvc mockMvc) throws Exception {
+        return mockMvc.perform(post("/api/documents/ask/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\":\"What is the notice period?\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    private static String ask(MockMvc mockMvc) throws Exception {
+        MvcResult result = start(mockMvc);
+        result.getAsyncResult(5_000);
+        return result.getResponse().getContentAsString();
+    }
+
+    private static List<String> events(String body) {
+        List<String> events = new ArrayList<>();
+        Matcher matcher = Pattern.compile("^event:(\\w+)$", Pattern.MULTILINE).matcher(body);
+        while (matcher.find()) {
+            events.add(matcher.group(1));
+        }
+        return events;
+    }
+
+    /**
+     * Produces a token every 20 ms until it is cancelled, never completing by itself.
+     */
+    private static class EndlessModel implements CancellableStreamingChatModel {
+
+        final CountDownLatch firstToken = new CountDownLatch(1);
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        @Override
+        public Runnable stream(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+            Thread thread = new Thread(() -> {
+                while (!cancelled.get()) {
+                    handler.onNext("more ");
+                    firstToken.countDown();
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            return () -> cancelled.set(true);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.documentqa.embedding;
+
+import com.example.documentqa.ollama.OllamaClient;
+import com.example.documentqa.ollama.OllamaEmbeddings;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Ingestion throughput and query latency of the pooled, micro-batched ONNX model against the
+ * single-sequence in-process encoder and, when a server is given, the Ollama embedding endpoint.
+ * Ingestion embeds batches of 16 segments of roughly 400 word pieces from {@code workers} threads, as the
+ * pipeline's embed stage does; queries are short questions, embedded one at a time for latency and from
+ * {@code workers} threads at once for throughput.
+ * Arguments: segment count, workers, Ollama base URL, Ollama model (defaults 512 4, no Ollama).
+ */
+public class EmbeddingBenchmark {
+
+    private static final int BATCH = 16;
+    private static final int QUERIES = 100;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        String ollamaUrl = args.length > 2 ? args[2] : null;
+        String ollamaModel = args.length > 3 ? args[3] : "llama3.1";
+
+        Random random = new Random(3);
+        String[] vocabulary = new String[2000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = word(random);
+        }
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            segments.add(TextSegment.from(sentence(random, vocabulary, 150)));
+        }
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            queries.add(sentence(random, vocabulary, 12) + "?");
+        }
+
+        System.out.printf("%d segments of ~400 word pieces, %d embed workers, %d cores%n",
+                count, workers, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-28s %6s %12s %11s %11s %11s%n", "model", "dims", "segments/s", "query p50", "query p95", "queries/s");
+
+        run("onnx single-sequence", new AllMiniLmL6V2EmbeddingModel(), segments, queries, workers);
+        PooledOnnxEmbeddingModel pooled = new PooledOnnxEmbeddingModel(
+                Runtime.getRuntime().availableProcessors(), 32, 1024, Duration.ZERO);
+        run("onnx pooled + micro-batched", pooled, segments, queries, workers);
+        System.out.println(pooled.stats());
+        pooled.close();
+
+        if (ollamaUrl != null) {
+            EmbeddingModel ollama = new OllamaEmbeddings(new OllamaClient(ollamaUrl, "5m", Duration.ofSeconds(5),
+                    Duration.ofMinutes(10), workers, Duration.ofMinutes(5)), ollamaModel, Duration.ofMinutes(1), 1,
+                    Duration.ZERO);
+            try {
+                run("ollama " + ollamaModel, ollama, segments, queries, workers);
+            } catch (RuntimeException e) {
+                System.out.println("ollama at " + ollamaUrl + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void run(String name, EmbeddingModel model, List<TextSegment> segments, List<String> queries,
+                            int workers) throws Exception {
+        // Warm-up: loads the model and lets the JIT compile the hot paths
+        model.embedAll(segments.subList(0, Math.min(BATCH, segments.size())));
+        int dimension = model.embed(queries.get(0)).content().dimension();
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        long start = System.nanoTime();
+        List<Future<?>> batches = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i += BATCH) {
+            List<TextSegment> batch = segments.subList(i, Math.min(i + BATCH, segments.size()));
+            batches.add(pool.submit(() -> model.embedAll(batch)));
+        }
+        for (Future<?> batch : batches) {
+            batch.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        double[] latencies = new double[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            long queryStart = System.nanoTime();
+            model.embed(queries.get(i));
+            latencies[i] = (System.nanoTime() - queryStart) / 1e6;
+        }
+        Arrays.sort(latencies);
+
+        pool = Executors.newFixedThreadPool(workers);
+        long concurrentStart = System.nanoTime();
+        List<Future<?>> answers = new ArrayList<>();
+        for (String query : queries) {
+            answers.add(pool.submit(() -> model.embed(query)));
+        }
+        for (Future<?> answer : answers) {
+            answer.get();
+        }
+        double concurrentSeconds = (System.nanoTime() - concurrentStart) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("%-28s %6d %12.1f %9.1fms %9.1fms %11.1f%n", name, dimension, segments.size() / seconds,
+                latencies[latencies.length / 2], latencies[(int) (latencies.length * 0.95)],
+                queries.size() / concurrentSeconds);
+    }
+
+    private static String sentence(Random random, String[] vocabulary, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            text.append(vocabulary[random.nextInt(vocabulary.length)]).append(w % 15 == 14 ? ". " : " ");
+        }
+        return text.toString().trim();
+    }
+
+    private static String word(Random random) {
+        int length = 3 + random.nextInt(7);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}
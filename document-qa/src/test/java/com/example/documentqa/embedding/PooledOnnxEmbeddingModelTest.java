@@ -0,0 +1,84 @@
+package com.example.documentqa.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.AllMiniLmL6V2EmbeddingModel;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PooledOnnxEmbeddingModelTest {
+
+    private static PooledOnnxEmbeddingModel model;
+
+    @BeforeAll
+    static void load() {
+        model = new PooledOnnxEmbeddingModel(2, 16, 1024, Duration.ofMillis(5));
+    }
+
+    @AfterAll
+    static void close() {
+        model.close();
+    }
+
+    @Test
+    void batchedVectorsMatchTheSingleSequenceEncoder() {
+        List<TextSegment> segments = List.of(
+                TextSegment.from("Employees receive 25 days of paid leave per year."),
+                TextSegment.from("Error ERR-4021 means the upload was too large."),
+                TextSegment.from("Hi"),
+                TextSegment.from("Expense reports are due within 30 days. ".repeat(120)));
+
+        List<Embedding> batched = model.embedAll(segments).content();
+        List<Embedding> reference = new AllMiniLmL6V2EmbeddingModel().embedAll(segments).content();
+
+        for (int i = 0; i < segments.size(); i++) {
+            assertEquals(PooledOnnxEmbeddingModel.DIMENSION, batched.get(i).dimension());
+            assertTrue(cosine(batched.get(i).vector(), reference.get(i).vector()) > 0.999, "segment " + i);
+        }
+    }
+
+    @Test
+    void coalescesConcurrentRequestsIntoBatches() throws Exception {
+        long batchesBefore = (long) model.stats().get("batches");
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int caller = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                model.embed("Question number " + caller + " about travel policy");
+            });
+            thread.start();
+            callers.add(thread);
+        }
+        start.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        long batches = (long) model.stats().get("batches") - batchesBefore;
+        assertTrue(batches < 8, "8 concurrent requests ran in " + batches + " batches");
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.documentqa.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures chunking throughput on a large synthetic document shaped like extracted PDF text: numbered
+ * headings, blank-line paragraphs and sentences wrapped at about 90 characters. Also reports how many
+ * segments end mid-sentence.
+ * Run with {@code java -cp <test classpath> com.example.documentqa.ingestion.ChunkerBenchmark [megabytes]}.
+ */
+public class ChunkerBenchmark {
+
+    private static final String[] WORDS = ("the retrieval model document index query vector segment answer context "
+            + "latency throughput system pipeline embedding store result section table figure value measured "
+            + "approximately significantly configuration parameter").split(" ");
+
+    public static void main(String[] args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        String text = generate(megabytes * 1024 * 1024, new Random(42));
+
+        System.out.printf("%-34s %8s %10s %12s %10s%n", "splitter", "MB/s", "segments", "avg tokens", "mid-sent.");
+        run("fixed 2000 chars", new FixedSizeSplitter(2000), text);
+        run("langchain4j recursive 1600/200", DocumentSplitters.recursive(1600, 200), text);
+        run("structured 400/50 tokens", new StructuredTextSplitter(400, 50), text);
+    }
+
+    private static void run(String label, DocumentSplitter splitter, String text) {
+        Document document = Document.from(text);
+        splitter.split(document);
+        long best = Long.MAX_VALUE;
+        List<TextSegment> segments = null;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            segments = splitter.split(document);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        TokenEstimator estimator = TokenEstimator.approximate();
+        long tokens = 0;
+        int midSentence = 0;
+        for (TextSegment segment : segments) {
+            String body = segment.text();
+            tokens += estimator.estimate(body, 0, body.length());
+            char last = body.charAt(body.length() - 1);
+            if (last != '.' && !Character.isUpperCase(body.charAt(body.lastIndexOf('\n') + 1))) {
+                midSentence++;
+            }
+        }
+        double megabytesPerSecond = text.length() / (1024.0 * 1024.0) / (best / 1e9);
+        System.out.printf("%-34s %8.1f %10d %12.1f %9.1f%%%n", label, megabytesPerSecond, segments.size(),
+                tokens / (double) segments.size(), 100.0 * midSentence / segments.size());
+    }
+
+    private static String generate(int chars, Random random) {
+        StringBuilder text = new StringBuilder(chars + 1024);
+        int section = 1;
+        int column = 0;
+        while (text.length() < chars) {
+            text.append(section++).append(" Section Heading Number ").append(section).append('\n');
+            for (int p = 0, paragraphs = 2 + random.nextInt(5); p < paragraphs; p++) {
+                for (int s = 0, sentences = 3 + random.nextInt(6); s < sentences; s++) {
+                    for (int w = 0, words = 8 + random.nextInt(20); w < words; w++) {
+                        String word = WORDS[random.nextInt(WORDS.length)];
+                        if (column + word.length() > 90) {
+                            text.append('\n');
+                            column = 0;
+                        }
+                        if (w == 0) {
+                            word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                        }
+                        text.append(word).append(w == words - 1 ? ". " : " ");
+                        column += word.length() + 1;
+                    }
+                }
+                text.append("\n\n");
+                column = 0;
+            }
+        }
+        return text.toString();
+    }
+}
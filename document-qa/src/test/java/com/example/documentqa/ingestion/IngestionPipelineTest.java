@@ -0,0 +1,141 @@
+package com.example.documentqa.ingestion;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IngestionPipelineTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void extractsPageRangesInParallelAndTagsSegmentsWithTheirDocumentAndPage() throws Exception {
+        Path pdf = writePdf(directory.resolve("doc.pdf"), 10);
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        IngestionPipeline pipeline = new IngestionPipeline(new ConstantEmbeddingModel(), store,
+                new StructuredTextSplitter(200, 20),
+                PipelineSettings.builder().extractWorkers(3).minPagesPerRange(3).queueCapacity(4).build());
+        Instant uploadedAt = Instant.parse("2024-03-01T10:15:30Z");
+        pipeline.start();
+        try {
+            // A stream-only source is spooled to a temp file first; a file source is read in place
+            IngestionResult streamed = pipeline.submit(1L, "streamed", uploadedAt, () -> Files.newInputStream(pdf),
+                    IngestionListener.NONE).get(30, TimeUnit.SECONDS);
+            IngestionResult inPlace = pipeline.submit(2L, "in place", uploadedAt, ContentSource.of(pdf),
+                    IngestionListener.NONE).get(30, TimeUnit.SECONDS);
+
+            assertEquals(10, streamed.getSegments());
+            assertEquals(10, streamed.getStoredSegments());
+            assertEquals(10, inPlace.getStoredSegments());
+        } finally {
+            pipeline.shutdown();
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{1, 0}), 100);
+        Set<Integer> pages = new TreeSet<>();
+        Set<String> indexes = new TreeSet<>();
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            int page = Integer.parseInt(match.embedded().metadata().get(IngestionPipeline.PAGE_METADATA));
+            assertEquals("Page " + page + " says hello.", match.embedded().text().trim());
+            pages.add(page);
+            Metadata metadata = match.embedded().metadata();
+            String documentId = metadata.get(IngestionPipeline.DOCUMENT_ID_METADATA);
+            assertEquals(documentId.equals("1") ? "streamed" : "in place", metadata.get(IngestionPipeline.TITLE_METADATA));
+            assertEquals(String.valueOf(uploadedAt.toEpochMilli()), metadata.get(IngestionPipeline.UPLOADED_AT_METADATA));
+            indexes.add(documentId + ":" + metadata.get(StructuredTextSplitter.INDEX_METADATA));
+        }
+        assertEquals(20, matches.size());
+        assertEquals(10, pages.size());
+        // One segment per page, numbered across the document rather than from zero on each page
+        assertEquals(20, indexes.size());
+    }
+
+    @Test
+    void deletesTheSpooledCopyWhenParsingFailsAfterRangesWereCounted() throws Exception {
+        Path pdf = writePdf(directory.resolve("doc.pdf"), 4);
+        IngestionPipeline pipeline = new IngestionPipeline(new ConstantEmbeddingModel(), new InMemoryEmbeddingStore<>(),
+                new StructuredTextSplitter(200, 20), PipelineSettings.builder().build());
+        Set<Path> before = spooledFiles();
+        pipeline.start();
+        try {
+            CompletableFuture<IngestionResult> future = pipeline.submit(1L, "failing", Instant.now(),
+                    () -> Files.newInputStream(pdf), new IngestionListener() {
+                        @Override
+                        public void stageStarted(String stage) {
+                            if (stage.equals("extract")) {
+                                throw new IllegalStateException("listener failed");
+                            }
+                        }
+                    });
+            assertThrows(ExecutionException.class, () -> future.get(30, TimeUnit.SECONDS));
+        } finally {
+            pipeline.shutdown();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!spooledFiles().equals(before) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(before, spooledFiles());
+    }
+
+    private static Set<Path> spooledFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("ingest-"))
+                    .collect(Collectors.toSet());
+        }
+    }
+
+    static Path writePdf(Path file, int pages) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 1; i <= pages; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText("Page " + i + " says hello.");
+                    content.endText();
+                }
+            }
+            document.save(file.toFile());
+        }
+        return file;
+    }
+
+    private static class ConstantEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream().map(segment -> Embedding.from(new float[]{1, 0})).toList());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.documentqa.ingestion;
+
+import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares whole-document PDF parsing with the page-streaming pipeline on a generated PDF: total time,
+ * and how long it takes before the first segment reaches the embedding model.
+ * Run with {@code java -cp <test classpath> com.example.documentqa.ingestion.PdfExtractionBenchmark [pages]}.
+ */
+public class PdfExtractionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Path pdf = Files.createTempFile("benchmark-", ".pdf");
+        try {
+            write(pdf, pages);
+            System.out.printf("%d pages, %.1f MB%n", pages, Files.size(pdf) / 1e6);
+
+            long start = System.nanoTime();
+            String text;
+            try (InputStream in = Files.newInputStream(pdf)) {
+                text = new ApachePdfBoxDocumentParser().parse(in).text();
+            }
+            System.out.printf("%-34s total %6d ms, first text after %6d ms (%d chars held at once)%n",
+                    "whole document", millis(start), millis(start), text.length());
+
+            for (int workers : new int[]{1, 2, 4}) {
+                run(pdf, workers);
+            }
+        } finally {
+            Files.deleteIfExists(pdf);
+        }
+    }
+
+    private static void run(Path pdf, int extractWorkers) throws Exception {
+        AtomicLong firstEmbed = new AtomicLong();
+        EmbeddingModel model = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                firstEmbed.compareAndSet(0, System.nanoTime());
+                return Response.from(segments.stream().map(segment -> Embedding.from(new float[]{1, 0})).toList());
+            }
+        };
+        IngestionPipeline pipeline = new IngestionPipeline(model, new InMemoryEmbeddingStore<>(),
+                new StructuredTextSplitter(400, 50),
+                PipelineSettings.builder().extractWorkers(extractWorkers).build());
+        pipeline.start();
+        try {
+            long start = System.nanoTime();
+            IngestionResult result = pipeline.submit(1L, "benchmark", Instant.now(), ContentSource.of(pdf), IngestionListener.NONE).get();
+            System.out.printf("%-34s total %6d ms, first embed after %6d ms (%d segments)%n",
+                    "streaming, " + extractWorkers + " extract workers", millis(start),
+                    (firstEmbed.get() - start) / 1_000_000, result.getStoredSegments());
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    private static long millis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static void write(Path file, int pages) throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 1; i <= pages; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.setLeading(12);
+                    content.newLineAtOffset(50, 740);
+                    for (int line = 0; line < 55; line++) {
+                        content.showText("Page " + i + " line " + line
+                                + " describes how the retrieval pipeline embeds and stores segments.");
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(file.toFile());
+        }
+    }
+}
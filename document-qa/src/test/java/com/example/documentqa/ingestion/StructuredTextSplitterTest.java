@@ -0,0 +1,74 @@
+package com.example.documentqa.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StructuredTextSplitterTest {
+
+    private final TokenEstimator estimator = TokenEstimator.approximate();
+
+    @Test
+    void keepsSentencesWholeWithinTheBudgetAndOverlapsBetweenSegments() {
+        StringBuilder text = new StringBuilder("1 Introduction\n");
+        for (int i = 0; i < 60; i++) {
+            // Sentences wrap across lines the way extracted PDF text does
+            text.append("Sentence number ").append(i).append(" talks about the\nretrieval pipeline in detail. ");
+        }
+        text.append("\n\n2 Results\nThe results were good.\n");
+
+        List<TextSegment> segments = new StructuredTextSplitter(80, 20).split(Document.from(text.toString()));
+
+        assertTrue(segments.size() > 3);
+        for (TextSegment segment : segments) {
+            String body = segment.text();
+            assertTrue(estimator.estimate(body, 0, body.length()) <= 80, body);
+            assertTrue(body.endsWith(".") || body.equals("1 Introduction"), body);
+        }
+        assertTrue(segments.get(0).text().startsWith("1 Introduction"));
+        assertEquals("1 Introduction", segments.get(1).metadata().get(StructuredTextSplitter.HEADING_METADATA));
+
+        // The second segment opens with the last sentence of the first
+        String first = segments.get(0).text();
+        String lastSentence = first.substring(first.lastIndexOf("Sentence number"));
+        assertTrue(segments.get(1).text().startsWith(lastSentence));
+
+        TextSegment last = segments.get(segments.size() - 1);
+        assertEquals("2 Results\nThe results were good.", last.text());
+        assertEquals("2 Results", last.metadata().get(StructuredTextSplitter.HEADING_METADATA));
+    }
+
+    @Test
+    void cutsOverlongSentencesBetweenWords() {
+        String text = "word ".repeat(500).trim();
+
+        List<TextSegment> segments = new StructuredTextSplitter(100, 10).split(Document.from(text));
+
+        assertEquals(5, segments.size());
+        for (TextSegment segment : segments) {
+            assertFalse(segment.text().startsWith(" ") || segment.text().endsWith(" "));
+            assertEquals(100, segment.text().split(" ").length);
+        }
+    }
+
+    @Test
+    void recognisesHeadingLines() {
+        assertTrue(isHeading("2.1 Evaluation Setup"));
+        assertTrue(isHeading("EXECUTIVE SUMMARY"));
+        assertTrue(isHeading("## Installation"));
+        assertTrue(isHeading("Related Work"));
+        assertFalse(isHeading("The system consists of three"));
+        assertFalse(isHeading("2023 revenue grew"));
+        assertFalse(isHeading("Results are shown below."));
+    }
+
+    private static boolean isHeading(String line) {
+        return StructuredTextSplitter.isHeading(line, 0, line.length());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.documentqa.ollama;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofSeconds(10), now::get);
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        fail(2);
+        succeed();
+        fail(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        OllamaUnavailableException rejected = assertThrows(OllamaUnavailableException.class, breaker::acquire);
+        assertEquals(Duration.ofSeconds(10), rejected.retryAfter());
+        assertThrows(OllamaUnavailableException.class, breaker::check);
+        assertEquals(2L, breaker.stats().get("rejected"));
+        assertEquals(1L, breaker.stats().get("opened"));
+    }
+
+    @Test
+    void letsOneTrialCallThroughAfterTheOpenPeriod() {
+        fail(3);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        breaker.check();
+
+        breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertThrows(OllamaUnavailableException.class, breaker::acquire);
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        succeed();
+    }
+
+    @Test
+    void reopensWhenTheTrialCallFails() {
+        fail(3);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        fail(1);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(2L, breaker.stats().get("opened"));
+        assertThrows(OllamaUnavailableException.class, breaker::acquire);
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.acquire();
+            breaker.onFailure();
+        }
+    }
+
+    private void succeed() {
+        breaker.acquire();
+        breaker.onSuccess();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.documentqa.ollama;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * Ingestion embedding throughput over 1, 2, 4 and 8 stub Ollama servers. Each stub handles two
+ * requests at a time, 20 ms each. The scheduler is set up as in the application, with two slots per
+ * endpoint of which one is for ingestion.
+ */
+public class EndpointScalingBenchmark {
+
+    private static final int WORKERS = 16;
+    private static final int BATCH_SIZE = 16;
+
+    public static void main(String[] args) throws Exception {
+        double base = 0;
+        for (int endpoints : new int[]{1, 2, 4, 8}) {
+            List<StubOllama> stubs = new ArrayList<>();
+            for (int i = 0; i < endpoints; i++) {
+                stubs.add(new StubOllama(2, 20));
+            }
+            List<String> urls = stubs.stream().map(StubOllama::url).toList();
+            OllamaClient client = new OllamaClient(urls, urls, "30m", Duration.ofSeconds(2), Duration.ofSeconds(30),
+                    4, Duration.ofMinutes(1), () -> new CircuitBreaker(5, Duration.ofSeconds(30)));
+            ingest(client, WORKERS, 40 * endpoints);
+            double perSecond = ingest(client, WORKERS, 200 * endpoints);
+            base = base == 0 ? perSecond : base;
+            System.out.printf("%d endpoint(s): %7.1f texts/s, %.2fx%n", endpoints, perSecond, perSecond / base);
+            client.shutdown();
+            stubs.forEach(StubOllama::close);
+        }
+    }
+
+    /**
+     * Embeds {@code texts} texts in batches from {@code workers} threads through the ingestion lane, as the
+     * ingestion pipeline's embed stage does, and returns texts per second.
+     */
+    static double ingest(OllamaClient client, int workers, int texts) throws Exception {
+        ModelScheduler scheduler = ModelScheduler.forEndpoints(2, 0, client);
+        EmbeddingModel model = new ScheduledEmbeddingModel(
+                new OllamaEmbeddings(client, "m", Duration.ofSeconds(30), 3, Duration.ofMillis(200)), scheduler,
+                Lane.INGESTION);
+        List<List<TextSegment>> batches = new ArrayList<>();
+        for (int start = 0; start < texts; start += BATCH_SIZE) {
+            batches.add(IntStream.range(start, Math.min(start + BATCH_SIZE, texts))
+                    .mapToObj(i -> TextSegment.from("segment " + i))
+                    .toList());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            long begin = System.nanoTime();
+            List<Future<?>> running = new ArrayList<>();
+            for (List<TextSegment> batch : batches) {
+                running.add(pool.submit(() -> model.embedAll(batch)));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+            return texts / ((System.nanoTime() - begin) / 1e9);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
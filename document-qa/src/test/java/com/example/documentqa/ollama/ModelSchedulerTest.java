@@ -0,0 +1,138 @@
+package com.example.documentqa.ollama;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelSchedulerTest {
+
+    @Test
+    void admitsHigherLanesFirst() throws Exception {
+        ModelScheduler scheduler = new ModelScheduler(1, 0);
+        ModelScheduler.Permit busy = scheduler.acquire(Lane.INGESTION);
+        List<Lane> order = new CopyOnWriteArrayList<>();
+
+        Thread ingestion = start(scheduler, Lane.INGESTION, order);
+        awaitQueued(scheduler, Lane.INGESTION, 1);
+        Thread embedding = start(scheduler, Lane.QUERY_EMBEDDING, order);
+        awaitQueued(scheduler, Lane.QUERY_EMBEDDING, 1);
+        Thread interactive = start(scheduler, Lane.INTERACTIVE, order);
+        awaitQueued(scheduler, Lane.INTERACTIVE, 1);
+
+        busy.release();
+        for (Thread thread : List.of(ingestion, embedding, interactive)) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        assertEquals(List.of(Lane.INTERACTIVE, Lane.QUERY_EMBEDDING, Lane.INGESTION), order);
+        assertEquals(2L, lane(scheduler, Lane.INGESTION).get("completed"));
+    }
+
+    @Test
+    void keepsASlotFreeOfIngestion() throws Exception {
+        ModelScheduler scheduler = new ModelScheduler(2, 0);
+        ModelScheduler.Permit first = scheduler.acquire(Lane.INGESTION);
+        Thread second = start(scheduler, Lane.INGESTION, new CopyOnWriteArrayList<>());
+        awaitQueued(scheduler, Lane.INGESTION, 1);
+
+        // The second slot still takes a question straight away
+        ModelScheduler.Permit question = scheduler.acquire(Lane.INTERACTIVE);
+        assertEquals(1, lane(scheduler, Lane.INGESTION).get("queued"));
+        question.release();
+        assertEquals(1, lane(scheduler, Lane.INGESTION).get("queued"));
+
+        first.release();
+        second.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(second.isAlive());
+        assertEquals(0, scheduler.stats().get("running"));
+    }
+
+    @Test
+    void releasesTheSlotWhenTheCallFails() {
+        ModelScheduler scheduler = new ModelScheduler(1, 0);
+        assertThrows(IllegalStateException.class, () -> scheduler.call(Lane.INTERACTIVE, () -> {
+            throw new IllegalStateException("model down");
+        }));
+        assertEquals("ok", scheduler.call(Lane.INTERACTIVE, () -> "ok"));
+        assertEquals(2L, lane(scheduler, Lane.INTERACTIVE).get("completed"));
+    }
+
+    @Test
+    void abandonsTheQueueOnInterrupt() throws Exception {
+        ModelScheduler scheduler = new ModelScheduler(1, 0);
+        ModelScheduler.Permit busy = scheduler.acquire(Lane.INTERACTIVE);
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        Thread waiting = new Thread(() -> {
+            try {
+                scheduler.acquire(Lane.QUERY_EMBEDDING).release();
+            } catch (IllegalStateException e) {
+                failures.add(e);
+            }
+        });
+        waiting.start();
+        awaitQueued(scheduler, Lane.QUERY_EMBEDDING, 1);
+        waiting.interrupt();
+        waiting.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertEquals(1, failures.size());
+        assertEquals(0, lane(scheduler, Lane.QUERY_EMBEDDING).get("queued"));
+        assertEquals(1L, lane(scheduler, Lane.QUERY_EMBEDDING).get("abandoned"));
+        busy.release();
+        assertTrue(scheduler.call(Lane.INGESTION, () -> true));
+    }
+
+    @Test
+    void stopsWaitingAtTheDeadline() {
+        ModelScheduler scheduler = new ModelScheduler(1, 0);
+        ModelScheduler.Permit busy = scheduler.acquire(Lane.INGESTION);
+        long start = System.nanoTime();
+        assertThrows(DeadlineExceededException.class,
+                () -> Deadline.after(Duration.ofMillis(100)).call(() -> scheduler.call(Lane.INTERACTIVE, () -> "late")));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, lane(scheduler, Lane.INTERACTIVE).get("queued"));
+        assertEquals(1L, lane(scheduler, Lane.INTERACTIVE).get("expired"));
+        busy.release();
+        assertEquals("ok", scheduler.call(Lane.INTERACTIVE, () -> "ok"));
+    }
+
+    @Test
+    void turnsCallersAwayWhileTheBreakerIsOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofMinutes(1));
+        ModelScheduler scheduler = new ModelScheduler(1, 0, lane -> breaker.check());
+        breaker.acquire();
+        breaker.onFailure();
+
+        assertThrows(OllamaUnavailableException.class, () -> scheduler.call(Lane.INTERACTIVE, () -> "rejected"));
+        assertEquals(0L, lane(scheduler, Lane.INTERACTIVE).get("submitted"));
+    }
+
+    private static Thread start(ModelScheduler scheduler, Lane lane, List<Lane> order) {
+        Thread thread = new Thread(() -> scheduler.call(lane, () -> order.add(lane)));
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueued(ModelScheduler scheduler, Lane lane, int queued) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Integer.valueOf(queued).equals(lane(scheduler, lane).get("queued"))) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError(lane + " never had " + queued + " queued");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> lane(ModelScheduler scheduler, Lane lane) {
+        return (Map<String, Object>) ((Map<String, Object>) scheduler.stats().get("lanes")).get(lane.key());
+    }
+}
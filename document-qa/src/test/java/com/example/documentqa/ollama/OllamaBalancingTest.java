@@ -0,0 +1,154 @@
+package com.example.documentqa.ollama;
+
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OllamaBalancingTest {
+
+    private final List<StubOllama> stubs = new ArrayList<>();
+    private final List<OllamaClient> clients = new ArrayList<>();
+
+    @AfterEach
+    void stop() {
+        clients.forEach(OllamaClient::shutdown);
+        stubs.forEach(StubOllama::close);
+    }
+
+    @Test
+    void routesToTheLeastBusyEndpoint() throws Exception {
+        StubOllama a = stub(1, 0);
+        StubOllama b = stub(1, 0);
+        OllamaClient client = client(List.of(a, b), List.of(a, b), Duration.ofMinutes(1));
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<float[]> held = caller.submit(() -> client.embed("m", "hold"));
+            while (a.embeddings.get() + b.embeddings.get() == 0) {
+                Thread.sleep(5);
+            }
+            StubOllama busy = a.embeddings.get() == 1 ? a : b;
+            StubOllama idle = busy == a ? b : a;
+
+            for (int i = 0; i < 4; i++) {
+                client.embed("m", "quick " + i);
+            }
+            assertEquals(4, idle.embeddings.get());
+            assertEquals(1, busy.embeddings.get());
+            busy.hold.countDown();
+            held.get(5, TimeUnit.SECONDS);
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    void ejectsAFailingEndpointUntilATrialCallSucceeds() throws Exception {
+        StubOllama failing = stub(1, 0);
+        StubOllama healthy = stub(1, 0);
+        failing.failWith = 503;
+        OllamaClient client = client(List.of(failing, healthy), List.of(failing, healthy), Duration.ofMillis(300));
+
+        int failed = 0;
+        for (int i = 0; i < 10; i++) {
+            try {
+                client.embed("m", "text " + i);
+            } catch (OllamaHttpException e) {
+                failed++;
+            }
+        }
+        assertEquals(2, failing.embeddings.get());
+        assertEquals(2, failed);
+        assertEquals(8, healthy.embeddings.get());
+        assertEquals("OPEN", breaker(client, failing).get("state"));
+
+        failing.failWith = 0;
+        Thread.sleep(400);
+        client.embed("m", "trial");
+        assertEquals(3, failing.embeddings.get());
+        assertEquals("CLOSED", breaker(client, failing).get("state"));
+    }
+
+    @Test
+    void rejectsOnlyWhenEveryEndpointIsOut() throws Exception {
+        StubOllama a = stub(1, 0);
+        StubOllama b = stub(1, 0);
+        a.failWith = 500;
+        b.failWith = 500;
+        OllamaClient client = client(List.of(a, b), List.of(a, b), Duration.ofMinutes(1));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(OllamaHttpException.class, () -> client.embed("m", "text"));
+        }
+
+        assertThrows(OllamaUnavailableException.class, () -> client.embed("m", "text"));
+        assertThrows(OllamaUnavailableException.class, () -> client.checkAvailable(OllamaClient.Pool.EMBEDDING));
+        assertEquals(4, a.embeddings.get() + b.embeddings.get());
+    }
+
+    @Test
+    void keepsChatAndEmbeddingTrafficInTheirPools() throws Exception {
+        StubOllama chat = stub(1, 0);
+        StubOllama shared = stub(1, 0);
+        StubOllama embedding = stub(1, 0);
+        OllamaClient client = client(List.of(chat, shared), List.of(shared, embedding), Duration.ofMinutes(1));
+        for (int i = 0; i < 6; i++) {
+            client.chat("m", List.of(UserMessage.from("question")), Map.of());
+            client.embed("m", "text");
+        }
+
+        assertEquals(0, chat.embeddings.get());
+        assertEquals(0, embedding.chats.get());
+        assertEquals(6, chat.chats.get() + shared.chats.get());
+        assertEquals(6, shared.embeddings.get() + embedding.embeddings.get());
+        assertEquals(3, client.endpointCount());
+    }
+
+    @Test
+    void ingestionThroughputScalesWithEndpoints() throws Exception {
+        double one = throughput(1);
+        double three = throughput(3);
+        assertTrue(three > 2.4 * one, "1 endpoint " + one + "/s, 3 endpoints " + three + "/s");
+    }
+
+    private double throughput(int endpoints) throws Exception {
+        List<StubOllama> servers = new ArrayList<>();
+        for (int i = 0; i < endpoints; i++) {
+            servers.add(stub(2, 20));
+        }
+        OllamaClient client = client(servers, servers, Duration.ofMinutes(1));
+        return EndpointScalingBenchmark.ingest(client, 8, 24 * endpoints);
+    }
+
+    private StubOllama stub(int parallel, long latencyMillis) throws IOException {
+        StubOllama stub = new StubOllama(parallel, latencyMillis);
+        stubs.add(stub);
+        return stub;
+    }
+
+    private OllamaClient client(List<StubOllama> chat, List<StubOllama> embedding, Duration openDuration) {
+        OllamaClient client = new OllamaClient(chat.stream().map(StubOllama::url).toList(),
+                embedding.stream().map(StubOllama::url).toList(), "30m", Duration.ofSeconds(2), Duration.ofSeconds(10),
+                4, Duration.ofMinutes(1), () -> new CircuitBreaker(2, openDuration));
+        clients.add(client);
+        return client;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> breaker(OllamaClient client, StubOllama stub) {
+        Map<String, Object> endpoints = (Map<String, Object>) client.stats().get("endpoints");
+        return (Map<String, Object>) ((Map<String, Object>) endpoints.get(stub.url())).get("breaker");
+    }
+}
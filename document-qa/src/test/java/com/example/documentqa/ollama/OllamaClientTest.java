@@ -0,0 +1,290 @@
+package com.example.documentqa.ollama;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OllamaClientTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<JsonNode> requests = new CopyOnWriteArrayList<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    // The next embeddingErrors embedding requests fail with embeddingErrorStatus
+    private final AtomicInteger embeddingErrors = new AtomicInteger();
+    private volatile int embeddingErrorStatus = 503;
+    private volatile long embeddingDelayMillis;
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofMinutes(1));
+    private HttpServer server;
+    private OllamaClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/chat", exchange -> {
+            JsonNode request = read(exchange);
+            if ("endless".equals(request.path("messages").get(0).path("content").asText())) {
+                streamUntilClosed(exchange);
+            } else if (request.path("stream").asBoolean()) {
+                respond(exchange, """
+                        {"message":{"role":"assistant","content":"Ninety "},"done":false}
+                        {"message":{"role":"assistant","content":"days."},"done":false}
+                        {"message":{"role":"assistant","content":""},"done":true,"prompt_eval_count":42,"eval_count":3,"load_duration":1000000}
+                        """);
+            } else {
+                respond(exchange, """
+                        {"message":{"role":"assistant","content":"Ninety days."},"done":true,
+                         "prompt_eval_count":42,"eval_count":3,"load_duration":2500000000}""");
+            }
+        });
+        server.createContext("/api/embeddings", exchange -> {
+            read(exchange);
+            if (embeddingDelayMillis > 0) {
+                try {
+                    Thread.sleep(embeddingDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (embeddingErrors.getAndDecrement() > 0) {
+                respond(exchange, embeddingErrorStatus, "{\"error\":\"failed\"}");
+            } else {
+                respond(exchange, "{\"embedding\":[0.5,-1.0,2.0]}");
+            }
+        });
+        server.createContext("/api/generate", exchange -> {
+            read(exchange);
+            respond(exchange, "{\"response\":\"\",\"done\":true,\"load_duration\":3000000000}");
+        });
+        server.setExecutor(handlers);
+        server.start();
+        client = new OllamaClient("http://127.0.0.1:" + server.getAddress().getPort() + "/", "45m",
+                Duration.ofSeconds(2), Duration.ofSeconds(10), 4, Duration.ofMinutes(1), breaker);
+    }
+
+    @AfterEach
+    void stopServer() {
+        client.shutdown();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    @Test
+    void sendsKeepAliveAndReadsTheReply() {
+        Response<AiMessage> response = client.chat("llama3.1",
+                List.of(SystemMessage.from("Be brief."), UserMessage.from("Notice period?")), Map.of("temperature", 0.1));
+
+        assertEquals("Ninety days.", response.content().text());
+        assertEquals(42, response.tokenUsage().inputTokenCount());
+        JsonNode request = requests.get(0);
+        assertEquals("45m", request.path("keep_alive").asText());
+        assertEquals("system", request.path("messages").get(0).path("role").asText());
+        assertEquals("user", request.path("messages").get(1).path("role").asText());
+        assertEquals(0.1, request.path("options").path("temperature").asDouble());
+        // Loading took 2.5 s, so the model was not in memory
+        assertEquals(1L, client.stats().get("coldRequests"));
+        assertEquals(2500L, client.stats().get("lastColdLoadMillis"));
+    }
+
+    @Test
+    void reusesOneConnectionForSequentialCalls() {
+        for (int i = 0; i < 5; i++) {
+            client.embed("llama3.1", "question " + i);
+        }
+        assertEquals(1, clientPorts.size());
+        assertEquals(1, client.stats().get("connections"));
+    }
+
+    @Test
+    void streamsTokensThenCompletes() throws Exception {
+        List<String> tokens = new CopyOnWriteArrayList<>();
+        CompletableFuture<Response<AiMessage>> done = new CompletableFuture<>();
+        client.streamChat("llama3.1", List.of(UserMessage.from("Notice period?")), Map.of(),
+                new StreamingResponseHandler<>() {
+                    @Override
+                    public void onNext(String token) {
+                        tokens.add(token);
+                    }
+
+                    @Override
+                    public void onComplete(Response<AiMessage> response) {
+                        done.complete(response);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        done.completeExceptionally(error);
+                    }
+                });
+
+        Response<AiMessage> response = done.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("Ninety ", "days."), tokens);
+        assertEquals("Ninety days.", response.content().text());
+        assertEquals(3, response.tokenUsage().outputTokenCount());
+        assertTrue(requests.get(0).path("stream").asBoolean());
+    }
+
+    @Test
+    void cancellingAStreamFreesItsSlotWithoutCountingAFailure() throws Exception {
+        ModelScheduler scheduler = new ModelScheduler(1, 1);
+        ScheduledStreamingChatModel model = new ScheduledStreamingChatModel(
+                new OllamaStreamingChat(client, "llama3.1", 0.1), scheduler);
+        CountDownLatch firstToken = new CountDownLatch(1);
+        AtomicInteger endings = new AtomicInteger();
+
+        Runnable cancel = model.stream(List.of(UserMessage.from("endless")), new StreamingResponseHandler<>() {
+            @Override
+            public void onNext(String token) {
+                firstToken.countDown();
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                endings.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                endings.incrementAndGet();
+            }
+        });
+        assertTrue(firstToken.await(5, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.stats().get("running"));
+
+        cancel.run();
+        cancel.run();
+
+        assertEquals(0, scheduler.stats().get("running"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (client.stats().get("streamsCancelled").equals(0L) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1L, client.stats().get("streamsCancelled"));
+        assertEquals(0L, client.stats().get("failures"));
+        assertEquals(0, endings.get());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void loadsWithoutGenerating() {
+        assertEquals(Duration.ofSeconds(3), client.load("llama3.1"));
+        assertEquals("45m", requests.get(0).path("keep_alive").asText());
+        assertTrue(client.idleNanos("llama3.1") >= 0);
+        assertEquals(-1, client.idleNanos("other"));
+    }
+
+    @Test
+    void cutsTheCallOffAtTheDeadline() {
+        embeddingDelayMillis = 3000;
+        long start = System.nanoTime();
+        assertThrows(DeadlineExceededException.class,
+                () -> Deadline.after(Duration.ofMillis(200)).call(() -> client.embed("llama3.1", "slow")));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(2000));
+        assertEquals(1L, client.stats().get("deadlineExceeded"));
+    }
+
+    @Test
+    void failsFastOnceServerErrorsOpenTheBreaker() {
+        embeddingErrors.set(100);
+        embeddingErrorStatus = 500;
+        for (int i = 0; i < 3; i++) {
+            assertThrows(OllamaHttpException.class, () -> client.embed("llama3.1", "a"));
+        }
+
+        assertThrows(OllamaUnavailableException.class, () -> client.embed("llama3.1", "b"));
+        assertEquals(3, requests.size());
+        assertEquals("OPEN", breaker.stats().get("state"));
+        assertEquals(1L, client.stats().get("rejected"));
+    }
+
+    @Test
+    void rejectedRequestsDoNotOpenTheBreaker() {
+        embeddingErrors.set(3);
+        embeddingErrorStatus = 404;
+        for (int i = 0; i < 3; i++) {
+            assertThrows(OllamaHttpException.class, () -> client.embed("missing", "a"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void retriesEmbeddingsOnServerErrorsOnly() {
+        OllamaEmbeddings embeddings = new OllamaEmbeddings(client, "llama3.1", Duration.ofSeconds(5), 3,
+                Duration.ofMillis(10));
+        embeddingErrors.set(2);
+        assertEquals(3, embeddings.embed(TextSegment.from("retried")).content().vector().length);
+        assertEquals(3, requests.size());
+        assertEquals(2L, client.stats().get("embeddingRetries"));
+
+        embeddingErrors.set(1);
+        embeddingErrorStatus = 400;
+        assertThrows(OllamaHttpException.class, () -> embeddings.embed(TextSegment.from("bad")));
+        assertEquals(4, requests.size());
+    }
+
+    private JsonNode read(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        JsonNode request = mapper.readTree(exchange.getRequestBody().readAllBytes());
+        requests.add(request);
+        return request;
+    }
+
+    // One token every 20 ms, until the client hangs up or ten seconds have passed
+    private static void streamUntilClosed(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < 500; i++) {
+                out.write("{\"message\":{\"role\":\"assistant\",\"content\":\"more \"},\"done\":false}\n"
+                        .getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Thread.sleep(20);
+            }
+        } catch (IOException | InterruptedException e) {
+            // The client went away
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        respond(exchange, 200, body);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.documentqa.ollama;
+
+import dev.langchain4j.data.message.UserMessage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * First-request latency against a running Ollama: cold (model unloaded, new connection), after a warm-up
+ * (model loaded, new connection) and warm on a pooled connection. The model is unloaded first by a request
+ * with {@code keep_alive} 0. Arguments: Ollama base URL, model (defaults http://localhost:11434 llama3.1).
+ */
+public class OllamaWarmupBenchmark {
+
+    private static final String QUESTION = "Reply with the single word: ready";
+
+    public static void main(String[] args) {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:11434";
+        String model = args.length > 1 ? args[1] : "llama3.1";
+
+        client(baseUrl, "0").load(model);
+
+        OllamaClient cold = client(baseUrl, "30m");
+        long coldMillis = ask(cold, model);
+        cold.shutdown();
+        System.out.printf("cold first request:   %6d ms (%s)%n", coldMillis, cold.stats());
+
+        client(baseUrl, "0").load(model);
+        OllamaClient warmedUp = client(baseUrl, "30m");
+        Duration load = warmedUp.load(model);
+        warmedUp.shutdown();
+        OllamaClient fresh = client(baseUrl, "30m");
+        long warmMillis = ask(fresh, model);
+        System.out.printf("warm-up load:         %6d ms%n", load.toMillis());
+        System.out.printf("first after warm-up:  %6d ms%n", warmMillis);
+        long pooledMillis = ask(fresh, model);
+        System.out.printf("warm, pooled:         %6d ms%n", pooledMillis);
+        fresh.shutdown();
+    }
+
+    private static long ask(OllamaClient client, String model) {
+        long start = System.nanoTime();
+        client.chat(model, List.of(UserMessage.from(QUESTION)), Map.of("temperature", 0.0, "num_predict", 4));
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static OllamaClient client(String baseUrl, String keepAlive) {
+        return new OllamaClient(baseUrl, keepAlive, Duration.ofSeconds(5), Duration.ofMinutes(10), 4, Duration.ofMinutes(5));
+    }
+}
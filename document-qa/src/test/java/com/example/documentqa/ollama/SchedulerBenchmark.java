@@ -0,0 +1,91 @@
+package com.example.documentqa.ollama;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Question latency during an ingestion run, with and without the scheduler, against a simulated Ollama
+ * server: {@code parallel} slots served in arrival order, as Ollama does. Ingestion workers embed batches
+ * back to back; questions arrive one at a time and need a query embedding, then a generation.
+ * Times are scaled down tenfold from the CPU llama3.1 figures they stand for (2 s batches, 3 s answers).
+ * Arguments: parallel slots, ingestion workers, questions (defaults 2 8 20).
+ */
+public class SchedulerBenchmark {
+
+    private static final long BATCH_MILLIS = 200;
+    private static final long QUERY_EMBED_MILLIS = 10;
+    private static final long GENERATE_MILLIS = 300;
+
+    public static void main(String[] args) throws Exception {
+        int parallel = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int questions = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        run("unscheduled", parallel, workers, questions, null);
+        ModelScheduler scheduler = new ModelScheduler(parallel, 0);
+        run("scheduled", parallel, workers, questions, scheduler);
+        System.out.println(scheduler.stats());
+    }
+
+    private static void run(String name, int parallel, int workers, int questions, ModelScheduler scheduler)
+            throws Exception {
+        Semaphore server = new Semaphore(parallel, true);
+        AtomicBoolean ingesting = new AtomicBoolean(true);
+        List<Thread> ingestion = new ArrayList<>();
+        long[] batches = new long[1];
+        for (int w = 0; w < workers; w++) {
+            Thread thread = new Thread(() -> {
+                while (ingesting.get()) {
+                    call(server, scheduler, Lane.INGESTION, BATCH_MILLIS);
+                    synchronized (batches) {
+                        batches[0]++;
+                    }
+                }
+            });
+            thread.start();
+            ingestion.add(thread);
+        }
+        Thread.sleep(BATCH_MILLIS);
+
+        long[] latencies = new long[questions];
+        for (int q = 0; q < questions; q++) {
+            long start = System.nanoTime();
+            call(server, scheduler, Lane.QUERY_EMBEDDING, QUERY_EMBED_MILLIS);
+            call(server, scheduler, Lane.INTERACTIVE, GENERATE_MILLIS);
+            latencies[q] = (System.nanoTime() - start) / 1_000_000;
+        }
+        ingesting.set(false);
+        for (Thread thread : ingestion) {
+            thread.join();
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%-12s question latency p50 %d ms, p95 %d ms, max %d ms (ideal %d ms); %d ingestion batches%n",
+                name, latencies[questions / 2], latencies[(int) Math.ceil(questions * 0.95) - 1],
+                latencies[questions - 1], QUERY_EMBED_MILLIS + GENERATE_MILLIS, batches[0]);
+    }
+
+    private static void call(Semaphore server, ModelScheduler scheduler, Lane lane, long millis) {
+        Runnable request = () -> {
+            server.acquireUninterruptibly();
+            try {
+                TimeUnit.MILLISECONDS.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                server.release();
+            }
+        };
+        if (scheduler == null) {
+            request.run();
+        } else {
+            scheduler.call(lane, () -> {
+                request.run();
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.documentqa.ollama;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in Ollama server that works on at most {@code parallel} requests at a time, like
+ * {@code OLLAMA_NUM_PARALLEL}, each taking {@code latencyMillis}.
+ */
+final class StubOllama implements AutoCloseable {
+
+    static {
+        // Without it the JDK server's small responses wait on delayed ACKs, adding ~40 ms per request
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    final AtomicInteger embeddings = new AtomicInteger();
+    final AtomicInteger chats = new AtomicInteger();
+    // A status to fail every request with, or 0
+    volatile int failWith;
+    // Embedding requests for the text "hold" wait for this latch
+    final CountDownLatch hold = new CountDownLatch(1);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final HttpServer server;
+    private final Semaphore slots;
+    private final long latencyMillis;
+
+    StubOllama(int parallel, long latencyMillis) throws IOException {
+        this.slots = new Semaphore(parallel, true);
+        this.latencyMillis = latencyMillis;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/embeddings", exchange -> {
+            embeddings.incrementAndGet();
+            String text = mapper.readTree(exchange.getRequestBody().readAllBytes()).path("prompt").asText();
+            if ("hold".equals(text)) {
+                await(hold);
+            }
+            work(exchange, "{\"embedding\":[0.5,-1.0,2.0]}");
+        });
+        server.createContext("/api/chat", exchange -> {
+            chats.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            work(exchange, "{\"message\":{\"role\":\"assistant\",\"content\":\"ok\"},\"done\":true}");
+        });
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        hold.countDown();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void work(HttpExchange exchange, String reply) throws IOException {
+        if (failWith > 0) {
+            respond(exchange, failWith, "{\"error\":\"failed\"}");
+            return;
+        }
+        slots.acquireUninterruptibly();
+        try {
+            TimeUnit.MILLISECONDS.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            slots.release();
+        }
+        respond(exchange, 200, reply);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.documentqa.repository;
+
+import com.example.documentqa.model.Document;
+import com.example.documentqa.model.DocumentSummary;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+class DocumentRepositoryTest {
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void onlyOneWorkerClaimsADocumentUntilItsLeaseExpires() {
+        Long id = documentRepository.save(Document.builder()
+                .title("a.pdf").contentType("application/pdf").uploadedAt(LocalDateTime.now()).build()).getId();
+        LocalDateTime now = LocalDateTime.now();
+
+        assertEquals(List.of(id), documentRepository.findClaimableIds(now, 3, PageRequest.of(0, 10)));
+        assertEquals(1, documentRepository.claim(id, "node-a", now, now.plusMinutes(2)));
+        assertEquals(0, documentRepository.claim(id, "node-b", now, now.plusMinutes(2)));
+        assertTrue(documentRepository.findClaimableIds(now, 3, PageRequest.of(0, 10)).isEmpty());
+        assertEquals(0, documentRepository.completeLease(id, "node-b"));
+
+        // node-a stops renewing, so node-b can take over once the lease has run out
+        LocalDateTime later = now.plusMinutes(3);
+        assertEquals(List.of(id), documentRepository.findClaimableIds(later, 3, PageRequest.of(0, 10)));
+        assertEquals(1, documentRepository.claim(id, "node-b", later, later.plusMinutes(2)));
+        assertEquals(0, documentRepository.renewLease(id, "node-a", later.plusMinutes(2)));
+        assertEquals(1, documentRepository.completeLease(id, "node-b"));
+        assertTrue(documentRepository.findClaimableIds(later.plusHours(1), 3, PageRequest.of(0, 10)).isEmpty());
+    }
+
+    private Long save(String title) {
+        return documentRepository.save(Document.builder()
+                .title(title).contentType("application/pdf").uploadedAt(LocalDateTime.now()).build()).getId();
+    }
+
+    @Test
+    void renewingExtendsOnlyTheOwnersLease() {
+        Long id = save("a.pdf");
+        LocalDateTime now = LocalDateTime.now();
+        documentRepository.claim(id, "node-a", now, now.plusMinutes(2));
+
+        assertEquals(1, documentRepository.renewLease(id, "node-a", now.plusMinutes(4)));
+        assertEquals(0, documentRepository.renewLease(id, "node-b", now.plusMinutes(10)));
+
+        // Past the original expiry but inside the renewed one, the document is still taken
+        LocalDateTime later = now.plusMinutes(3);
+        assertTrue(documentRepository.findClaimableIds(later, 3, PageRequest.of(0, 10)).isEmpty());
+        assertEquals(0, documentRepository.claim(id, "node-b", later, later.plusMinutes(2)));
+    }
+
+    @Test
+    void releasedDocumentIsRetriedAfterTheDelayUntilAttemptsRunOut() {
+        Long id = save("a.pdf");
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            assertEquals(List.of(id), documentRepository.findClaimableIds(now, 3, PageRequest.of(0, 10)));
+            assertEquals(1, documentRepository.claim(id, "node-a", now, now.plusMinutes(2)));
+            assertEquals(1, documentRepository.releaseLease(id, "node-a", now.plusMinutes(1), "attempt " + attempt));
+
+            // Not before the retry delay has passed
+            assertTrue(documentRepository.findClaimableIds(now.plusSeconds(30), 3, PageRequest.of(0, 10)).isEmpty());
+            assertEquals(0, documentRepository.claim(id, "node-a", now.plusSeconds(30), now.plusMinutes(2)));
+            now = now.plusMinutes(2);
+        }
+
+        // Three attempts used: the document stays put however long it waits
+        assertTrue(documentRepository.findClaimableIds(now.plusHours(1), 3, PageRequest.of(0, 10)).isEmpty());
+        entityManager.clear();
+        Document exhausted = documentRepository.findById(id).orElseThrow();
+        assertEquals(3, exhausted.getAttempts());
+        assertEquals("attempt 3", exhausted.getLastError());
+        assertFalse(exhausted.isProcessed());
+    }
+
+    @Test
+    void completingAfterTheLeaseWasTakenOverChangesNothing() {
+        Long id = save("a.pdf");
+        LocalDateTime now = LocalDateTime.now();
+        documentRepository.claim(id, "node-a", now, now.plusMinutes(2));
+        LocalDateTime later = now.plusMinutes(3);
+        documentRepository.claim(id, "node-b", later, later.plusMinutes(2));
+
+        // node-a finishes late: its completion and release are both ignored
+        assertEquals(0, documentRepository.completeLease(id, "node-a"));
+        assertEquals(0, documentRepository.releaseLease(id, "node-a", later.plusMinutes(1), "late"));
+        entityManager.clear();
+        Document taken = documentRepository.findById(id).orElseThrow();
+        assertFalse(taken.isProcessed());
+        assertEquals("node-b", taken.getLeaseOwner());
+        assertNull(taken.getLastError());
+    }
+
+    @Test
+    void keysetPagesVisitEveryDocumentOnce() {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            documents.add(Document.builder().title("doc-" + i + ".pdf").contentType("application/pdf")
+                    .contentSize(1024L).uploadedAt(LocalDateTime.now()).processed(i % 2 == 0).build());
+        }
+        documentRepository.saveAll(documents);
+
+        long seen = 0;
+        long afterId = 0;
+        List<DocumentSummary> page;
+        do {
+            page = documentRepository.findSummariesAfter(afterId, PageRequest.of(0, 500));
+            for (DocumentSummary summary : page) {
+                assertTrue(summary.id() > afterId);
+                afterId = summary.id();
+            }
+            seen += page.size();
+        } while (!page.isEmpty());
+
+        assertEquals(10_000, seen);
+        assertEquals(5_000, documentRepository.countByProcessed(true));
+    }
+}
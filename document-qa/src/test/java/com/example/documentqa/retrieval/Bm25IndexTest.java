@@ -0,0 +1,88 @@
+package com.example.documentqa.retrieval;
+
+import com.example.documentqa.ingestion.IngestionPipeline;
+import com.example.documentqa.store.SegmentFilter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Bm25IndexTest {
+
+    @Test
+    void indexesIdentifiersWholeAndByPart() {
+        assertEquals(List.of("err", "4021", "err-4021", "raised", "clause", "7", "3", "2", "7.3.2"),
+                Bm25Index.tokenize("ERR-4021 is raised by clause 7.3.2."));
+    }
+
+    @Test
+    void ranksExactIdentifierAboveSharedVocabulary() {
+        Bm25Index index = new Bm25Index();
+        index.addAll(List.of("a", "b", "c"), List.of(
+                TextSegment.from("Error ERR-4021 means the upload exceeded the size limit."),
+                TextSegment.from("Error ERR-4012 means the upload was not a PDF."),
+                TextSegment.from("Uploads are scanned for viruses before they are stored.")));
+
+        List<Bm25Index.Hit> hits = index.search("What does ERR-4021 mean?", 3);
+
+        assertEquals("a", hits.get(0).id());
+        assertEquals("b", hits.get(1).id());
+        assertTrue(hits.get(0).score() > hits.get(1).score());
+        assertEquals(2, hits.size());
+    }
+
+    @Test
+    void rarerTermsWeighMore() {
+        Bm25Index index = new Bm25Index();
+        index.addAll(List.of("a", "b", "c"), List.of(
+                TextSegment.from("policy policy travel"),
+                TextSegment.from("policy remote"),
+                TextSegment.from("policy")));
+
+        assertEquals("b", index.search("remote policy", 1).get(0).id());
+        assertTrue(index.search("unknown", 5).isEmpty());
+    }
+
+    @Test
+    void filteredSearchSkipsOtherDocuments() {
+        Bm25Index index = new Bm25Index();
+        index.addAll(List.of("a", "b", "c"), List.of(
+                segment("Remote work policy for engineers.", 1),
+                segment("Remote access policy for contractors.", 2),
+                segment("Remote desktop setup.", 2)));
+
+        List<Bm25Index.Hit> hits = index.search("remote policy", 5, SegmentFilter.of(List.of(2L), null, null));
+
+        assertEquals(List.of("b", "c"), hits.stream().map(Bm25Index.Hit::id).toList());
+        assertTrue(index.search("remote", 5, SegmentFilter.of(List.of(7L), null, null)).isEmpty());
+    }
+
+    @Test
+    void deletedDocumentsAreSkippedAndCompactedAway() {
+        Bm25Index index = new Bm25Index();
+        index.addAll(List.of("a", "b", "c"), List.of(
+                segment("Remote work policy for engineers.", 1),
+                segment("Remote access policy for contractors.", 2),
+                segment("Remote desktop setup.", 1)));
+
+        assertEquals(2, index.deleteDocument(1));
+        assertEquals(List.of("b"), index.search("remote", 5).stream().map(Bm25Index.Hit::id).toList());
+
+        index.add("d", segment("Remote office stipend.", 1));
+        assertEquals(3, index.compact());
+        index.add("e", segment("Remote onboarding.", 3));
+
+        assertEquals(0, index.tombstones());
+        assertEquals(2, index.size());
+        assertEquals(List.of("b", "e"), index.search("remote", 5).stream().map(Bm25Index.Hit::id).sorted().toList());
+        assertEquals(List.of("e"), index.search("onboarding", 5).stream().map(Bm25Index.Hit::id).toList());
+    }
+
+    private static TextSegment segment(String text, long documentId) {
+        return TextSegment.from(text, Metadata.from(IngestionPipeline.DOCUMENT_ID_METADATA, String.valueOf(documentId)));
+    }
+}
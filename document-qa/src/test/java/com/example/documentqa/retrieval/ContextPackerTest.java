@@ -0,0 +1,110 @@
+package com.example.documentqa.retrieval;
+
+import com.example.documentqa.ingestion.TokenEstimator;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextPackerTest {
+
+    private static final String NOTICE = "Either party may end the agreement with ninety days notice in writing.";
+
+    @Test
+    void dropsNearDuplicateSegments() {
+        ContextPacker packer = new ContextPacker(TokenEstimator.approximate(), true, 1000, 250, 0.8);
+        Content first = content(NOTICE + " Notice must be sent to the registered office of the other party.");
+        Content copy = content(NOTICE + " Notice must be sent to the registered office of the other party!");
+        Content other = content("Invoices are payable within thirty days of receipt by the customer.");
+
+        PackedContext context = packer.pack("What is the notice period?", List.of(first, copy, other));
+
+        assertEquals(List.of(first, other), context.contents());
+        assertEquals(1, context.duplicatesDropped());
+        assertEquals(context.retrievedTokens() - context.packedTokens(), context.tokensSaved());
+    }
+
+    @Test
+    void leavesOutSentencesAnEarlierSegmentContributed() {
+        ContextPacker packer = new ContextPacker(TokenEstimator.approximate(), true, 1000, 250, 0.8);
+        // Neighbouring chunks share the overlap sentence
+        Content first = content("Invoices are payable within thirty days of receipt. " + NOTICE);
+        Content second = content(NOTICE + " Termination does not affect fees already due under any order form.");
+
+        PackedContext context = packer.pack("How can the agreement be terminated?", List.of(first, second));
+
+        assertSame(first, context.contents().get(0));
+        assertEquals("... Termination does not affect fees already due under any order form.", text(context, 1));
+        assertEquals(1, context.segmentsTrimmed());
+    }
+
+    @Test
+    void keepsTheSentencesClosestToTheQuestionInOrder() {
+        ContextPacker packer = new ContextPacker(TokenEstimator.approximate(), true, 1000, 40, 0.8);
+        Content segment = content("The supplier delivers the services described in each order form. "
+                + "Service levels are measured monthly against the targets in schedule two. "
+                + NOTICE + " "
+                + "Notice is effective on the day it is received. "
+                + "Both parties keep confidential information secret for five years.");
+
+        PackedContext context = packer.pack("How much notice ends the agreement?", List.of(segment));
+
+        String packed = text(context, 0);
+        assertTrue(packed.startsWith("... " + NOTICE), packed);
+        assertFalse(packed.contains("Service levels"), packed);
+        assertTrue(context.packedTokens() <= 40, packed);
+        assertEquals(1, context.segmentsTrimmed());
+    }
+
+    @Test
+    void stopsAtTheTokenBudget() {
+        TokenEstimator estimator = TokenEstimator.approximate();
+        ContextPacker packer = new ContextPacker(estimator, true, 60, 250, 0.8);
+        Content first = content("The agreement starts on the effective date and runs for three years. " + NOTICE);
+        Content second = content("Invoices are payable within thirty days of receipt by the customer. "
+                + "Late payments carry interest at two percent per month until paid in full.");
+        Content third = content("Either party may assign the agreement to an affiliate without consent.");
+
+        PackedContext context = packer.pack("When does the agreement end?", List.of(first, second, third));
+
+        assertTrue(context.packedTokens() <= 60);
+        assertTrue(context.contents().size() < 3);
+        assertSame(first, context.contents().get(0));
+    }
+
+    @Test
+    void passesContextThroughWhenDisabled() {
+        ContextPacker packer = new ContextPacker(TokenEstimator.approximate(), false, 10, 5, 0.8);
+        List<Content> contents = List.of(content(NOTICE), content(NOTICE));
+
+        PackedContext context = packer.pack("What is the notice period?", contents);
+
+        assertEquals(contents, context.contents());
+        assertEquals(0, context.tokensSaved());
+        assertEquals(1L, packer.stats().get("requests"));
+    }
+
+    @Test
+    void splitsSentencesAtPunctuationAndBlankLinesOnly() {
+        String text = "Line one wraps\nonto line two. Next sentence!\n\nHeading\nBody text";
+        List<String> sentences = ContextPacker.sentenceBounds(text).stream()
+                .map(bound -> text.substring(bound[0], bound[1]))
+                .toList();
+
+        assertEquals(List.of("Line one wraps\nonto line two.", "Next sentence!", "Heading\nBody text"), sentences);
+    }
+
+    private static Content content(String text) {
+        return Content.from(TextSegment.from(text));
+    }
+
+    private static String text(PackedContext context, int index) {
+        return context.contents().get(index).textSegment().text();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.documentqa.retrieval;
+
+import com.example.documentqa.ingestion.StructuredTextSplitter;
+import com.example.documentqa.ingestion.TokenEstimator;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Context tokens before and after packing, and how often the sentence that answers the question survives.
+ * A synthetic document is chunked the way ingestion chunks it (400 tokens, 50 overlapping); each question
+ * names the subject of one fact sentence. Its five "retrieved" segments are the chunk holding the fact,
+ * the same chunk from a second upload of the document, the following chunk, which overlaps it, and two
+ * unrelated chunks, which is the shape of context /ask gets for duplicated and overlapping material.
+ * Arguments: question count, token budget, max segment tokens (defaults 2000 1200 250).
+ */
+public class ContextPackingBenchmark {
+
+    private static final int SENTENCES = 4000;
+    private static final int VOCABULARY = 2000;
+
+    public static void main(String[] args) {
+        int questions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int budget = args.length > 1 ? Integer.parseInt(args[1]) : 1200;
+        int maxSegmentTokens = args.length > 2 ? Integer.parseInt(args[2]) : 250;
+        Random random = new Random(11);
+
+        String[] vocabulary = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            vocabulary[i] = word(random);
+        }
+        List<String> subjects = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int s = 0; s < SENTENCES; s++) {
+            int words = 8 + random.nextInt(18);
+            StringBuilder sentence = new StringBuilder();
+            if (s % 10 == 0) {
+                String subject = "subject" + s;
+                subjects.add(subject);
+                sentence.append("The ").append(subject).append(" limit is ").append(s).append(" units");
+            } else {
+                for (int w = 0; w < words; w++) {
+                    sentence.append(w == 0 ? "" : " ").append(vocabulary[random.nextInt(VOCABULARY)]);
+                }
+            }
+            text.append(sentence).append(". ");
+            if (s % 12 == 11) {
+                text.append("\n\n");
+            }
+        }
+        List<TextSegment> chunks = new StructuredTextSplitter(400, 50).split(Document.from(text.toString()));
+        System.out.printf("%d chunks of %d sentences%n", chunks.size(), SENTENCES);
+
+        ContextPacker packer = new ContextPacker(TokenEstimator.approximate(), true, budget, maxSegmentTokens, 0.8);
+        long retained = 0;
+        long before = 0;
+        long after = 0;
+        long nanos = 0;
+        for (int q = 0; q < questions; q++) {
+            String subject = subjects.get(random.nextInt(subjects.size()));
+            int holder = 0;
+            while (!chunks.get(holder).text().contains(subject + " limit")) {
+                holder++;
+            }
+            List<Content> retrieved = List.of(
+                    Content.from(chunks.get(holder)),
+                    Content.from(TextSegment.from(chunks.get(holder).text())),
+                    Content.from(chunks.get(Math.min(holder + 1, chunks.size() - 1))),
+                    Content.from(chunks.get(random.nextInt(chunks.size()))),
+                    Content.from(chunks.get(random.nextInt(chunks.size()))));
+            long start = System.nanoTime();
+            PackedContext context = packer.pack("What is the " + subject + " limit?", retrieved);
+            nanos += System.nanoTime() - start;
+            before += context.retrievedTokens();
+            after += context.packedTokens();
+            if (context.contents().stream().anyMatch(content -> content.textSegment().text().contains(subject + " limit"))) {
+                retained++;
+            }
+        }
+        System.out.printf("budget %d, max segment %d: context tokens %d -> %d per question (%.0f%% saved), "
+                        + "answer sentence kept %.1f%%, packing %.0f us%n",
+                budget, maxSegmentTokens, before / questions, after / questions, 100.0 * (before - after) / before,
+                100.0 * retained / questions, nanos / 1000.0 / questions);
+        System.out.println(packer.stats());
+    }
+
+    private static String word(Random random) {
+        int length = 3 + random.nextInt(7);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}
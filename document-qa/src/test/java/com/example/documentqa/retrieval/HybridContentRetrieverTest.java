@@ -0,0 +1,117 @@
+package com.example.documentqa.retrieval;
+
+import com.example.documentqa.ingestion.IngestionPipeline;
+import com.example.documentqa.store.HeapSegmentLookup;
+import com.example.documentqa.store.OffHeapEmbeddingStore;
+import com.example.documentqa.store.SegmentFilter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HybridContentRetrieverTest {
+
+    private static final EmbeddingModel MODEL = segments -> Response.from(segments.stream()
+            .map(segment -> Embedding.from(new float[]{1f, 0.1f}))
+            .toList());
+
+    @Test
+    void fusesLexicalAndVectorRankings() {
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        Bm25Index index = new Bm25Index();
+        HeapSegmentLookup lookup = new HeapSegmentLookup();
+        // The embedding only knows the topic (x: uploads, y: travel); the code is invisible to it
+        add(store, index, lookup, "Uploads over 50 MB are rejected.", 1f, 0.1f);
+        add(store, index, lookup, "Error ERR-4021 is returned when an upload is too large.", 0.7f, 0.3f);
+        add(store, index, lookup, "Upload limits are set per tenant.", 0.95f, 0.1f);
+        add(store, index, lookup, "Travel must be booked through the portal.", 0.1f, 1f);
+
+        HybridContentRetriever retriever = new HybridContentRetriever(store, MODEL, index, lookup, 2, 0.6, 10, 60,
+                ForkJoinPool.commonPool());
+
+        List<String> texts = texts(retriever.retrieve(Query.from("Why did my upload fail with ERR-4021?")));
+
+        // Second by vector alone, but first once the lexical ranking is fused in
+        assertEquals("Error ERR-4021 is returned when an upload is too large.", texts.get(0));
+        assertEquals(2, texts.size());
+        assertEquals(1L, retriever.stats().get("queries"));
+
+        // A per-request limit replaces the configured one
+        List<Content> one = retriever.retrieve(Query.from("Why did my upload fail with ERR-4021?"), SegmentFilter.ALL,
+                RetrievalOptions.of(1, null));
+        assertEquals(1, one.size());
+        assertEquals(texts.get(0), one.get(0).textSegment().text());
+    }
+
+    @Test
+    void readsLexicalOnlyResultsFromTheStoreAndPassesOverDeletedOnes() {
+        OffHeapEmbeddingStore store = new OffHeapEmbeddingStore();
+        Bm25Index index = new Bm25Index();
+        // Too far from the question for the vector side, so only BM25 finds them
+        add(store, index, "Error ERR-4021 is returned when an upload is too large.", 1, 0.1f, 1f);
+        add(store, index, "ERR-4021 was renamed from ERR-17 in version 2 of the upload service.", 2, 0.1f, 1f);
+
+        HybridContentRetriever retriever = new HybridContentRetriever(store, MODEL, index, store, 1, 0.9, 10, 60,
+                ForkJoinPool.commonPool());
+        assertEquals(List.of("Error ERR-4021 is returned when an upload is too large."),
+                texts(retriever.retrieve(Query.from("What is ERR-4021?"))));
+
+        // Deleted from the store after the index was searched
+        store.deleteDocument(1);
+        assertEquals(List.of("ERR-4021 was renamed from ERR-17 in version 2 of the upload service."),
+                texts(retriever.retrieve(Query.from("What is ERR-4021?"))));
+        assertEquals(2L, retriever.stats().get("resultsLexicalOnly"));
+    }
+
+    @Test
+    void searchesWithAnEmbeddingTheCallerAlreadyHas() {
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        Bm25Index index = new Bm25Index();
+        HeapSegmentLookup lookup = new HeapSegmentLookup();
+        add(store, index, lookup, "Uploads over 50 MB are rejected.", 1f, 0.1f);
+        add(store, index, lookup, "Travel must be booked through the portal.", 0.1f, 1f);
+        EmbeddingModel unused = segments -> {
+            throw new AssertionError("The question was embedded again");
+        };
+        HybridContentRetriever retriever = new HybridContentRetriever(store, unused, index, lookup, 1, 0.6, 10, 60,
+                ForkJoinPool.commonPool());
+
+        Retrieval retrieval = retriever.retrieveWithCutoffs(Query.from("Where do I book a trip?"),
+                Embedding.from(new float[]{0.1f, 1f}), SegmentFilter.ALL, RetrievalOptions.DEFAULTS);
+
+        assertEquals(List.of("Travel must be booked through the portal."), texts(retrieval.contents()));
+    }
+
+    private static List<String> texts(List<Content> contents) {
+        return contents.stream()
+                .map(Content::textSegment)
+                .map(TextSegment::text)
+                .toList();
+    }
+
+    private static void add(InMemoryEmbeddingStore<TextSegment> store, Bm25Index index, HeapSegmentLookup lookup,
+                            String text, float x, float y) {
+        TextSegment segment = TextSegment.from(text);
+        String id = store.add(Embedding.from(new float[]{x, y}), segment);
+        index.add(id, segment);
+        lookup.addAll(List.of(id), List.of(segment));
+    }
+
+    private static void add(OffHeapEmbeddingStore store, Bm25Index index, String text, long documentId,
+                            float x, float y) {
+        TextSegment segment = TextSegment.from(text, new Metadata().add(IngestionPipeline.DOCUMENT_ID_METADATA,
+                String.valueOf(documentId)));
+        String id = store.add(Embedding.from(new float[]{x, y}), segment);
+        index.add(id, segment);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.documentqa.retrieval;
+
+import com.example.documentqa.store.HeapSegmentLookup;
+import com.example.documentqa.store.HnswEmbeddingStore;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Recall and latency of hybrid retrieval against vector-only retrieval on a synthetic corpus. Segments
+ * belong to topics; their embeddings are the topic centroid plus noise and only a faint trace of the
+ * fault code some of them mention, which is how dense models tend to treat identifiers.
+ * <p>
+ * Code questions ("What does ERR-04211 mean ...") count a hit when the one segment with that code is
+ * retrieved. Topic questions carry no code and count the share of retrieved segments on the right topic.
+ * Arguments: segment count, query count (defaults 50000 300).
+ */
+public class HybridRetrievalBenchmark {
+
+    private static final int DIMENSION = 384;
+    private static final int TOPICS = 200;
+    private static final int TOPIC_WORDS = 20;
+    private static final int COMMON_WORDS = 300;
+    private static final double CODE_SHARE = 0.3;
+    private static final int MAX_RESULTS = 5;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        Random random = new Random(7);
+
+        String[][] topicWords = new String[TOPICS][TOPIC_WORDS];
+        for (String[] words : topicWords) {
+            for (int w = 0; w < TOPIC_WORDS; w++) {
+                words[w] = word(random);
+            }
+        }
+        String[] commonWords = new String[COMMON_WORDS];
+        for (int w = 0; w < COMMON_WORDS; w++) {
+            commonWords[w] = word(random);
+        }
+        float[][] centroids = new float[TOPICS][];
+        for (int t = 0; t < TOPICS; t++) {
+            centroids[t] = gaussian(random, 1f);
+        }
+
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        Bm25Index index = new Bm25Index();
+        HeapSegmentLookup lookup = new HeapSegmentLookup();
+        List<String> codes = new ArrayList<>();
+        List<Integer> codeTopics = new ArrayList<>();
+        Map<String, Integer> topicOf = new HashMap<>();
+        long indexNanos = 0;
+        for (int i = 0; i < count; i++) {
+            int topic = random.nextInt(TOPICS);
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 60; w++) {
+                text.append(random.nextInt(3) == 0 ? topicWords[topic][random.nextInt(TOPIC_WORDS)]
+                        : commonWords[random.nextInt(COMMON_WORDS)]).append(w % 12 == 11 ? ". " : " ");
+            }
+            String code = null;
+            if (random.nextDouble() < CODE_SHARE) {
+                code = String.format("ERR-%05d", i);
+                text.append("Fault code ").append(code).append(" is raised in this case.");
+                codes.add(code);
+                codeTopics.add(topic);
+            }
+            TextSegment segment = TextSegment.from(text.toString());
+            String id = store.add(Embedding.from(embed(centroids[topic], code, random)), segment);
+            topicOf.put(segment.text(), topic);
+            long start = System.nanoTime();
+            index.add(id, segment);
+            indexNanos += System.nanoTime() - start;
+            lookup.addAll(List.of(id), List.of(segment));
+        }
+        System.out.printf("segments=%d (%.0f%% with a fault code) dim=%d topics=%d; BM25 indexing %.1f us/segment, %s%n",
+                count, CODE_SHARE * 100, DIMENSION, TOPICS, indexNanos / 1e3 / count, index.stats());
+
+        // Query embeddings are fixed up front so both retrievers see the same vectors
+        Map<String, float[]> queryVectors = new HashMap<>();
+        List<String> codeQueries = new ArrayList<>();
+        List<String> codeTargets = new ArrayList<>();
+        List<String> topicQueries = new ArrayList<>();
+        List<Integer> topicTargets = new ArrayList<>();
+        for (int q = 0; q < queryCount; q++) {
+            int pick = random.nextInt(codes.size());
+            int topic = codeTopics.get(pick);
+            String question = "What does " + codes.get(pick) + " mean when " + topicWords[topic][random.nextInt(TOPIC_WORDS)] + " fails?";
+            queryVectors.put(question, embed(centroids[topic], codes.get(pick), random));
+            codeQueries.add(question);
+            codeTargets.add(codes.get(pick));
+
+            topic = random.nextInt(TOPICS);
+            question = "How do " + topicWords[topic][random.nextInt(TOPIC_WORDS)] + " and "
+                    + topicWords[topic][random.nextInt(TOPIC_WORDS)] + " interact " + q + "?";
+            queryVectors.put(question, embed(centroids[topic], null, random));
+            topicQueries.add(question);
+            topicTargets.add(topic);
+        }
+        EmbeddingModel model = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(queryVectors.get(segment.text())))
+                .toList());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ContentRetriever vector5 = vectorOnly(store, model, MAX_RESULTS);
+        ContentRetriever vector20 = vectorOnly(store, model, 20);
+        ContentRetriever hybrid = new HybridContentRetriever(store, model, index, lookup, MAX_RESULTS, 0.0, 20, 60, executor);
+
+        System.out.printf("%-18s %14s %16s %12s%n", "retriever", "code recall", "topic precision", "ms/query");
+        for (int round = 0; round < 2; round++) {
+            // The first round warms up the JIT; the second is reported
+            boolean report = round == 1;
+            run("vector k=5", vector5, codeQueries, codeTargets, topicQueries, topicTargets, topicOf, report);
+            run("vector k=20", vector20, codeQueries, codeTargets, topicQueries, topicTargets, topicOf, report);
+            run("hybrid k=5", hybrid, codeQueries, codeTargets, topicQueries, topicTargets, topicOf, report);
+        }
+        System.out.println(((HybridContentRetriever) hybrid).stats());
+        executor.shutdown();
+    }
+
+    private static void run(String name, ContentRetriever retriever, List<String> codeQueries, List<String> codeTargets,
+                            List<String> topicQueries, List<Integer> topicTargets, Map<String, Integer> topicOf,
+                            boolean report) {
+        long start = System.nanoTime();
+        int codeHits = 0;
+        for (int q = 0; q < codeQueries.size(); q++) {
+            String target = codeTargets.get(q);
+            for (Content content : retriever.retrieve(Query.from(codeQueries.get(q)))) {
+                if (content.textSegment().text().contains(target)) {
+                    codeHits++;
+                    break;
+                }
+            }
+        }
+        int onTopic = 0;
+        int retrieved = 0;
+        for (int q = 0; q < topicQueries.size(); q++) {
+            for (Content content : retriever.retrieve(Query.from(topicQueries.get(q)))) {
+                retrieved++;
+                if (topicOf.get(content.textSegment().text()).equals(topicTargets.get(q))) {
+                    onTopic++;
+                }
+            }
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / (codeQueries.size() + topicQueries.size());
+        if (report) {
+            System.out.printf("%-18s %13.1f%% %15.1f%% %12.2f%n", name, 100.0 * codeHits / codeQueries.size(),
+                    100.0 * onTopic / Math.max(1, retrieved), millis);
+        }
+    }
+
+    private static ContentRetriever vectorOnly(InMemoryEmbeddingStore<TextSegment> store, EmbeddingModel model, int maxResults) {
+        return EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(store)
+                .embeddingModel(model)
+                .maxResults(maxResults)
+                .minScore(0.0)
+                .build();
+    }
+
+    private static float[] embed(float[] centroid, String code, Random random) {
+        float[] vector = gaussian(random, 0.6f);
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] += centroid[i];
+        }
+        if (code != null) {
+            Random codeRandom = new Random(code.hashCode());
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] += (float) codeRandom.nextGaussian() * 0.1f;
+            }
+        }
+        return HnswEmbeddingStore.normalized(vector);
+    }
+
+    private static float[] gaussian(Random random, float sigma) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+
+    private static String word(Random random) {
+        int length = 4 + random.nextInt(6);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}
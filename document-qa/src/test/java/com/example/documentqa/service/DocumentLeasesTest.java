@@ -0,0 +1,160 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.model.Document;
+import com.example.documentqa.repository.DocumentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two lease owners on one database, as a node before and after a restart or a stalled job and the worker
+ * taking over, with one-second leases and retry delays and two attempts per document.
+ */
+@DataJpaTest
+@Import(DocumentLeasesTest.Nodes.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DocumentLeasesTest {
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    @Qualifier("nodeA")
+    private DocumentLeases nodeA;
+
+    @Autowired
+    @Qualifier("nodeB")
+    private DocumentLeases nodeB;
+
+    @AfterEach
+    void tearDown() {
+        documentRepository.deleteAll();
+    }
+
+    @Test
+    void exactlyOneOfTheRacingOwnersClaimsADocument() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 20; round++) {
+                Long id = save("doc-" + round + ".pdf");
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> claims = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    DocumentLeases node = i % 2 == 0 ? nodeA : nodeB;
+                    Callable<Boolean> claim = () -> {
+                        start.await();
+                        return node.claim(id);
+                    };
+                    claims.add(executor.submit(claim));
+                }
+                start.countDown();
+                int won = 0;
+                for (Future<Boolean> claim : claims) {
+                    won += claim.get(10, TimeUnit.SECONDS) ? 1 : 0;
+                }
+                assertEquals(1, won);
+                assertEquals(1, documentRepository.findById(id).orElseThrow().getAttempts());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void releasedDocumentIsClaimableAgainAfterTheRetryDelayUntilAttemptsRunOut() throws Exception {
+        Long id = save("a.pdf");
+
+        assertTrue(nodeA.claim(id));
+        nodeA.release(id, "first failure");
+        assertFalse(nodeB.findClaimable(10).contains(id));
+        assertFalse(nodeB.claim(id));
+
+        Thread.sleep(1100);
+        assertEquals(List.of(id), nodeB.findClaimable(10));
+        assertTrue(nodeB.claim(id));
+        nodeB.release(id, "second failure");
+
+        Thread.sleep(1100);
+        assertTrue(nodeA.findClaimable(10).isEmpty());
+        Document exhausted = documentRepository.findById(id).orElseThrow();
+        assertEquals(2, exhausted.getAttempts());
+        assertEquals("second failure", exhausted.getLastError());
+    }
+
+    @Test
+    void renewingKeepsTheLeaseAndALateCompletionIsRefused() throws Exception {
+        Long id = save("a.pdf");
+
+        assertTrue(nodeA.claim(id));
+        Thread.sleep(600);
+        assertTrue(nodeA.renew(id));
+        Thread.sleep(600);
+        // Past the first expiry, but the renewal still holds
+        assertFalse(nodeB.claim(id));
+
+        // nodeA stalls without renewing; nodeB takes over and nodeA's late completion is refused
+        Thread.sleep(1100);
+        assertTrue(nodeB.claim(id));
+        assertFalse(nodeA.renew(id));
+        assertFalse(nodeA.complete(id));
+        assertFalse(documentRepository.findById(id).orElseThrow().isProcessed());
+
+        assertTrue(nodeB.complete(id));
+        assertTrue(documentRepository.findById(id).orElseThrow().isProcessed());
+    }
+
+    @Test
+    void requeuedDocumentsAreClaimableWithFreshAttempts() {
+        Long processed = save("a.pdf");
+        Long cancelled = save("b.pdf");
+        assertTrue(nodeA.claim(processed));
+        assertTrue(nodeA.complete(processed));
+        nodeA.cancel(cancelled);
+
+        assertEquals(1, nodeA.requeueProcessed());
+
+        assertEquals(List.of(processed), nodeB.findClaimable(10));
+        assertTrue(nodeB.claim(processed));
+        assertEquals(1, documentRepository.findById(processed).orElseThrow().getAttempts());
+    }
+
+    private Long save(String title) {
+        return documentRepository.save(Document.builder()
+                .title(title).contentType("application/pdf").uploadedAt(LocalDateTime.now()).build()).getId();
+    }
+
+    @TestConfiguration
+    static class Nodes {
+
+        @Bean
+        DocumentLeases nodeA(DocumentRepository documentRepository) {
+            return new DocumentLeases(documentRepository, "node-a", 1, 1, 2);
+        }
+
+        @Bean
+        DocumentLeases nodeB(DocumentRepository documentRepository) {
+            return new DocumentLeases(documentRepository, "node-b", 1, 1, 2);
+        }
+    }
+}
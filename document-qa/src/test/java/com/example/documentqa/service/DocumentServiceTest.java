@@ -0,0 +1,92 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.blob.BlobStore;
+import com.example.documentqa.ingestion.FixedSizeSplitter;
+import com.example.documentqa.ingestion.IngestionPipeline;
+import com.example.documentqa.ingestion.PipelineSettings;
+import com.example.documentqa.model.Document;
+import com.example.documentqa.repository.DocumentRepository;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Uploads race from several threads, so each save has to commit rather than join a test transaction
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DocumentServiceTest {
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        documentRepository.deleteAll();
+    }
+
+    @Test
+    void identicalUploadsRacingEachOtherShareOneDocument() throws Exception {
+        IngestionPipeline pipeline = new IngestionPipeline(
+                segments -> Response.from(segments.stream().map(s -> Embedding.from(new float[]{1})).toList()),
+                new InMemoryEmbeddingStore<>(), new FixedSizeSplitter(100), PipelineSettings.builder().build());
+        DocumentService documentService = new DocumentService(documentRepository, pipeline,
+                new BlobStore(directory, false));
+        int uploaders = 8;
+        CyclicBarrier barrier = new CyclicBarrier(uploaders);
+        ExecutorService executor = Executors.newFixedThreadPool(uploaders);
+        try {
+            List<Future<Document>> uploads = new ArrayList<>();
+            for (int i = 0; i < uploaders; i++) {
+                uploads.add(executor.submit(() -> {
+                    barrier.await();
+                    return documentService.saveDocument(new MockMultipartFile("file", "same.pdf",
+                            "application/pdf", "the same bytes".getBytes()));
+                }));
+            }
+            Set<Long> ids = uploads.stream().map(upload -> {
+                try {
+                    return upload.get(30, TimeUnit.SECONDS).getId();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }).collect(Collectors.toSet());
+
+            assertEquals(1, ids.size());
+            assertEquals(1, documentRepository.count());
+            assertEquals((long) uploaders - 1, documentService.uploadStats().get("duplicateUploads"));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The database itself refuses a second row with the same content
+        String hash = documentRepository.findAll().get(0).getContentHash();
+        assertThrows(DataIntegrityViolationException.class, () -> documentRepository.save(Document.builder()
+                .title("copy.pdf").contentHash(hash).uploadedAt(LocalDateTime.now()).build()));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.repository.EmbeddingCacheRepository;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Writes are committed so that concurrent puts race on the real table
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmbeddingCacheTest {
+
+    @Autowired
+    private EmbeddingCacheRepository embeddingCacheRepository;
+
+    @AfterEach
+    void tearDown() {
+        embeddingCacheRepository.deleteAll();
+    }
+
+    @Test
+    void servesHitsAndReportsMisses() {
+        EmbeddingCache cache = new EmbeddingCache(embeddingCacheRepository, 100);
+        cache.putAll(Map.of("m:a", Embedding.from(new float[]{1, 2, 3})));
+
+        Map<String, Embedding> found = cache.getAll(List.of("m:a", "m:b"));
+
+        assertEquals(1, found.size());
+        assertArrayEquals(new float[]{1, 2, 3}, found.get("m:a").vector());
+        assertEquals(1L, cache.stats().get("hits"));
+        assertEquals(1L, cache.stats().get("misses"));
+    }
+
+    @Test
+    void concurrentPutsOfTheSameKeyAllSucceed() throws Exception {
+        EmbeddingCache cache = new EmbeddingCache(embeddingCacheRepository, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> puts = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                float value = i;
+                puts.add(executor.submit(() -> {
+                    start.await();
+                    cache.putAll(Map.of("m:same", Embedding.from(new float[]{value})));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> put : puts) {
+                put.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0L, cache.stats().get("writeFailures"));
+        assertEquals(1, embeddingCacheRepository.count());
+        assertEquals(1, cache.getAll(List.of("m:same")).size());
+    }
+
+    @Test
+    void aFailedCacheWriteDoesNotFailTheBatch() {
+        EmbeddingCache cache = new EmbeddingCache(embeddingCacheRepository, 100);
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel();
+        // Keys are longer than the cache_key column, so every write is rejected by the database
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, cache, "m".repeat(300));
+
+        List<Embedding> embeddings = model.embedAll(List.of(TextSegment.from("a"), TextSegment.from("b"))).content();
+
+        assertEquals(2, embeddings.size());
+        assertEquals(2, delegate.embedded.get());
+        assertEquals(1L, cache.stats().get("writeFailures"));
+        assertEquals(0, embeddingCacheRepository.count());
+    }
+
+    @Test
+    void evictsTheOldestEntriesBeyondTheCap() throws Exception {
+        EmbeddingCache cache = new EmbeddingCache(embeddingCacheRepository, 3);
+        cache.putAll(Map.of("m:old-1", Embedding.from(new float[]{1}), "m:old-2", Embedding.from(new float[]{2})));
+        Thread.sleep(5);
+        cache.putAll(Map.of("m:new-1", Embedding.from(new float[]{3}), "m:new-2", Embedding.from(new float[]{4}),
+                "m:new-3", Embedding.from(new float[]{5})));
+
+        cache.evict();
+
+        assertEquals(3, embeddingCacheRepository.count());
+        assertTrue(cache.getAll(List.of("m:old-1", "m:old-2")).isEmpty());
+        assertEquals(3, cache.getAll(List.of("m:new-1", "m:new-2", "m:new-3")).size());
+        assertEquals(2L, cache.stats().get("evicted"));
+    }
+
+    private static class CountingEmbeddingModel implements EmbeddingModel {
+
+        final AtomicInteger embedded = new AtomicInteger();
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            embedded.addAndGet(segments.size());
+            return Response.from(segments.stream().map(segment -> Embedding.from(new float[]{1, 0})).toList());
+        }
+    }
+}
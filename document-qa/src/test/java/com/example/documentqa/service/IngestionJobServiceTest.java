@@ -0,0 +1,258 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.blob.BlobStore;
+import com.example.documentqa.ingestion.IngestionListener;
+import com.example.documentqa.ingestion.IngestionPipeline;
+import com.example.documentqa.ingestion.IngestionResult;
+import com.example.documentqa.ingestion.PipelineSettings;
+import com.example.documentqa.ingestion.StructuredTextSplitter;
+import com.example.documentqa.model.Document;
+import com.example.documentqa.model.IngestionJob;
+import com.example.documentqa.repository.DocumentRepository;
+import com.example.documentqa.retrieval.Bm25Index;
+import com.example.documentqa.store.OffHeapEmbeddingStore;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Jobs claim leases from worker threads, so the rows have to be committed rather than held in a test transaction
+@DataJpaTest(properties = "ingestion.queue.retry-delay-seconds=0")
+@Import(DocumentLeases.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IngestionJobServiceTest {
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private DocumentLeases documentLeases;
+
+    @TempDir
+    Path directory;
+
+    private IngestionJobService jobService;
+
+    @AfterEach
+    void tearDown() {
+        if (jobService != null) {
+            jobService.shutdown();
+        }
+        documentRepository.deleteAll();
+    }
+
+    @Test
+    void cancelledDocumentsAreNotPickedUpAgain() throws Exception {
+        StubDocumentService documentService = new StubDocumentService();
+        jobService = new IngestionJobService(documentService, documentLeases,
+                new DocumentSegments(new InMemoryEmbeddingStore<>(), new Bm25Index(), null), 1, 4, 100);
+        DocumentWorkQueue workQueue = new DocumentWorkQueue(documentLeases, documentRepository, jobService,
+                new InMemoryEmbeddingStore<>());
+        Document running = save("running.pdf");
+        Document queued = save("queued.pdf");
+
+        // The single worker is busy with the first document, so the second waits in the queue
+        IngestionJob runningJob = jobService.submit(running);
+        IngestionJob queuedJob = jobService.submit(queued);
+        assertTrue(documentService.started.await(10, TimeUnit.SECONDS));
+
+        jobService.cancel(queuedJob.getId());
+        jobService.cancel(runningJob.getId());
+        awaitIdle(runningJob);
+        workQueue.poll();
+
+        assertEquals(IngestionJob.Status.CANCELLED, runningJob.getStatus());
+        assertEquals(IngestionJob.Status.CANCELLED, queuedJob.getStatus());
+        assertEquals(List.of(running.getId()), List.copyOf(documentService.submitted.keySet()));
+        assertFalse(jobService.isActive(running.getId()));
+        assertFalse(jobService.isActive(queued.getId()));
+        assertEquals(2, jobService.stats().get("retainedJobs"));
+        assertTrue(documentLeases.findClaimable(10).isEmpty());
+
+        Document cancelled = documentRepository.findById(running.getId()).orElseThrow();
+        assertTrue(cancelled.isCancelled());
+        assertNull(cancelled.getLeaseOwner());
+        assertNull(cancelled.getLeaseExpiresAt());
+    }
+
+    @Test
+    void documentsWhoseSegmentsFailedToEmbedAreReleasedForRetry() throws Exception {
+        IngestionPipeline pipeline = new IngestionPipeline(new FailingEmbeddingModel(), new InMemoryEmbeddingStore<>(),
+                new StructuredTextSplitter(200, 20), PipelineSettings.builder().build());
+        pipeline.start();
+        try {
+            DocumentService documentService = new DocumentService(documentRepository, pipeline, new BlobStore(directory, false));
+            jobService = new IngestionJobService(documentService, documentLeases,
+                    new DocumentSegments(new InMemoryEmbeddingStore<>(), new Bm25Index(), null), 1, 4, 100);
+            Document document = documentService.saveDocument(
+                    new MockMultipartFile("file", "doc.pdf", "application/pdf", pdf("Nothing here embeds.")));
+
+            IngestionJob job = jobService.submit(document);
+            awaitFinished(job);
+
+            assertEquals(IngestionJob.Status.FAILED, job.getStatus());
+            assertEquals(0, job.getStoredSegments());
+            assertTrue(job.getFailedSegments() > 0);
+            Document released = documentRepository.findById(document.getId()).orElseThrow();
+            assertFalse(released.isProcessed());
+            assertNull(released.getLeaseOwner());
+            assertNotNull(released.getLeaseExpiresAt());
+            assertEquals(1, released.getAttempts());
+            assertTrue(released.getLastError().contains("could not be embedded or stored"));
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    void aRetryReplacesTheSegmentsOfTheFailedAttempt() throws Exception {
+        OffHeapEmbeddingStore store = new OffHeapEmbeddingStore();
+        Bm25Index lexicalIndex = new Bm25Index();
+        FlakyEmbeddingModel model = new FlakyEmbeddingModel();
+        IngestionPipeline pipeline = new IngestionPipeline(model, store, new StructuredTextSplitter(200, 20),
+                PipelineSettings.builder().build());
+        pipeline.addStoreListener((ids, embeddings, segments) -> lexicalIndex.addAll(ids, segments));
+        pipeline.start();
+        try {
+            DocumentService documentService = new DocumentService(documentRepository, pipeline, new BlobStore(directory, false));
+            SemanticAnswerCache cache = new SemanticAnswerCache(model, pipeline, lexicalIndex, true, 0.95, 100, 60);
+            jobService = new IngestionJobService(documentService, documentLeases,
+                    new DocumentSegments(store, lexicalIndex, cache), 1, 4, 100);
+            Document document = documentService.saveDocument(new MockMultipartFile("file", "doc.pdf",
+                    "application/pdf", pdf("The first page embeds.", "The second page fails once.")));
+
+            // The first attempt stores the first page and fails on the second
+            IngestionJob failed = jobService.submit(document);
+            awaitFinished(failed);
+            assertEquals(IngestionJob.Status.FAILED, failed.getStatus());
+            assertEquals(1, store.liveSegments());
+
+            IngestionJob retried = jobService.submit(documentRepository.findById(document.getId()).orElseThrow());
+            awaitFinished(retried);
+
+            assertEquals(IngestionJob.Status.COMPLETED, retried.getStatus());
+            assertEquals(2, retried.getStoredSegments());
+            assertEquals(2, store.liveSegments());
+            assertEquals(2, lexicalIndex.liveSegments());
+            assertEquals(1, lexicalIndex.search("first", 10).size());
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    private Document save(String title) {
+        return documentRepository.save(Document.builder()
+                .title(title).contentType("application/pdf").uploadedAt(LocalDateTime.now()).build());
+    }
+
+    private void awaitIdle(IngestionJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (jobService.stats().get("runningJobs").equals(1) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished());
+    }
+
+    private static void awaitFinished(IngestionJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!job.isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished());
+    }
+
+    private static byte[] pdf(String... pages) throws IOException {
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            for (String text : pages) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText(text);
+                    content.endText();
+                }
+            }
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static class FailingEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            throw new IllegalStateException("Embedding model is down");
+        }
+    }
+
+    /**
+     * Fails the first batch that mentions the second page, then embeds everything.
+     */
+    private static class FlakyEmbeddingModel implements EmbeddingModel {
+
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            if (segments.stream().anyMatch(segment -> segment.text().contains("second")) && failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Embedding model is down");
+            }
+            return Response.from(segments.stream().map(segment -> Embedding.from(new float[]{1, 0})).toList());
+        }
+    }
+
+    /**
+     * Hands back ingestions that never finish on their own, so a job stays running until it is cancelled.
+     */
+    private static class StubDocumentService extends DocumentService {
+
+        final Map<Long, CompletableFuture<IngestionResult>> submitted = new ConcurrentHashMap<>();
+        final CountDownLatch started = new CountDownLatch(1);
+
+        StubDocumentService() {
+            super(null, null, null);
+        }
+
+        @Override
+        public CompletableFuture<IngestionResult> startProcessing(Document document, IngestionListener listener) {
+            CompletableFuture<IngestionResult> ingestion = new CompletableFuture<>();
+            submitted.put(document.getId(), ingestion);
+            started.countDown();
+            return ingestion;
+        }
+    }
+}
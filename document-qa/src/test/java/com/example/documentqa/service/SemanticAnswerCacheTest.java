@@ -0,0 +1,134 @@
+package com.example.documentqa.service;
+
+import com.example.documentqa.ingestion.FixedSizeSplitter;
+import com.example.documentqa.ingestion.IngestionPipeline;
+import com.example.documentqa.ingestion.PipelineSettings;
+import com.example.documentqa.retrieval.Bm25Index;
+import com.example.documentqa.retrieval.Retrieval;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SemanticAnswerCacheTest {
+
+    // Questions and segments live in a 3-d space: x is "vacation policy", y is "expenses"
+    private static final Map<String, float[]> VECTORS = Map.of(
+            "How many vacation days do I get?", new float[]{1f, 0.05f, 0},
+            "How many days of vacation do I have?", new float[]{1f, 0.08f, 0.02f},
+            "How do I file expenses?", new float[]{0.05f, 1f, 0});
+
+    // As if each side's weakest candidate scored this much: one shared term is not enough for BM25
+    private static final double VECTOR_CUTOFF = 0.9;
+    private static final double LEXICAL_CUTOFF = 4.0;
+
+    private final Bm25Index lexicalIndex = new Bm25Index();
+    private final AtomicInteger generations = new AtomicInteger();
+    private final AtomicInteger embedded = new AtomicInteger();
+
+    @Test
+    void keepsEntriesThroughIngestionOfSegmentsThatWouldNotBeCandidates() {
+        SemanticAnswerCache cache = newCache();
+        assertEquals("answer 1", ask(cache, "How many vacation days do I get?"));
+        assertEquals("answer 1", ask(cache, "How many days of vacation do I have?"));
+
+        // Close enough to pass retrieval.min-score and sharing "days", but weaker than every candidate
+        cache.invalidate(List.of(Embedding.from(new float[]{0.7f, 0.7f, 0})),
+                List.of(TextSegment.from("Parking permits are valid for thirty days.")));
+        cache.invalidate(List.of(Embedding.from(new float[]{0, 1f, 0.1f})),
+                List.of(TextSegment.from("Receipts for expenses go through the portal.")));
+
+        assertEquals("answer 1", ask(cache, "How many vacation days do I get?"));
+        assertEquals(0L, cache.stats().get("invalidations"));
+    }
+
+    @Test
+    void dropsEntriesWhenASegmentBeatsEitherCutoff() {
+        SemanticAnswerCache cache = newCache();
+        assertEquals("answer 1", ask(cache, "How many vacation days do I get?"));
+        assertEquals("answer 2", ask(cache, "How do I file expenses?"));
+
+        // Beats the weakest vector candidate of the vacation question only
+        cache.invalidate(List.of(Embedding.from(new float[]{1f, 0, 0})),
+                List.of(TextSegment.from("Requests need two weeks notice.")));
+        assertEquals("answer 3", ask(cache, "How many vacation days do I get?"));
+        assertEquals("answer 2", ask(cache, "How do I file expenses?"));
+
+        // Far away in vector space, but BM25 would rank it above the weakest lexical candidate
+        cache.invalidate(List.of(Embedding.from(new float[]{0, 0, 1f})),
+                List.of(TextSegment.from("Unused vacation days carry over.")));
+        assertEquals("answer 4", ask(cache, "How many vacation days do I get?"));
+        assertEquals("answer 2", ask(cache, "How do I file expenses?"));
+        assertEquals(2L, cache.stats().get("invalidations"));
+    }
+
+    @Test
+    void embedsEachQuestionOnceAndHandsTheEmbeddingToTheAnswerer() {
+        SemanticAnswerCache cache = newCache();
+        float[][] received = new float[1][];
+        cache.answer("How do I file expenses?", (q, embedding) -> {
+            received[0] = embedding.vector();
+            return new SemanticAnswerCache.Generated("answer", new Retrieval(List.of(), VECTOR_CUTOFF, LEXICAL_CUTOFF));
+        });
+
+        assertArrayEquals(VECTORS.get("How do I file expenses?"), received[0]);
+        assertEquals(1, embedded.get());
+        assertEquals("answer", ask(cache, "How do I file expenses?"));
+        assertEquals(2, embedded.get());
+    }
+
+    @Test
+    void keepsVectorOnlyEntriesThroughSegmentsOnlyTheLexicalSearchWouldFind() {
+        SemanticAnswerCache cache = newCache();
+        cache.answer("How many vacation days do I get?", (q, embedding) -> new SemanticAnswerCache.Generated(
+                "vector only", new Retrieval(List.of(), VECTOR_CUTOFF, Double.POSITIVE_INFINITY)));
+
+        cache.invalidate(List.of(Embedding.from(new float[]{0, 0, 1f})),
+                List.of(TextSegment.from("Unused vacation days carry over.")));
+
+        assertEquals("vector only", ask(cache, "How many vacation days do I get?"));
+    }
+
+    @Test
+    void anySegmentTheSearchesWouldFindDropsAnEntryWhoseCandidateListsWereShort() {
+        SemanticAnswerCache cache = newCache();
+        cache.answer("How do I file expenses?", (q, embedding) -> new SemanticAnswerCache.Generated(
+                "short lists", new Retrieval(List.of(), 0.6, 0)));
+
+        // Not close in vector space, but it shares "expenses", and the lexical side had room to spare
+        cache.invalidate(List.of(Embedding.from(new float[]{0, 0, 1f})),
+                List.of(TextSegment.from("Travel expenses need a manager's approval.")));
+
+        assertEquals("answer 1", ask(cache, "How do I file expenses?"));
+    }
+
+    private String ask(SemanticAnswerCache cache, String question) {
+        return cache.answer(question, (q, embedding) -> new SemanticAnswerCache.Generated(
+                "answer " + generations.incrementAndGet(), new Retrieval(List.of(), VECTOR_CUTOFF, LEXICAL_CUTOFF)));
+    }
+
+    private SemanticAnswerCache newCache() {
+        for (int i = 0; i < 20; i++) {
+            lexicalIndex.add("filler-" + i, TextSegment.from("Office opening hours for building " + i + "."));
+        }
+        EmbeddingModel model = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                embedded.addAndGet(segments.size());
+                return Response.from(segments.stream().map(s -> Embedding.from(VECTORS.get(s.text()))).toList());
+            }
+        };
+        IngestionPipeline pipeline = new IngestionPipeline(model, new InMemoryEmbeddingStore<>(),
+                new FixedSizeSplitter(100), PipelineSettings.builder().build());
+        return new SemanticAnswerCache(model, pipeline, lexicalIndex, true, 0.95, 100, 60);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.documentqa.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionChatMemoryStoreTest {
+
+    @TempDir
+    Path spillDirectory;
+
+    @Test
+    void evictsLeastRecentlyUsedSessionAndRestoresItFromDisk() {
+        SessionChatMemoryStore store = new SessionChatMemoryStore(2, 30, spillDirectory.toString(), 24);
+        turn(store, "a", "What is the leave policy?", "25 days.");
+        turn(store, "b", "Who approves expenses?", "Your manager.");
+        store.getMessages("a");
+        turn(store, "c", "Where is the office?", "Berlin.");
+
+        Map<String, Object> stats = store.stats();
+        assertEquals(2, stats.get("activeSessions"));
+        assertEquals(1L, stats.get("sizeEvictions"));
+        assertEquals(1L, stats.get("spilled"));
+
+        List<ChatMessage> restored = store.getMessages("b");
+        assertEquals(2, restored.size());
+        assertEquals(UserMessage.from("Who approves expenses?"), restored.get(0));
+        assertEquals(AiMessage.from("Your manager."), restored.get(1));
+        assertEquals(1L, store.stats().get("restored"));
+    }
+
+    @Test
+    void dropsEvictedSessionsWithoutSpillDirectory() {
+        SessionChatMemoryStore store = new SessionChatMemoryStore(1, 30, "", 24);
+        turn(store, "a", "First?", "One.");
+        turn(store, "b", "Second?", "Two.");
+
+        assertTrue(store.getMessages("a").isEmpty());
+        assertEquals(2, store.getMessages("b").size());
+    }
+
+    @Test
+    void sweepEvictsIdleSessionsAndTracksMemory() {
+        SessionChatMemoryStore store = new SessionChatMemoryStore(10, 0, "", 24);
+        turn(store, "a", "Question?", "Answer.");
+        assertTrue((long) store.stats().get("approxBytes") > 0);
+
+        store.sweep();
+
+        Map<String, Object> stats = store.stats();
+        assertEquals(0, stats.get("activeSessions"));
+        assertEquals(1L, stats.get("idleEvictions"));
+        assertEquals(0L, stats.get("approxBytes"));
+    }
+
+    @Test
+    void windowKeepsTheLatestMessagesOfASession() {
+        SessionChatMemoryStore store = new SessionChatMemoryStore(10, 30, "", 24);
+        for (int i = 0; i < 4; i++) {
+            turn(store, "a", "Question " + i + "?", "Answer " + i + ".");
+        }
+        List<ChatMessage> messages = store.getMessages("a");
+        assertEquals(4, messages.size());
+        assertEquals(UserMessage.from("Question 2?"), messages.get(0));
+    }
+
+    private static void turn(SessionChatMemoryStore store, String session, String question, String answer) {
+        ChatMemory memory = MessageWindowChatMemory.builder().id(session).maxMessages(4).chatMemoryStore(store).build();
+        memory.add(UserMessage.from(question));
+        memory.add(AiMessage.from(answer));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.documentqa.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DotProductTest {
+
+    @Test
+    void kernelsAgreeWithAPlainLoopAtEveryLength() {
+        DotProduct simd = DotProduct.simd();
+        assumeTrue(simd != null, "jdk.incubator.vector is not available");
+        DotProduct scalar = DotProduct.scalar();
+        Random random = new Random(3);
+        // Lengths around the lane counts exercise the unrolled, single-lane and tail loops
+        for (int length = 1; length <= 70; length++) {
+            float[] a = random(random, length);
+            float[] b = random(random, length);
+            double expected = 0;
+            for (int i = 0; i < length; i++) {
+                expected += (double) a[i] * b[i];
+            }
+
+            assertThat(scalar.dot(a, b)).isCloseTo((float) expected, within(1e-4f));
+            assertThat(simd.dot(a, b)).isCloseTo((float) expected, within(1e-4f));
+        }
+    }
+
+    @Test
+    void topKKeepsTheBestScoresBestFirst() {
+        TopK top = new TopK(5);
+        Random random = new Random(8);
+        float[] scores = new float[1000];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextFloat();
+            top.offer(i, scores[i]);
+        }
+        top.sortDescending();
+
+        float[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        assertThat(top.size()).isEqualTo(5);
+        for (int i = 0; i < 5; i++) {
+            assertThat(top.score(i)).isEqualTo(sorted[sorted.length - 1 - i]);
+            assertThat(scores[top.position(i)]).isEqualTo(top.score(i));
+        }
+    }
+
+    private static float[] random(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
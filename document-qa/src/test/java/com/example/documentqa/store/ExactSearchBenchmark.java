@@ -0,0 +1,84 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Exact-search latency of {@link MappedEmbeddingStore} at growing sizes, through its public API only so the
+ * same class can be run against older builds. Start the JVM with and without
+ * {@code --add-modules jdk.incubator.vector} to compare the SIMD and scalar kernels.
+ * Arguments: dimension, queries per size, then the sizes (defaults 384 50 10000 100000 1000000).
+ */
+public class ExactSearchBenchmark {
+
+    private static final int K = 10;
+    private static final int BATCH = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int dimension = args.length > 0 ? Integer.parseInt(args[0]) : 384;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            sizes.add(Integer.parseInt(args[i]));
+        }
+        if (sizes.isEmpty()) {
+            sizes = List.of(10_000, 100_000, 1_000_000);
+        }
+        System.out.printf("dimension=%d queries=%d vectorModule=%s%n", dimension, queries,
+                ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+
+        for (int size : sizes) {
+            Random random = new Random(42);
+            Path directory = Files.createTempDirectory("exact-search-benchmark");
+            try {
+                try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+                    List<Embedding> batch = new ArrayList<>(BATCH);
+                    List<TextSegment> segments = new ArrayList<>(BATCH);
+                    for (int i = 0; i < size; i++) {
+                        batch.add(Embedding.from(gaussian(random, dimension)));
+                        segments.add(TextSegment.from(String.valueOf(i)));
+                        if (batch.size() == BATCH || i == size - 1) {
+                            store.addAll(batch, segments);
+                            batch.clear();
+                            segments.clear();
+                        }
+                    }
+                }
+                try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+                    List<Embedding> queryEmbeddings = new ArrayList<>();
+                    for (int q = 0; q < queries; q++) {
+                        queryEmbeddings.add(Embedding.from(gaussian(random, dimension)));
+                    }
+                    // Warm-up pass also pulls the mapped file into the page cache
+                    int warmup = Math.max(5, Math.min(queries, 2_000_000 / size));
+                    for (int q = 0; q < warmup; q++) {
+                        store.findRelevant(queryEmbeddings.get(q % queries), K);
+                    }
+                    long start = System.nanoTime();
+                    for (Embedding query : queryEmbeddings) {
+                        store.findRelevant(query, K);
+                    }
+                    double millis = (System.nanoTime() - start) / 1e6 / queries;
+                    System.out.printf("vectors=%-8d ms/query=%9.2f  vectors/s=%,.0f%n",
+                            size, millis, size / millis * 1000);
+                }
+            } finally {
+                StoreFiles.deleteRecursively(directory);
+            }
+        }
+    }
+
+    private static float[] gaussian(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
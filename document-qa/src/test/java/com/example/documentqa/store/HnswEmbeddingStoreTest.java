@@ -0,0 +1,111 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswEmbeddingStoreTest {
+
+    @Test
+    void findsExactMatchesAfterConcurrentInserts() throws Exception {
+        HnswEmbeddingStore store = new HnswEmbeddingStore(8, 64, 64);
+        Random random = new Random(7);
+        float[][] vectors = new float[2000][32];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < vectors.length; i++) {
+            int n = i;
+            pool.execute(() -> store.add(Embedding.from(vectors[n]), TextSegment.from("segment " + n)));
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+        assertThat(store.size()).isEqualTo(vectors.length);
+
+        int found = 0;
+        for (int i = 0; i < vectors.length; i += 20) {
+            List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(vectors[i]), 1);
+            if (matches.get(0).embedded().text().equals("segment " + i)) {
+                found++;
+            }
+        }
+        assertThat(found).isGreaterThanOrEqualTo(98);
+    }
+
+    @Test
+    void compactionDropsDeletedDocumentsFromTheGraph() {
+        HnswEmbeddingStore store = new HnswEmbeddingStore(8, 64, 16);
+        Random random = new Random(5);
+        float[][] vectors = new float[600][16];
+        for (int n = 0; n < vectors.length; n++) {
+            for (int i = 0; i < vectors[n].length; i++) {
+                vectors[n][i] = (float) random.nextGaussian();
+            }
+            store.add(Embedding.from(vectors[n]), MappedEmbeddingStoreTest.segment("segment " + n, n % 3, n));
+        }
+
+        assertThat(store.deleteDocument(0)).isEqualTo(200);
+        for (int n = 0; n < vectors.length; n += 25) {
+            assertThat(store.findRelevant(Embedding.from(vectors[n]), 5))
+                    .noneMatch(match -> Integer.parseInt(match.embedded().text().substring(8)) % 3 == 0);
+        }
+
+        assertThat(store.compact()).isEqualTo(200);
+        assertThat(store.size()).isEqualTo(400);
+        assertThat(store.tombstones()).isZero();
+        int found = 0;
+        for (int n = 1; n < vectors.length; n += 3) {
+            if (store.findRelevant(Embedding.from(vectors[n]), 1).get(0).embedded().text().equals("segment " + n)) {
+                found++;
+            }
+        }
+        assertThat(found).isGreaterThanOrEqualTo(195);
+    }
+
+    @Test
+    void filteredSearchScoresSmallSelectionsExactlyAndSearchesLargeOnesThroughTheGraph() {
+        HnswEmbeddingStore store = new HnswEmbeddingStore(8, 64, 16);
+        Random random = new Random(11);
+        float[][] vectors = new float[3000][32];
+        for (int n = 0; n < vectors.length; n++) {
+            for (int i = 0; i < vectors[n].length; i++) {
+                vectors[n][i] = (float) random.nextGaussian();
+            }
+            // Document 1 holds every 100th segment, documents 2 and 3 split the rest
+            long documentId = n % 100 == 0 ? 1 : 2 + n % 2;
+            store.add(Embedding.from(vectors[n]), MappedEmbeddingStoreTest.segment("segment " + n, documentId, n));
+        }
+
+        SegmentFilter small = SegmentFilter.of(List.of(1L), null, null);
+        SegmentFilter large = SegmentFilter.of(List.of(3L), null, null);
+        int found = 0;
+        // Odd positions belong to document 3, so each query's own segment is the best scoped match
+        for (int i = 1; i < vectors.length; i += 30) {
+            Embedding query = Embedding.from(vectors[i]);
+            assertThat(store.findRelevant(query, 5, 0, small)).hasSize(5)
+                    .allSatisfy(match -> assertThat(match.embedded().text()).matches("segment \\d*00|segment 0"));
+            List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(query, 5, 0, large);
+            assertThat(matches).hasSize(5).allSatisfy(match ->
+                    assertThat(Integer.parseInt(match.embedded().text().substring(8)) % 2).isEqualTo(1));
+            if (matches.get(0).embedded().text().equals("segment " + i)) {
+                found++;
+            }
+        }
+        assertThat(found).isGreaterThanOrEqualTo(90);
+        assertThat(store.findRelevant(Embedding.from(vectors[0]), 5, 0, SegmentFilter.of(null, 10L, 12L)))
+                .extracting(match -> match.embedded().text()).containsExactlyInAnyOrder("segment 10", "segment 11");
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.documentqa.store;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recall@k and latency of {@link HnswIndex} against exact search over clustered synthetic embeddings.
+ * Arguments: vector count, dimension, query count, efConstruction (defaults 100000 384 200 200).
+ */
+public class HnswRecallBenchmark {
+
+    private static final int K = 10;
+    private static final int CLUSTERS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 384;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int efConstruction = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        Random random = new Random(42);
+        float[][] centroids = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centroids[c] = gaussian(random, dimension, 1.0f, null);
+        }
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = HnswEmbeddingStore.normalized(gaussian(random, dimension, 1.5f, centroids[random.nextInt(CLUSTERS)]));
+        }
+        float[][] queryVectors = new float[queries][];
+        for (int q = 0; q < queries; q++) {
+            queryVectors[q] = HnswEmbeddingStore.normalized(gaussian(random, dimension, 1.5f, centroids[random.nextInt(CLUSTERS)]));
+        }
+
+        HnswIndex index = new HnswIndex(16, efConstruction);
+        long buildStart = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        for (float[] vector : vectors) {
+            pool.execute(() -> index.insert(vector, null));
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.DAYS);
+        double buildSeconds = (System.nanoTime() - buildStart) / 1e9;
+        System.out.printf("n=%d dim=%d M=16 efConstruction=%d build=%.1fs (%d threads)%n",
+                count, dimension, efConstruction, buildSeconds, Runtime.getRuntime().availableProcessors());
+
+        long exactStart = System.nanoTime();
+        List<Set<Integer>> truth = new ArrayList<>();
+        for (float[] query : queryVectors) {
+            truth.add(exact(vectors, query));
+        }
+        double exactMillis = (System.nanoTime() - exactStart) / 1e6 / queries;
+        System.out.printf("%-10s %10s %12s%n", "efSearch", "recall@10", "ms/query");
+        System.out.printf("%-10s %10.3f %12.3f%n", "exact", 1.0, exactMillis);
+
+        for (int ef : new int[]{16, 32, 64, 128, 256}) {
+            int hits = 0;
+            long start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                for (HnswIndex.Scored scored : index.search(queryVectors[q], K, ef, null)) {
+                    if (truth.get(q).contains(scored.id())) {
+                        hits++;
+                    }
+                }
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / queries;
+            System.out.printf("%-10d %10.3f %12.3f%n", ef, hits / (double) (queries * K), millis);
+        }
+    }
+
+    private static Set<Integer> exact(float[][] vectors, float[] query) {
+        List<HnswIndex.Scored> all = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            all.add(new HnswIndex.Scored(i, HnswIndex.dot(query, vectors[i])));
+        }
+        all.sort(Comparator.comparingDouble(HnswIndex.Scored::score).reversed());
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < K; i++) {
+            ids.add(all.get(i).id());
+        }
+        return ids;
+    }
+
+    private static float[] gaussian(Random random, int dimension, float sigma, float[] mean) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian() * sigma + (mean == null ? 0 : mean[i]);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.documentqa.store;
+
+import com.example.documentqa.ingestion.IngestionPipeline;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class MappedEmbeddingStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsNearestSegmentsAfterReopen() throws Exception {
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            store.addAll(
+                    List.of(Embedding.from(new float[]{1, 0, 0}), Embedding.from(new float[]{0, 1, 0})),
+                    List.of(TextSegment.from("first", Metadata.from("page", "1")), TextSegment.from("second")));
+        }
+
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            store.add(Embedding.from(new float[]{0.9f, 0.1f, 0}), TextSegment.from("third"));
+
+            List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{1, 0, 0}), 2);
+
+            assertThat(store.size()).isEqualTo(3);
+            assertThat(matches).extracting(match -> match.embedded().text()).containsExactly("first", "third");
+            assertThat(matches.get(0).embedded().metadata("page")).isEqualTo("1");
+            assertThat(matches.get(0).score()).isEqualTo(1.0, within(1e-6));
+        }
+    }
+
+    @Test
+    void rejectsEmbeddingsOfAnotherDimension() throws Exception {
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            store.add(Embedding.from(new float[]{1, 0, 0}));
+
+            assertThatThrownBy(() -> store.add(Embedding.from(new float[]{1, 0})))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void quantizedModeRescoresAgainstFullPrecision() throws Exception {
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            store.add(Embedding.from(new float[]{1, 0, 0}), TextSegment.from("first"));
+        }
+
+        // Codes for entries written without quantization are backfilled on open
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory, true, 2)) {
+            store.add(Embedding.from(new float[]{0.6f, 0.8f, 0}), TextSegment.from("second"));
+            store.add(Embedding.from(new float[]{0, 0, 1}), TextSegment.from("third"));
+
+            List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{1, 0.1f, 0}), 2);
+
+            assertThat(matches).extracting(match -> match.embedded().text()).containsExactly("first", "second");
+            assertThat(store.stats()).containsEntry("quantized", true);
+        }
+    }
+
+    @Test
+    void filteredSearchOnlyReturnsSelectedDocumentsAfterReopen() throws Exception {
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory, true, 1)) {
+            store.add(Embedding.from(new float[]{1, 0, 0}), segment("a", 1, 1_000));
+            store.add(Embedding.from(new float[]{0.9f, 0.1f, 0}), segment("b", 2, 2_000));
+            store.add(Embedding.from(new float[]{0, 1, 0}), segment("c", 2, 3_000));
+        }
+        // The attribute file is rebuilt from the segment log when it is missing
+        Files.delete(directory.resolve(MappedEmbeddingStore.ATTRIBUTES_FILE));
+
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory, true, 1)) {
+            store.add(Embedding.from(new float[]{0.8f, 0.2f, 0}), segment("d", 3, 4_000));
+            Embedding query = Embedding.from(new float[]{1, 0, 0});
+
+            assertThat(store.findRelevant(query, 10, 0, SegmentFilter.of(List.of(2L), null, null)))
+                    .extracting(match -> match.embedded().text()).containsExactly("b", "c");
+            assertThat(store.findRelevant(query, 10, 0, SegmentFilter.of(null, 2_000L, 4_000L)))
+                    .extracting(match -> match.embedded().text()).containsExactly("b", "c");
+            assertThat(store.findRelevant(query, 1, 0, SegmentFilter.of(List.of(2L, 3L), null, null)))
+                    .extracting(match -> match.embedded().text()).containsExactly("b");
+            assertThat(store.findRelevant(query, 10, 0, SegmentFilter.of(List.of(9L), null, null))).isEmpty();
+        }
+    }
+
+    @Test
+    void deletedDocumentsStayHiddenThroughCompactionAndReopen() throws Exception {
+        Embedding query = Embedding.from(new float[]{1, 0, 0});
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            store.add(Embedding.from(new float[]{1, 0, 0}), segment("a", 1, 1_000));
+            store.add(Embedding.from(new float[]{0.9f, 0.1f, 0}), segment("b", 2, 2_000));
+            store.add(Embedding.from(new float[]{0, 1, 0}), segment("c", 1, 3_000));
+
+            assertThat(store.deleteDocument(1)).isEqualTo(2);
+            assertThat(store.findRelevant(query, 10)).extracting(match -> match.embedded().text()).containsExactly("b");
+            // A late segment of a deleted document is tombstoned as it arrives
+            store.add(Embedding.from(new float[]{1, 0, 0}), segment("d", 1, 4_000));
+            assertThat(store.tombstones()).isEqualTo(3);
+            assertThat(store.size()).isEqualTo(1);
+        }
+
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            assertThat(store.tombstones()).isEqualTo(3);
+            assertThat(store.compact()).isEqualTo(3);
+            store.add(Embedding.from(new float[]{0.5f, 0.5f, 0}), segment("e", 3, 5_000));
+
+            assertThat(store.tombstones()).isZero();
+            assertThat(store.findRelevant(query, 10)).extracting(match -> match.embedded().text()).containsExactly("b", "e");
+        }
+        assertThat(Files.readString(directory.resolve(MappedEmbeddingStore.CURRENT_FILE)).trim()).isEqualTo("gen-1");
+        assertThat(directory.resolve(MappedEmbeddingStore.ATTRIBUTES_FILE)).doesNotExist();
+
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            store.add(Embedding.from(new float[]{1, 0, 0}), segment("f", 1, 6_000));
+
+            assertThat(store.size()).isEqualTo(2);
+            assertThat(store.findRelevant(query, 10, 0, SegmentFilter.of(List.of(2L, 3L), null, null)))
+                    .extracting(match -> match.embedded().text()).containsExactly("b", "e");
+        }
+    }
+
+    @Test
+    void purgedSegmentsStayHiddenWhileLaterOnesOfTheDocumentStayLive() throws Exception {
+        Embedding query = Embedding.from(new float[]{1, 0, 0});
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            store.add(Embedding.from(new float[]{1, 0, 0}), segment("first attempt", 1, 1_000));
+            store.add(Embedding.from(new float[]{0.9f, 0.1f, 0}), segment("other", 2, 2_000));
+
+            assertThat(store.purgeDocument(1)).isEqualTo(1);
+            store.add(Embedding.from(new float[]{1, 0, 0}), segment("second attempt", 1, 1_000));
+            assertThat(store.findRelevant(query, 10)).extracting(match -> match.embedded().text())
+                    .containsExactly("second attempt", "other");
+        }
+
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            assertThat(store.tombstones()).isEqualTo(1);
+            assertThat(store.compact()).isEqualTo(1);
+        }
+
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            assertThat(store.tombstones()).isZero();
+            assertThat(store.findRelevant(query, 10)).extracting(match -> match.embedded().text())
+                    .containsExactly("second attempt", "other");
+        }
+    }
+
+    @Test
+    void looksUpLiveSegmentsByIdAfterReopenAndCompaction() throws Exception {
+        String a;
+        String b;
+        String c;
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            a = store.add(Embedding.from(new float[]{1, 0, 0}), segment("a", 1, 1_000));
+            b = store.add(Embedding.from(new float[]{0, 1, 0}), segment("b", 2, 2_000));
+            store.deleteDocument(1);
+        }
+
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            c = store.add(Embedding.from(new float[]{0, 0, 1}), segment("c", 3, 3_000));
+            assertThat(store.segments(List.of(a, b, c, "unknown")).keySet()).containsExactlyInAnyOrder(b, c);
+
+            store.compact();
+            assertThat(store.segments(List.of(a, b, c)).get(b).text()).isEqualTo("b");
+            assertThat(store.segments(List.of(a, b, c)).get(c).text()).isEqualTo("c");
+            assertThat(store.segments(List.of(a))).isEmpty();
+        }
+    }
+
+    @Test
+    void normalizesVectorFilesWrittenUnnormalizedOnReopen() throws Exception {
+        float[] stored = {3, 4, 0};
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            store.add(Embedding.from(stored), TextSegment.from("first"));
+            store.add(Embedding.from(new float[]{0, 0, 2}), TextSegment.from("second"));
+        }
+        // Rewrites the file the way it was laid out before: version 1 magic, raw components after the norm
+        Path file = directory.resolve(MappedGeneration.VECTORS_FILE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0x44515631).flip(), 0);
+            channel.write(ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN)
+                    .putFloat(5).putFloat(3).putFloat(4).putFloat(0).flip(), 16);
+        }
+
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{0.6f, 0.8f, 0}), 1);
+
+            assertThat(matches.get(0).embedded().text()).isEqualTo("first");
+            assertThat(matches.get(0).score()).isEqualTo(1.0, within(1e-6));
+            assertThat(matches.get(0).embedding().vector()).containsExactly(new float[]{3, 4, 0}, within(1e-5f));
+        }
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            assertThat(store.findRelevant(Embedding.from(new float[]{0, 0, 1}), 1).get(0).score()).isEqualTo(1.0, within(1e-6));
+        }
+    }
+
+    static TextSegment segment(String text, long documentId, long uploadedAt) {
+        return TextSegment.from(text, new Metadata()
+                .add(IngestionPipeline.DOCUMENT_ID_METADATA, String.valueOf(documentId))
+                .add(IngestionPipeline.UPLOADED_AT_METADATA, String.valueOf(uploadedAt)));
+    }
+}
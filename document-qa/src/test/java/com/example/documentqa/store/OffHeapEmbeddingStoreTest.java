@@ -0,0 +1,73 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class OffHeapEmbeddingStoreTest {
+
+    @Test
+    void returnsNearestSegmentsWithTextMetadataAndOriginalVectors() {
+        OffHeapEmbeddingStore store = new OffHeapEmbeddingStore();
+        store.addAll(
+                List.of(Embedding.from(new float[]{3, 4, 0}), Embedding.from(new float[]{0, 1, 0})),
+                List.of(TextSegment.from("first", Metadata.from("page", "1")), TextSegment.from("second")));
+        String bare = store.add(Embedding.from(new float[]{0, 0, 1}));
+
+        List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{0.6f, 0.8f, 0}), 2);
+
+        assertThat(matches).extracting(match -> match.embedded().text()).containsExactly("first", "second");
+        assertThat(matches.get(0).embedded().metadata("page")).isEqualTo("1");
+        assertThat(matches.get(0).score()).isEqualTo(1.0, within(1e-6));
+        assertThat(matches.get(0).embedding().vector()).containsExactly(new float[]{3, 4, 0}, within(1e-5f));
+        EmbeddingMatch<TextSegment> bareMatch = store.findRelevant(Embedding.from(new float[]{0, 0, 1}), 1).get(0);
+        assertThat(bareMatch.embeddingId()).isEqualTo(bare);
+        assertThat(bareMatch.embedded()).isNull();
+        assertThat(store.stats()).containsEntry("embeddings", 3);
+    }
+
+    @Test
+    void filtersDeletesAndCompacts() {
+        OffHeapEmbeddingStore store = new OffHeapEmbeddingStore();
+        store.add(Embedding.from(new float[]{1, 0, 0}), MappedEmbeddingStoreTest.segment("a", 1, 1_000));
+        store.add(Embedding.from(new float[]{0.9f, 0.1f, 0}), MappedEmbeddingStoreTest.segment("b", 2, 2_000));
+        store.add(Embedding.from(new float[]{0, 1, 0}), MappedEmbeddingStoreTest.segment("c", 1, 3_000));
+        Embedding query = Embedding.from(new float[]{1, 0, 0});
+
+        assertThat(store.findRelevant(query, 10, 0, SegmentFilter.of(null, 2_000L, 4_000L)))
+                .extracting(match -> match.embedded().text()).containsExactly("b", "c");
+
+        assertThat(store.deleteDocument(1)).isEqualTo(2);
+        store.add(Embedding.from(new float[]{1, 0, 0}), MappedEmbeddingStoreTest.segment("d", 1, 4_000));
+        assertThat(store.findRelevant(query, 10)).extracting(match -> match.embedded().text()).containsExactly("b");
+
+        assertThat(store.compact()).isEqualTo(3);
+        store.add(Embedding.from(new float[]{0.5f, 0.5f, 0}), MappedEmbeddingStoreTest.segment("e", 3, 5_000));
+        assertThat(store.tombstones()).isZero();
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.findRelevant(query, 10, 0, SegmentFilter.of(List.of(2L, 3L), null, null)))
+                .extracting(match -> match.embedded().text()).containsExactly("b", "e");
+    }
+
+    @Test
+    void arenaGivesOversizedRecordsTheirOwnChunk() {
+        OffHeapArena arena = new OffHeapArena(64);
+        long small = arena.append(new byte[]{1, 2, 3});
+        long large = arena.append(new byte[200]);
+        long next = arena.append(new byte[]{4});
+
+        assertThat(arena.read(small)).isEqualTo(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        assertThat(arena.read(large).remaining()).isEqualTo(200);
+        assertThat(arena.read(next)).isEqualTo(ByteBuffer.wrap(new byte[]{4}));
+        assertThat(next >>> 32).isEqualTo(2);
+        assertThat(arena.allocatedBytes()).isEqualTo(64 + 204 + 64);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.documentqa.store;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Heap, direct memory and GC pauses while ingesting into the heap-based {@link InMemoryEmbeddingStore} or
+ * the {@link OffHeapEmbeddingStore}, with a question asked after every batch as /ask would. Run each store
+ * in its own JVM with the same -Xmx. Arguments: store (memory or offheap), vector count, dimension
+ * (defaults offheap 50000 4096).
+ */
+public class OffHeapStoreBenchmark {
+
+    private static final int BATCH = 500;
+    private static final int QUERIES_PER_BATCH = 2;
+
+    public static void main(String[] args) throws Exception {
+        String type = args.length > 0 ? args[0] : "offheap";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int dimension = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+        EmbeddingStore<TextSegment> store = "memory".equals(type) ? new InMemoryEmbeddingStore<>() : new OffHeapEmbeddingStore();
+
+        List<Long> pauses = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    synchronized (pauses) {
+                        pauses.add(info.getGcInfo().getDuration());
+                    }
+                }
+            }, null, null);
+        }
+
+        Random random = new Random(42);
+        List<Long> queryNanos = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int done = 0; done < count; done += BATCH) {
+            List<Embedding> embeddings = new ArrayList<>(BATCH);
+            List<TextSegment> segments = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH && done + i < count; i++) {
+                embeddings.add(Embedding.from(gaussian(random, dimension)));
+                segments.add(TextSegment.from("Segment " + (done + i) + " of a synthetic document, about as long as a"
+                        + " short paragraph of a real one so the text takes a realistic share of memory."));
+            }
+            store.addAll(embeddings, segments);
+            for (int q = 0; q < QUERIES_PER_BATCH; q++) {
+                long queryStart = System.nanoTime();
+                store.findRelevant(Embedding.from(gaussian(random, dimension)), 5);
+                queryNanos.add(System.nanoTime() - queryStart);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] pauseMillis;
+        synchronized (pauses) {
+            pauseMillis = pauses.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        long[] queryMillis = queryNanos.stream().mapToLong(nanos -> nanos / 1_000_000).sorted().toArray();
+        System.gc();
+        long heapAfterGc = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long direct = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                direct = pool.getMemoryUsed();
+            }
+        }
+
+        System.out.printf("store=%s vectors=%d dimension=%d ingest+query=%.1fs%n", type, count, dimension, seconds);
+        System.out.printf("  heap after GC=%d MB  direct=%d MB%n", heapAfterGc >> 20, direct >> 20);
+        System.out.printf("  GC pauses=%d total=%d ms p50=%d ms p99=%d ms max=%d ms%n", pauseMillis.length,
+                Arrays.stream(pauseMillis).sum(), percentile(pauseMillis, 0.5), percentile(pauseMillis, 0.99),
+                percentile(pauseMillis, 1));
+        System.out.printf("  query p50=%d ms p99=%d ms max=%d ms%n", percentile(queryMillis, 0.5),
+                percentile(queryMillis, 0.99), percentile(queryMillis, 1));
+        if (store instanceof EmbeddingStoreStats stats) {
+            System.out.println("  " + stats.stats());
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static float[] gaussian(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
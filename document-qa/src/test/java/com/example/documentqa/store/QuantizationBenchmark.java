@@ -0,0 +1,100 @@
+package com.example.documentqa.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Recall@10, latency and storage of the quantized {@link MappedEmbeddingStore} against the exact float scan,
+ * over clustered synthetic embeddings. Arguments: vector count, dimension, query count (defaults 50000 1024 200).
+ */
+public class QuantizationBenchmark {
+
+    private static final int K = 10;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        Random random = new Random(42);
+        float[][] centroids = new float[500][];
+        for (int c = 0; c < centroids.length; c++) {
+            centroids[c] = gaussian(random, dimension, null);
+        }
+        Path directory = Files.createTempDirectory("quantization-benchmark");
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            List<Embedding> batch = new ArrayList<>();
+            List<TextSegment> segments = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                batch.add(Embedding.from(gaussian(random, dimension, centroids[random.nextInt(centroids.length)])));
+                segments.add(TextSegment.from(String.valueOf(i)));
+                if (batch.size() == 1000 || i == count - 1) {
+                    store.addAll(batch, segments);
+                    batch.clear();
+                    segments.clear();
+                }
+            }
+        }
+        List<Embedding> queryEmbeddings = new ArrayList<>();
+        for (int q = 0; q < queries; q++) {
+            queryEmbeddings.add(Embedding.from(gaussian(random, dimension, centroids[random.nextInt(centroids.length)])));
+        }
+
+        List<Set<String>> truth = new ArrayList<>();
+        double exactMillis;
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            long start = System.nanoTime();
+            for (Embedding query : queryEmbeddings) {
+                truth.add(texts(store.findRelevant(query, K)));
+            }
+            exactMillis = (System.nanoTime() - start) / 1e6 / queries;
+        }
+
+        long floatBytes = (long) count * (dimension + 1) * 4;
+        long codeBytes = (long) count * (dimension + 12);
+        System.out.printf("n=%d dim=%d float vectors=%d MB int8 codes=%d MB (%.1fx smaller)%n",
+                count, dimension, floatBytes >> 20, codeBytes >> 20, floatBytes / (double) codeBytes);
+        System.out.printf("%-16s %10s %12s%n", "mode", "recall@10", "ms/query");
+        System.out.printf("%-16s %10.3f %12.3f%n", "exact float", 1.0, exactMillis);
+
+        for (int rescore : new int[]{K, 50, 100, 200, 400}) {
+            try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory, true, rescore)) {
+                int hits = 0;
+                long start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    for (String text : texts(store.findRelevant(queryEmbeddings.get(q), K))) {
+                        if (truth.get(q).contains(text)) {
+                            hits++;
+                        }
+                    }
+                }
+                double millis = (System.nanoTime() - start) / 1e6 / queries;
+                System.out.printf("%-16s %10.3f %12.3f%n", "int8 rescore " + rescore,
+                        hits / (double) (queries * K), millis);
+            }
+        }
+    }
+
+    private static Set<String> texts(List<EmbeddingMatch<TextSegment>> matches) {
+        Set<String> texts = new HashSet<>();
+        matches.forEach(match -> texts.add(match.embedded().text()));
+        return texts;
+    }
+
+    private static float[] gaussian(Random random, int dimension, float[] mean) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian() * (mean == null ? 1.0f : 1.5f) + (mean == null ? 0 : mean[i]);
+        }
+        return vector;
+    }
+}